@@ -0,0 +1,130 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import com.dynatrace.diagnostics.global.PluginInstanceConfig;
+import com.dynatrace.diagnostics.global.PluginTypeConfig;
+import com.dynatrace.diagnostics.sdk.HostImpl;
+import com.dynatrace.diagnostics.sdk.MonitorEnvironment30Impl;
+import com.dynatrace.diagnostics.sdk.MonitorMeasure30Impl;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Measures how expensive it is to parse the responses of a cluster, extract the
+ * measures from them and write the measures to the Dynatrace measure interface,
+ * for small, medium and large clusters.
+ *
+ * Run via "./gradlew jmh", the GC profiler reports allocated bytes per operation
+ * as "gc.alloc.rate.norm".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ElasticsearchMonitorBenchmark {
+    @Param({"3", "50", "300"})
+    public int nodes;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final VersionAdapter version = VersionAdapter.forVersion("5.5.2");
+
+    private ElasticsearchMonitor monitor;
+    private MonitorEnvironment30Impl env;
+
+    private String nodeStatsResponse;
+    private String clusterStatsResponse;
+    private JsonNode nodeStats;
+    private JsonNode clusterStats;
+    private final NodeInfoCache nodeInfo = new NodeInfoCache();
+    private ClusterMeasures measures;
+
+    @Setup
+    public void setUp() throws IOException {
+        // measure the monitor, not the console-output of the per-measure logging
+        Logger.getLogger(ElasticsearchMonitor.class.getName()).setLevel(Level.WARNING);
+
+        ClusterResponses responses = new ClusterResponses(nodes, nodes * 3, 5, 42);
+        nodeStatsResponse = responses.nodesStats();
+        clusterStatsResponse = responses.clusterStats();
+        nodeStats = mapper.readTree(nodeStatsResponse);
+        clusterStats = mapper.readTree(clusterStatsResponse);
+
+        monitor = new ElasticsearchMonitor();
+        env = createEnvironment();
+
+        // fill all the measures once for writing them
+        measures = new ClusterMeasures();
+        monitor.extractClusterHealth(mapper.readTree(responses.clusterHealth()), measures);
+        nodeInfo.update(monitor.extractNodeInfo(mapper.readTree(responses.nodesInfo())), System.currentTimeMillis());
+        monitor.extractClusterState(version, clusterStats, measures);
+        monitor.extractNodeStats(version, nodeStats, nodeInfo, measures);
+    }
+
+    @Benchmark
+    public ClusterMeasures parseAndExtractNodeStats() throws IOException {
+        ClusterMeasures result = new ClusterMeasures();
+        monitor.extractNodeStats(version, mapper.readTree(nodeStatsResponse), nodeInfo, result);
+        return result;
+    }
+
+    @Benchmark
+    public ClusterMeasures extractNodeStats() {
+        ClusterMeasures result = new ClusterMeasures();
+        monitor.extractNodeStats(version, nodeStats, nodeInfo, result);
+        return result;
+    }
+
+    @Benchmark
+    public ClusterMeasures parseAndExtractClusterState() throws IOException {
+        ClusterMeasures result = new ClusterMeasures();
+        monitor.extractClusterState(version, mapper.readTree(clusterStatsResponse), result);
+        return result;
+    }
+
+    @Benchmark
+    public ClusterMeasures extractClusterState() {
+        ClusterMeasures result = new ClusterMeasures();
+        monitor.extractClusterState(version, clusterStats, result);
+        return result;
+    }
+
+    @Benchmark
+    public MonitorEnvironment30Impl writeMeasures() {
+        monitor.writeMeasures(env, measures);
+        return env;
+    }
+
+    private static MonitorEnvironment30Impl createEnvironment() {
+        PluginInstanceConfig pluginConfig = new PluginInstanceConfig();
+        pluginConfig.setKey("elasticsearch");
+
+        PluginTypeConfig pluginTypeConfig = new PluginTypeConfig();
+        pluginTypeConfig.setKey("elasticsearch");
+
+        MonitorEnvironment30Impl env = new MonitorEnvironment30Impl(new HostImpl("localhost"), pluginConfig, pluginTypeConfig, false, null);
+        for(String name : ElasticsearchMonitor.ALL_MEASURES) {
+            MonitorMeasure30Impl measure = new MonitorMeasure30Impl();
+            measure.setMetricGroupName(ElasticsearchMonitor.METRIC_GROUP_ELASTICSEARCH);
+            measure.setMetricName(name);
+            env.internalGetMeasures().add(measure);
+        }
+        return env;
+    }
+}
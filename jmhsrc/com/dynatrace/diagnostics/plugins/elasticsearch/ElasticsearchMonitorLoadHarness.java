@@ -0,0 +1,108 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import com.dynatrace.diagnostics.sdk.MonitorEnvironment30Impl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the monitor end-to-end against an {@link ElasticsearchSimulator} of increasing
+ * size and reports the wall time and allocations of execute() as well as the heap
+ * which is still in use afterwards.
+ *
+ * Run via "./gradlew loadHarness", the sizes can be set via "-PharnessNodes=10,100,1000",
+ * the simulated version via "-PharnessVersion=2.4.6" and the latency of each request
+ * in milliseconds via "-PharnessLatency=5". Allocations are reported as -1 if the JVM
+ * cannot measure them.
+ */
+public class ElasticsearchMonitorLoadHarness {
+    private static final int WARMUP = 3;
+    private static final int ITERATIONS = 10;
+
+    public static void main(String[] args) throws Exception {
+        String nodeCounts = args.length > 0 ? args[0] : "10,100,1000,2000,5000";
+        String version = args.length > 1 ? args[1] : "5.5.2";
+        long latency = args.length > 2 ? Long.parseLong(args[2]) : 0;
+
+        // measure the monitor, not the console-output of the per-measure logging
+        Logger.getLogger(ElasticsearchMonitor.class.getName()).setLevel(Level.WARNING);
+
+        System.out.println(String.format(Locale.ROOT, "%8s %8s %12s %12s %12s %14s %14s",
+                "nodes", "version", "KB/execute", "avg ms", "max ms", "alloc MB/exec", "heap MB"));
+        for(String nodes : nodeCounts.split(",")) {
+            run(Integer.parseInt(nodes.trim()), version, latency);
+        }
+    }
+
+    private static void run(int nodes, String version, long latency) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        ClusterResponses responses = new ClusterResponses(nodes, nodes * 3, 5, 42, version);
+        try (ElasticsearchSimulator simulator = new ElasticsearchSimulator(responses)) {
+            simulator.setLatency(latency);
+
+            MonitorEnvironment30Impl env = ElasticsearchMonitorMockRESTTest.prepareMonitorEnvironment("http", "localhost", (long) simulator.getPort());
+            ElasticsearchMonitor monitor = new ElasticsearchMonitor();
+            monitor.setup(env);
+            try {
+                // warms up the JIT as well as the responses which the simulator caches
+                for(int i = 0;i < WARMUP;i++) {
+                    simulator.tick();
+                    monitor.execute(env);
+                }
+
+                long totalNanos = 0;
+                long maxNanos = 0;
+                long allocated = 0;
+                long bytesServed = 0;
+                for(int i = 0;i < ITERATIONS;i++) {
+                    simulator.tick();
+
+                    long served = simulator.getBytesServed();
+                    long allocatedBefore = getAllocatedBytes(threads);
+                    long start = System.nanoTime();
+
+                    monitor.execute(env);
+
+                    long nanos = System.nanoTime() - start;
+                    allocated += getAllocatedBytes(threads) - allocatedBefore;
+                    bytesServed += simulator.getBytesServed() - served;
+                    totalNanos += nanos;
+                    maxNanos = Math.max(maxNanos, nanos);
+                }
+
+                // what the monitor and the measures in the environment keep between executions
+                System.gc();
+                long heapUsed = memory.getHeapMemoryUsage().getUsed();
+
+                System.out.println(String.format(Locale.ROOT, "%8d %8s %12d %12.1f %12.1f %14.1f %14.1f",
+                        nodes, version, bytesServed / ITERATIONS / 1024,
+                        toMillis(totalNanos / ITERATIONS), toMillis(maxNanos),
+                        threads instanceof com.sun.management.ThreadMXBean ? ((double) allocated) / ITERATIONS / 1024 / 1024 : -1.0,
+                        ((double) heapUsed) / 1024 / 1024));
+            } finally {
+                monitor.teardown(env);
+            }
+        }
+    }
+
+    /**
+     * @return The bytes allocated by the current thread so far, 0 if the JVM does not support it.
+     */
+    private static long getAllocatedBytes(ThreadMXBean threads) {
+        if(threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static double toMillis(long nanos) {
+        return ((double) nanos) / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,199 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import com.dynatrace.diagnostics.sdk.MonitorEnvironment30Impl;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.HttpGet;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Feeds responses which were recorded via {@link ResponseRecorder} through the monitor
+ * without any network, as fast as possible, and reports the wall time and allocations
+ * of execute(), so parsing, extraction and writing of the measures can be profiled
+ * with the payloads of real clusters.
+ *
+ * Run via "./gradlew replay -PreplayFiles=<recording or directory of recordings>", the
+ * number of passes over the recordings via "-PreplayPasses=10". The responses of each
+ * endpoint are served in the order in which they were recorded, the endpoints are
+ * matched by path, so the host of the recorded cluster does not matter.
+ */
+public class ElasticsearchMonitorReplay {
+    private static final int WARMUP_PASSES = 1;
+
+    public static void main(String[] args) throws Exception {
+        if(args.length < 1) {
+            System.err.println("Usage: ElasticsearchMonitorReplay <recording or directory> [passes]");
+            System.exit(1);
+        }
+        int passes = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        // measure the monitor, not the console-output of the per-measure logging
+        Logger.getLogger(ElasticsearchMonitor.class.getName()).setLevel(Level.WARNING);
+
+        File location = new File(args[0]);
+        List<File> files = location.isDirectory() ? ResponseRecorder.getFiles(location) : Collections.singletonList(location);
+        final ReplayEngine replay = new ReplayEngine();
+        for(File file : files) {
+            replay.add(ResponseRecorder.read(file));
+        }
+        System.out.println("Replaying " + replay.size() + " responses of " + files.size() + " recordings, " +
+                replay.getExecutions() + " executions per pass");
+
+        MonitorEnvironment30Impl env = ElasticsearchMonitorMockRESTTest.prepareMonitorEnvironment("http", "localhost", 9200L);
+        ElasticsearchMonitor monitor = new ElasticsearchMonitor() {
+            @Override
+            HttpEngine createEngine() {
+                return replay;
+            }
+        };
+        monitor.setup(env);
+        try {
+            for(int i = 0;i < WARMUP_PASSES;i++) {
+                run(monitor, env, replay.getExecutions());
+            }
+
+            System.out.println(String.format(Locale.ROOT, "%8s %12s %12s %14s", "pass", "avg ms", "max ms", "alloc MB/exec"));
+            for(int pass = 1;pass <= passes;pass++) {
+                run(monitor, env, replay.getExecutions(), pass);
+            }
+        } finally {
+            monitor.teardown(env);
+        }
+    }
+
+    private static void run(ElasticsearchMonitor monitor, MonitorEnvironment30Impl env, int executions) throws Exception {
+        for(int i = 0;i < executions;i++) {
+            monitor.execute(env);
+        }
+    }
+
+    private static void run(ElasticsearchMonitor monitor, MonitorEnvironment30Impl env, int executions, int pass) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        long totalNanos = 0;
+        long maxNanos = 0;
+        long allocated = 0;
+        for(int i = 0;i < executions;i++) {
+            long allocatedBefore = getAllocatedBytes(threads);
+            long start = System.nanoTime();
+
+            monitor.execute(env);
+
+            long nanos = System.nanoTime() - start;
+            allocated += getAllocatedBytes(threads) - allocatedBefore;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%8d %12.1f %12.1f %14.1f",
+                pass, toMillis(totalNanos / executions), toMillis(maxNanos),
+                threads instanceof com.sun.management.ThreadMXBean ? ((double) allocated) / executions / 1024 / 1024 : -1.0));
+    }
+
+    private static long getAllocatedBytes(ThreadMXBean threads) {
+        if(threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static double toMillis(long nanos) {
+        return ((double) nanos) / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Serves the recorded responses by path and query, each endpoint starts over once all
+     * of its responses were served.
+     */
+    private static final class ReplayEngine extends HttpEngine {
+        private final Map<String, List<byte[]>> responses = new HashMap<>();
+        private final Map<String, Integer> next = new HashMap<>();
+
+        private void add(List<ResponseRecorder.Recording> recordings) {
+            for(ResponseRecorder.Recording recording : recordings) {
+                String path = getPath(URI.create(recording.getUrl()));
+                List<byte[]> bodies = responses.get(path);
+                if(bodies == null) {
+                    bodies = new ArrayList<>();
+                    responses.put(path, bodies);
+                }
+                bodies.add(recording.getBody());
+            }
+        }
+
+        private int size() {
+            int size = 0;
+            for(List<byte[]> bodies : responses.values()) {
+                size += bodies.size();
+            }
+            return size;
+        }
+
+        /**
+         * @return How many executions it takes to serve every recorded response once.
+         */
+        private int getExecutions() {
+            int executions = 1;
+            for(List<byte[]> bodies : responses.values()) {
+                executions = Math.max(executions, bodies.size());
+            }
+            return executions;
+        }
+
+        private static String getPath(URI uri) {
+            return uri.getRawQuery() == null ? uri.getRawPath() : uri.getRawPath() + "?" + uri.getRawQuery();
+        }
+
+        @Override
+        public synchronized Exchange send(HttpGet request) {
+            final String path = getPath(request.getURI());
+            List<byte[]> bodies = responses.get(path);
+            final byte[] body;
+            if(bodies == null) {
+                body = null;
+            } else {
+                Integer index = next.get(path);
+                int i = index == null ? 0 : index;
+                body = bodies.get(i % bodies.size());
+                next.put(path, i + 1);
+            }
+
+            return new Exchange() {
+                @Override
+                public byte[] getBody(long timeoutMillis) throws IOException {
+                    if(body == null) {
+                        throw new HttpResponseException(404, "No recorded response for " + path);
+                    }
+                    return body;
+                }
+
+                @Override
+                public long getRequestNanos() {
+                    return 0;
+                }
+
+                @Override
+                public int getStatusCode() {
+                    return body == null ? 404 : 200;
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
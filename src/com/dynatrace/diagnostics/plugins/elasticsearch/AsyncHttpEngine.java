@@ -0,0 +1,203 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.Cancellable;
+import org.apache.http.impl.execchain.RequestAbortedException;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.AsyncByteConsumer;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+/**
+ * Sends the requests via non-blocking I/O, all connections are served by
+ * {@link #IO_THREADS} threads, independent of how many requests are in flight.
+ * The body of a response is collected by the I/O thread as it arrives and is
+ * parsed directly from the bytes by the thread which waits for it.
+ */
+public class AsyncHttpEngine extends HttpEngine {
+    private static final Logger log = Logger.getLogger(AsyncHttpEngine.class.getName());
+
+    public static final int IO_THREADS = 2;
+
+    // the buffer for a body without Content-Length starts with this size and grows as needed
+    private static final int INITIAL_BODY_SIZE = 8 * 1024;
+    // at most this much is allocated up front for the Content-Length, the buffer grows as the body arrives
+    private static final int MAX_INITIAL_BODY_SIZE = 1024 * 1024;
+
+    private final CloseableHttpAsyncClient client;
+
+    /**
+     * @param timeout The timeout in milliseconds for connecting and reading.
+     * @param connectionsPerCluster How many requests can be sent to one cluster at the same time.
+     * @param clusters The number of clusters, bounds the number of connections.
+     * @param tls The TLS setup for HTTPS clusters.
+     */
+    public AsyncHttpEngine(String user, String password, int timeout, int connectionsPerCluster, int clusters, TlsSupport tls) throws IOException {
+        IOReactorConfig reactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(IO_THREADS)
+                .setConnectTimeout(timeout)
+                .setSoTimeout(timeout)
+                .build();
+        DefaultConnectingIOReactor reactor = new DefaultConnectingIOReactor(reactorConfig,
+                new ThreadFactoryBuilder().setNameFormat("Elasticsearch-Monitor-IO-%d").setDaemon(true).build());
+
+        // the connections are kept open across executions
+        PoolingNHttpClientConnectionManager connectionManager = new PoolingNHttpClientConnectionManager(reactor, tls.createSessionStrategies());
+        connectionManager.setDefaultMaxPerRoute(connectionsPerCluster);
+        connectionManager.setMaxTotal(clusters * connectionsPerCluster);
+
+        client = HttpAsyncClients.custom()
+                .setDefaultCredentialsProvider(createCredentials(user, password))
+                .setDefaultRequestConfig(createConfig(timeout))
+                .setConnectionManager(connectionManager)
+                .setThreadFactory(new ThreadFactoryBuilder().setNameFormat("Elasticsearch-Monitor-Reactor-%d").setDaemon(true).build())
+                .build();
+        client.start();
+    }
+
+    @Override
+    public Exchange send(final HttpGet request) {
+        HttpHost target = getTarget(request);
+        final BodyConsumer consumer = new BodyConsumer(request);
+        final Future<byte[]> future = client.execute(HttpAsyncMethods.create(target, request), consumer,
+                createContext(target), null);
+
+        // HttpGet.abort() cancels the exchange, e.g. when the poll of the cluster is aborted
+        request.setCancellable(new Cancellable() {
+            @Override
+            public boolean cancel() {
+                return future.cancel(true);
+            }
+        });
+
+        return new Exchange() {
+            @Override
+            public byte[] getBody(long timeoutMillis) throws IOException {
+                try {
+                    return timeoutMillis > 0 ? future.get(timeoutMillis, TimeUnit.MILLISECONDS) : future.get();
+                } catch (TimeoutException e) {
+                    future.cancel(true);
+                    throw new SocketTimeoutException("No response within " + timeoutMillis + "ms for request: " + request.getURI());
+                } catch (CancellationException e) {
+                    throw new RequestAbortedException("Request aborted: " + request.getURI());
+                } catch (InterruptedException e) {
+                    future.cancel(true);
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for request: " + request.getURI());
+                } catch (ExecutionException e) {
+                    if(e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException("Failed request: " + request.getURI(), e.getCause());
+                }
+            }
+
+            @Override
+            public long getRequestNanos() {
+                return consumer.requestNanos;
+            }
+
+            @Override
+            public int getStatusCode() {
+                HttpResponse response = consumer.response;
+                return response == null ? 0 : response.getStatusLine().getStatusCode();
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        client.close();
+    }
+
+    /**
+     * Collects the body into a single array, which is allocated with the size from the
+     * Content-Length header if the response has one, up to {@link #MAX_INITIAL_BODY_SIZE}
+     * so a wrong or hostile header does not allocate a huge array before any data arrived.
+     */
+    private static class BodyConsumer extends AsyncByteConsumer<byte[]> {
+        private final HttpGet request;
+        private final long start = System.nanoTime();
+        private volatile long requestNanos;
+
+        private volatile HttpResponse response;
+        private byte[] body = new byte[0];
+        private int length;
+        // from the Content-Length header, -1 if unknown
+        private long contentLength = -1;
+
+        private BodyConsumer(HttpGet request) {
+            this.request = request;
+        }
+
+        @Override
+        protected void onResponseReceived(HttpResponse response) {
+            this.response = response;
+
+            HttpEntity entity = response.getEntity();
+            long contentLength = entity == null ? -1 : entity.getContentLength();
+            if(response.getStatusLine().getStatusCode() == 200 && contentLength >= 0 && contentLength < Integer.MAX_VALUE) {
+                this.contentLength = contentLength;
+                body = new byte[(int) Math.min(contentLength, MAX_INITIAL_BODY_SIZE)];
+            }
+        }
+
+        @Override
+        protected void onByteReceived(ByteBuffer buf, IOControl ioControl) {
+            if(response.getStatusLine().getStatusCode() != 200) {
+                // only the status is reported for failed requests
+                buf.position(buf.limit());
+                return;
+            }
+
+            int count = buf.remaining();
+            if(length + count > body.length) {
+                long size = Math.max(Math.max(body.length * 2L, INITIAL_BODY_SIZE), length + count);
+                if(length + count <= contentLength) {
+                    // does not grow beyond the announced length
+                    size = Math.min(size, contentLength);
+                }
+                body = Arrays.copyOf(body, (int) Math.min(size, Integer.MAX_VALUE));
+            }
+            buf.get(body, length, count);
+            length += count;
+        }
+
+        @Override
+        protected byte[] buildResult(HttpContext context) throws HttpResponseException {
+            requestNanos = System.nanoTime() - start;
+
+            int statusCode = response.getStatusLine().getStatusCode();
+            if(statusCode != 200) {
+                String msg = "Had HTTP StatusCode " + statusCode + " for request: " + request.getURI() +
+                        ", response: " + response.getStatusLine().getReasonPhrase();
+                log.warning(msg);
+
+                throw new HttpResponseException(statusCode, msg);
+            }
+            return length == body.length ? body : Arrays.copyOf(body, length);
+        }
+    }
+}
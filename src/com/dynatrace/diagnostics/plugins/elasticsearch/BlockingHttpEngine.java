@@ -0,0 +1,111 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+/**
+ * Sends each request on the thread which waits for its response, i.e. every request
+ * which is in flight occupies one thread.
+ */
+public class BlockingHttpEngine extends HttpEngine {
+    private static final Logger log = Logger.getLogger(BlockingHttpEngine.class.getName());
+
+    private final CloseableHttpClient client;
+    private final int timeout;
+
+    /**
+     * @param timeout The timeout in milliseconds for connecting and reading.
+     * @param connectionsPerCluster How many requests can be sent to one cluster at the same time.
+     * @param clusters The number of clusters, bounds the number of connections.
+     * @param tls The TLS setup for HTTPS clusters.
+     */
+    public BlockingHttpEngine(String user, String password, int timeout, int connectionsPerCluster, int clusters, TlsSupport tls) {
+        this.timeout = timeout;
+
+        // the connections are kept open across executions
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(tls.createSocketFactories());
+        connectionManager.setDefaultMaxPerRoute(connectionsPerCluster);
+        connectionManager.setMaxTotal(clusters * connectionsPerCluster);
+
+        client = HttpClients.custom()
+                .setDefaultCredentialsProvider(createCredentials(user, password))
+                .setDefaultRequestConfig(createConfig(timeout))
+                .setConnectionManager(connectionManager)
+                .build();
+    }
+
+    @Override
+    public Exchange send(final HttpGet request) {
+        return new Exchange() {
+            private long requestNanos;
+            private int statusCode;
+
+            @Override
+            public byte[] getBody(long timeoutMillis) throws IOException {
+                if(timeoutMillis > 0 && timeoutMillis < timeout) {
+                    request.setConfig(createConfig((int) timeoutMillis));
+                }
+
+                long start = System.nanoTime();
+                try {
+                    byte[] body = execute(request);
+                    statusCode = HttpStatus.SC_OK;
+                    return body;
+                } catch (HttpResponseException e) {
+                    statusCode = e.getStatusCode();
+                    throw e;
+                } finally {
+                    requestNanos = System.nanoTime() - start;
+                }
+            }
+
+            @Override
+            public long getRequestNanos() {
+                return requestNanos;
+            }
+
+            @Override
+            public int getStatusCode() {
+                return statusCode;
+            }
+        };
+    }
+
+    private byte[] execute(HttpGet request) throws IOException {
+        HttpHost target = getTarget(request);
+        try (CloseableHttpResponse response = client.execute(target, request, createContext(target))) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if(statusCode != 200) {
+                String msg = "Had HTTP StatusCode " + statusCode + " for request: " + request.getURI() +
+                        ", response: " + response.getStatusLine().getReasonPhrase();
+                log.warning(msg);
+
+                throw new HttpResponseException(statusCode, msg);
+            }
+            HttpEntity entity = response.getEntity();
+
+            try {
+                return EntityUtils.toByteArray(entity);
+            } finally {
+                // ensure all content is taken out to free resources
+                EntityUtils.consume(entity);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        client.close();
+    }
+}
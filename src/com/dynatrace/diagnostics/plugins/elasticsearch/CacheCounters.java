@@ -0,0 +1,168 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Computes the hit ratio and the eviction rate of the caches of the nodes per interval
+ * from the lifetime counters which the nodes report, per node and over the cluster, so
+ * that the current efficiency of a cache is visible instead of its efficiency since the
+ * node was started. The deltas per node and cache are computed by {@link CounterDeltas}.
+ */
+public class CacheCounters {
+    public static final String QUERY_CACHE = "query_cache";
+    public static final String REQUEST_CACHE = "request_cache";
+    public static final String FIELD_DATA = "fielddata";
+
+    private final CounterDeltas<Counts> deltas = new CounterDeltas<>();
+
+    /**
+     * Read the counters of one cache of a node from its section of the node statistics.
+     *
+     * @param cache One of {@link #QUERY_CACHE}, {@link #REQUEST_CACHE} or {@link #FIELD_DATA},
+     *              independent of the name of the section in the version of the cluster.
+     * @param counts The counters by node and cache, the counters of the cache are added to it.
+     */
+    public static void extract(String nodeId, String nodeName, String cache, JsonNode section, Map<String, Counts> counts) {
+        counts.put(nodeId + "/" + cache, new Counts(nodeName, cache).set(
+                section.path("hit_count").asLong(-1),
+                section.path("miss_count").asLong(-1),
+                section.path("evictions").asLong(-1)));
+    }
+
+    /**
+     * Record the counters of all nodes and caches and compute the rates since the previous call.
+     *
+     * @param current The counters as read by {@link #extract}.
+     * @param timestamp When the counters were retrieved.
+     * @return The rates, null on the first call or if the time did not advance.
+     */
+    public Rates update(Map<String, Counts> current, long timestamp) {
+        CounterDeltas.Interval<Counts> interval = deltas.update(current, timestamp);
+        if(interval == null) {
+            return null;
+        }
+
+        Rates rates = new Rates(interval.getSeconds());
+        for(CounterDeltas.Delta<Counts> delta : interval.getDeltas()) {
+            Counts counts = delta.getCounts();
+            rates.getRate(rates.totals, counts.cache).add(delta);
+            Map<String, Rate> nodes = rates.nodes.get(counts.cache);
+            if(nodes == null) {
+                nodes = new HashMap<>();
+                rates.nodes.put(counts.cache, nodes);
+            }
+            rates.getRate(nodes, counts.nodeName).add(delta);
+        }
+        return rates;
+    }
+
+    /**
+     * The counters of one cache on one node, -1 for counters which were not reported,
+     * e.g. the field data cache does not report hits and misses.
+     */
+    public static final class Counts extends CounterDeltas.Counters {
+        private static final int HITS = 0;
+        private static final int MISSES = 1;
+        private static final int EVICTIONS = 2;
+
+        private final String nodeName;
+        private final String cache;
+
+        public Counts(String nodeName, String cache) {
+            super(3);
+            this.nodeName = nodeName;
+            this.cache = cache;
+        }
+
+        public Counts set(long hits, long misses, long evictions) {
+            set(HITS, hits);
+            set(MISSES, misses);
+            set(EVICTIONS, evictions);
+            return this;
+        }
+    }
+
+    /**
+     * The rates of one interval per cache, over the cluster and per node.
+     */
+    public static final class Rates {
+        private final double seconds;
+        private final Map<String, Rate> totals = new HashMap<>();
+        private final Map<String, Map<String, Rate>> nodes = new HashMap<>();
+
+        private Rates(double seconds) {
+            this.seconds = seconds;
+        }
+
+        private Rate getRate(Map<String, Rate> rates, String key) {
+            Rate rate = rates.get(key);
+            if(rate == null) {
+                rate = new Rate(seconds);
+                rates.put(key, rate);
+            }
+            return rate;
+        }
+
+        /**
+         * @return The rate of the cache over all nodes, null if no node had a valid delta.
+         */
+        public Rate getTotal(String cache) {
+            return totals.get(cache);
+        }
+
+        /**
+         * @return The rates of the cache by node name, empty if no node had a valid delta.
+         */
+        public Map<String, Rate> getNodes(String cache) {
+            Map<String, Rate> rates = nodes.get(cache);
+            return rates == null ? Collections.<String, Rate>emptyMap() : rates;
+        }
+    }
+
+    /**
+     * The sum of the valid deltas of one cache on one or all nodes in one interval.
+     */
+    public static final class Rate {
+        private final double seconds;
+        private long hitDelta;
+        private long missDelta;
+        private long evictionDelta;
+
+        private Rate(double seconds) {
+            this.seconds = seconds;
+        }
+
+        private void add(CounterDeltas.Delta<Counts> delta) {
+            if(delta.get(Counts.HITS) >= 0 && delta.get(Counts.MISSES) >= 0) {
+                hitDelta += delta.get(Counts.HITS);
+                missDelta += delta.get(Counts.MISSES);
+            }
+            if(delta.get(Counts.EVICTIONS) >= 0) {
+                evictionDelta += delta.get(Counts.EVICTIONS);
+            }
+        }
+
+        /**
+         * @return false if the cache was not used in this interval, the hit ratio is undefined then.
+         */
+        public boolean hasLookups() {
+            return hitDelta + missDelta > 0;
+        }
+
+        /**
+         * @return The percentage of the lookups in this interval which were hits, 0 without lookups.
+         */
+        public double getHitRatio() {
+            long lookups = hitDelta + missDelta;
+            return lookups > 0 ? 100.0 * hitDelta / lookups : 0;
+        }
+
+        public double getEvictionsPerSecond() {
+            return evictionDelta / seconds;
+        }
+    }
+}
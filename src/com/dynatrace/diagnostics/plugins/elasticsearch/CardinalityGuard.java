@@ -0,0 +1,146 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bounds the number of dynamic measures which are written per measure, so that e.g.
+ * the per-node measures of a cluster with hundreds of nodes do not create an unbounded
+ * number of dynamic measures in Dynatrace.
+ *
+ * Only the keys with the highest values are written, the values of all other keys are
+ * folded into the key {@link #OTHER}, summed up for counts and sizes, but averaged or
+ * maximized for percentages and ratios. The keys are either ranked again in each
+ * execution or they are sticky, i.e. a key which was written before is kept as long as
+ * it is reported and only the free places are filled by the highest values, so the
+ * charts do not switch between keys with similar values.
+ */
+public class CardinalityGuard {
+    public static final String OTHER = "other";
+
+    private static final Comparator<Map.Entry<String, Double>> BY_VALUE = new Comparator<Map.Entry<String, Double>>() {
+        @Override
+        public int compare(Map.Entry<String, Double> o1, Map.Entry<String, Double> o2) {
+            int compare = Double.compare(o2.getValue(), o1.getValue());
+            return compare != 0 ? compare : o1.getKey().compareTo(o2.getKey());
+        }
+    };
+
+    /**
+     * How the values of the keys which are not written are folded into {@link #OTHER}.
+     */
+    public enum Fold {
+        SUM,
+        AVERAGE,
+        MAXIMUM
+    }
+
+    private final int maxKeys;
+    private final boolean sticky;
+
+    // the keys which were written in the previous execution by group, name and cluster of
+    // the measure, only used if sticky, so no key has to be built for each written measure
+    private final Table<String, String, Map<String, Set<String>>> selected = HashBasedTable.create();
+
+    /**
+     * @param maxKeys How many keys are written per measure at most, in addition to {@link #OTHER}, 0 for no limit.
+     * @param sticky Keep the keys which were written before instead of ranking all keys again.
+     */
+    public CardinalityGuard(int maxKeys, boolean sticky) {
+        this.maxKeys = maxKeys;
+        this.sticky = sticky;
+    }
+
+    /**
+     * @param group The group of the measure.
+     * @param name The name of the measure.
+     * @param cluster The cluster the values belong to, null if only one cluster is monitored.
+     * @param fold How the values of all other keys are folded, only additive values are summed up.
+     * @param values The values by key of the dynamic measure.
+     * @return The given values if they do not exceed the limit, otherwise the values of the
+     *          selected keys and all others folded into {@link #OTHER}.
+     */
+    public synchronized Map<String, Double> limit(String group, String name, String cluster, Fold fold, Map<String, Double> values) {
+        if(maxKeys <= 0) {
+            return values;
+        }
+        if(values.size() <= maxKeys) {
+            if(sticky && !values.isEmpty()) {
+                getSelected(group, name).put(cluster, new HashSet<>(values.keySet()));
+            }
+            return values;
+        }
+
+        Set<String> keep = new HashSet<>();
+        Set<String> previous = sticky ? getSelected(group, name).get(cluster) : null;
+        if(previous != null) {
+            for(String key : previous) {
+                if(values.containsKey(key)) {
+                    keep.add(key);
+                }
+            }
+        }
+
+        List<Map.Entry<String, Double>> ranked = new ArrayList<>(values.entrySet());
+        Collections.sort(ranked, BY_VALUE);
+        for(Map.Entry<String, Double> entry : ranked) {
+            if(keep.size() >= maxKeys) {
+                break;
+            }
+            keep.add(entry.getKey());
+        }
+
+        // a reported key "other" is folded as well, at least one key is folded as the limit is exceeded
+        Map<String, Double> limited = new LinkedHashMap<>();
+        double sum = 0;
+        double max = Double.NEGATIVE_INFINITY;
+        int folded = 0;
+        for(Map.Entry<String, Double> entry : ranked) {
+            if(keep.contains(entry.getKey()) && !OTHER.equals(entry.getKey())) {
+                limited.put(entry.getKey(), entry.getValue());
+            } else {
+                sum += entry.getValue();
+                max = Math.max(max, entry.getValue());
+                folded++;
+            }
+        }
+        switch (fold) {
+            case AVERAGE:
+                limited.put(OTHER, sum / folded);
+                break;
+            case MAXIMUM:
+                limited.put(OTHER, max);
+                break;
+            default:
+                limited.put(OTHER, sum);
+                break;
+        }
+
+        if(sticky) {
+            getSelected(group, name).put(cluster, keep);
+        }
+        return limited;
+    }
+
+    /**
+     * @return The selected keys of the measure by cluster.
+     */
+    private Map<String, Set<String>> getSelected(String group, String name) {
+        Map<String, Set<String>> clusters = selected.get(group, name);
+        if(clusters == null) {
+            clusters = new HashMap<>();
+            selected.put(group, name, clusters);
+        }
+        return clusters;
+    }
+}
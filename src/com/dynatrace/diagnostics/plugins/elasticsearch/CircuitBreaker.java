@@ -0,0 +1,106 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops polling a cluster which failed repeatedly, so that executions of the monitor
+ * fail right away instead of waiting for the timeout each time.
+ *
+ * The breaker opens after {@link #FAILURE_THRESHOLD} failed polls in a row. Once the
+ * backoff passed it is half-open and lets one cheap request probe the cluster, if
+ * it succeeds the breaker closes again, otherwise it opens with twice the backoff,
+ * up to {@link #MAX_BACKOFF}.
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    public static final int FAILURE_THRESHOLD = 2;
+    public static final long INITIAL_BACKOFF = TimeUnit.SECONDS.toMillis(30);
+    public static final long MAX_BACKOFF = TimeUnit.MINUTES.toMillis(15);
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long backoff = INITIAL_BACKOFF;
+    private long openUntil;
+
+    // whether the cluster could be polled in the latest execution
+    private boolean reachable = true;
+
+    /**
+     * Check if the cluster may be polled, an open breaker turns half-open here once
+     * the backoff passed.
+     *
+     * @param now The current time in milliseconds, from a monotonic clock.
+     * @throws OpenException If the breaker is open, the cluster must not be polled then.
+     */
+    public synchronized void checkRequest(long now) throws OpenException {
+        if(state == State.OPEN) {
+            if(now < openUntil) {
+                reachable = false;
+                throw new OpenException("Not polling the cluster for another " + (openUntil - now) +
+                        "ms after " + failures + " failed polls in a row");
+            }
+            state = State.HALF_OPEN;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+        backoff = INITIAL_BACKOFF;
+        reachable = true;
+    }
+
+    /**
+     * @param now The current time in milliseconds, from a monotonic clock.
+     */
+    public synchronized void recordFailure(long now) {
+        failures++;
+        reachable = false;
+
+        if(state == State.HALF_OPEN) {
+            // the probe failed, wait longer until the next one
+            backoff = Math.min(backoff * 2, MAX_BACKOFF);
+        } else if(state == State.OPEN || failures < FAILURE_THRESHOLD) {
+            return;
+        }
+
+        state = State.OPEN;
+        openUntil = now + backoff;
+    }
+
+    /**
+     * Report the cluster as not reachable in this execution without counting a failure,
+     * e.g. if its poll did not finish in time and records its outcome once it does.
+     */
+    public synchronized void recordUnreachable() {
+        reachable = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return false if the latest poll failed or was not done as the breaker is open.
+     */
+    public synchronized boolean isReachable() {
+        return reachable;
+    }
+
+    /**
+     * Thrown instead of polling a cluster while the breaker is open.
+     */
+    public static class OpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public OpenException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the measures which are collected from a cluster during one execution
+ * of the monitor.
+ *
+ * A new instance is used for every execution, the values are extracted from the
+ * REST responses into these measures and then written to the Dynatrace measure
+ * interface.
+ */
+public class ClusterMeasures {
+	// Rate-Measures, these are kept across executions by the MonitoredCluster
+	final DerivedMeasure documentCount;
+	final DerivedMeasure deletedCount;
+
+	// counts by node-id for computing the rates per node, see NodeCounters
+	final Map<String, NodeCounters.Counts> nodeCounts = new HashMap<>();
+	// null if the rates cannot be computed from the counts per node
+	NodeCounters.Rates nodeRates;
+
+	// the counters of the ingest pipelines by node and pipeline, see IngestCounters
+	final Map<String, IngestCounters.Counts> ingestCounts = new HashMap<>();
+
+	// the counters of the caches by node and cache, see CacheCounters
+	final Map<String, CacheCounters.Counts> cacheCounts = new HashMap<>();
+
+	// the endpoints which could not be retrieved with the cause, their measures are not written
+	final Map<String, IOException> skipped = new LinkedHashMap<>();
+
+	// Cluster Health
+	final Measure nodeCount = new Measure();
+	final Measure dataNodeCount = new Measure();
+
+	final Measure activePrimaryShards = new Measure();
+	final Measure activeShardsPercent = new Measure();
+	final Measure activeShards = new Measure();
+	final Measure relocatingShards = new Measure();
+	final Measure initializingShards = new Measure();
+	final Measure unassignedShards = new Measure();
+	final Measure delayedUnassignedShards = new Measure();
+
+	// JVM Memory
+	final Measure initHeap = new Measure("Node");
+	final Measure maxHeap = new Measure("Node");
+	final Measure initNonHeap = new Measure("Node");
+	final Measure maxNonHeap = new Measure("Node");
+	final Measure maxDirect = new Measure("Node");
+
+	// Index/Shards
+	final Measure indexCount = new Measure();
+	final Measure shardsPerState = new Measure("State");
+
+	// Node Stats
+	final Measure storeSizePerNode = new Measure("Node");
+	final Measure storeThrottleTimePerNode = new Measure("Node");
+	final Measure indexingThrottleTimePerNode = new Measure("Node");
+	final Measure indexingCurrentPerNode = new Measure("Node");
+	final Measure deleteCurrentPerNode = new Measure("Node");
+	final Measure queryCurrentPerNode = new Measure("Node");
+	final Measure fetchCurrentPerNode = new Measure("Node");
+	final Measure scrollCurrentPerNode = new Measure("Node");
+	final Measure queryCacheSizePerNode = new Measure("Node");
+	final Measure fieldDataSizePerNode = new Measure("Node");
+	final Measure percolateSizePerNode = new Measure("Node");
+	final Measure translogSizePerNode = new Measure("Node");
+	final Measure requestCacheSizePerNode = new Measure("Node");
+	final Measure recoveryThrottleTimePerNode = new Measure("Node");
+	final Measure recoveryAsSourcePerNode = new Measure("Node");
+	final Measure recoveryAsTargetPerNode = new Measure("Node");
+	final Measure fileDescLimitPerNode = new Measure("Node");
+
+	// Cluster Stats
+	final Measure fieldDataSize = new Measure();
+	final Measure fieldDataEvictions = new Measure();
+	final Measure queryCachePerState = new Measure("State");
+	final Measure completionSize = new Measure();
+	final Measure segmentCount = new Measure();
+	final Measure segmentSizePerState = new Measure("State");
+	final Measure fileDescPerStat = new Measure("Stat");
+	final Measure fileSystemPerStat = new Measure("Stat");
+	final Measure percolatePerState = new Measure("State");
+
+	// Index Patterns, only if index patterns are configured, see IndexRollups
+	boolean indexPatterns;
+	// false in the first execution, the rates need the counters of the previous one
+	boolean indexPatternRates;
+	final Measure documentCountPerPattern = new Measure("IndexPattern");
+	final Measure storeSizePerPattern = new Measure("IndexPattern");
+	final Measure indexingRatePerPattern = new Measure("IndexPattern");
+	final Measure searchRatePerPattern = new Measure("IndexPattern");
+
+	// Ingest, only from the second execution on and if the nodes report ingest statistics
+	boolean ingest;
+	final Measure ingestRatePerPipeline = new Measure("Pipeline");
+	final Measure ingestFailureRatePerPipeline = new Measure("Pipeline");
+	final Measure ingestTimePerPipeline = new Measure("Pipeline");
+	final Measure ingestRatePerNode = new Measure("Node");
+	final Measure ingestFailureRatePerNode = new Measure("Node");
+	final Measure ingestTimePerNode = new Measure("Node");
+
+	// Caches, only from the second execution on, the hit ratios only if the cache was used in the interval
+	boolean caches;
+	boolean queryCacheLookups;
+	boolean requestCacheLookups;
+	final Measure queryCacheHitRatioPerNode = new Measure("Node");
+	final Measure queryCacheEvictionRatePerNode = new Measure("Node");
+	final Measure requestCacheHitRatioPerNode = new Measure("Node");
+	final Measure requestCacheEvictionRatePerNode = new Measure("Node");
+	final Measure fieldDataEvictionRatePerNode = new Measure("Node");
+
+	// OS and process, the value is the average over the nodes which reported it, see ElasticsearchMonitor.setAverageAndMax()
+	final Measure processCpuPercentPerNode = new Measure("Node");
+	final Measure osCpuPercentPerNode = new Measure("Node");
+	final Measure loadAverage1mPerNode = new Measure("Node");
+	final Measure loadAverage5mPerNode = new Measure("Node");
+	final Measure loadAverage15mPerNode = new Measure("Node");
+	final Measure osMemoryUsedPercentPerNode = new Measure("Node");
+	final Measure swapUsedPerNode = new Measure("Node");
+	final Measure processCpuPercentMax = new Measure();
+	final Measure osCpuPercentMax = new Measure();
+	final Measure loadAverage1mMax = new Measure();
+	final Measure loadAverage5mMax = new Measure();
+	final Measure loadAverage15mMax = new Measure();
+	final Measure osMemoryUsedPercentMax = new Measure();
+	final Measure swapUsedMax = new Measure();
+
+	// Field data per field, only if it is enabled and was retrieved successfully, see FieldDataStats
+	boolean fieldData;
+	final Measure fieldDataSizePerField = new Measure("Field");
+
+	public ClusterMeasures() {
+		this(new DerivedMeasure(TimeUnit.SECONDS), new DerivedMeasure(TimeUnit.SECONDS));
+	}
+
+	public ClusterMeasures(DerivedMeasure documentCount, DerivedMeasure deletedCount) {
+		this.documentCount = documentCount;
+		this.deletedCount = deletedCount;
+	}
+
+	void skip(String endpoint, IOException cause) {
+		skipped.put(endpoint, cause);
+	}
+
+	boolean isRetrieved(String endpoint) {
+		return !skipped.containsKey(endpoint);
+	}
+
+	NodeCounters.Counts getNodeCounts(String nodeId) {
+		NodeCounters.Counts counts = nodeCounts.get(nodeId);
+		if(counts == null) {
+			counts = new NodeCounters.Counts();
+			nodeCounts.put(nodeId, counts);
+		}
+		return counts;
+	}
+}
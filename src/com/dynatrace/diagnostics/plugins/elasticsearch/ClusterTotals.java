@@ -0,0 +1,69 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects the values of the measures of several clusters while they are written
+ * with the dynamic measure "Cluster", so that the total over all clusters can be
+ * written as the value of the measure afterwards.
+ */
+public class ClusterTotals {
+    private final Map<Pair<String, String>, Map<String, Double>> values = new LinkedHashMap<>();
+
+    private String cluster;
+
+    /**
+     * @param cluster The name of the cluster whose measures are written next.
+     */
+    public void setCluster(String cluster) {
+        this.cluster = cluster;
+    }
+
+    public String getCluster() {
+        return cluster;
+    }
+
+    /**
+     * Record the value of a measure for the current cluster, if the measure is written
+     * more than once for the same cluster, the last value is used.
+     */
+    public void add(String group, String name, double value) {
+        Pair<String, String> key = Pair.of(group, name);
+        Map<String, Double> clusterValues = values.get(key);
+        if(clusterValues == null) {
+            clusterValues = new LinkedHashMap<>();
+            values.put(key, clusterValues);
+        }
+        clusterValues.put(cluster, value);
+    }
+
+    /**
+     * @return The measures which were written, as pairs of group and name.
+     */
+    public Iterable<Pair<String, String>> getMeasures() {
+        return values.keySet();
+    }
+
+    public double getSum(Pair<String, String> measure) {
+        double sum = 0;
+        for(Double value : values.get(measure).values()) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    public double getAverage(Pair<String, String> measure) {
+        return getSum(measure) / values.get(measure).size();
+    }
+
+    public double getMax(Pair<String, String> measure) {
+        double max = Double.NEGATIVE_INFINITY;
+        for(Double value : values.get(measure).values()) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,135 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the lifetime counters which the nodes report by key, e.g. per node and cache,
+ * from one call to the next and computes their deltas.
+ *
+ * As for {@link NodeCounters} the deltas are computed per key, so a key whose counters
+ * decreased, i.e. whose node was restarted, or which was not reported in the previous
+ * call does not contribute to the deltas of this interval. A counter which is not
+ * reported in one of the calls has no delta, but the other counters of the key still do.
+ */
+public class CounterDeltas<C extends CounterDeltas.Counters> {
+    private Map<String, C> previous = Collections.emptyMap();
+    private long previousTS;
+
+    /**
+     * Record the counters of all keys and compute the deltas since the previous call.
+     *
+     * @param current The counters by key.
+     * @param timestamp When the counters were retrieved.
+     * @return The deltas, null on the first call or if the time did not advance.
+     */
+    public synchronized Interval<C> update(Map<String, C> current, long timestamp) {
+        Map<String, C> last = previous;
+        long elapsed = timestamp - previousTS;
+
+        previous = new HashMap<>(current);
+        previousTS = timestamp;
+
+        if(last.isEmpty() || elapsed <= 0) {
+            return null;
+        }
+
+        List<Delta<C>> deltas = new ArrayList<>();
+        for(Map.Entry<String, C> entry : current.entrySet()) {
+            C before = last.get(entry.getKey());
+            if(before != null) {
+                long[] values = delta(entry.getValue(), before);
+                if(values != null) {
+                    deltas.add(new Delta<>(entry.getValue(), values));
+                }
+            }
+        }
+        return new Interval<>(elapsed / 1000.0, deltas);
+    }
+
+    /**
+     * @return The deltas of all counters, -1 for the ones which were not reported now or
+     *          before, null if any counter decreased.
+     */
+    private static long[] delta(Counters counts, Counters before) {
+        long[] deltas = new long[counts.values.length];
+        for(int i = 0;i < deltas.length;i++) {
+            if(counts.values[i] < 0 || before.values[i] < 0) {
+                deltas[i] = -1;
+            } else if(counts.values[i] < before.values[i]) {
+                return null;
+            } else {
+                deltas[i] = counts.values[i] - before.values[i];
+            }
+        }
+        return deltas;
+    }
+
+    /**
+     * The counters of one key, -1 for counters which were not reported.
+     */
+    public static abstract class Counters {
+        private final long[] values;
+
+        protected Counters(int size) {
+            values = new long[size];
+            Arrays.fill(values, -1);
+        }
+
+        protected void set(int index, long value) {
+            values[index] = value;
+        }
+    }
+
+    /**
+     * The deltas of the counters of one key.
+     */
+    public static final class Delta<C> {
+        private final C counts;
+        private final long[] deltas;
+
+        private Delta(C counts, long[] deltas) {
+            this.counts = counts;
+            this.deltas = deltas;
+        }
+
+        /**
+         * @return The current counters of the key.
+         */
+        public C getCounts() {
+            return counts;
+        }
+
+        /**
+         * @return The increase of the counter, -1 if it was not reported now or before.
+         */
+        public long get(int index) {
+            return deltas[index];
+        }
+    }
+
+    /**
+     * The deltas of all keys which can be compared to the previous call.
+     */
+    public static final class Interval<C> {
+        private final double seconds;
+        private final List<Delta<C>> deltas;
+
+        private Interval(double seconds, List<Delta<C>> deltas) {
+            this.seconds = seconds;
+            this.deltas = deltas;
+        }
+
+        public double getSeconds() {
+            return seconds;
+        }
+
+        public List<Delta<C>> getDeltas() {
+            return deltas;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.apache.http.client.HttpResponseException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects what one execution of the monitor costs, i.e. how long the requests
+ * to the different endpoints took, how large the responses were, how long parsing
+ * and writing the measures took and which failures happened.
+ *
+ * A new instance is used for each execution, the resulting measures are reported
+ * in a separate metric group so that slow clusters or endpoints can be found. The
+ * single requests and failures are also recorded in the {@link DiagnosticRing} of
+ * the monitor if one is given.
+ */
+public class CycleStatistics {
+    public static final String CAUSE_CIRCUIT_OPEN = "CircuitOpen";
+    public static final String CAUSE_HTTP_STATUS = "HttpStatus";
+    public static final String CAUSE_TIMEOUT = "Timeout";
+    public static final String CAUSE_CONNECT = "Connect";
+    public static final String CAUSE_PARSE = "Parse";
+    public static final String CAUSE_IO = "IO";
+    public static final String CAUSE_OTHER = "Other";
+
+    private final long startNanos = System.nanoTime();
+
+    // null if the events are not recorded
+    private final DiagnosticRing ring;
+    private final String cluster;
+
+    private final Measure requestTime = new Measure("Endpoint");
+    private final Measure responseSize = new Measure("Endpoint");
+    private final Measure parseTime = new Measure("Endpoint");
+    private final Measure writeTime = new Measure();
+    private final Measure measuresWritten = new Measure();
+    private final Measure failures = new Measure("Cause");
+
+    public CycleStatistics() {
+        this(null, null);
+    }
+
+    /**
+     * @param ring Records the single requests and failures, can be null.
+     * @param cluster The cluster which is polled with this instance, null if it is used for the whole execution.
+     */
+    public CycleStatistics(DiagnosticRing ring, String cluster) {
+        this.ring = ring;
+        this.cluster = cluster;
+    }
+
+    /**
+     * Record a successful request.
+     *
+     * @param endpoint The endpoint that was queried, used as dynamic measure.
+     * @param status The HTTP status of the response.
+     * @param nanos How long the request took including reading the response.
+     * @param size The length of the response, the JSON sent by Elasticsearch is
+     *             almost exclusively ASCII, so this matches the number of bytes.
+     */
+    public void recordRequest(String endpoint, int status, long nanos, long size) {
+        requestTime.addValue(toMillis(nanos));
+        requestTime.addDynamicMeasure(endpoint, toMillis(nanos));
+
+        responseSize.addValue(size);
+        responseSize.addDynamicMeasure(endpoint, size);
+
+        if(ring != null) {
+            ring.record(DiagnosticRing.REQUEST, cluster, endpoint, status, nanos, size, 0);
+        }
+    }
+
+    public void recordParse(String endpoint, long nanos) {
+        parseTime.addValue(toMillis(nanos));
+        parseTime.addDynamicMeasure(endpoint, toMillis(nanos));
+
+        if(ring != null) {
+            ring.record(DiagnosticRing.PARSE, cluster, endpoint, 0, nanos, 0, 0);
+        }
+    }
+
+    public void recordWrite(long nanos) {
+        writeTime.addValue(toMillis(nanos));
+
+        if(ring != null) {
+            ring.record(DiagnosticRing.WRITE, cluster, null, 0, nanos, 0, 0);
+        }
+    }
+
+    public void incMeasuresWritten() {
+        measuresWritten.incValue();
+    }
+
+    public void recordFailure(Throwable e) {
+        recordFailure(getFailureCause(e), e instanceof HttpResponseException ? ((HttpResponseException) e).getStatusCode() : 0);
+    }
+
+    public void recordFailure(String cause) {
+        recordFailure(cause, 0);
+    }
+
+    private void recordFailure(String cause, int status) {
+        failures.incValue();
+        failures.addDynamicMeasure(cause, 1);
+
+        if(ring != null) {
+            ring.record(DiagnosticRing.FAILURE, cluster, cause, status, 0, 0, 0);
+        }
+    }
+
+    /**
+     * Add the requests, writes and failures recorded in the given instance, used
+     * when several clusters are polled concurrently with one instance per cluster.
+     */
+    public void add(CycleStatistics other) {
+        add(requestTime, other.requestTime);
+        add(responseSize, other.responseSize);
+        add(parseTime, other.parseTime);
+        add(writeTime, other.writeTime);
+        add(measuresWritten, other.measuresWritten);
+        add(failures, other.failures);
+    }
+
+    private static void add(Measure target, Measure source) {
+        target.addValue(source.getValue());
+        for(Map.Entry<String, Double> dynamic : source.getDynamicMeasures().entrySet()) {
+            target.addDynamicMeasure(dynamic.getKey(), dynamic.getValue());
+        }
+    }
+
+    /**
+     * Map an exception to one of the causes that failures are reported by.
+     */
+    public static String getFailureCause(Throwable e) {
+        if(e instanceof CircuitBreaker.OpenException) {
+            return CAUSE_CIRCUIT_OPEN;
+        }
+        if(e instanceof HttpResponseException) {
+            return CAUSE_HTTP_STATUS;
+        }
+        if(e instanceof InterruptedIOException) {
+            // socket, connect and connection-pool timeouts
+            return CAUSE_TIMEOUT;
+        }
+        if(e instanceof ConnectException || e instanceof UnknownHostException || e instanceof NoRouteToHostException) {
+            return CAUSE_CONNECT;
+        }
+        if(e instanceof JsonProcessingException) {
+            return CAUSE_PARSE;
+        }
+        if(e instanceof IOException) {
+            return CAUSE_IO;
+        }
+        return CAUSE_OTHER;
+    }
+
+    public Measure getRequestTime() {
+        return requestTime;
+    }
+
+    public Measure getResponseSize() {
+        return responseSize;
+    }
+
+    public Measure getParseTime() {
+        return parseTime;
+    }
+
+    public Measure getWriteTime() {
+        return writeTime;
+    }
+
+    public Measure getMeasuresWritten() {
+        return measuresWritten;
+    }
+
+    public Measure getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return The time in nanoseconds since this instance was created.
+     */
+    public long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * @return A Measure with the time in milliseconds since this instance was created.
+     */
+    public Measure getCycleDuration() {
+        return new Measure(toMillis(System.nanoTime() - startNanos));
+    }
+
+    private static double toMillis(long nanos) {
+        return ((double)nanos) / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
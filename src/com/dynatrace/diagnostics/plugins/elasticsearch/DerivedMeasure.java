@@ -59,6 +59,20 @@ public class DerivedMeasure {
         return measure(rate);
     }
 
+    /**
+     * @return The value which was set last, 0 if no value was set yet.
+     */
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * @return The timestamp of the value which was set last, 0 if no value was set yet.
+     */
+    public long getValueTS() {
+        return valueTS;
+    }
+
     private Measure measure(double rate) {
         Measure measure = new Measure();
         measure.setValue(rate);
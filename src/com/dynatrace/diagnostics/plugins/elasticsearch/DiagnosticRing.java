@@ -0,0 +1,130 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the most recent events of the monitor, i.e. the start and end of each execution,
+ * the requests with their timing and size, failures and the measures which were written,
+ * so that the context of a failed or slow execution can be logged afterwards instead of
+ * logging every event as it happens.
+ *
+ * The events are stored in preallocated arrays which are overwritten in a circle,
+ * recording an event does not allocate, the labels are expected to be constants like
+ * the names of endpoints and measures. Formatting only happens when the events are
+ * dumped.
+ */
+public class DiagnosticRing {
+    public static final byte CYCLE_START = 1;
+    public static final byte REQUEST = 2;
+    public static final byte PARSE = 3;
+    public static final byte FAILURE = 4;
+    public static final byte MEASURE = 5;
+    public static final byte WRITE = 6;
+    public static final byte CYCLE_END = 7;
+
+    private static final String[] KIND_NAMES = { "?", "cycle-start", "request", "parse", "failure", "measure", "write", "cycle-end" };
+
+    /**
+     * How many events are kept by default, i.e. roughly the last few executions.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final long[] timestamps;
+    private final byte[] kinds;
+    private final String[] clusters;
+    private final String[] labels;
+    private final int[] statuses;
+    private final long[] nanos;
+    private final long[] counts;
+    private final double[] values;
+
+    // the number of events which were recorded so far, the next event is stored at next % capacity
+    private long next;
+
+    public DiagnosticRing(int capacity) {
+        timestamps = new long[capacity];
+        kinds = new byte[capacity];
+        clusters = new String[capacity];
+        labels = new String[capacity];
+        statuses = new int[capacity];
+        nanos = new long[capacity];
+        counts = new long[capacity];
+        values = new double[capacity];
+    }
+
+    /**
+     * @param cluster The cluster which the event belongs to, null if it applies to the execution.
+     * @param label The endpoint, measure or cause of the event.
+     * @param status The HTTP status of a request, the number of clusters when an execution starts.
+     * @param nanos How long the event took.
+     * @param count The number of bytes of a response or of dynamic measures which were written.
+     * @param value The value of a measure.
+     */
+    public synchronized void record(byte kind, String cluster, String label, int status, long nanos, long count, double value) {
+        int i = (int) (next++ % timestamps.length);
+        timestamps[i] = System.currentTimeMillis();
+        kinds[i] = kind;
+        clusters[i] = cluster;
+        labels[i] = label;
+        statuses[i] = status;
+        this.nanos[i] = nanos;
+        counts[i] = count;
+        values[i] = value;
+    }
+
+    /**
+     * @return How many events are kept currently.
+     */
+    public synchronized int size() {
+        return (int) Math.min(next, timestamps.length);
+    }
+
+    /**
+     * @return The kept events, the oldest first, one per line.
+     */
+    public synchronized String dump() {
+        StringBuilder dump = new StringBuilder();
+        SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS", Locale.ROOT);
+        for(long event = next - size();event < next;event++) {
+            int i = (int) (event % timestamps.length);
+            dump.append(format.format(new Date(timestamps[i]))).append(' ').append(KIND_NAMES[kinds[i]]);
+            if(clusters[i] != null) {
+                dump.append(" cluster=").append(clusters[i]);
+            }
+            if(labels[i] != null) {
+                dump.append(' ').append(labels[i]);
+            }
+            switch (kinds[i]) {
+                case CYCLE_START:
+                    dump.append(" clusters=").append(statuses[i]);
+                    break;
+                case REQUEST:
+                    dump.append(" status=").append(statuses[i]).append(" ms=").append(toMillis(nanos[i])).append(" bytes=").append(counts[i]);
+                    break;
+                case FAILURE:
+                    if(statuses[i] != 0) {
+                        dump.append(" status=").append(statuses[i]);
+                    }
+                    break;
+                case MEASURE:
+                    dump.append(" value=").append(values[i]).append(" dynamic=").append(counts[i]);
+                    break;
+                case CYCLE_END:
+                    dump.append(" ms=").append(toMillis(nanos[i])).append(" measures=").append(counts[i]);
+                    break;
+                default:
+                    dump.append(" ms=").append(toMillis(nanos[i]));
+                    break;
+            }
+            dump.append('\n');
+        }
+        return dump.toString();
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
@@ -9,34 +9,22 @@ import com.dynatrace.diagnostics.pdk.Monitor;
 import com.dynatrace.diagnostics.pdk.MonitorEnvironment;
 import com.dynatrace.diagnostics.pdk.MonitorMeasure;
 import com.dynatrace.diagnostics.pdk.Status;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.dynatrace.diagnostics.pdk.PluginEnvironment.Host;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Preconditions;
-import org.apache.commons.io.IOUtils;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpHost;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.AuthCache;
-import org.apache.http.client.CredentialsProvider;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.protocol.HttpClientContext;
-import org.apache.http.impl.auth.BasicScheme;
-import org.apache.http.impl.client.*;
-import org.apache.http.util.EntityUtils;
 
+import java.io.File;
 import java.io.IOException;
-import java.net.URL;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -59,9 +47,51 @@ public class ElasticsearchMonitor implements Monitor {
 	protected static final String ENV_CONFIG_USER = "user";
 	protected static final String ENV_CONFIG_PASSWORD = "password";
 	protected static final String ENV_CONFIG_TIMEOUT = "timeout";
+	protected static final String ENV_CONFIG_CLUSTERS = "clusters";
+	protected static final String ENV_CONFIG_SAMPLING_INTERVAL = "samplingInterval";
+	protected static final String ENV_CONFIG_NON_BLOCKING_HTTP = "nonBlockingHttp";
+	protected static final String ENV_CONFIG_INDEX_PATTERNS = "indexPatterns";
+	protected static final String ENV_CONFIG_MAX_DYNAMIC_MEASURES = "maxDynamicMeasures";
+	protected static final String ENV_CONFIG_STICKY_DYNAMIC_MEASURES = "stickyDynamicMeasures";
+	protected static final String ENV_CONFIG_SNAPSHOT_MAX_AGE = "snapshotMaxAge";
+	protected static final String ENV_CONFIG_FIELD_DATA_INTERVAL = "fieldDataInterval";
+	protected static final String ENV_CONFIG_TRUST_STORE = "trustStore";
+	protected static final String ENV_CONFIG_TRUST_STORE_PASSWORD = "trustStorePassword";
+	protected static final String ENV_CONFIG_KEY_STORE = "keyStore";
+	protected static final String ENV_CONFIG_KEY_STORE_PASSWORD = "keyStorePassword";
+
+	// how many dynamic measures are written per measure and cluster if not configured, see CardinalityGuard,
+	// not limited by default so the dynamic measures of existing clusters do not change
+	private static final int DEFAULT_MAX_DYNAMIC_MEASURES = 0;
+
+	// upper bound for the threads which poll the clusters concurrently
+	private static final int MAX_POLLING_THREADS = 8;
+
+	// a poll which passed its timeout gets this long to finish with the endpoints it retrieved before it is aborted
+	private static final long ABORT_GRACE_MILLIS = 500;
+
+	// the endpoints which are retrieved in an execution, also used as dynamic measure of the self-monitoring
+	// the node info is only retrieved if the nodes of the cluster changed, see NodeInfoCache
+	static final String ENDPOINT_CLUSTER_HEALTH = "/_cluster/health";
+	static final String ENDPOINT_NODE_INFO = "/_nodes";
+	static final String ENDPOINT_CLUSTER_STATS = "/_cluster/stats";
+	static final String ENDPOINT_NODE_STATS = "/_nodes/stats";
+	// only retrieved if index patterns are configured
+	static final String ENDPOINT_INDEX_STATS = "/_stats";
+	static final String ENDPOINT_FIELD_DATA = "/_nodes/stats/indices/fielddata";
+	private static final int ENDPOINT_COUNT = 4;
 
 	/************************************** Metric Groups **************************/
 	protected static final String METRIC_GROUP_ELASTICSEARCH = "Elasticsearch Monitor";
+	protected static final String METRIC_GROUP_SELF_MONITORING = "Elasticsearch Monitor Self-Monitoring";
+	protected static final String METRIC_GROUP_SAMPLING = "Elasticsearch Monitor Sampling";
+	protected static final String METRIC_GROUP_INDEX_PATTERNS = "Elasticsearch Monitor Index Patterns";
+	protected static final String METRIC_GROUP_INGEST = "Elasticsearch Monitor Ingest";
+	protected static final String METRIC_GROUP_CACHES = "Elasticsearch Monitor Caches";
+	protected static final String METRIC_GROUP_OS = "Elasticsearch Monitor OS";
+
+	// dynamic measure that is added to all measures when more than one cluster is monitored
+	protected static final String DYNAMIC_MEASURE_CLUSTER = "Cluster";
 
 	/************************************** Measures **************************/
 	protected static final String MSR_NODE_COUNT = "NodeCount";
@@ -114,6 +144,7 @@ public class ElasticsearchMonitor implements Monitor {
     protected static final String MSR_FILE_DESCRIPTOR_LIMIT = "FileDescriptorLimit";
 	protected static final String MSR_FILE_SYSTEM_SIZE = "FileSystemSize";
 	protected static final String MSR_PERCOLATE_COUNT = "PercolateCount";
+	protected static final String MSR_REACHABLE = "Reachable";
 
 	// for easier testing
 	@SuppressWarnings("unused")
@@ -164,6 +195,161 @@ public class ElasticsearchMonitor implements Monitor {
 			MSR_QUERY_CACHE_SIZE,
 			MSR_FIELD_DATA_SIZE,
 			MSR_FIELD_DATA_EVICTIONS,
+			MSR_REACHABLE,
+	};
+
+	/************************************** Self-Monitoring Measures **************************/
+	protected static final String MSR_SELF_REQUEST_TIME = "RequestTime";
+	protected static final String MSR_SELF_RESPONSE_SIZE = "ResponseSize";
+	protected static final String MSR_SELF_PARSE_TIME = "ParseTime";
+	protected static final String MSR_SELF_WRITE_TIME = "WriteTime";
+	protected static final String MSR_SELF_MEASURES_WRITTEN = "MeasuresWritten";
+	protected static final String MSR_SELF_CYCLE_DURATION = "CycleDuration";
+	protected static final String MSR_SELF_FAILURES = "Failures";
+	protected static final String MSR_SELF_TLS_HANDSHAKES = "TlsHandshakes";
+	protected static final String MSR_SELF_TLS_RESUMPTIONS = "TlsResumptions";
+
+	/************************************** Sampled Measures **************************/
+	protected static final String MSR_THREAD_POOL_QUEUE = "ThreadPoolQueue";
+	protected static final String MSR_HEAP_USED_PERCENT = "HeapUsedPercent";
+
+	/************************************** Index Pattern Measures **************************/
+	protected static final String MSR_INDEXING_RATE = "IndexingRate";
+	protected static final String MSR_SEARCH_RATE = "SearchRate";
+
+	// these are only reported if index patterns are configured, split by the dynamic measure "IndexPattern"
+	protected static final String[] ALL_INDEX_PATTERN_MEASURES = new String[] {
+			MSR_DOCUMENT_COUNT,
+			MSR_STORE_SIZE,
+			MSR_INDEXING_RATE,
+			MSR_SEARCH_RATE,
+	};
+
+	/************************************** Ingest Measures **************************/
+	protected static final String MSR_INGEST_RATE = "IngestRate";
+	protected static final String MSR_INGEST_FAILURE_RATE = "IngestFailureRate";
+	protected static final String MSR_INGEST_TIME_PER_DOCUMENT = "IngestTimePerDocument";
+	protected static final String MSR_INGEST_NODE_RATE = "IngestNodeRate";
+	protected static final String MSR_INGEST_NODE_FAILURE_RATE = "IngestNodeFailureRate";
+	protected static final String MSR_INGEST_NODE_TIME_PER_DOCUMENT = "IngestNodeTimePerDocument";
+
+	// these are only reported from the second execution on by clusters which report ingest statistics
+	protected static final String[] ALL_INGEST_MEASURES = new String[] {
+			MSR_INGEST_RATE,
+			MSR_INGEST_FAILURE_RATE,
+			MSR_INGEST_TIME_PER_DOCUMENT,
+			MSR_INGEST_NODE_RATE,
+			MSR_INGEST_NODE_FAILURE_RATE,
+			MSR_INGEST_NODE_TIME_PER_DOCUMENT,
+	};
+
+	// how many of the slowest pipelines are reported with their time per document
+	private static final int MAX_SLOWEST_PIPELINES = 10;
+
+	/************************************** Cache Measures **************************/
+	protected static final String MSR_QUERY_CACHE_HIT_RATIO = "QueryCacheHitRatio";
+	protected static final String MSR_QUERY_CACHE_EVICTION_RATE = "QueryCacheEvictionRate";
+	protected static final String MSR_REQUEST_CACHE_HIT_RATIO = "RequestCacheHitRatio";
+	protected static final String MSR_REQUEST_CACHE_EVICTION_RATE = "RequestCacheEvictionRate";
+	protected static final String MSR_FIELD_DATA_EVICTION_RATE = "FieldDataEvictionRate";
+	protected static final String MSR_FIELD_DATA_FIELD_SIZE = "FieldDataFieldSize";
+
+	// these are only reported from the second execution on, the hit ratios only if the cache was used
+	protected static final String[] ALL_CACHE_MEASURES = new String[] {
+			MSR_QUERY_CACHE_HIT_RATIO,
+			MSR_QUERY_CACHE_EVICTION_RATE,
+			MSR_REQUEST_CACHE_HIT_RATIO,
+			MSR_REQUEST_CACHE_EVICTION_RATE,
+			MSR_FIELD_DATA_EVICTION_RATE,
+			MSR_FIELD_DATA_FIELD_SIZE,
+	};
+
+	// how many of the fields with the most field data are reported
+	private static final int MAX_FIELD_DATA_FIELDS = 10;
+
+	/************************************** OS Measures **************************/
+	protected static final String MSR_PROCESS_CPU_PERCENT = "ProcessCpuPercent";
+	protected static final String MSR_OS_CPU_PERCENT = "OsCpuPercent";
+	protected static final String MSR_LOAD_AVERAGE_1M = "LoadAverage1m";
+	protected static final String MSR_LOAD_AVERAGE_5M = "LoadAverage5m";
+	protected static final String MSR_LOAD_AVERAGE_15M = "LoadAverage15m";
+	protected static final String MSR_OS_MEMORY_USED_PERCENT = "OsMemoryUsedPercent";
+	protected static final String MSR_SWAP_USED = "SwapUsed";
+	protected static final String MSR_PROCESS_CPU_PERCENT_MAX = "ProcessCpuPercentMax";
+	protected static final String MSR_OS_CPU_PERCENT_MAX = "OsCpuPercentMax";
+	protected static final String MSR_LOAD_AVERAGE_1M_MAX = "LoadAverage1mMax";
+	protected static final String MSR_LOAD_AVERAGE_5M_MAX = "LoadAverage5mMax";
+	protected static final String MSR_LOAD_AVERAGE_15M_MAX = "LoadAverage15mMax";
+	protected static final String MSR_OS_MEMORY_USED_PERCENT_MAX = "OsMemoryUsedPercentMax";
+	protected static final String MSR_SWAP_USED_MAX = "SwapUsedMax";
+
+	// the average over the nodes split by node and the maximum over the nodes, only reported if the
+	// nodes report it, e.g. the load averages are not available on Windows
+	protected static final String[] ALL_OS_MEASURES = new String[] {
+			MSR_PROCESS_CPU_PERCENT,
+			MSR_OS_CPU_PERCENT,
+			MSR_LOAD_AVERAGE_1M,
+			MSR_LOAD_AVERAGE_5M,
+			MSR_LOAD_AVERAGE_15M,
+			MSR_OS_MEMORY_USED_PERCENT,
+			MSR_SWAP_USED,
+			MSR_PROCESS_CPU_PERCENT_MAX,
+			MSR_OS_CPU_PERCENT_MAX,
+			MSR_LOAD_AVERAGE_1M_MAX,
+			MSR_LOAD_AVERAGE_5M_MAX,
+			MSR_LOAD_AVERAGE_15M_MAX,
+			MSR_OS_MEMORY_USED_PERCENT_MAX,
+			MSR_SWAP_USED_MAX,
+	};
+
+	// the totals of these are averaged over the clusters, a sum of percentages or of times per document does not make sense
+	private static final Set<String> AVERAGED_TOTALS = new HashSet<>(Arrays.asList(
+			MSR_ACTIVE_SHARDS_PERCENT,
+			MSR_INGEST_TIME_PER_DOCUMENT,
+			MSR_INGEST_NODE_TIME_PER_DOCUMENT,
+			MSR_QUERY_CACHE_HIT_RATIO,
+			MSR_REQUEST_CACHE_HIT_RATIO,
+			MSR_PROCESS_CPU_PERCENT,
+			MSR_OS_CPU_PERCENT,
+			MSR_LOAD_AVERAGE_1M,
+			MSR_LOAD_AVERAGE_5M,
+			MSR_LOAD_AVERAGE_15M,
+			MSR_OS_MEMORY_USED_PERCENT,
+			MSR_SWAP_USED));
+
+	// the totals of these are the maximum over the clusters
+	private static final Set<String> MAXIMUM_TOTALS = new HashSet<>(Arrays.asList(
+			MSR_PROCESS_CPU_PERCENT_MAX,
+			MSR_OS_CPU_PERCENT_MAX,
+			MSR_LOAD_AVERAGE_1M_MAX,
+			MSR_LOAD_AVERAGE_5M_MAX,
+			MSR_LOAD_AVERAGE_15M_MAX,
+			MSR_OS_MEMORY_USED_PERCENT_MAX,
+			MSR_SWAP_USED_MAX));
+
+	// these are reported once per statistic of SampledMeasures, e.g. "QueryCurrentMax"
+	protected static final String[] ALL_SAMPLED_MEASURES = new String[] {
+			MSR_INDEXING_CURRENT,
+			MSR_DELETE_CURRENT,
+			MSR_QUERY_CURRENT,
+			MSR_FETCH_CURRENT,
+			MSR_SCROLL_CURRENT,
+			MSR_THREAD_POOL_QUEUE,
+			MSR_HEAP_USED_PERCENT,
+	};
+
+	// for easier testing
+	@SuppressWarnings("unused")
+	protected static final String[] ALL_SELF_MONITORING_MEASURES = new String[] {
+			MSR_SELF_REQUEST_TIME,
+			MSR_SELF_RESPONSE_SIZE,
+			MSR_SELF_PARSE_TIME,
+			MSR_SELF_WRITE_TIME,
+			MSR_SELF_MEASURES_WRITTEN,
+			MSR_SELF_CYCLE_DURATION,
+			MSR_SELF_FAILURES,
+			MSR_SELF_TLS_HANDSHAKES,
+			MSR_SELF_TLS_RESUMPTIONS,
 	};
 
 	/************************************** Variables for Configuration items **************************/
@@ -175,14 +361,56 @@ public class ElasticsearchMonitor implements Monitor {
 	private String user;
 	private String password;
 	private long timeout;
+	private long samplingInterval;
+	private boolean nonBlockingHttp;
+	// null if no index patterns are configured, the index statistics are not retrieved then
+	private IndexPatterns indexPatterns;
+
+	// bounds the dynamic measures per measure, not limited until the monitor is set up
+	private CardinalityGuard cardinalityGuard = new CardinalityGuard(0, false);
+	// how old a response that another monitor retrieved from the same cluster may be, 0 to not share responses
+	private long snapshotMaxAge;
+	// how often the field data per field is retrieved, 0 to not retrieve it
+	private long fieldDataInterval;
+
+	// the SSLContext for HTTPS clusters, built once in setup() and shared by all connections
+	private TlsSupport tls;
+	// the handshakes until the previous execution, to report the handshakes per execution
+	private long previousHandshakes;
+	private long previousResumptions;
 
 	private final ObjectMapper mapper = new ObjectMapper();
 
+	// the cluster configured via url or host/port, followed by the additional clusters
+	private List<MonitoredCluster> clusters = Collections.emptyList();
+
+	// shared by all clusters and executions, created in setup() and closed in teardown()
+	private HttpEngine engine;
+
+	// polls the clusters concurrently, only used if more than one cluster is configured
+	private ExecutorService executor;
+
+	// aborts the poll of the single cluster at its deadline, awaitPoll() does this for multiple clusters
+	private ScheduledExecutorService watchdog;
+
+	// polls a small subset of the node statistics between executions, null if sampling is disabled
+	private ScheduledExecutorService sampler;
+	private final SampledMeasures samples = new SampledMeasures();
+
+	// what the current execution costs, replaced at the start of each execution
+	private CycleStatistics statistics = new CycleStatistics();
+	// the recent requests, failures and written measures, logged if an execution fails or is slow
+	private final DiagnosticRing diagnostics = new DiagnosticRing(DiagnosticRing.DEFAULT_CAPACITY);
+
 	// for rate computations
 
-    // Rate-Measures
+    // Rate-Measures of the first cluster, kept here so the rates survive setting up the monitor again
     DerivedMeasure documentCount = new DerivedMeasure(TimeUnit.SECONDS);
     DerivedMeasure deletedCount = new DerivedMeasure(TimeUnit.SECONDS);
+    NodeCounters nodeCounters = new NodeCounters();
+
+	// persists the document counts so the rates survive restarting the collector, null if disabled
+	private RateStateFile stateFile;
 
 	/*
 	 * (non-Javadoc)
@@ -228,9 +456,161 @@ public class ElasticsearchMonitor implements Monitor {
 			throw new IllegalArgumentException("Timeout needs to be in range [0," + Integer.MAX_VALUE +"]");
 		}
 
+		if(env.getConfigString(ENV_CONFIG_SAMPLING_INTERVAL) != null) {
+			samplingInterval = env.getConfigLong(ENV_CONFIG_SAMPLING_INTERVAL);
+		} else {
+			samplingInterval = 0;
+		}
+		if(samplingInterval < 0) {
+			throw new IllegalArgumentException("Sampling interval must not be negative, use 0 to disable sampling");
+		}
+
+		nonBlockingHttp = env.getConfigString(ENV_CONFIG_NON_BLOCKING_HTTP) != null &&
+				Boolean.TRUE.equals(env.getConfigBoolean(ENV_CONFIG_NON_BLOCKING_HTTP));
+
+		indexPatterns = IndexPatterns.parse(env.getConfigString(ENV_CONFIG_INDEX_PATTERNS));
+		if(indexPatterns != null) {
+			log.info("Rolling up the index statistics by " + indexPatterns);
+		}
+
+		long maxDynamicMeasures = DEFAULT_MAX_DYNAMIC_MEASURES;
+		if(env.getConfigString(ENV_CONFIG_MAX_DYNAMIC_MEASURES) != null) {
+			maxDynamicMeasures = env.getConfigLong(ENV_CONFIG_MAX_DYNAMIC_MEASURES);
+		}
+		if(maxDynamicMeasures < 0 || maxDynamicMeasures > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Max dynamic measures needs to be in range [0," + Integer.MAX_VALUE + "], use 0 for no limit");
+		}
+		boolean stickyDynamicMeasures = env.getConfigString(ENV_CONFIG_STICKY_DYNAMIC_MEASURES) == null ||
+				Boolean.TRUE.equals(env.getConfigBoolean(ENV_CONFIG_STICKY_DYNAMIC_MEASURES));
+		cardinalityGuard = new CardinalityGuard((int) maxDynamicMeasures, stickyDynamicMeasures);
+
+		snapshotMaxAge = 0;
+		if(env.getConfigString(ENV_CONFIG_SNAPSHOT_MAX_AGE) != null) {
+			snapshotMaxAge = env.getConfigLong(ENV_CONFIG_SNAPSHOT_MAX_AGE);
+		}
+		if(snapshotMaxAge < 0) {
+			throw new IllegalArgumentException("Snapshot max age must not be negative, use 0 to not share responses between monitors");
+		}
+
+		fieldDataInterval = 0;
+		if(env.getConfigString(ENV_CONFIG_FIELD_DATA_INTERVAL) != null) {
+			fieldDataInterval = env.getConfigLong(ENV_CONFIG_FIELD_DATA_INTERVAL);
+		}
+		if(fieldDataInterval < 0) {
+			throw new IllegalArgumentException("Field data interval must not be negative, use 0 to not retrieve the field data per field");
+		}
+
+		String trustStore = StringUtils.trimToNull(env.getConfigString(ENV_CONFIG_TRUST_STORE));
+		String trustStorePassword = trustStore == null ? null : env.getConfigPassword(ENV_CONFIG_TRUST_STORE_PASSWORD);
+		String keyStore = StringUtils.trimToNull(env.getConfigString(ENV_CONFIG_KEY_STORE));
+		String keyStorePassword = keyStore == null ? null : env.getConfigPassword(ENV_CONFIG_KEY_STORE_PASSWORD);
+		tls = new TlsSupport(TlsSupport.createContext(trustStore, trustStorePassword, keyStore, keyStorePassword));
+		previousHandshakes = 0;
+		previousResumptions = 0;
+
+		// replace the HTTP engine and the threads if the monitor is set up again, the state
+		// file is kept if the configured clusters did not change
+		RateStateFile previousStateFile = stateFile;
+		stateFile = null;
+		shutdown();
+
+		List<MonitoredCluster> previous = clusters;
+		clusters = new ArrayList<>();
+		clusters.add(new MonitoredCluster(url, documentCount, deletedCount, nodeCounters));
+
+		String additionalClusters = env.getConfigString(ENV_CONFIG_CLUSTERS);
+		if(additionalClusters != null) {
+			for(String clusterUrl : StringUtils.split(additionalClusters, ",\r\n")) {
+				clusterUrl = StringUtils.removeEnd(clusterUrl.trim(), "/");
+				if(clusterUrl.isEmpty()) {
+					continue;
+				}
+				if(findCluster(clusters, clusterUrl) != null) {
+					log.warning("Ignoring cluster " + clusterUrl + " as it is configured more than once");
+					continue;
+				}
+
+				// keep the rates of clusters that were monitored before
+				MonitoredCluster cluster = findCluster(previous.subList(Math.min(1, previous.size()), previous.size()), clusterUrl);
+				clusters.add(cluster == null ? new MonitoredCluster(clusterUrl) : cluster);
+			}
+		}
+
+		stateFile = openStateFile(previousStateFile, clusters);
+
+		engine = createEngine();
+		if(clusters.size() > 1) {
+			executor = Executors.newFixedThreadPool(Math.min(clusters.size(), MAX_POLLING_THREADS),
+					new ThreadFactoryBuilder().setNameFormat("Elasticsearch-Monitor-%d").setDaemon(true).build());
+		} else {
+			watchdog = Executors.newSingleThreadScheduledExecutor(
+					new ThreadFactoryBuilder().setNameFormat("Elasticsearch-Monitor-Watchdog-%d").setDaemon(true).build());
+		}
+		if(samplingInterval > 0) {
+			sampler = Executors.newSingleThreadScheduledExecutor(
+					new ThreadFactoryBuilder().setNameFormat("Elasticsearch-Monitor-Sampler-%d").setDaemon(true).build());
+			sampler.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					sample();
+				}
+			}, samplingInterval, samplingInterval, TimeUnit.MILLISECONDS);
+		}
+
+		// the version of each cluster is probed when it is polled for the first time, so
+		// clusters which are not available do not delay the setup
 		return new Status(Status.StatusCode.Success);
 	}
 
+	/**
+	 * @param previous The state file of the previous setup, it is used again if it belongs to the
+	 *                 same clusters and closed otherwise.
+	 */
+	private static RateStateFile openStateFile(RateStateFile previous, List<MonitoredCluster> clusters) {
+		File directory = RateStateFile.getStateDirectory();
+		if(previous != null && (directory == null || !previous.isFor(directory, clusters))) {
+			closeStateFile(previous);
+			previous = null;
+		}
+		if(directory == null) {
+			return null;
+		}
+
+		try {
+			RateStateFile stateFile = previous != null ? previous : RateStateFile.open(directory, clusters);
+			int restored = stateFile.restore(clusters, System.currentTimeMillis());
+			if(restored > 0) {
+				log.info("Restored the previous document counts of " + restored + " clusters from " + stateFile.getFile());
+			}
+			return stateFile;
+		} catch (IOException e) {
+			// the rates are reported from the second execution on as before
+			log.log(Level.WARNING, "Could not use a state file in " + directory + ", rates are not kept across restarts: " + e);
+			return null;
+		}
+	}
+
+	private static void closeStateFile(RateStateFile stateFile) {
+		try {
+			stateFile.close();
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Could not close the state file " + stateFile.getFile() + ": " + e);
+		}
+	}
+
+	private static MonitoredCluster findCluster(List<MonitoredCluster> clusters, String clusterUrl) {
+		for(MonitoredCluster cluster : clusters) {
+			if(cluster.getUrl().equals(clusterUrl)) {
+				return cluster;
+			}
+		}
+		return null;
+	}
+
+	List<MonitoredCluster> getClusters() {
+		return clusters;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 *
@@ -238,177 +618,831 @@ public class ElasticsearchMonitor implements Monitor {
 	 */
 	@Override
 	public Status execute(MonitorEnvironment env) throws Exception {
-		log.info("Executing Elasticsearch Monitor for URL: " + url);
+		diagnostics.record(DiagnosticRing.CYCLE_START, null, url, clusters.size(), 0, 0, 0);
 
+		statistics = new CycleStatistics(diagnostics, null);
+		Map<String, Throwable> skipped;
+		boolean failed = false;
 		try {
-			// retrieve measures for cloud formation numbers in each state
-			measureEnvironments(env);
+			if(clusters.size() > 1) {
+				skipped = measureClusters(env);
+			} else {
+				skipped = measureCluster(env, clusters.get(0));
+			}
+		} catch (CircuitBreaker.OpenException e) {
+			// expected while the cluster did not recover yet, the failures which opened the breaker were reported already
+			statistics.recordFailure(e);
+			log.fine("Not polling Elasticsearch with url " + url + ": " + e.getMessage());
+			return new Status(Status.StatusCode.ErrorInfrastructureUnreachable, "Skipped " + url, e.getMessage());
 		} catch (Throwable e) {
+			statistics.recordFailure(e);
+
 			// Our plugin functionality does not report Exceptions well...
 			log.log(Level.WARNING, "Had throwable while running Elasticsearch Monitor with url " + url + ": " + ExceptionUtils.getStackTrace(e));
+			failed = true;
 			throw new Exception(e);
+		} finally {
+			if(sampler != null) {
+				writeSamples(env);
+			}
+			if(stateFile != null) {
+				stateFile.store(clusters);
+			}
+			writeReachable(env);
+			writeStatistics(env, statistics);
+			endCycle(failed);
 		}
 
+		if(!skipped.isEmpty()) {
+			return getPartialStatus(skipped);
+		}
 		return new Status(Status.StatusCode.Success);
 	}
 
-	private void measureEnvironments(MonitorEnvironment env) throws IOException {
-		//final Collection<Instance> environments = getEnvironments();
-
-		// walk all the different regions that were specified
-		Measure nodeCount = new Measure();
-		Measure dataNodeCount = new Measure();
-
-		Measure activePrimaryShards = new Measure();
-		Measure activeShardsPercent = new Measure();
-		Measure activeShards = new Measure();
-		Measure relocatingShards = new Measure();
-		Measure initializingShards = new Measure();
-		Measure unassignedShards = new Measure();
-		Measure delayedUnassignedShards = new Measure();
-
-		// JVM Memory
-		Measure initHeap = new Measure("Node");
-		Measure maxHeap = new Measure("Node");
-		Measure initNonHeap = new Measure("Node");
-		Measure maxNonHeap = new Measure("Node");
-		Measure maxDirect = new Measure("Node");
-
-		// Index/Shards
-		Measure indexCount = new Measure();
-		Measure shardsPerState = new Measure("State");
-
-		// Stats
-		Measure storeSizePerNode = new Measure("Node");
-		Measure storeThrottleTimePerNode = new Measure("Node");
-		Measure indexingThrottleTimePerNode = new Measure("Node");
-		Measure indexingCurrentPerNode = new Measure("Node");
-		Measure deleteCurrentPerNode = new Measure("Node");
-		Measure queryCurrentPerNode = new Measure("Node");
-		Measure fetchCurrentPerNode = new Measure("Node");
-		Measure scrollCurrentPerNode = new Measure("Node");
-		Measure queryCacheSizePerNode = new Measure("Node");
-		Measure fieldDataSizePerNode = new Measure("Node");
-		Measure percolateSizePerNode = new Measure("Node");
-		Measure translogSizePerNode = new Measure("Node");
-		Measure requestCacheSizePerNode = new Measure("Node");
-		Measure recoveryThrottleTimePerNode = new Measure("Node");
-		Measure recoveryAsSourcePerNode = new Measure("Node");
-		Measure recoveryAsTargetPerNode = new Measure("Node");
-        Measure fileDescLimitPerNode = new Measure("Node");
-
-		Measure fieldDataSize = new Measure();
-		Measure fieldDataEvictions = new Measure();
-		Measure queryCachePerState = new Measure("State");
-		Measure completionSize = new Measure();
-		Measure segmentCount = new Measure();
-		Measure segmentSizePerState = new Measure("State");
-		Measure fileDescPerStat = new Measure("Stat");
-		Measure fileSystemPerStat = new Measure("Stat");
-		Measure percolatePerState = new Measure("State");
-
-		final CredentialsProvider credsProvider = new BasicCredentialsProvider();
-		credsProvider.setCredentials(
-                new AuthScope(null, -1),
-                new UsernamePasswordCredentials(user, password));
-
-		RequestConfig reqConfig = RequestConfig.custom()
-			    .setSocketTimeout((int)timeout)
-			    .setConnectTimeout((int)timeout)
-			    .setConnectionRequestTimeout((int)timeout)
-			    .build();
-
-		// configure the builder for HttpClients
-		HttpClientBuilder builder = HttpClients.custom()
-		        .setDefaultCredentialsProvider(credsProvider)
-				.setDefaultRequestConfig(reqConfig);
-
-		try (CloseableHttpClient client = builder.build()) {
-			retrieveClusterHealth(client, nodeCount, dataNodeCount, activePrimaryShards, activeShardsPercent, activeShards,
-					relocatingShards, initializingShards, unassignedShards, delayedUnassignedShards);
-
-			retrieveNodeHealth(client, initHeap, maxHeap, initNonHeap, maxNonHeap, maxDirect);
-
-			retrieveClusterState(client, indexCount, shardsPerState,
-					fieldDataSize, fieldDataEvictions, queryCachePerState,
-					completionSize, segmentCount, segmentSizePerState,
-					fileDescPerStat, fileSystemPerStat, percolatePerState, documentCount, deletedCount);
-
-			//retrieveIndexCounts(client, documentCountPerIndex, deletedCountPerIndex);
-
-			retrieveNodeStats(client, storeSizePerNode, storeThrottleTimePerNode, indexingThrottleTimePerNode, indexingCurrentPerNode,
-					deleteCurrentPerNode, queryCurrentPerNode, fetchCurrentPerNode, scrollCurrentPerNode, queryCacheSizePerNode,
-					fieldDataSizePerNode, percolateSizePerNode, translogSizePerNode, requestCacheSizePerNode, recoveryThrottleTimePerNode,
-					recoveryAsSourcePerNode, recoveryAsTargetPerNode, fileDescLimitPerNode);
+	/**
+	 * Record the end of the execution and log the recent events if it failed or took
+	 * longer than the timeout of polling a cluster.
+	 */
+	private void endCycle(boolean failed) {
+		long nanos = statistics.getElapsedNanos();
+		diagnostics.record(DiagnosticRing.CYCLE_END, null, failed ? "failed" : null, 0, nanos,
+				(long) statistics.getMeasuresWritten().getValue(), 0);
+
+		boolean slow = timeout > 0 && nanos > TimeUnit.MILLISECONDS.toNanos(timeout);
+		if(failed || slow) {
+			log.warning((failed ? "Failed" : "Slow") + " execution of Elasticsearch Monitor with url " + url +
+					" after " + TimeUnit.NANOSECONDS.toMillis(nanos) + "ms, recent events:\n" + diagnostics.dump());
+		}
+	}
+
+	/**
+	 * @param skipped The causes by the endpoints or clusters which could not be retrieved.
+	 */
+	static Status getPartialStatus(Map<String, Throwable> skipped) {
+		StringBuilder message = new StringBuilder();
+		for(Map.Entry<String, Throwable> source : skipped.entrySet()) {
+			message.append(source.getKey()).append(": ").append(source.getValue()).append('\n');
+		}
+		return new Status(Status.StatusCode.PartialSuccess,
+				"Skipped " + StringUtils.join(skipped.keySet(), ", "), message.toString().trim());
+	}
+
+	/**
+	 * Poll the gauges which are sampled between executions from all clusters and add
+	 * them to the accumulators, this runs on the thread of the background sampler.
+	 */
+	void sample() {
+		Map<String, Double> totals = new HashMap<>();
+		boolean sampled = false;
+		for(MonitoredCluster cluster : clusters) {
+			try {
+				// not via getJson() as the request must not be aborted together with the poll of the cluster
+				byte[] json = engine.send(new HttpGet(cluster.getUrl() + cluster.getVersion().getSampleEndpoint())).getBody(timeout);
+				extractSamples(mapper.readTree(json), clusters.size() > 1 ? cluster.getName() + "/" : "", totals);
+				sampled = true;
+			} catch (Exception e) {
+				// the regular execution reports clusters which cannot be reached
+				log.log(Level.FINE, "Could not sample Elasticsearch at URL: " + cluster.getUrl() + ": " + e);
+			}
+		}
+
+		if(sampled) {
+			for(String measure : ALL_SAMPLED_MEASURES) {
+				Double total = totals.get(measure);
+				samples.addTotal(measure, total == null ? 0 : total);
+			}
+		}
+	}
+
+	/**
+	 * @param prefix Prepended to the names of the nodes, used to distinguish the nodes of different clusters.
+	 * @param totals Collects the sum over all nodes per measure, the maximum for percentages.
+	 */
+	void extractSamples(JsonNode nodeStats, String prefix, Map<String, Double> totals) {
+		if(nodeStats.get("nodes") == null) {
+			return;
+		}
+
+		Iterator<Map.Entry<String, JsonNode>> nodes = nodeStats.get("nodes").fields();
+		while (nodes.hasNext()) {
+			Map.Entry<String, JsonNode> node = nodes.next();
+			JsonNode name = node.getValue().get("name");
+			final String nodeName = prefix + (name == null ? "unknown-node" : name.asText());
+
+			JsonNode indices = node.getValue().get("indices");
+			if (indices != null) {
+				JsonNode indexing = indices.get("indexing");
+				if (indexing != null) {
+					addSample(MSR_INDEXING_CURRENT, nodeName, indexing, "index_current", totals);
+					addSample(MSR_DELETE_CURRENT, nodeName, indexing, "delete_current", totals);
+				}
+
+				JsonNode search = indices.get("search");
+				if (search != null) {
+					addSample(MSR_QUERY_CURRENT, nodeName, search, "query_current", totals);
+					addSample(MSR_FETCH_CURRENT, nodeName, search, "fetch_current", totals);
+					addSample(MSR_SCROLL_CURRENT, nodeName, search, "scroll_current", totals);
+				}
+			}
+
+			JsonNode threadPool = node.getValue().get("thread_pool");
+			if (threadPool != null) {
+				long queued = 0;
+				for(JsonNode pool : threadPool) {
+					queued += pool.path("queue").asLong();
+				}
+				addSample(MSR_THREAD_POOL_QUEUE, nodeName, queued, totals);
+			}
+
+			JsonNode mem = node.getValue().path("jvm").get("mem");
+			if (mem != null) {
+				addSample(MSR_HEAP_USED_PERCENT, nodeName, mem, "heap_used_percent", totals);
+			}
+		}
+	}
+
+	private void addSample(String measure, String nodeName, JsonNode parent, String key, Map<String, Double> totals) {
+		JsonNode value = parent.get(key);
+		if(value != null) {
+			addSample(measure, nodeName, value.asLong(), totals);
+		}
+	}
+
+	private void addSample(String measure, String nodeName, long value, Map<String, Double> totals) {
+		samples.add(measure, nodeName, value);
+
+		Double total = totals.get(measure);
+		if(total == null) {
+			totals.put(measure, (double) value);
+		} else if(MSR_HEAP_USED_PERCENT.equals(measure)) {
+			// a sum of percentages does not make sense, the fullest heap is the interesting one
+			totals.put(measure, Math.max(total, value));
+		} else {
+			totals.put(measure, total + value);
+		}
+	}
+
+	/**
+	 * Write the aggregates of the samples since the previous execution and reset them.
+	 */
+	private void writeSamples(MonitorEnvironment env) {
+		for(String measure : ALL_SAMPLED_MEASURES) {
+			for(Map.Entry<String, Measure> statistic : samples.drain(measure).entrySet()) {
+				writeMeasure(METRIC_GROUP_SAMPLING, measure + statistic.getKey(), env, statistic.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Write whether each cluster could be polled, also if the execution failed or
+	 * the circuit breaker of the cluster is open.
+	 */
+	private void writeReachable(MonitorEnvironment env) {
+		if(clusters.size() == 1) {
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_REACHABLE, env, getReachable(clusters.get(0)));
+			return;
+		}
+
+		ClusterTotals totals = new ClusterTotals();
+		for(MonitoredCluster cluster : clusters) {
+			totals.setCluster(cluster.getName());
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_REACHABLE, env, getReachable(cluster), totals);
+		}
+		writeTotals(env, totals);
+	}
+
+	private static Measure getReachable(MonitoredCluster cluster) {
+		return new Measure(cluster.getCircuitBreaker().isReachable() ? 1 : 0);
+	}
+
+	private void writeStatistics(MonitorEnvironment env, CycleStatistics statistics) {
+		writeMeasure(METRIC_GROUP_SELF_MONITORING, MSR_SELF_REQUEST_TIME, env, statistics.getRequestTime());
+		writeMeasure(METRIC_GROUP_SELF_MONITORING, MSR_SELF_RESPONSE_SIZE, env, statistics.getResponseSize());
+		writeMeasure(METRIC_GROUP_SELF_MONITORING, MSR_SELF_PARSE_TIME, env, statistics.getParseTime());
+		writeMeasure(METRIC_GROUP_SELF_MONITORING, MSR_SELF_WRITE_TIME, env, statistics.getWriteTime());
+		writeMeasure(METRIC_GROUP_SELF_MONITORING, MSR_SELF_MEASURES_WRITTEN, env, statistics.getMeasuresWritten());
+		writeMeasure(METRIC_GROUP_SELF_MONITORING, MSR_SELF_FAILURES, env, statistics.getFailures());
+		writeMeasure(METRIC_GROUP_SELF_MONITORING, MSR_SELF_CYCLE_DURATION, env, statistics.getCycleDuration());
+
+		// the engine reports the handshakes of all connections, also those of the background sampler
+		long handshakes = tls.getHandshakes();
+		long resumptions = tls.getResumptions();
+		writeMeasure(METRIC_GROUP_SELF_MONITORING, MSR_SELF_TLS_HANDSHAKES, env, new Measure(handshakes - previousHandshakes));
+		writeMeasure(METRIC_GROUP_SELF_MONITORING, MSR_SELF_TLS_RESUMPTIONS, env, new Measure(resumptions - previousResumptions));
+		previousHandshakes = handshakes;
+		previousResumptions = resumptions;
+	}
+
+	/**
+	 * Poll the single cluster on the calling thread. As the socket timeout only limits how
+	 * long the connection may be idle, a response which trickles in could take longer, so
+	 * the requests are aborted if the poll did not finish shortly after the timeout, like
+	 * {@link #awaitPoll} does when polling several clusters.
+	 *
+	 * @return The causes by the endpoints which could not be retrieved, empty if all were retrieved.
+	 */
+	private Map<String, Throwable> measureCluster(MonitorEnvironment env, final MonitoredCluster cluster) throws IOException {
+		// starts the timeout which all requests of this execution share
+		Preconditions.checkState(cluster.queuePoll() && cluster.startPoll(), "Cluster is polled concurrently: %s", cluster);
+		ScheduledFuture<?> abort = watchdog.schedule(new Runnable() {
+			@Override
+			public void run() {
+				log.warning("Aborting poll of Elasticsearch at URL " + cluster.getUrl() + " as it did not finish within " + timeout + "ms");
+				cluster.abort();
+			}
+		}, timeout + ABORT_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+		ClusterMeasures measures;
+		try {
+			measures = pollCluster(cluster, statistics);
+		} finally {
+			abort.cancel(false);
+			cluster.finishPoll();
 		}
 
 		// retrieve and set the measurements
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_NODE_COUNT, env, nodeCount);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_DATA_NODE_COUNT, env, dataNodeCount);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_ACTIVE_PRIMARY_SHARDS, env, activePrimaryShards);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_ACTIVE_SHARDS, env, activeShards);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_ACTIVE_SHARDS_PERCENT, env, activeShardsPercent);
+		long writeStart = System.nanoTime();
+		writeMeasures(env, measures);
+		statistics.recordWrite(System.nanoTime() - writeStart);
 
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_RELOCATING_SHARDS, env, relocatingShards);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_INITIALIZING_SHARDS, env, initializingShards);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_UNASSIGNED_SHARDS, env, unassignedShards);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_DELAYED_UNASSIGNED_SHARDS, env, delayedUnassignedShards);
+		return new LinkedHashMap<String, Throwable>(measures.skipped);
+	}
 
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_MEM_INIT_HEAP, env, initHeap);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_MEM_MAX_HEAP, env, maxHeap);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_MEM_INIT_NON_HEAP, env, initNonHeap);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_MEM_MAX_NON_HEAP, env, maxNonHeap);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_MEM_MAX_DIRECT, env, maxDirect);
+	/**
+	 * Poll all clusters concurrently and write their measures with the dynamic measure
+	 * "Cluster". Each cluster has to respond within the configured timeout after polling
+	 * it started, the endpoints which are not retrieved by then are skipped, so one stuck
+	 * cluster does not delay the others.
+	 *
+	 * The execution only fails if none of the clusters could be polled.
+	 *
+	 * @return The causes by the clusters or endpoints of clusters which could not be retrieved.
+	 */
+	private Map<String, Throwable> measureClusters(MonitorEnvironment env) throws Exception {
+		long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+		// polls that are queued because all threads are busy wait at most until all polls in front of them timed out
+		int threads = Math.min(clusters.size(), MAX_POLLING_THREADS);
+		long queueDeadline = System.nanoTime() + timeoutNanos * ((clusters.size() + threads - 1) / threads + 1);
+
+		Map<String, Throwable> skipped = new LinkedHashMap<>();
+		List<Throwable> failures = new ArrayList<>();
+		Map<MonitoredCluster, Future<ClusterMeasures>> polls = new LinkedHashMap<>();
+		Map<MonitoredCluster, CycleStatistics> pollStatistics = new HashMap<>();
+		for(final MonitoredCluster cluster : clusters) {
+			if(!cluster.queuePoll()) {
+				InterruptedIOException failure = new InterruptedIOException("Skipping cluster at URL " + cluster.getUrl() +
+						" as polling it in a previous execution did not finish yet");
+				failures.add(failure);
+				skipped.put(cluster.getName(), failure);
+				continue;
+			}
 
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_INDEX_COUNT, env, indexCount);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_SHARD_COUNT, env, shardsPerState);
+			// each poll records into its own instance as they run concurrently
+			final CycleStatistics clusterStatistics = new CycleStatistics(diagnostics, cluster.getName());
+			pollStatistics.put(cluster, clusterStatistics);
+			polls.put(cluster, executor.submit(new Callable<ClusterMeasures>() {
+				@Override
+				public ClusterMeasures call() throws Exception {
+					if(!cluster.startPoll()) {
+						// the poll was given up before it could start
+						return null;
+					}
+					try {
+						return pollCluster(cluster, clusterStatistics);
+					} finally {
+						cluster.finishPoll();
+					}
+				}
+			}));
+		}
 
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_DOCUMENT_COUNT, env, documentCount.getBaseMeasure());
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_DELETED_COUNT, env, deletedCount.getBaseMeasure());
+		Map<MonitoredCluster, ClusterMeasures> results = new LinkedHashMap<>();
+		for(Map.Entry<MonitoredCluster, Future<ClusterMeasures>> poll : polls.entrySet()) {
+			MonitoredCluster cluster = poll.getKey();
+			try {
+				ClusterMeasures measures = awaitPoll(cluster, poll.getValue(), timeoutNanos, queueDeadline);
+				results.put(cluster, measures);
+				statistics.add(pollStatistics.get(cluster));
+				for(Map.Entry<String, IOException> endpoint : measures.skipped.entrySet()) {
+					skipped.put(cluster.getName() + endpoint.getKey(), endpoint.getValue());
+				}
+			} catch (ExecutionException e) {
+				statistics.add(pollStatistics.get(cluster));
+				failures.add(e.getCause());
+				skipped.put(cluster.getName(), e.getCause());
+			} catch (InterruptedIOException e) {
+				// the poll might still be running, so its statistics are not used, it records
+				// its outcome in the circuit breaker itself once the aborted requests returned
+				failures.add(e);
+				skipped.put(cluster.getName(), e);
+				cluster.getCircuitBreaker().recordUnreachable();
+			}
+		}
 
-		// this should not be reported as negative number if documents were removed,
-		// e.g. when whole indexes are removed
-		Measure docsPerSecond = documentCount.getDerivedMeasure();
-		if(docsPerSecond.getValue() < 0) {
-			docsPerSecond.setValue(0);
+		for(Throwable failure : failures) {
+			log.warning("Could not poll Elasticsearch cluster: " + failure);
+		}
+
+		if(results.isEmpty() && !failures.isEmpty()) {
+			// the last failure is recorded when execute() handles it
+			for(Throwable failure : failures.subList(0, failures.size() - 1)) {
+				statistics.recordFailure(failure);
+			}
+			Throwable failure = failures.get(failures.size() - 1);
+			throw failure instanceof Exception ? (Exception) failure : new Exception(failure);
+		}
+		for(Throwable failure : failures) {
+			statistics.recordFailure(failure);
+		}
+
+		long writeStart = System.nanoTime();
+		ClusterTotals totals = new ClusterTotals();
+		for(Map.Entry<MonitoredCluster, ClusterMeasures> result : results.entrySet()) {
+			totals.setCluster(result.getKey().getName());
+			writeMeasures(env, result.getValue(), totals);
+		}
+		writeTotals(env, totals);
+		statistics.recordWrite(System.nanoTime() - writeStart);
+
+		return skipped;
+	}
+
+	/**
+	 * Wait until polling the cluster finished, polls which are still queued get their
+	 * full timeout once they start.
+	 *
+	 * The poll skips the endpoints which it could not retrieve within the timeout by
+	 * itself, it is only aborted if it did not finish shortly after the timeout.
+	 *
+	 * @throws InterruptedIOException If the deadline passed, the poll is aborted in this case.
+	 */
+	private ClusterMeasures awaitPoll(MonitoredCluster cluster, Future<ClusterMeasures> future, long timeoutNanos, long queueDeadline)
+			throws InterruptedException, ExecutionException, InterruptedIOException {
+		timeoutNanos += TimeUnit.MILLISECONDS.toNanos(ABORT_GRACE_MILLIS);
+		while(true) {
+			long pollStart = cluster.getPollStartNanos();
+			long deadline = pollStart == 0 ? queueDeadline : pollStart + timeoutNanos;
+			try {
+				return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			} catch (TimeoutException e) {
+				pollStart = cluster.getPollStartNanos();
+				if(pollStart != 0 && System.nanoTime() - pollStart >= timeoutNanos) {
+					cluster.abort();
+					future.cancel(true);
+					throw new InterruptedIOException("Cluster at URL " + cluster.getUrl() + " did not respond within " + timeout + "ms");
+				}
+				if(pollStart == 0 && System.nanoTime() >= queueDeadline && cluster.unqueuePoll()) {
+					future.cancel(false);
+					throw new InterruptedIOException("Polling cluster at URL " + cluster.getUrl() + " did not start in time");
+				}
+				// the poll started or finished in the meantime
+			}
+		}
+	}
+
+	/**
+	 * Retrieve all measures of one cluster. This is called concurrently for different
+	 * clusters, so besides the shared engine only the given cluster and statistics are used.
+	 *
+	 * An endpoint which fails or is not retrieved before the timeout of the poll passed
+	 * is skipped, the measures of the other endpoints are still returned.
+	 *
+	 * @throws IOException If none of the endpoints could be retrieved.
+	 * @throws CircuitBreaker.OpenException Right away if the cluster failed repeatedly before.
+	 */
+	private ClusterMeasures pollCluster(MonitoredCluster cluster, CycleStatistics statistics) throws IOException {
+		ClusterMeasures measures = new ClusterMeasures(cluster.getDocumentCount(), cluster.getDeletedCount());
+
+		CircuitBreaker breaker = cluster.getCircuitBreaker();
+		breaker.checkRequest(currentMillis());
+		if(breaker.getState() == CircuitBreaker.State.HALF_OPEN) {
+			// a cheap request shows whether the cluster is back before all others are sent
+			JsonNode root;
+			try {
+				root = getJson(cluster, statistics, "/", "/");
+			} catch (IOException e) {
+				breaker.recordFailure(currentMillis());
+				throw e;
+			}
+			log.info("Elasticsearch at URL " + cluster.getUrl() + " is reachable again");
+			if(cluster.getAdapter() == null) {
+				cluster.setAdapter(selectVersion(cluster, root));
+			}
+		}
+
+		if(cluster.getAdapter() == null) {
+			cluster.setAdapter(probeVersion(cluster, statistics));
+		}
+
+		// the non-blocking engine has all requests of the poll in flight together, the
+		// blocking engine sends each request once its response is awaited below
+		VersionAdapter version = cluster.getVersion();
+		NodeInfoCache nodeInfo = cluster.getNodeInfo();
+		HttpEngine.Exchange clusterHealth = sendRequest(cluster, version.getClusterHealthEndpoint());
+		HttpEngine.Exchange nodeInfoRequest = nodeInfo.isStale(currentMillis(), -1) ?
+				sendRequest(cluster, version.getNodeInfoEndpoint()) : null;
+		HttpEngine.Exchange clusterStats = sendRequest(cluster, version.getClusterStatsEndpoint());
+		HttpEngine.Exchange nodeStatsRequest = sendRequest(cluster, version.getNodeStatsEndpoint());
+		HttpEngine.Exchange indexStats = indexPatterns == null ? null : sendRequest(cluster, version.getIndexStatsEndpoint());
+		// expensive on large clusters, so it is only retrieved at its own interval
+		HttpEngine.Exchange fieldData = fieldDataInterval > 0 && cluster.getFieldData().request(currentMillis(), fieldDataInterval) ?
+				sendRequest(cluster, version.getFieldDataEndpoint()) : null;
+		int requested = (nodeInfoRequest == null ? ENDPOINT_COUNT - 1 : ENDPOINT_COUNT) + (indexStats == null ? 0 : 1) +
+				(fieldData == null ? 0 : 1);
+
+		try {
+			retrieveClusterHealth(cluster, clusterHealth, measures, statistics);
+		} catch (IOException e) {
+			measures.skip(ENDPOINT_CLUSTER_HEALTH, e);
+		}
+
+		if(nodeInfoRequest != null) {
+			try {
+				retrieveNodeInfo(cluster, nodeInfoRequest, statistics);
+			} catch (IOException e) {
+				measures.skip(ENDPOINT_NODE_INFO, e);
+			}
+		}
+
+		try {
+			retrieveClusterState(cluster, clusterStats, measures, statistics);
+		} catch (IOException e) {
+			measures.skip(ENDPOINT_CLUSTER_STATS, e);
+		}
+
+		//retrieveIndexCounts(client, documentCountPerIndex, deletedCountPerIndex);
+
+		JsonNode nodeStats = null;
+		try {
+			nodeStats = receiveJson(cluster, statistics, ENDPOINT_NODE_STATS, nodeStatsRequest);
+		} catch (IOException e) {
+			measures.skip(ENDPOINT_NODE_STATS, e);
+		}
+
+		if(nodeStats != null) {
+			// the counters of restarted nodes are recorded even if the node info is retrieved already
+			int nodeCount = measures.isRetrieved(ENDPOINT_CLUSTER_HEALTH) ? (int) measures.nodeCount.getValue() : -1;
+			boolean nodesChanged = isNodesChanged(nodeStats, nodeInfo, nodeCount, currentMillis());
+			if(nodeInfoRequest == null && nodesChanged) {
+				requested++;
+				try {
+					retrieveNodeInfo(cluster, sendRequest(cluster, version.getNodeInfoEndpoint()), statistics);
+				} catch (IOException e) {
+					measures.skip(ENDPOINT_NODE_INFO, e);
+				}
+			}
+
+			extractNodeStats(version, nodeStats, nodeInfo, measures);
+		}
+
+		if(indexStats != null) {
+			try {
+				retrieveIndexStats(cluster, indexStats, measures, statistics);
+			} catch (IOException e) {
+				measures.skip(ENDPOINT_INDEX_STATS, e);
+			}
+		}
+
+		if(fieldData != null) {
+			try {
+				retrieveFieldData(cluster, fieldData, statistics);
+			} catch (IOException e) {
+				cluster.getFieldData().clear();
+				measures.skip(ENDPOINT_FIELD_DATA, e);
+			}
+		}
+
+		if(measures.skipped.size() == requested) {
+			breaker.recordFailure(currentMillis());
+
+			// the first failure is recorded by the caller
+			Iterator<IOException> failures = measures.skipped.values().iterator();
+			IOException failure = failures.next();
+			while(failures.hasNext()) {
+				statistics.recordFailure(failures.next());
+			}
+			throw failure;
+		}
+		breaker.recordSuccess();
+		for(IOException failure : measures.skipped.values()) {
+			log.warning("Skipping endpoint of Elasticsearch at URL " + cluster.getUrl() + ": " + failure);
+			statistics.recordFailure(failure);
+		}
+
+		// the rates need the counts of the cluster and of the nodes, otherwise the counts of the nodes
+		// are kept and the next execution computes the rates over both intervals
+		if(measures.isRetrieved(ENDPOINT_CLUSTER_STATS) && measures.isRetrieved(ENDPOINT_NODE_STATS)) {
+			measures.nodeRates = cluster.getNodeCounters().update(measures.nodeCounts, System.currentTimeMillis());
+		}
+		if(!measures.ingestCounts.isEmpty()) {
+			extractIngestRates(cluster.getIngestCounters().update(measures.ingestCounts, System.currentTimeMillis()), measures);
+		}
+		if(!measures.cacheCounts.isEmpty()) {
+			extractCacheRates(cluster.getCacheCounters().update(measures.cacheCounts, System.currentTimeMillis()), measures);
+		}
+		extractFieldData(cluster.getFieldData().getFields(), measures);
+
+		return measures;
+	}
+
+	/**
+	 * Set the value of each measure to the total over all clusters, the values of the
+	 * single clusters were written as dynamic measure "Cluster" already.
+	 */
+	private void writeTotals(MonitorEnvironment env, ClusterTotals totals) {
+		for(Pair<String, String> measure : totals.getMeasures()) {
+			final double value;
+			switch (getFold(measure.getRight())) {
+				case AVERAGE:
+					value = totals.getAverage(measure);
+					break;
+				case MAXIMUM:
+					value = totals.getMax(measure);
+					break;
+				default:
+					value = totals.getSum(measure);
+					break;
+			}
+			for(MonitorMeasure monitorMeasure : env.getMonitorMeasures(measure.getLeft(), measure.getRight())) {
+				monitorMeasure.setValue(value);
+				statistics.incMeasuresWritten();
+			}
+		}
+	}
+
+	/**
+	 * @return How the values of the measure are folded, over the clusters as well as over the
+	 * 			keys which are not written as dynamic measure, only additive values are summed up.
+	 */
+	static CardinalityGuard.Fold getFold(String name) {
+		if(AVERAGED_TOTALS.contains(name)) {
+			return CardinalityGuard.Fold.AVERAGE;
+		}
+		// the sampled heap usage is reported for the fullest node
+		if(MAXIMUM_TOTALS.contains(name) || name.startsWith(MSR_HEAP_USED_PERCENT)) {
+			return CardinalityGuard.Fold.MAXIMUM;
+		}
+		return CardinalityGuard.Fold.SUM;
+	}
+
+	/**
+	 * Write all the measures of the cluster as well as the measures derived from
+	 * the counts of documents to the Dynatrace measure interface.
+	 */
+	void writeMeasures(MonitorEnvironment env, ClusterMeasures measures) {
+		writeMeasures(env, measures, null);
+	}
+
+	/**
+	 * The measures of endpoints which were skipped are not written at all, so they do
+	 * not show up as 0.
+	 *
+	 * @param totals Null if only one cluster is monitored, otherwise the measures are
+	 * 				 written for the current cluster of the totals.
+	 */
+	private void writeMeasures(MonitorEnvironment env, ClusterMeasures measures, ClusterTotals totals) {
+		if(measures.isRetrieved(ENDPOINT_CLUSTER_HEALTH)) {
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_NODE_COUNT, env, measures.nodeCount, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_DATA_NODE_COUNT, env, measures.dataNodeCount, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_ACTIVE_PRIMARY_SHARDS, env, measures.activePrimaryShards, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_ACTIVE_SHARDS, env, measures.activeShards, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_ACTIVE_SHARDS_PERCENT, env, measures.activeShardsPercent, totals);
+
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_RELOCATING_SHARDS, env, measures.relocatingShards, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_INITIALIZING_SHARDS, env, measures.initializingShards, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_UNASSIGNED_SHARDS, env, measures.unassignedShards, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_DELAYED_UNASSIGNED_SHARDS, env, measures.delayedUnassignedShards, totals);
+		}
+
+		// collected from the node info together with the node statistics
+		if(measures.isRetrieved(ENDPOINT_NODE_INFO) && measures.isRetrieved(ENDPOINT_NODE_STATS)) {
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_MEM_INIT_HEAP, env, measures.initHeap, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_MEM_MAX_HEAP, env, measures.maxHeap, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_MEM_INIT_NON_HEAP, env, measures.initNonHeap, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_MEM_MAX_NON_HEAP, env, measures.maxNonHeap, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_MEM_MAX_DIRECT, env, measures.maxDirect, totals);
+		}
+
+		if(measures.isRetrieved(ENDPOINT_CLUSTER_STATS)) {
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_INDEX_COUNT, env, measures.indexCount, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_SHARD_COUNT, env, measures.shardsPerState, totals);
+
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_DOCUMENT_COUNT, env, measures.documentCount.getBaseMeasure(), totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_DELETED_COUNT, env, measures.deletedCount.getBaseMeasure(), totals);
+
+			// computed from the counts per node if possible, so a reset on one node does not hide the others
+			NodeCounters.Rates rates = measures.nodeRates;
+			Measure docsPerSecond = rates != null && rates.hasDocuments() ?
+					new Measure(rates.getDocumentsPerSecond(measures.documentCount.getValue())) :
+					getClusterRate(measures.documentCount);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_DOCUMENT_COUNT_PER_SECOND, env, docsPerSecond, totals);
+
+			Measure deletesPerSecond = rates != null && rates.hasDeleted() ?
+					new Measure(rates.getDeletedPerSecond(measures.deletedCount.getValue())) :
+					getClusterRate(measures.deletedCount);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_DELETED_COUNT_PER_SECOND, env, deletesPerSecond, totals);
+		}
+
+		if(measures.isRetrieved(ENDPOINT_NODE_STATS)) {
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_STORE_SIZE, env, measures.storeSizePerNode, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_STORE_THROTTLE_TIME, env, measures.storeThrottleTimePerNode, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_INDEXING_THROTTLE_TIME, env, measures.indexingThrottleTimePerNode, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_INDEXING_CURRENT, env, measures.indexingCurrentPerNode, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_DELETE_CURRENT, env, measures.deleteCurrentPerNode, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_QUERY_CURRENT, env, measures.queryCurrentPerNode, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_FETCH_CURRENT, env, measures.fetchCurrentPerNode, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_SCROLL_CURRENT, env, measures.scrollCurrentPerNode, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_QUERY_CACHE_SIZE, env, measures.queryCacheSizePerNode, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_FIELD_DATA_SIZE, env, measures.fieldDataSizePerNode, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_PERCOLATE_SIZE, env, measures.percolateSizePerNode, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_TRANSLOG_SIZE, env, measures.translogSizePerNode, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_REQUEST_CACHE_SIZE, env, measures.requestCacheSizePerNode, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_RECOVERY_THROTTLE_TIME, env, measures.recoveryThrottleTimePerNode, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_RECOVERY_AS_SOURCE, env, measures.recoveryAsSourcePerNode, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_RECOVERY_AS_TARGET, env, measures.recoveryAsTargetPerNode, totals);
+
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_FILE_DESCRIPTOR_LIMIT, env, measures.fileDescLimitPerNode, totals);
 		}
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_DOCUMENT_COUNT_PER_SECOND, env, docsPerSecond);
 
+		if(measures.isRetrieved(ENDPOINT_CLUSTER_STATS)) {
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_FIELD_DATA_SIZE, env, measures.fieldDataSize, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_FIELD_DATA_EVICTIONS, env, measures.fieldDataEvictions, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_QUERY_CACHE_SIZE, env, measures.queryCachePerState, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_COMPLETION_SIZE, env, measures.completionSize, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_SEGMENT_COUNT, env, measures.segmentCount, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_SEGMENT_SIZE, env, measures.segmentSizePerState, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_FILE_DESCRIPTOR_COUNT, env, measures.fileDescPerStat, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_FILE_SYSTEM_SIZE, env, measures.fileSystemPerStat, totals);
+			writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_PERCOLATE_COUNT, env, measures.percolatePerState, totals);
+		}
+
+		if(measures.indexPatterns) {
+			writeMeasure(METRIC_GROUP_INDEX_PATTERNS, MSR_DOCUMENT_COUNT, env, measures.documentCountPerPattern, totals);
+			writeMeasure(METRIC_GROUP_INDEX_PATTERNS, MSR_STORE_SIZE, env, measures.storeSizePerPattern, totals);
+			if(measures.indexPatternRates) {
+				writeMeasure(METRIC_GROUP_INDEX_PATTERNS, MSR_INDEXING_RATE, env, measures.indexingRatePerPattern, totals);
+				writeMeasure(METRIC_GROUP_INDEX_PATTERNS, MSR_SEARCH_RATE, env, measures.searchRatePerPattern, totals);
+			}
+		}
+
+		if(measures.ingest) {
+			writeMeasure(METRIC_GROUP_INGEST, MSR_INGEST_RATE, env, measures.ingestRatePerPipeline, totals);
+			writeMeasure(METRIC_GROUP_INGEST, MSR_INGEST_FAILURE_RATE, env, measures.ingestFailureRatePerPipeline, totals);
+			writeMeasure(METRIC_GROUP_INGEST, MSR_INGEST_TIME_PER_DOCUMENT, env, measures.ingestTimePerPipeline, totals);
+			writeMeasure(METRIC_GROUP_INGEST, MSR_INGEST_NODE_RATE, env, measures.ingestRatePerNode, totals);
+			writeMeasure(METRIC_GROUP_INGEST, MSR_INGEST_NODE_FAILURE_RATE, env, measures.ingestFailureRatePerNode, totals);
+			writeMeasure(METRIC_GROUP_INGEST, MSR_INGEST_NODE_TIME_PER_DOCUMENT, env, measures.ingestTimePerNode, totals);
+		}
+
+		if(measures.caches) {
+			if(measures.queryCacheLookups) {
+				writeMeasure(METRIC_GROUP_CACHES, MSR_QUERY_CACHE_HIT_RATIO, env, measures.queryCacheHitRatioPerNode, totals);
+			}
+			writeMeasure(METRIC_GROUP_CACHES, MSR_QUERY_CACHE_EVICTION_RATE, env, measures.queryCacheEvictionRatePerNode, totals);
+			if(measures.requestCacheLookups) {
+				writeMeasure(METRIC_GROUP_CACHES, MSR_REQUEST_CACHE_HIT_RATIO, env, measures.requestCacheHitRatioPerNode, totals);
+			}
+			writeMeasure(METRIC_GROUP_CACHES, MSR_REQUEST_CACHE_EVICTION_RATE, env, measures.requestCacheEvictionRatePerNode, totals);
+			writeMeasure(METRIC_GROUP_CACHES, MSR_FIELD_DATA_EVICTION_RATE, env, measures.fieldDataEvictionRatePerNode, totals);
+		}
+
+		if(measures.fieldData) {
+			writeMeasure(METRIC_GROUP_CACHES, MSR_FIELD_DATA_FIELD_SIZE, env, measures.fieldDataSizePerField, totals);
+		}
+
+		if(measures.isRetrieved(ENDPOINT_NODE_STATS)) {
+			writeNodeGauge(MSR_PROCESS_CPU_PERCENT, MSR_PROCESS_CPU_PERCENT_MAX, env,
+					measures.processCpuPercentPerNode, measures.processCpuPercentMax, totals);
+			writeNodeGauge(MSR_OS_CPU_PERCENT, MSR_OS_CPU_PERCENT_MAX, env,
+					measures.osCpuPercentPerNode, measures.osCpuPercentMax, totals);
+			writeNodeGauge(MSR_LOAD_AVERAGE_1M, MSR_LOAD_AVERAGE_1M_MAX, env,
+					measures.loadAverage1mPerNode, measures.loadAverage1mMax, totals);
+			writeNodeGauge(MSR_LOAD_AVERAGE_5M, MSR_LOAD_AVERAGE_5M_MAX, env,
+					measures.loadAverage5mPerNode, measures.loadAverage5mMax, totals);
+			writeNodeGauge(MSR_LOAD_AVERAGE_15M, MSR_LOAD_AVERAGE_15M_MAX, env,
+					measures.loadAverage15mPerNode, measures.loadAverage15mMax, totals);
+			writeNodeGauge(MSR_OS_MEMORY_USED_PERCENT, MSR_OS_MEMORY_USED_PERCENT_MAX, env,
+					measures.osMemoryUsedPercentPerNode, measures.osMemoryUsedPercentMax, totals);
+			writeNodeGauge(MSR_SWAP_USED, MSR_SWAP_USED_MAX, env,
+					measures.swapUsedPerNode, measures.swapUsedMax, totals);
+		}
+	}
+
+	/**
+	 * The rate from the count of the whole cluster, used until the counts per node are
+	 * available, i.e. in the first execution or for versions which do not report them.
+	 */
+	private static Measure getClusterRate(DerivedMeasure count) {
 		// this should not be reported as negative number if documents were removed,
 		// e.g. when whole indexes are removed
-		Measure deletesPerSecond = deletedCount.getDerivedMeasure();
-		if(deletesPerSecond.getValue() < 0) {
-			deletesPerSecond.setValue(0);
-		}
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_DELETED_COUNT_PER_SECOND, env, deletesPerSecond);
-
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_STORE_SIZE, env, storeSizePerNode);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_STORE_THROTTLE_TIME, env, storeThrottleTimePerNode);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_INDEXING_THROTTLE_TIME, env, indexingThrottleTimePerNode);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_INDEXING_CURRENT, env, indexingCurrentPerNode);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_DELETE_CURRENT, env, deleteCurrentPerNode);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_QUERY_CURRENT, env, queryCurrentPerNode);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_FETCH_CURRENT, env, fetchCurrentPerNode);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_SCROLL_CURRENT, env, scrollCurrentPerNode);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_QUERY_CACHE_SIZE, env, queryCacheSizePerNode);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_FIELD_DATA_SIZE, env, fieldDataSizePerNode);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_PERCOLATE_SIZE, env, percolateSizePerNode);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_TRANSLOG_SIZE, env, translogSizePerNode);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_REQUEST_CACHE_SIZE, env, requestCacheSizePerNode);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_RECOVERY_THROTTLE_TIME, env, recoveryThrottleTimePerNode);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_RECOVERY_AS_SOURCE, env, recoveryAsSourcePerNode);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_RECOVERY_AS_TARGET, env, recoveryAsTargetPerNode);
-
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_FIELD_DATA_SIZE, env, fieldDataSize);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_FIELD_DATA_EVICTIONS, env, fieldDataEvictions);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_QUERY_CACHE_SIZE, env, queryCachePerState);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_COMPLETION_SIZE, env, completionSize);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_SEGMENT_COUNT, env, segmentCount);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_SEGMENT_SIZE, env, segmentSizePerState);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_FILE_DESCRIPTOR_COUNT, env, fileDescPerStat);
-        writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_FILE_DESCRIPTOR_LIMIT, env, fileDescLimitPerNode);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_FILE_SYSTEM_SIZE, env, fileSystemPerStat);
-		writeMeasure(METRIC_GROUP_ELASTICSEARCH, MSR_PERCOLATE_COUNT, env, percolatePerState);
+		Measure rate = count.getDerivedMeasure();
+		if(rate.getValue() < 0) {
+			rate.setValue(0);
+		}
+		return rate;
+	}
+
+	/**
+	 * Overridden to replay recorded responses, see {@link ResponseRecorder}.
+	 */
+	HttpEngine createEngine() throws IOException {
+		// the connections are kept open across executions, the blocking engine sends the requests to one
+		// cluster one after the other, the non-blocking engine sends the requests of one poll together
+		// the background sampler uses another connection so it does not wait for the poll of the cluster
+		int endpoints = ENDPOINT_COUNT + (indexPatterns != null ? 1 : 0) + (fieldDataInterval > 0 ? 1 : 0);
+		int connectionsPerCluster = (nonBlockingHttp ? endpoints : 1) + (samplingInterval > 0 ? 1 : 0);
+		if(nonBlockingHttp) {
+			return new AsyncHttpEngine(user, password, (int) timeout, connectionsPerCluster, clusters.size(), tls);
+		}
+		return new BlockingHttpEngine(user, password, (int) timeout, connectionsPerCluster, clusters.size(), tls);
+	}
+
+	/**
+	 * Fetch and parse the JSON response of the given endpoint and record how long this took.
+	 *
+	 * @param endpoint The endpoint without metric selectors, used when reporting the statistics.
+	 * @param path The actual path that is requested, including metric selectors.
+	 */
+	private JsonNode getJson(MonitoredCluster cluster, CycleStatistics statistics, String endpoint, String path) throws IOException {
+		return receiveJson(cluster, statistics, endpoint, sendRequest(cluster, path));
+	}
+
+	/**
+	 * Start the request for the given path, its response is read via {@link #receiveJson}.
+	 */
+	private HttpEngine.Exchange sendRequest(MonitoredCluster cluster, String path) {
+		HttpGet httpGet = new HttpGet(cluster.getUrl() + path);
+
+		// allows to abort the request if the cluster does not respond in time
+		cluster.addRequest(httpGet);
+
+		HttpEngine.Exchange exchange;
+		if(snapshotMaxAge > 0) {
+			// other monitors of the same cluster may have retrieved or requested it already
+			exchange = SnapshotCache.getShared().send(engine, httpGet, user, password, snapshotMaxAge);
+		} else {
+			exchange = engine.send(httpGet);
+		}
+
+		ResponseRecorder recorder = ResponseRecorder.getShared();
+		return recorder == null ? exchange : recorder.wrap(httpGet.getURI(), exchange);
+	}
+
+	/**
+	 * Wait for the response of the request and parse it, the body is parsed from the
+	 * received bytes directly.
+	 *
+	 * @param endpoint The endpoint without metric selectors, used when reporting the statistics.
+	 */
+	private JsonNode receiveJson(MonitoredCluster cluster, CycleStatistics statistics, String endpoint, HttpEngine.Exchange exchange) throws IOException {
+		byte[] json = receiveBody(cluster, endpoint, exchange);
+		long fetched = System.nanoTime();
+		JsonNode node = mapper.readTree(json);
+
+		statistics.recordRequest(endpoint, exchange.getStatusCode(), exchange.getRequestNanos(), json.length);
+		statistics.recordParse(endpoint, System.nanoTime() - fetched);
+
+		return node;
+	}
+
+	private byte[] receiveBody(MonitoredCluster cluster, String endpoint, HttpEngine.Exchange exchange) throws IOException {
+		// all requests of one poll share the timeout, so each request only gets the remaining time
+		long remaining = 0;
+		long pollStart = cluster.getPollStartNanos();
+		if(timeout > 0 && pollStart != 0) {
+			remaining = timeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pollStart);
+			if(remaining <= 0) {
+				throw new InterruptedIOException("Skipped " + endpoint + " as polling Elasticsearch at URL " + cluster.getUrl() +
+						" did not finish within " + timeout + "ms");
+			}
+		}
+
+		return exchange.getBody(remaining);
+	}
+
+	/**
+	 * Read the version from the root endpoint of the cluster and select the matching adapter.
+	 *
+	 * @return The adapter for the version of the cluster, {@link VersionAdapter#DEFAULT} if the
+	 * 		response does not contain a version or null if the cluster could not be queried.
+	 */
+	private VersionAdapter probeVersion(MonitoredCluster cluster, CycleStatistics statistics) {
+		try {
+			return selectVersion(cluster, getJson(cluster, statistics, "/", "/"));
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Could not determine version of Elasticsearch at URL: " + cluster.getUrl() + ": " + e);
+			return null;
+		}
+	}
+
+	private static VersionAdapter selectVersion(MonitoredCluster cluster, JsonNode root) {
+		JsonNode version = root.path("version").get("number");
+		VersionAdapter versionAdapter = VersionAdapter.forVersion(version == null ? null : version.asText());
+		log.info("Using " + versionAdapter + " for Elasticsearch at URL: " + cluster.getUrl());
+		return versionAdapter;
+	}
+
+	private static long currentMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
 	}
 
 	/* does not work reliably and seems to be a costly operation
@@ -432,30 +1466,27 @@ public class ElasticsearchMonitor implements Monitor {
 		}
 	}*/
 
-	private void retrieveClusterState(CloseableHttpClient client,
-                                      Measure indexCount, Measure shardsPerState,
-                                      Measure fieldDataSize, Measure fieldDataEvictions, Measure queryCachePerState,
-                                      Measure completionSize, Measure segmentCount, Measure segmentSizePerState,
-                                      Measure fileDescPerStat, Measure fileSystemPerStat, Measure percolatePerState,
-                                      DerivedMeasure documentCount, DerivedMeasure deletedCount) throws IOException {
-		String json = simpleGet(client, url + "/_cluster/stats");
-		JsonNode clusterStats = mapper.readTree(json);
+	private void retrieveClusterState(MonitoredCluster cluster, HttpEngine.Exchange exchange, ClusterMeasures measures, CycleStatistics statistics) throws IOException {
+		JsonNode clusterStats = receiveJson(cluster, statistics, ENDPOINT_CLUSTER_STATS, exchange);
+		extractClusterState(cluster.getVersion(), clusterStats, measures);
+	}
 
+	void extractClusterState(VersionAdapter version, JsonNode clusterStats, ClusterMeasures measures) {
 		JsonNode index = clusterStats.get("indices");
 
-		setValue(indexCount, index, "count");
+		setValue(measures.indexCount, index, "count");
 
 		JsonNode shards = index.get("shards");
 		if(shards != null) {
-			setValue(shardsPerState, shards, "total");
-			addDynamicMeasure(shardsPerState, "primary", shards, "primaries");
-			addDynamicMeasure(shardsPerState, "replicationFactor", shards, "replication");
+			setValue(measures.shardsPerState, shards, "total");
+			addDynamicMeasure(measures.shardsPerState, "primary", shards, "primaries");
+			addDynamicMeasure(measures.shardsPerState, "replicationFactor", shards, "replication");
 		}
 
 		JsonNode docs = index.get("docs");
 		if(docs != null) {
-			setValue(documentCount, docs, "count");
-			setValue(deletedCount, docs, "deleted");
+			setValue(measures.documentCount, docs, "count");
+			setValue(measures.deletedCount, docs, "deleted");
 		}
 
 		/*JsonNode store = index.get("store");
@@ -464,52 +1495,52 @@ public class ElasticsearchMonitor implements Monitor {
 
 		JsonNode fielddata = index.get("fielddata");
 		if(fielddata != null) {
-			setValue(fieldDataSize, fielddata, "memory_size_in_bytes");
-			setValue(fieldDataEvictions, fielddata, "evictions");
+			setValue(measures.fieldDataSize, fielddata, "memory_size_in_bytes");
+			setValue(measures.fieldDataEvictions, fielddata, "evictions");
 		}
 
-		JsonNode query_cache = index.get("query_cache");
+		JsonNode query_cache = index.get(version.getQueryCacheSection());
 		if(query_cache != null) {
-			setValue(queryCachePerState, query_cache, "memory_size_in_bytes");
-			addDynamicMeasure(queryCachePerState, query_cache, "total_count");
-			addDynamicMeasure(queryCachePerState, query_cache, "hit_count");
-			addDynamicMeasure(queryCachePerState, query_cache, "miss_count");
-			addDynamicMeasure(queryCachePerState, query_cache, "cache_size");
-			addDynamicMeasure(queryCachePerState, query_cache, "cache_count");
-			addDynamicMeasure(queryCachePerState, query_cache, "evictions");
+			setValue(measures.queryCachePerState, query_cache, "memory_size_in_bytes");
+			addDynamicMeasure(measures.queryCachePerState, query_cache, "total_count");
+			addDynamicMeasure(measures.queryCachePerState, query_cache, "hit_count");
+			addDynamicMeasure(measures.queryCachePerState, query_cache, "miss_count");
+			addDynamicMeasure(measures.queryCachePerState, query_cache, "cache_size");
+			addDynamicMeasure(measures.queryCachePerState, query_cache, "cache_count");
+			addDynamicMeasure(measures.queryCachePerState, query_cache, "evictions");
 		}
 
 		JsonNode completion = index.get("completion");
 		if(completion != null) {
-			setValue(completionSize, completion, "size_in_bytes");
+			setValue(measures.completionSize, completion, "size_in_bytes");
 		}
 
 		JsonNode segments = index.get("segments");
 		if(segments != null) {
-			setValue(segmentCount, segments, "count");
-
-			addDynamicMeasure(segmentSizePerState, segments, "count");
-			addDynamicMeasure(segmentSizePerState, segments, "memory_in_bytes");
-			addDynamicMeasure(segmentSizePerState, segments, "terms_memory_in_bytes");
-			addDynamicMeasure(segmentSizePerState, segments, "stored_fields_memory_in_bytes");
-			addDynamicMeasure(segmentSizePerState, segments, "term_vectors_memory_in_bytes");
-			addDynamicMeasure(segmentSizePerState, segments, "norms_memory_in_bytes");
-			addDynamicMeasure(segmentSizePerState, segments, "doc_values_memory_in_bytes");
-			addDynamicMeasure(segmentSizePerState, segments, "index_writer_memory_in_bytes");
-			addDynamicMeasure(segmentSizePerState, segments, "index_writer_max_memory_in_bytes");
-			addDynamicMeasure(segmentSizePerState, segments, "version_map_memory_in_bytes");
-			addDynamicMeasure(segmentSizePerState, segments, "fixed_bit_set_memory_in_bytes");
-		}
-
-		JsonNode percolate = index.get("percolate");
+			setValue(measures.segmentCount, segments, "count");
+
+			addDynamicMeasure(measures.segmentSizePerState, segments, "count");
+			addDynamicMeasure(measures.segmentSizePerState, segments, "memory_in_bytes");
+			addDynamicMeasure(measures.segmentSizePerState, segments, "terms_memory_in_bytes");
+			addDynamicMeasure(measures.segmentSizePerState, segments, "stored_fields_memory_in_bytes");
+			addDynamicMeasure(measures.segmentSizePerState, segments, "term_vectors_memory_in_bytes");
+			addDynamicMeasure(measures.segmentSizePerState, segments, "norms_memory_in_bytes");
+			addDynamicMeasure(measures.segmentSizePerState, segments, "doc_values_memory_in_bytes");
+			addDynamicMeasure(measures.segmentSizePerState, segments, "index_writer_memory_in_bytes");
+			addDynamicMeasure(measures.segmentSizePerState, segments, "index_writer_max_memory_in_bytes");
+			addDynamicMeasure(measures.segmentSizePerState, segments, "version_map_memory_in_bytes");
+			addDynamicMeasure(measures.segmentSizePerState, segments, "fixed_bit_set_memory_in_bytes");
+		}
+
+		JsonNode percolate = version.hasPercolate() ? index.get("percolate") : null;
 		if(percolate != null) {
-			setValue(percolatePerState, percolate, "current");
-			addDynamicMeasure(percolatePerState, percolate, "total");
-			addDynamicMeasure(percolatePerState, percolate, "time_in_millis");
-			addDynamicMeasure(percolatePerState, percolate, "current");
-			addDynamicMeasure(percolatePerState, percolate, "memory_size_in_bytes");
-			// not a double: addDynamicMeasure(percolatePerState, percolate, "memory_size");
-			addDynamicMeasure(percolatePerState, percolate, "queries");
+			setValue(measures.percolatePerState, percolate, "current");
+			addDynamicMeasure(measures.percolatePerState, percolate, "total");
+			addDynamicMeasure(measures.percolatePerState, percolate, "time_in_millis");
+			addDynamicMeasure(measures.percolatePerState, percolate, "current");
+			addDynamicMeasure(measures.percolatePerState, percolate, "memory_size_in_bytes");
+			// not a double: addDynamicMeasure(measures.percolatePerState, percolate, "memory_size");
+			addDynamicMeasure(measures.percolatePerState, percolate, "queries");
 		}
 
 		JsonNode nodes = clusterStats.get("nodes");
@@ -517,33 +1548,79 @@ public class ElasticsearchMonitor implements Monitor {
 			JsonNode process = nodes.get("process");
 			if(process != null) {
 				JsonNode fileDesc = process.get("open_file_descriptors");
-				setValue(fileDescPerStat, fileDesc, "max");
-				addDynamicMeasure(fileDescPerStat, fileDesc, "min");
-				addDynamicMeasure(fileDescPerStat, fileDesc, "max");
-				addDynamicMeasure(fileDescPerStat, fileDesc, "avg");
+				setValue(measures.fileDescPerStat, fileDesc, "max");
+				addDynamicMeasure(measures.fileDescPerStat, fileDesc, "min");
+				addDynamicMeasure(measures.fileDescPerStat, fileDesc, "max");
+				addDynamicMeasure(measures.fileDescPerStat, fileDesc, "avg");
 			}
 
 			JsonNode fs = nodes.get("fs");
 			// this was missing in tests sometimes
 			if (fs != null) {
-                setValue(fileSystemPerStat, fs, "free_in_bytes");
-				addDynamicMeasure(fileSystemPerStat, fs, "total_in_bytes");
-				addDynamicMeasure(fileSystemPerStat, fs, "free_in_bytes");
-				addDynamicMeasure(fileSystemPerStat, fs, "available_in_bytes");
+                setValue(measures.fileSystemPerStat, fs, "free_in_bytes");
+				addDynamicMeasure(measures.fileSystemPerStat, fs, "total_in_bytes");
+				addDynamicMeasure(measures.fileSystemPerStat, fs, "free_in_bytes");
+				addDynamicMeasure(measures.fileSystemPerStat, fs, "available_in_bytes");
 			}
 		}
 	}
 
-    @SuppressWarnings("unused")
-    private Map<String,String> retrieveNodeHealth(CloseableHttpClient client, Measure initHeap, Measure maxHeap,
-			Measure initNonHeap, Measure maxNonHeap, Measure maxDirect) throws IOException {
-		Map<String,String> nodeIdToName = new HashMap<>();
+    private void retrieveNodeInfo(MonitoredCluster cluster, HttpEngine.Exchange exchange, CycleStatistics statistics) throws IOException {
+		JsonNode nodesInfo = receiveJson(cluster, statistics, ENDPOINT_NODE_INFO, exchange);
+		cluster.getNodeInfo().update(extractNodeInfo(nodesInfo), currentMillis());
+	}
+
+	/**
+	 * Check the cheap signals in the node statistics for changes of the nodes since the node
+	 * info was retrieved: a different number of nodes in the cluster health, nodes which
+	 * joined and nodes which were restarted with the same node-id.
+	 *
+	 * @param nodeCount The number of nodes from the cluster health, -1 if it was not retrieved.
+	 * @param now The current time in milliseconds, from the clock the node info was updated with.
+	 * @return true if the node info needs to be retrieved again.
+	 */
+	static boolean isNodesChanged(JsonNode nodeStats, NodeInfoCache nodeInfo, int nodeCount, long now) {
+		boolean changed = nodeInfo.isStale(now, nodeCount);
+
+		List<String> nodeIds = new ArrayList<>();
+		Iterator<Map.Entry<String, JsonNode>> nodes = nodeStats.path("nodes").fields();
+		while (nodes.hasNext()) {
+			Map.Entry<String, JsonNode> node = nodes.next();
+			nodeIds.add(node.getKey());
+
+			// all nodes are checked, so the counters of all of them are up to date
+			if(nodeInfo.get(node.getKey()) == null) {
+				changed = true;
+			}
+			if(nodeInfo.isRestarted(node.getKey(), getLifetime(node.getValue()))) {
+				changed = true;
+			}
+		}
+		nodeInfo.retainLifetimes(nodeIds);
 
-		String json = simpleGet(client, url + "/_nodes");
-		JsonNode nodeHealth = mapper.readTree(json);
+		return changed;
+	}
+
+	/**
+	 * @return The uptime of the JVM if reported, otherwise the CPU time of the process, both only
+	 * 			decrease when the node is restarted, -1 if neither is available.
+	 */
+	private static long getLifetime(JsonNode node) {
+		JsonNode uptime = node.path("jvm").get("uptime_in_millis");
+		if(uptime != null) {
+			return uptime.asLong(-1);
+		}
+		return node.path("process").path("cpu").path("total_in_millis").asLong(-1);
+	}
+
+	/**
+	 * @return The static information by node-id, reported for each node together with its statistics.
+	 */
+	Map<String, NodeInfoCache.NodeInfo> extractNodeInfo(JsonNode nodesInfo) {
+		Map<String, NodeInfoCache.NodeInfo> nodeInfos = new HashMap<>();
 
-		if(nodeHealth.get("nodes") != null) {
-			Iterator<Map.Entry<String, JsonNode>> nodes = nodeHealth.get("nodes").fields();
+		if(nodesInfo.get("nodes") != null) {
+			Iterator<Map.Entry<String, JsonNode>> nodes = nodesInfo.get("nodes").fields();
 			while (nodes.hasNext()) {
 				Map.Entry<String, JsonNode> node = nodes.next();
 				JsonNode name = node.getValue().get("name");
@@ -553,156 +1630,405 @@ public class ElasticsearchMonitor implements Monitor {
 				} else {
 					nodeName = checkNotNull(name.asText());
 				}
-				nodeIdToName.put(node.getKey(), nodeName);
+				NodeInfoCache.NodeInfo nodeInfo = new NodeInfoCache.NodeInfo(nodeName);
+				nodeInfos.put(node.getKey(), nodeInfo);
 
 				JsonNode jvm = node.getValue().get("jvm");
 				if (jvm != null) {
+					nodeInfo.setStartTime(jvm.path("start_time_in_millis").asLong(0));
+
 					JsonNode mem = jvm.get("mem");
 					if (mem != null) {
-						addValueLong(initHeap, mem, "heap_init_in_bytes");
-						addDynamicMeasureLong(initHeap, nodeName, mem, "heap_init_in_bytes");
-
-						addValueLong(maxHeap, mem, "heap_max_in_bytes");
-						addDynamicMeasureLong(maxHeap, nodeName, mem, "heap_max_in_bytes");
-
-						addValueLong(initNonHeap, mem, "non_heap_init_in_bytes");
-						addDynamicMeasureLong(initNonHeap, nodeName, mem, "non_heap_init_in_bytes");
-
-						addValueLong(maxNonHeap, mem, "non_heap_max_in_bytes");
-						addDynamicMeasureLong(maxNonHeap, nodeName, mem, "non_heap_max_in_bytes");
-
-						addValueLong(maxDirect, mem, "direct_max_in_bytes");
-						addDynamicMeasureLong(maxDirect, nodeName, mem, "direct_max_in_bytes");
+						nodeInfo.setInitHeap(mem.path("heap_init_in_bytes").asLong(-1));
+						nodeInfo.setMaxHeap(mem.path("heap_max_in_bytes").asLong(-1));
+						nodeInfo.setInitNonHeap(mem.path("non_heap_init_in_bytes").asLong(-1));
+						nodeInfo.setMaxNonHeap(mem.path("non_heap_max_in_bytes").asLong(-1));
+						nodeInfo.setMaxDirect(mem.path("direct_max_in_bytes").asLong(-1));
 					}
 				}
 			}
 		}
 
-		return nodeIdToName;
+		return nodeInfos;
 	}
 
-    private void retrieveNodeStats(CloseableHttpClient client, Measure storeSizePerNode, Measure storeThrottleTimePerNode,
-			Measure indexingThrottleTimePerNode, Measure indexingCurrentPerNode, Measure deleteCurrentPerNode,
-			Measure queryCurrentPerNode, Measure fetchCurrentPerNode, Measure scrollCurrentPerNode,
-			Measure queryCacheSizePerNode, Measure fieldDataSizePerNode, Measure percolateSizePerNode,
-			Measure translogSizePerNode, Measure requestCacheSizePerNode, Measure recoveryThrottleTimePerNode,
-			Measure recoveryAsSourcePerNode, Measure recoveryAsTargetPerNode, Measure fileDescLimitPerNode) throws IOException {
-		String json = simpleGet(client, url + "/_nodes/stats");
-		JsonNode nodeHealth = mapper.readTree(json);
-
-		if(nodeHealth.get("nodes") != null) {
-			Iterator<Map.Entry<String, JsonNode>> nodes = nodeHealth.get("nodes").fields();
+	/**
+	 * Collect all per-node measures in one pass over the nodes, i.e. the statistics of
+	 * each node together with its static information from the node info.
+	 */
+	void extractNodeStats(VersionAdapter version, JsonNode nodeStats, NodeInfoCache nodeInfo, ClusterMeasures measures) {
+		if(nodeStats.get("nodes") != null) {
+			Iterator<Map.Entry<String, JsonNode>> nodes = nodeStats.get("nodes").fields();
 			while (nodes.hasNext()) {
 				Map.Entry<String, JsonNode> node = nodes.next();
+				NodeInfoCache.NodeInfo info = nodeInfo.get(node.getKey());
 				JsonNode name = node.getValue().get("name");
 				final String nodeName;
-				if (name == null) {
-					nodeName = "unknown-node";
-				} else {
+				if (name != null) {
 					nodeName = checkNotNull(name.asText());
+				} else if (info != null) {
+					nodeName = info.getName();
+				} else {
+					nodeName = "unknown-node";
+				}
+
+				if (info != null) {
+					if (info.getStartTime() != 0) {
+						measures.getNodeCounts(node.getKey()).setStartTime(info.getStartTime());
+					}
+
+					addNodeValue(measures.initHeap, nodeName, info.getInitHeap());
+					addNodeValue(measures.maxHeap, nodeName, info.getMaxHeap());
+					addNodeValue(measures.initNonHeap, nodeName, info.getInitNonHeap());
+					addNodeValue(measures.maxNonHeap, nodeName, info.getMaxNonHeap());
+					addNodeValue(measures.maxDirect, nodeName, info.getMaxDirect());
+				}
+
+				JsonNode ingest = node.getValue().get("ingest");
+				if (ingest != null) {
+					IngestCounters.extract(node.getKey(), nodeName, ingest, measures.ingestCounts);
+				}
+
+				JsonNode os = node.getValue().get("os");
+				if (os != null) {
+					extractOsStats(nodeName, os, measures);
 				}
 
 				JsonNode process = node.getValue().get("process");
 				if (process != null) {
-					addValueLong(fileDescLimitPerNode, process, "max_file_descriptors");
-					addDynamicMeasureLong(fileDescLimitPerNode, nodeName, process, "max_file_descriptors");
+					addNodeGauge(measures.processCpuPercentPerNode, nodeName, process.path("cpu").get("percent"));
+					addValueLong(measures.fileDescLimitPerNode, process, "max_file_descriptors");
+					addDynamicMeasureLong(measures.fileDescLimitPerNode, nodeName, process, "max_file_descriptors");
 				}
 
 				JsonNode indices = node.getValue().get("indices");
 				if (indices != null) {
+					JsonNode docs = indices.get("docs");
+					if (docs != null) {
+						NodeCounters.Counts counts = measures.getNodeCounts(node.getKey());
+						counts.setDocuments(docs.path("count").asLong(-1));
+						counts.setDeleted(docs.path("deleted").asLong(-1));
+					}
+
 					JsonNode store = indices.get("store");
 					if (store != null) {
-						addValueLong(storeSizePerNode, store, "size_in_bytes");
-						addDynamicMeasureLong(storeSizePerNode, nodeName, store, "size_in_bytes");
+						addValueLong(measures.storeSizePerNode, store, "size_in_bytes");
+						addDynamicMeasureLong(measures.storeSizePerNode, nodeName, store, "size_in_bytes");
 
-						addValueLong(storeThrottleTimePerNode, store, "throttle_time_in_millis");
-						addDynamicMeasureLong(storeThrottleTimePerNode, nodeName, store, "throttle_time_in_millis");
+						addValueLong(measures.storeThrottleTimePerNode, store, "throttle_time_in_millis");
+						addDynamicMeasureLong(measures.storeThrottleTimePerNode, nodeName, store, "throttle_time_in_millis");
 					}
 
 					JsonNode indexing = indices.get("indexing");
 					if (indexing != null) {
-						addValueLong(indexingThrottleTimePerNode, indexing, "throttle_time_in_millis");
-						addDynamicMeasureLong(indexingThrottleTimePerNode, nodeName, indexing, "throttle_time_in_millis");
+						addValueLong(measures.indexingThrottleTimePerNode, indexing, "throttle_time_in_millis");
+						addDynamicMeasureLong(measures.indexingThrottleTimePerNode, nodeName, indexing, "throttle_time_in_millis");
 
-						addValueLong(indexingCurrentPerNode, indexing, "index_current");
-						addDynamicMeasureLong(indexingCurrentPerNode, nodeName, indexing, "index_current");
+						addValueLong(measures.indexingCurrentPerNode, indexing, "index_current");
+						addDynamicMeasureLong(measures.indexingCurrentPerNode, nodeName, indexing, "index_current");
 
-						addValueLong(deleteCurrentPerNode, indexing, "delete_current");
-						addDynamicMeasureLong(deleteCurrentPerNode, nodeName, indexing, "delete_current");
+						addValueLong(measures.deleteCurrentPerNode, indexing, "delete_current");
+						addDynamicMeasureLong(measures.deleteCurrentPerNode, nodeName, indexing, "delete_current");
 					}
 
 					JsonNode search = indices.get("search");
 					if (search != null) {
-						addValueLong(queryCurrentPerNode, search, "query_current");
-						addDynamicMeasureLong(queryCurrentPerNode, nodeName, search, "query_current");
+						addValueLong(measures.queryCurrentPerNode, search, "query_current");
+						addDynamicMeasureLong(measures.queryCurrentPerNode, nodeName, search, "query_current");
 
-						addValueLong(fetchCurrentPerNode, search, "fetch_current");
-						addDynamicMeasureLong(fetchCurrentPerNode, nodeName, search, "fetch_current");
+						addValueLong(measures.fetchCurrentPerNode, search, "fetch_current");
+						addDynamicMeasureLong(measures.fetchCurrentPerNode, nodeName, search, "fetch_current");
 
-						addValueLong(scrollCurrentPerNode, search, "scroll_current");
-						addDynamicMeasureLong(scrollCurrentPerNode, nodeName, search, "scroll_current");
+						addValueLong(measures.scrollCurrentPerNode, search, "scroll_current");
+						addDynamicMeasureLong(measures.scrollCurrentPerNode, nodeName, search, "scroll_current");
 					}
 
-					JsonNode queryCache = indices.get("query_cache");
+					JsonNode queryCache = indices.get(version.getQueryCacheSection());
 					if (queryCache != null) {
-						addValueLong(queryCacheSizePerNode, queryCache, "memory_size_in_bytes");
-						addDynamicMeasureLong(queryCacheSizePerNode, nodeName, queryCache, "memory_size_in_bytes");
+						addValueLong(measures.queryCacheSizePerNode, queryCache, "memory_size_in_bytes");
+						addDynamicMeasureLong(measures.queryCacheSizePerNode, nodeName, queryCache, "memory_size_in_bytes");
+						CacheCounters.extract(node.getKey(), nodeName, CacheCounters.QUERY_CACHE, queryCache, measures.cacheCounts);
 					}
 
 					JsonNode fieldData = indices.get("fielddata");
 					if (fieldData != null) {
-						addValueLong(fieldDataSizePerNode, fieldData, "memory_size_in_bytes");
-						addDynamicMeasureLong(fieldDataSizePerNode, nodeName, fieldData, "memory_size_in_bytes");
+						addValueLong(measures.fieldDataSizePerNode, fieldData, "memory_size_in_bytes");
+						addDynamicMeasureLong(measures.fieldDataSizePerNode, nodeName, fieldData, "memory_size_in_bytes");
+						CacheCounters.extract(node.getKey(), nodeName, CacheCounters.FIELD_DATA, fieldData, measures.cacheCounts);
 					}
 
-					JsonNode percolate = indices.get("percolate");
+					JsonNode percolate = version.hasPercolate() ? indices.get("percolate") : null;
 					if (percolate != null) {
-						addValueLong(percolateSizePerNode, percolate, "memory_size_in_bytes");
-						addDynamicMeasureLong(percolateSizePerNode, nodeName, percolate, "memory_size_in_bytes");
+						addValueLong(measures.percolateSizePerNode, percolate, "memory_size_in_bytes");
+						addDynamicMeasureLong(measures.percolateSizePerNode, nodeName, percolate, "memory_size_in_bytes");
 					}
 
 					JsonNode translog = indices.get("translog");
 					if (translog != null) {
-						addValueLong(translogSizePerNode, translog, "size_in_bytes");
-						addDynamicMeasureLong(translogSizePerNode, nodeName, translog, "size_in_bytes");
+						addValueLong(measures.translogSizePerNode, translog, "size_in_bytes");
+						addDynamicMeasureLong(measures.translogSizePerNode, nodeName, translog, "size_in_bytes");
 					}
 
-					JsonNode requestCache = indices.get("request_cache");
+					JsonNode requestCache = version.getRequestCacheSection() == null ? null : indices.get(version.getRequestCacheSection());
 					if (requestCache != null) {
-						addValueLong(requestCacheSizePerNode, requestCache, "memory_size_in_bytes");
-						addDynamicMeasureLong(requestCacheSizePerNode, nodeName, requestCache, "memory_size_in_bytes");
+						addValueLong(measures.requestCacheSizePerNode, requestCache, "memory_size_in_bytes");
+						addDynamicMeasureLong(measures.requestCacheSizePerNode, nodeName, requestCache, "memory_size_in_bytes");
+						CacheCounters.extract(node.getKey(), nodeName, CacheCounters.REQUEST_CACHE, requestCache, measures.cacheCounts);
 					}
 
 					JsonNode recovery = indices.get("recovery");
 					if (recovery != null) {
-						addValueLong(recoveryThrottleTimePerNode, recovery, "throttle_time_in_millis");
-						addDynamicMeasureLong(recoveryThrottleTimePerNode, nodeName, recovery, "throttle_time_in_millis");
+						addValueLong(measures.recoveryThrottleTimePerNode, recovery, "throttle_time_in_millis");
+						addDynamicMeasureLong(measures.recoveryThrottleTimePerNode, nodeName, recovery, "throttle_time_in_millis");
 
-						addValueLong(recoveryAsSourcePerNode, recovery, "current_as_source");
-						addDynamicMeasureLong(recoveryAsSourcePerNode, nodeName, recovery, "current_as_source");
+						addValueLong(measures.recoveryAsSourcePerNode, recovery, "current_as_source");
+						addDynamicMeasureLong(measures.recoveryAsSourcePerNode, nodeName, recovery, "current_as_source");
 
-						addValueLong(recoveryAsTargetPerNode, recovery, "current_as_target");
-						addDynamicMeasureLong(recoveryAsTargetPerNode, nodeName, recovery, "current_as_target");
+						addValueLong(measures.recoveryAsTargetPerNode, recovery, "current_as_target");
+						addDynamicMeasureLong(measures.recoveryAsTargetPerNode, nodeName, recovery, "current_as_target");
 					}
 				}
 			}
+
+			setAverageAndMax(measures.processCpuPercentPerNode, measures.processCpuPercentMax);
+			setAverageAndMax(measures.osCpuPercentPerNode, measures.osCpuPercentMax);
+			setAverageAndMax(measures.loadAverage1mPerNode, measures.loadAverage1mMax);
+			setAverageAndMax(measures.loadAverage5mPerNode, measures.loadAverage5mMax);
+			setAverageAndMax(measures.loadAverage15mPerNode, measures.loadAverage15mMax);
+			setAverageAndMax(measures.osMemoryUsedPercentPerNode, measures.osMemoryUsedPercentMax);
+			setAverageAndMax(measures.swapUsedPerNode, measures.swapUsedMax);
+		}
+	}
+
+	/**
+	 * The shape of the OS statistics changed between the versions: the CPU usage is
+	 * "cpu.percent" since 5.0, "cpu_percent" in 2.x and "cpu.usage" in 1.x, the load
+	 * averages are an object in "cpu" since 5.0, only the one of the last minute in
+	 * 2.x and an array in 1.x.
+	 */
+	private static void extractOsStats(String nodeName, JsonNode os, ClusterMeasures measures) {
+		JsonNode cpu = os.path("cpu");
+		JsonNode cpuPercent = cpu.get("percent");
+		if(cpuPercent == null) {
+			cpuPercent = os.has("cpu_percent") ? os.get("cpu_percent") : cpu.get("usage");
+		}
+		addNodeGauge(measures.osCpuPercentPerNode, nodeName, cpuPercent);
+
+		JsonNode load = cpu.has("load_average") ? cpu.get("load_average") : os.get("load_average");
+		if(load != null && load.isArray()) {
+			addNodeGauge(measures.loadAverage1mPerNode, nodeName, load.get(0));
+			addNodeGauge(measures.loadAverage5mPerNode, nodeName, load.get(1));
+			addNodeGauge(measures.loadAverage15mPerNode, nodeName, load.get(2));
+		} else if(load != null && load.isObject()) {
+			addNodeGauge(measures.loadAverage1mPerNode, nodeName, load.get("1m"));
+			addNodeGauge(measures.loadAverage5mPerNode, nodeName, load.get("5m"));
+			addNodeGauge(measures.loadAverage15mPerNode, nodeName, load.get("15m"));
+		} else {
+			addNodeGauge(measures.loadAverage1mPerNode, nodeName, load);
+		}
+
+		addNodeGauge(measures.osMemoryUsedPercentPerNode, nodeName, os.path("mem").get("used_percent"));
+		addNodeGauge(measures.swapUsedPerNode, nodeName, os.path("swap").get("used_in_bytes"));
+	}
+
+	/**
+	 * Add the value of the node if it was reported, e.g. Windows reports -1 for the load average.
+	 */
+	private static void addNodeGauge(Measure measure, String nodeName, JsonNode value) {
+		if(value != null && value.isNumber() && value.asDouble() >= 0) {
+			measure.addDynamicMeasure(nodeName, value.asDouble());
 		}
 	}
 
-    private void retrieveClusterHealth(CloseableHttpClient client, Measure nodeCount, Measure dataNodeCount, Measure activePrimaryShards, Measure activeShardsPercent, Measure activeShards,
-			Measure relocatingShards, Measure initializingShards, Measure unassignedShards, Measure delayedUnassignedShards) throws IOException {
-		String json = simpleGet(client, url + "/_cluster/health");
-		JsonNode clusterHealth = mapper.readTree(json);
+	/**
+	 * Set the value of the measure to the average of the values of its nodes and the
+	 * value of the other measure to their maximum.
+	 */
+	static void setAverageAndMax(Measure perNode, Measure max) {
+		Map<String, Double> nodes = perNode.getDynamicMeasures();
+		if(nodes.isEmpty()) {
+			return;
+		}
 
-		setValueLong(nodeCount, clusterHealth, "number_of_nodes");
-		setValueLong(dataNodeCount, clusterHealth, "number_of_data_nodes");
-		setValueLong(activePrimaryShards, clusterHealth, "active_primary_shards");
-		setValue(activeShardsPercent, clusterHealth, "active_shards_percent_as_number");
-		setValueLong(activeShards, clusterHealth, "active_shards");
-		setValueLong(relocatingShards, clusterHealth, "relocating_shards");
-		setValueLong(initializingShards, clusterHealth, "initializing_shards");
-		setValueLong(unassignedShards, clusterHealth, "unassigned_shards");
-		setValueLong(delayedUnassignedShards, clusterHealth, "delayed_unassigned_shards");
+		double sum = 0;
+		double maxValue = Double.NEGATIVE_INFINITY;
+		for(double value : nodes.values()) {
+			sum += value;
+			maxValue = Math.max(maxValue, value);
+		}
+		perNode.setValue(sum / nodes.size());
+		max.setValue(maxValue);
+	}
+
+	/**
+	 * The index statistics are read with a streaming parser, as they can contain thousands
+	 * of indices, only the indices which match one of the index patterns are looked at.
+	 */
+	private void retrieveIndexStats(MonitoredCluster cluster, HttpEngine.Exchange exchange, ClusterMeasures measures, CycleStatistics statistics) throws IOException {
+		byte[] json = receiveBody(cluster, ENDPOINT_INDEX_STATS, exchange);
+		long fetched = System.nanoTime();
+		Map<String, IndexRollups.Counts> counts;
+		try (JsonParser parser = mapper.getFactory().createParser(json)) {
+			counts = IndexRollups.extract(parser, indexPatterns);
+		}
+
+		statistics.recordRequest(ENDPOINT_INDEX_STATS, exchange.getStatusCode(), exchange.getRequestNanos(), json.length);
+		statistics.recordParse(ENDPOINT_INDEX_STATS, System.nanoTime() - fetched);
+
+		extractIndexRollups(cluster.getIndexRollups().update(counts, System.currentTimeMillis()), measures);
+	}
+
+	/**
+	 * The field data statistics are read with a streaming parser, as they contain every
+	 * field of every node.
+	 */
+	private void retrieveFieldData(MonitoredCluster cluster, HttpEngine.Exchange exchange, CycleStatistics statistics) throws IOException {
+		byte[] json = receiveBody(cluster, ENDPOINT_FIELD_DATA, exchange);
+		long fetched = System.nanoTime();
+		Map<String, Long> fields;
+		try (JsonParser parser = mapper.getFactory().createParser(json)) {
+			fields = FieldDataStats.extract(parser);
+		}
+
+		statistics.recordRequest(ENDPOINT_FIELD_DATA, exchange.getStatusCode(), exchange.getRequestNanos(), json.length);
+		statistics.recordParse(ENDPOINT_FIELD_DATA, System.nanoTime() - fetched);
+
+		cluster.getFieldData().update(fields);
+	}
+
+	/**
+	 * @param fields Empty if the field data was not retrieved successfully, nothing is reported then.
+	 */
+	void extractFieldData(Map<String, Long> fields, ClusterMeasures measures) {
+		if(fields.isEmpty()) {
+			return;
+		}
+
+		measures.fieldData = true;
+		long total = 0;
+		for(long bytes : fields.values()) {
+			total += bytes;
+		}
+		measures.fieldDataSizePerField.setValue(total);
+		for(Map.Entry<String, Long> field : FieldDataStats.getLargest(fields, MAX_FIELD_DATA_FIELDS)) {
+			measures.fieldDataSizePerField.addDynamicMeasure(field.getKey(), field.getValue());
+		}
+	}
+
+	/**
+	 * @param rates Null in the first execution, nothing is reported then.
+	 */
+	void extractIngestRates(IngestCounters.Rates rates, ClusterMeasures measures) {
+		if(rates == null) {
+			return;
+		}
+
+		measures.ingest = true;
+		IngestCounters.Rate total = rates.getTotal();
+		measures.ingestRatePerPipeline.setValue(total.getDocumentsPerSecond());
+		measures.ingestFailureRatePerPipeline.setValue(total.getFailedPerSecond());
+		measures.ingestTimePerPipeline.setValue(total.getTimePerDocument());
+		for(Map.Entry<String, IngestCounters.Rate> pipeline : rates.getPipelines().entrySet()) {
+			measures.ingestRatePerPipeline.addDynamicMeasure(pipeline.getKey(), pipeline.getValue().getDocumentsPerSecond());
+			measures.ingestFailureRatePerPipeline.addDynamicMeasure(pipeline.getKey(), pipeline.getValue().getFailedPerSecond());
+		}
+		// only the pipelines which throttle ingestion the most
+		for(Map.Entry<String, IngestCounters.Rate> pipeline : rates.getSlowestPipelines(MAX_SLOWEST_PIPELINES)) {
+			measures.ingestTimePerPipeline.addDynamicMeasure(pipeline.getKey(), pipeline.getValue().getTimePerDocument());
+		}
+
+		measures.ingestRatePerNode.setValue(total.getDocumentsPerSecond());
+		measures.ingestFailureRatePerNode.setValue(total.getFailedPerSecond());
+		measures.ingestTimePerNode.setValue(total.getTimePerDocument());
+		for(Map.Entry<String, IngestCounters.Rate> node : rates.getNodes().entrySet()) {
+			measures.ingestRatePerNode.addDynamicMeasure(node.getKey(), node.getValue().getDocumentsPerSecond());
+			measures.ingestFailureRatePerNode.addDynamicMeasure(node.getKey(), node.getValue().getFailedPerSecond());
+			measures.ingestTimePerNode.addDynamicMeasure(node.getKey(), node.getValue().getTimePerDocument());
+		}
+	}
+
+	/**
+	 * @param rates Null in the first execution, nothing is reported then.
+	 */
+	void extractCacheRates(CacheCounters.Rates rates, ClusterMeasures measures) {
+		if(rates == null) {
+			return;
+		}
+
+		measures.caches = true;
+		measures.queryCacheLookups = extractHitRatio(rates, CacheCounters.QUERY_CACHE, measures.queryCacheHitRatioPerNode);
+		extractEvictionRate(rates, CacheCounters.QUERY_CACHE, measures.queryCacheEvictionRatePerNode);
+		measures.requestCacheLookups = extractHitRatio(rates, CacheCounters.REQUEST_CACHE, measures.requestCacheHitRatioPerNode);
+		extractEvictionRate(rates, CacheCounters.REQUEST_CACHE, measures.requestCacheEvictionRatePerNode);
+		extractEvictionRate(rates, CacheCounters.FIELD_DATA, measures.fieldDataEvictionRatePerNode);
+	}
+
+	/**
+	 * @return false if the cache was not used on any node in this interval, the hit ratio is not reported then.
+	 */
+	private static boolean extractHitRatio(CacheCounters.Rates rates, String cache, Measure measure) {
+		CacheCounters.Rate total = rates.getTotal(cache);
+		if(total == null || !total.hasLookups()) {
+			return false;
+		}
+
+		measure.setValue(total.getHitRatio());
+		for(Map.Entry<String, CacheCounters.Rate> node : rates.getNodes(cache).entrySet()) {
+			if(node.getValue().hasLookups()) {
+				measure.addDynamicMeasure(node.getKey(), node.getValue().getHitRatio());
+			}
+		}
+		return true;
+	}
+
+	private static void extractEvictionRate(CacheCounters.Rates rates, String cache, Measure measure) {
+		CacheCounters.Rate total = rates.getTotal(cache);
+		if(total == null) {
+			return;
+		}
+
+		measure.setValue(total.getEvictionsPerSecond());
+		for(Map.Entry<String, CacheCounters.Rate> node : rates.getNodes(cache).entrySet()) {
+			measure.addDynamicMeasure(node.getKey(), node.getValue().getEvictionsPerSecond());
+		}
+	}
+
+	void extractIndexRollups(Map<String, IndexRollups.Rollup> rollups, ClusterMeasures measures) {
+		measures.indexPatterns = true;
+		measures.indexPatternRates = !rollups.isEmpty();
+		for(Map.Entry<String, IndexRollups.Rollup> rollup : rollups.entrySet()) {
+			IndexRollups.Rollup value = rollup.getValue();
+			measures.documentCountPerPattern.addValue(value.getDocuments());
+			measures.documentCountPerPattern.addDynamicMeasure(rollup.getKey(), value.getDocuments());
+			measures.storeSizePerPattern.addValue(value.getStoreSize());
+			measures.storeSizePerPattern.addDynamicMeasure(rollup.getKey(), value.getStoreSize());
+
+			if(value.hasRates()) {
+				measures.indexingRatePerPattern.addValue(value.getIndexingPerSecond());
+				measures.indexingRatePerPattern.addDynamicMeasure(rollup.getKey(), value.getIndexingPerSecond());
+				measures.searchRatePerPattern.addValue(value.getSearchPerSecond());
+				measures.searchRatePerPattern.addDynamicMeasure(rollup.getKey(), value.getSearchPerSecond());
+			} else {
+				measures.indexPatternRates = false;
+			}
+		}
+	}
+
+    private void retrieveClusterHealth(MonitoredCluster cluster, HttpEngine.Exchange exchange, ClusterMeasures measures, CycleStatistics statistics) throws IOException {
+		JsonNode clusterHealth = receiveJson(cluster, statistics, ENDPOINT_CLUSTER_HEALTH, exchange);
+		extractClusterHealth(clusterHealth, measures);
+	}
+
+	void extractClusterHealth(JsonNode clusterHealth, ClusterMeasures measures) {
+		setValueLong(measures.nodeCount, clusterHealth, "number_of_nodes");
+		setValueLong(measures.dataNodeCount, clusterHealth, "number_of_data_nodes");
+		setValueLong(measures.activePrimaryShards, clusterHealth, "active_primary_shards");
+		setValue(measures.activeShardsPercent, clusterHealth, "active_shards_percent_as_number");
+		setValueLong(measures.activeShards, clusterHealth, "active_shards");
+		setValueLong(measures.relocatingShards, clusterHealth, "relocating_shards");
+		setValueLong(measures.initializingShards, clusterHealth, "initializing_shards");
+		setValueLong(measures.unassignedShards, clusterHealth, "unassigned_shards");
+		setValueLong(measures.delayedUnassignedShards, clusterHealth, "delayed_unassigned_shards");
 
 		/* Not yet read:
 				"number_of_pending_tasks": 0,
@@ -764,6 +2090,13 @@ public class ElasticsearchMonitor implements Monitor {
         }
     }
 
+    private static void addNodeValue(Measure measure, String nodeName, long value) {
+        if(value >= 0) {
+            measure.addValue(value);
+            measure.addDynamicMeasure(nodeName, value);
+        }
+    }
+
     private void addValueLong(Measure measure, JsonNode parent, String key) {
         JsonNode node = parent.get(key);
         if(node != null) {
@@ -792,74 +2125,74 @@ public class ElasticsearchMonitor implements Monitor {
         }
     }
 
+	/**
+	 * Write the average split by node and the maximum of a measure of the nodes, nothing is
+	 * written if no node reported it.
+	 */
+	private void writeNodeGauge(String name, String maxName, MonitorEnvironment env, Measure perNode, Measure max, ClusterTotals totals) {
+		if(perNode.getDynamicMeasures().isEmpty()) {
+			return;
+		}
+		writeMeasure(METRIC_GROUP_OS, name, env, perNode, totals);
+		writeMeasure(METRIC_GROUP_OS, maxName, env, max, totals);
+	}
+
 	protected void writeMeasure(String group, String name, MonitorEnvironment env, Measure value) {
+		writeMeasure(group, name, env, value, null);
+	}
+
+	/**
+	 * @param totals Null if only one cluster is monitored. Otherwise the value is written as
+	 * 				 dynamic measure "Cluster" for the current cluster of the totals and the
+	 * 				 keys of the dynamic measures are prefixed with the cluster, the value of
+	 * 				 the measure itself is set to the total over all clusters afterwards.
+	 */
+	protected void writeMeasure(String group, String name, MonitorEnvironment env, Measure value, ClusterTotals totals) {
 		Collection<MonitorMeasure> measures = env.getMonitorMeasures(group, name);
 		if (measures != null) {
-			if (log.isLoggable(Level.INFO)) {
-				log.info("Setting measure '" + name + "' to value " + value.getValue() +
-						(value.getDynamicMeasureName() == null ? "" :
-							", dynamic: " + value.getDynamicMeasureName() + ": " + value.getDynamicMeasures()) +
-						", measures: " + measures);
-			}
+			// getDynamicMeasures() returns a copy, so only fetch it once per measure
+			// the keys are limited per cluster, so a large cluster does not crowd out the others
+			Map<String, Double> dynamicMeasures = cardinalityGuard.limit(
+					group, name, totals == null ? null : totals.getCluster(), getFold(name), value.getDynamicMeasures());
+			diagnostics.record(DiagnosticRing.MEASURE, totals == null ? null : totals.getCluster(), name, 0, 0,
+					dynamicMeasures.size(), value.getValue());
 			for (MonitorMeasure measure : measures) {
-				measure.setValue(value.getValue());
-
-				if(value.getDynamicMeasures().size() > 0) {
-					// TODO: somehow we need to write this once more, why is this necessary?!?
-					Measure copyMeasure = new Measure();
-					copyMeasure.setValue(value.getValue());
-					writeMeasure(group, name, env, copyMeasure);
+				if(totals == null) {
+					measure.setValue(value.getValue());
+				} else {
+					MonitorMeasure clusterMeasure = env.createDynamicMeasure(measure, DYNAMIC_MEASURE_CLUSTER, totals.getCluster());
+					clusterMeasure.setValue(value.getValue());
+				}
+				statistics.incMeasuresWritten();
+
+				if(dynamicMeasures.size() > 0) {
+					if(totals == null) {
+						// TODO: somehow we need to write this once more, why is this necessary?!?
+						Measure copyMeasure = new Measure();
+						copyMeasure.setValue(value.getValue());
+						writeMeasure(group, name, env, copyMeasure);
+					}
 
 				    // for this subscribed measure we want to create a dynamic measure
-					for(Map.Entry<String, Double> dynamic : value.getDynamicMeasures().entrySet()) {
-						Preconditions.checkNotNull(value.getDynamicMeasureName(), "Had null as dynamic measure name for measure %s and dynamic measures %s", measure, value.getDynamicMeasures());
-						Preconditions.checkNotNull(dynamic.getKey(), "Had null as dynamic measure key for measure %s and dynamic measures %s", measure, value.getDynamicMeasures());
+					for(Map.Entry<String, Double> dynamic : dynamicMeasures.entrySet()) {
+						Preconditions.checkNotNull(value.getDynamicMeasureName(), "Had null as dynamic measure name for measure %s and dynamic measures %s", measure, dynamicMeasures);
+						Preconditions.checkNotNull(dynamic.getKey(), "Had null as dynamic measure key for measure %s and dynamic measures %s", measure, dynamicMeasures);
 
-						MonitorMeasure dynamicMeasure = env.createDynamicMeasure(measure, value.getDynamicMeasureName(), dynamic.getKey());
+						String key = totals == null ? dynamic.getKey() : totals.getCluster() + "/" + dynamic.getKey();
+						MonitorMeasure dynamicMeasure = env.createDynamicMeasure(measure, value.getDynamicMeasureName(), key);
 						dynamicMeasure.setValue(dynamic.getValue());
+						statistics.incMeasuresWritten();
 					}
 				}
 			}
+			if(totals != null) {
+				totals.add(group, name, value.getValue());
+			}
 		} else {
 			log.warning("Could not find measure " + name + "@" + group + ", tried to report value: " + value);
 		}
 	}
 
-	public String simpleGet(CloseableHttpClient httpClient, String url) throws IOException {
-		// Required to avoid two requests instead of one: See http://stackoverflow.com/questions/20914311/httpclientbuilder-basic-auth
-		AuthCache authCache = new BasicAuthCache();
-		BasicScheme basicAuth = new BasicScheme();
-
-		// Generate BASIC scheme object and add it to the local auth cache
-		URL cacheUrl = new URL(url);
-		HttpHost targetHost = new HttpHost(cacheUrl.getHost(), cacheUrl.getPort(), cacheUrl.getProtocol());
-		authCache.put(targetHost, basicAuth);
-
-		// Add AuthCache to the execution context
-		HttpClientContext context = HttpClientContext.create();
-		//context.setCredentialsProvider(credsProvider);
-		context.setAuthCache(authCache);
-
-		final HttpGet httpGet = new HttpGet(url);
-		try (CloseableHttpResponse response = httpClient.execute(targetHost, httpGet, context)) {
-			int statusCode = response.getStatusLine().getStatusCode();
-			if(statusCode != 200) {
-				String msg = "Had HTTP StatusCode " + statusCode + " for request: " + url + ", response: " + response.getStatusLine().getReasonPhrase();
-				log.warning(msg);
-
-				throw new IOException(msg);
-			}
-		    HttpEntity entity = response.getEntity();
-
-		    try {
-		    	return IOUtils.toString(entity.getContent(), "UTF-8");
-		    } finally {
-			    // ensure all content is taken out to free resources
-			    EntityUtils.consume(entity);
-		    }
-		}
-	}
-
 	/*
 	 * (non-Javadoc)
 	 *
@@ -867,7 +2200,30 @@ public class ElasticsearchMonitor implements Monitor {
 	 */
 	@Override
 	public void teardown(MonitorEnvironment env) throws Exception {
-		// nothing to do here
+		shutdown();
+	}
+
+	private void shutdown() throws IOException {
+		if(stateFile != null) {
+			closeStateFile(stateFile);
+			stateFile = null;
+		}
+		if(sampler != null) {
+			sampler.shutdownNow();
+			sampler = null;
+		}
+		if(executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		if(watchdog != null) {
+			watchdog.shutdownNow();
+			watchdog = null;
+		}
+		if(engine != null) {
+			engine.close();
+			engine = null;
+		}
 	}
 
 }
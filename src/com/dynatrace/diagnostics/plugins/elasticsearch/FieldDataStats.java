@@ -0,0 +1,162 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The memory which the field data of each field takes on the heap, summed up over all
+ * nodes of one cluster, so the fields which blow up the heap can be found.
+ *
+ * Breaking the field data down by field is expensive on large clusters, so it is only
+ * retrieved at the configured interval, see {@link #request}, and the result is kept
+ * and reported in the executions in between, like the node info in {@link NodeInfoCache}.
+ * The response is read with a streaming parser in one pass.
+ */
+public class FieldDataStats {
+    private static final Comparator<Map.Entry<String, Long>> BY_MEMORY = new Comparator<Map.Entry<String, Long>>() {
+        @Override
+        public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+            int compare = Long.compare(o2.getValue(), o1.getValue());
+            return compare != 0 ? compare : o1.getKey().compareTo(o2.getKey());
+        }
+    };
+
+    // the sections of a node which lead to the memory per field
+    private static final String[] PATH = { "indices", "fielddata", "fields" };
+
+    private volatile Map<String, Long> fields = Collections.emptyMap();
+
+    // when the field data was requested the last time, successful or not
+    private long requested;
+    private boolean hasRequested;
+
+    /**
+     * Read the memory per field from the response of the node statistics of the field data
+     * with the breakdown by field, i.e. "/_nodes/stats/indices/fielddata?fields=*".
+     *
+     * @return The bytes of field data by field name, over all nodes.
+     */
+    public static Map<String, Long> extract(JsonParser parser) throws IOException {
+        Map<String, Long> memory = new HashMap<>();
+        if(parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException("Expected an object for the field data statistics", parser.getCurrentLocation());
+        }
+
+        while(parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            if(parser.nextToken() != JsonToken.START_OBJECT || !"nodes".equals(field)) {
+                // e.g. "_nodes" and "cluster_name"
+                parser.skipChildren();
+                continue;
+            }
+
+            while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                if(parser.nextToken() != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+                readPath(parser, 0, memory);
+            }
+        }
+        return memory;
+    }
+
+    /**
+     * Descend along the path of sections and read the fields at its end, all other
+     * sections, e.g. "name" and "host" of a node, are skipped.
+     */
+    private static void readPath(JsonParser parser, int depth, Map<String, Long> memory) throws IOException {
+        while(parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            if(parser.nextToken() != JsonToken.START_OBJECT || !PATH[depth].equals(name)) {
+                parser.skipChildren();
+            } else if(depth < PATH.length - 1) {
+                readPath(parser, depth + 1, memory);
+            } else {
+                readFields(parser, memory);
+            }
+        }
+    }
+
+    private static void readFields(JsonParser parser, Map<String, Long> memory) throws IOException {
+        while(parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            if(parser.nextToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+
+            long bytes = -1;
+            while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                if("memory_size_in_bytes".equals(name)) {
+                    bytes = parser.getValueAsLong(-1);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+
+            if(bytes >= 0) {
+                Long sum = memory.get(field);
+                memory.put(field, sum == null ? bytes : sum + bytes);
+            }
+        }
+    }
+
+    /**
+     * Check whether the field data is due to be retrieved again and record the request if so,
+     * a failed request is not retried before the interval passed either, as it is expensive.
+     *
+     * @param now The current time in milliseconds.
+     * @param interval The time in milliseconds between two requests.
+     * @return true if the field data should be requested now.
+     */
+    public synchronized boolean request(long now, long interval) {
+        if(hasRequested && now - requested < interval && now >= requested) {
+            return false;
+        }
+        requested = now;
+        hasRequested = true;
+        return true;
+    }
+
+    /**
+     * Replace the kept memory per field with the one of the current response.
+     */
+    public void update(Map<String, Long> current) {
+        fields = Collections.unmodifiableMap(new HashMap<>(current));
+    }
+
+    /**
+     * Forget the kept memory per field, e.g. when the request failed, so outdated values are not reported.
+     */
+    public void clear() {
+        fields = Collections.emptyMap();
+    }
+
+    /**
+     * @return The bytes of field data by field, empty if it was not retrieved successfully yet.
+     */
+    public Map<String, Long> getFields() {
+        return fields;
+    }
+
+    /**
+     * @return The fields which take the most memory, the largest first.
+     */
+    public static List<Map.Entry<String, Long>> getLargest(Map<String, Long> fields, int max) {
+        List<Map.Entry<String, Long>> largest = new ArrayList<>(fields.entrySet());
+        Collections.sort(largest, BY_MEMORY);
+        return largest.size() > max ? largest.subList(0, max) : largest;
+    }
+}
@@ -0,0 +1,91 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.AuthCache;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.impl.client.BasicAuthCache;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Sends the GET requests of the monitor to the clusters, either via the blocking
+ * HttpClient on the thread which waits for the response or via the non-blocking
+ * HttpAsyncClient, which multiplexes all connections onto a few I/O threads.
+ *
+ * Sending a request and waiting for its response are separate steps, so all requests
+ * of one poll can be in flight together with the non-blocking engine.
+ */
+public abstract class HttpEngine implements Closeable {
+    /**
+     * Start the request, the blocking engine only sends it once the response is awaited.
+     */
+    public abstract Exchange send(HttpGet request);
+
+    /**
+     * A request that was started, its response is read once.
+     */
+    public interface Exchange {
+        /**
+         * Wait for the response and return its body.
+         *
+         * @param timeoutMillis How long the request may take at most from now on, 0 to only
+         *                      use the timeouts of the engine.
+         * @throws org.apache.http.client.HttpResponseException If the status of the response is not 200.
+         * @throws java.io.InterruptedIOException If the request was aborted or timed out.
+         */
+        byte[] getBody(long timeoutMillis) throws IOException;
+
+        /**
+         * @return How long it took from sending the request until the response was read completely.
+         */
+        long getRequestNanos();
+
+        /**
+         * @return The HTTP status of the response, 0 if no response was received.
+         */
+        int getStatusCode();
+    }
+
+    static CredentialsProvider createCredentials(String user, String password) {
+        CredentialsProvider credsProvider = new BasicCredentialsProvider();
+        credsProvider.setCredentials(
+                new AuthScope(null, -1),
+                new UsernamePasswordCredentials(user, password));
+        return credsProvider;
+    }
+
+    static RequestConfig createConfig(int timeout) {
+        return RequestConfig.custom()
+                .setSocketTimeout(timeout)
+                .setConnectTimeout(timeout)
+                .setConnectionRequestTimeout(timeout)
+                .build();
+    }
+
+    static HttpHost getTarget(HttpGet request) {
+        return URIUtils.extractHost(request.getURI());
+    }
+
+    /**
+     * Required to avoid two requests instead of one: See http://stackoverflow.com/questions/20914311/httpclientbuilder-basic-auth
+     */
+    static HttpClientContext createContext(HttpHost target) {
+        // Generate BASIC scheme object and add it to the local auth cache
+        AuthCache authCache = new BasicAuthCache();
+        authCache.put(target, new BasicScheme());
+
+        // Add AuthCache to the execution context
+        HttpClientContext context = HttpClientContext.create();
+        context.setAuthCache(authCache);
+        return context;
+    }
+}
@@ -0,0 +1,142 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Maps the names of indices to the pattern which they are rolled up into, so that
+ * time-based indices like "logs-app-2026.10.17" are reported as one "logs-app-*"
+ * instead of one dynamic measure per index.
+ *
+ * A pattern is a wildcard where '*' matches any characters and '?' matches one
+ * character, e.g. "logs-*". The keyword {@link #DATE_SUFFIX} rolls up each index
+ * whose name ends with a date into its name without the date. An index belongs to
+ * the first pattern that it matches, indices which match none are not rolled up.
+ *
+ * All wildcards are compiled into one regular expression and the result is kept
+ * per index name, as mostly the same indices are reported in every execution.
+ */
+public class IndexPatterns {
+    /**
+     * Rolls up indices like "logs-app-2026.10.17", "logs-app-2026-10" or "logs-app-20261017"
+     * into "logs-app-*".
+     */
+    public static final String DATE_SUFFIX = "<date>";
+
+    private static final Pattern DATE = Pattern.compile("(.*[-_.])(\\d{4}[-_.]\\d{2}([-_.]\\d{2})?|\\d{8})");
+
+    // the cache is dropped once it grows larger, e.g. if indices are created and removed often
+    private static final int MAX_CACHED = 10_000;
+
+    // marks names which do not match any pattern in the cache
+    private static final String NO_PATTERN = "";
+
+    private final List<String> patterns;
+    private final Pattern compiled;
+    private final boolean dateSuffix;
+    private final ConcurrentMap<String, String> cache = new ConcurrentHashMap<>();
+
+    private IndexPatterns(List<String> patterns, Pattern compiled, boolean dateSuffix) {
+        this.patterns = patterns;
+        this.compiled = compiled;
+        this.dateSuffix = dateSuffix;
+    }
+
+    /**
+     * @param config The patterns separated by comma or line breaks, e.g. "logs-*, metrics-*", can be null.
+     * @return The compiled patterns, null if none are configured.
+     */
+    public static IndexPatterns parse(String config) {
+        if(config == null) {
+            return null;
+        }
+
+        List<String> patterns = new ArrayList<>();
+        StringBuilder regex = new StringBuilder();
+        boolean dateSuffix = false;
+        for(String pattern : StringUtils.split(config, ",\r\n")) {
+            pattern = pattern.trim();
+            if(pattern.isEmpty() || patterns.contains(pattern)) {
+                continue;
+            }
+            if(DATE_SUFFIX.equals(pattern)) {
+                dateSuffix = true;
+                continue;
+            }
+
+            // one group per pattern, the first group which matched tells the pattern
+            regex.append(regex.length() == 0 ? "(" : "|(");
+            int start = 0;
+            for(int i = 0;i < pattern.length();i++) {
+                char c = pattern.charAt(i);
+                if(c == '*' || c == '?') {
+                    if(i > start) {
+                        regex.append(Pattern.quote(pattern.substring(start, i)));
+                    }
+                    regex.append(c == '*' ? ".*" : ".");
+                    start = i + 1;
+                }
+            }
+            if(start < pattern.length()) {
+                regex.append(Pattern.quote(pattern.substring(start)));
+            }
+            regex.append(')');
+            patterns.add(pattern);
+        }
+
+        if(patterns.isEmpty() && !dateSuffix) {
+            return null;
+        }
+        return new IndexPatterns(patterns, patterns.isEmpty() ? null : Pattern.compile(regex.toString()), dateSuffix);
+    }
+
+    /**
+     * @return The pattern which the index is rolled up into, null if it matches none of the patterns.
+     */
+    public String getPattern(String index) {
+        String pattern = cache.get(index);
+        if(pattern == null) {
+            pattern = match(index);
+            if(cache.size() >= MAX_CACHED) {
+                cache.clear();
+            }
+            cache.put(index, pattern == null ? NO_PATTERN : pattern);
+        }
+        return pattern == null || pattern.isEmpty() ? null : pattern;
+    }
+
+    private String match(String index) {
+        if(compiled != null) {
+            Matcher matcher = compiled.matcher(index);
+            if(matcher.matches()) {
+                for(int i = 0;i < patterns.size();i++) {
+                    if(matcher.group(i + 1) != null) {
+                        return patterns.get(i);
+                    }
+                }
+            }
+        }
+
+        if(dateSuffix) {
+            Matcher matcher = DATE.matcher(index);
+            if(matcher.matches()) {
+                return matcher.group(1) + "*";
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "IndexPatterns{" +
+                "patterns=" + patterns +
+                ", dateSuffix=" + dateSuffix +
+                '}';
+    }
+}
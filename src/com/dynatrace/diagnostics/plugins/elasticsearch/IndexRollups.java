@@ -0,0 +1,242 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Aggregates the statistics of the single indices into one rollup per configured
+ * index pattern, see {@link IndexPatterns}: the number of documents, the size of the
+ * store and the rates of indexing and search operations.
+ *
+ * The index statistics are read with a streaming parser in one pass, sections of
+ * indices which do not match any pattern are skipped without building objects.
+ *
+ * The rates are computed from the counters of the single indices, so removing an old
+ * index does not reduce the rate of its pattern. An index whose counter decreased,
+ * e.g. because it was deleted and created again, does not contribute to the rate of
+ * this interval, an index which was created in this interval contributes its counter.
+ */
+public class IndexRollups {
+    private Map<String, Counts> previous = Collections.emptyMap();
+    private long previousTS;
+
+    /**
+     * Read the counters of all indices which match one of the patterns from the response
+     * of the index statistics, i.e. "/_stats".
+     *
+     * @return The counters by index name.
+     */
+    public static Map<String, Counts> extract(JsonParser parser, IndexPatterns patterns) throws IOException {
+        Map<String, Counts> counts = new HashMap<>();
+        if(parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException("Expected an object for the index statistics", parser.getCurrentLocation());
+        }
+
+        while(parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            if(parser.nextToken() != JsonToken.START_OBJECT || !"indices".equals(field)) {
+                // e.g. "_shards" and "_all"
+                parser.skipChildren();
+                continue;
+            }
+
+            while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                String index = parser.getCurrentName();
+                String pattern = patterns.getPattern(index);
+                if(parser.nextToken() != JsonToken.START_OBJECT || pattern == null) {
+                    parser.skipChildren();
+                    continue;
+                }
+
+                Counts indexCounts = new Counts(pattern);
+                readIndex(parser, indexCounts);
+                counts.put(index, indexCounts);
+            }
+        }
+        return counts;
+    }
+
+    private static void readIndex(JsonParser parser, Counts counts) throws IOException {
+        while(parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            if(parser.nextToken() != JsonToken.START_OBJECT) {
+                // e.g. "uuid"
+                parser.skipChildren();
+            } else if("primaries".equals(field)) {
+                readStats(parser, counts, true);
+            } else if("total".equals(field)) {
+                readStats(parser, counts, false);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Documents and indexing operations are taken from the primaries, i.e. without replicas,
+     * the size of the store and the search operations from all shards.
+     */
+    private static void readStats(JsonParser parser, Counts counts, boolean primaries) throws IOException {
+        while(parser.nextToken() == JsonToken.FIELD_NAME) {
+            String section = parser.getCurrentName();
+            if(parser.nextToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+            } else if(primaries && "docs".equals(section)) {
+                counts.documents = readLong(parser, "count");
+            } else if(primaries && "indexing".equals(section)) {
+                counts.indexed = readLong(parser, "index_total");
+            } else if(!primaries && "store".equals(section)) {
+                counts.storeSize = readLong(parser, "size_in_bytes");
+            } else if(!primaries && "search".equals(section)) {
+                counts.queries = readLong(parser, "query_total");
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static long readLong(JsonParser parser, String key) throws IOException {
+        long value = -1;
+        while(parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            if(parser.nextToken().isNumeric() && key.equals(field)) {
+                value = parser.getLongValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Record the counters of all indices and roll them up per pattern, together with
+     * the rates since the previous call.
+     *
+     * @param current The counters by index name.
+     * @param timestamp When the counters were retrieved.
+     * @return The rollups by pattern, without rates on the first call or if the time did not advance.
+     */
+    public synchronized Map<String, Rollup> update(Map<String, Counts> current, long timestamp) {
+        Map<String, Counts> last = previous;
+        long elapsed = timestamp - previousTS;
+        boolean first = previousTS == 0;
+
+        previous = new HashMap<>(current);
+        previousTS = timestamp;
+
+        Map<String, Rollup> rollups = new HashMap<>();
+        for(Map.Entry<String, Counts> index : current.entrySet()) {
+            Counts counts = index.getValue();
+            Rollup rollup = rollups.get(counts.pattern);
+            if(rollup == null) {
+                rollup = new Rollup();
+                rollups.put(counts.pattern, rollup);
+            }
+
+            rollup.indices++;
+            rollup.documents += Math.max(counts.documents, 0);
+            rollup.storeSize += Math.max(counts.storeSize, 0);
+
+            Counts before = last.get(index.getKey());
+            if(before != null && !before.pattern.equals(counts.pattern)) {
+                // the patterns were changed in the meantime
+                continue;
+            }
+            rollup.indexedDelta += getDelta(counts.indexed, before == null ? 0 : before.indexed);
+            rollup.queriesDelta += getDelta(counts.queries, before == null ? 0 : before.queries);
+        }
+
+        if(!first && elapsed > 0) {
+            for(Rollup rollup : rollups.values()) {
+                rollup.seconds = elapsed / 1000.0;
+            }
+        }
+        return rollups;
+    }
+
+    private static long getDelta(long count, long before) {
+        if(count < 0 || before < 0 || count < before) {
+            return 0;
+        }
+        return count - before;
+    }
+
+    /**
+     * The counters of one index, -1 for counters which were not reported.
+     */
+    public static final class Counts {
+        private final String pattern;
+        private long documents = -1;
+        private long storeSize = -1;
+        private long indexed = -1;
+        private long queries = -1;
+
+        /**
+         * @param pattern The pattern which the index is rolled up into.
+         */
+        public Counts(String pattern) {
+            this.pattern = pattern;
+        }
+
+        public long getDocuments() {
+            return documents;
+        }
+
+        public long getStoreSize() {
+            return storeSize;
+        }
+
+        public long getIndexed() {
+            return indexed;
+        }
+
+        public long getQueries() {
+            return queries;
+        }
+    }
+
+    /**
+     * The totals over all indices of one pattern in one interval.
+     */
+    public static final class Rollup {
+        private int indices;
+        private long documents;
+        private long storeSize;
+        private long indexedDelta;
+        private long queriesDelta;
+        private double seconds;
+
+        public int getIndices() {
+            return indices;
+        }
+
+        public long getDocuments() {
+            return documents;
+        }
+
+        public long getStoreSize() {
+            return storeSize;
+        }
+
+        /**
+         * @return false on the first execution, the rates are not available then.
+         */
+        public boolean hasRates() {
+            return seconds > 0;
+        }
+
+        public double getIndexingPerSecond() {
+            return indexedDelta / seconds;
+        }
+
+        public double getSearchPerSecond() {
+            return queriesDelta / seconds;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the throughput, the failures and the time per document of the ingest
+ * pipelines from the counters which the nodes report in the section "ingest" of the
+ * node statistics, per pipeline and per node. The deltas per node and pipeline are
+ * computed by {@link CounterDeltas}.
+ */
+public class IngestCounters {
+    private static final Comparator<Map.Entry<String, Rate>> BY_TIME_PER_DOCUMENT = new Comparator<Map.Entry<String, Rate>>() {
+        @Override
+        public int compare(Map.Entry<String, Rate> o1, Map.Entry<String, Rate> o2) {
+            int compare = Double.compare(o2.getValue().getTimePerDocument(), o1.getValue().getTimePerDocument());
+            return compare != 0 ? compare : o1.getKey().compareTo(o2.getKey());
+        }
+    };
+
+    private final CounterDeltas<Counts> deltas = new CounterDeltas<>();
+
+    /**
+     * Read the counters of the node and of its pipelines from the section "ingest" of
+     * the node statistics.
+     *
+     * @param counts The counters by node and pipeline, the counters of the node are added to it.
+     */
+    public static void extract(String nodeId, String nodeName, JsonNode ingest, Map<String, Counts> counts) {
+        JsonNode total = ingest.get("total");
+        if(total != null) {
+            counts.put(nodeId, read(nodeName, null, total));
+        }
+
+        JsonNode pipelines = ingest.get("pipelines");
+        if(pipelines != null) {
+            Iterator<Map.Entry<String, JsonNode>> it = pipelines.fields();
+            while(it.hasNext()) {
+                Map.Entry<String, JsonNode> pipeline = it.next();
+                counts.put(nodeId + "/" + pipeline.getKey(), read(nodeName, pipeline.getKey(), pipeline.getValue()));
+            }
+        }
+    }
+
+    private static Counts read(String nodeName, String pipeline, JsonNode stats) {
+        return new Counts(nodeName, pipeline).set(
+                stats.path("count").asLong(-1),
+                stats.path("time_in_millis").asLong(-1),
+                stats.path("failed").asLong(-1));
+    }
+
+    /**
+     * Record the counters of all nodes and pipelines and compute the rates since the previous call.
+     *
+     * @param current The counters as read by {@link #extract}.
+     * @param timestamp When the counters were retrieved.
+     * @return The rates, null on the first call or if the time did not advance.
+     */
+    public Rates update(Map<String, Counts> current, long timestamp) {
+        CounterDeltas.Interval<Counts> interval = deltas.update(current, timestamp);
+        if(interval == null) {
+            return null;
+        }
+
+        Rates rates = new Rates(interval.getSeconds());
+        for(CounterDeltas.Delta<Counts> delta : interval.getDeltas()) {
+            Counts counts = delta.getCounts();
+            if(counts.pipeline == null) {
+                rates.total.add(delta);
+                rates.getRate(rates.nodes, counts.nodeName).add(delta);
+            } else {
+                rates.getRate(rates.pipelines, counts.pipeline).add(delta);
+            }
+        }
+        return rates;
+    }
+
+    /**
+     * The counters of one node or of one pipeline on one node, -1 for counters which were not reported.
+     */
+    public static final class Counts extends CounterDeltas.Counters {
+        private static final int COUNT = 0;
+        private static final int TIME_IN_MILLIS = 1;
+        private static final int FAILED = 2;
+
+        private final String nodeName;
+        private final String pipeline;
+
+        /**
+         * @param pipeline Null for the counters of all pipelines of the node.
+         */
+        public Counts(String nodeName, String pipeline) {
+            super(3);
+            this.nodeName = nodeName;
+            this.pipeline = pipeline;
+        }
+
+        public Counts set(long count, long timeInMillis, long failed) {
+            set(COUNT, count);
+            set(TIME_IN_MILLIS, timeInMillis);
+            set(FAILED, failed);
+            return this;
+        }
+    }
+
+    /**
+     * The rates of one interval, in total, per pipeline and per node.
+     */
+    public static final class Rates {
+        private final double seconds;
+        private final Rate total;
+        private final Map<String, Rate> pipelines = new HashMap<>();
+        private final Map<String, Rate> nodes = new HashMap<>();
+
+        private Rates(double seconds) {
+            this.seconds = seconds;
+            this.total = new Rate(seconds);
+        }
+
+        private Rate getRate(Map<String, Rate> rates, String key) {
+            Rate rate = rates.get(key);
+            if(rate == null) {
+                rate = new Rate(seconds);
+                rates.put(key, rate);
+            }
+            return rate;
+        }
+
+        public Rate getTotal() {
+            return total;
+        }
+
+        /**
+         * @return The rates by pipeline, over all nodes.
+         */
+        public Map<String, Rate> getPipelines() {
+            return pipelines;
+        }
+
+        /**
+         * @return The rates by node name, over all pipelines of the node.
+         */
+        public Map<String, Rate> getNodes() {
+            return nodes;
+        }
+
+        /**
+         * @return The pipelines which took the longest per document in this interval, the slowest
+         *          first, only pipelines which processed documents in this interval.
+         */
+        public List<Map.Entry<String, Rate>> getSlowestPipelines(int max) {
+            List<Map.Entry<String, Rate>> slowest = new ArrayList<>();
+            for(Map.Entry<String, Rate> pipeline : pipelines.entrySet()) {
+                if(pipeline.getValue().hasDocuments()) {
+                    slowest.add(pipeline);
+                }
+            }
+            Collections.sort(slowest, BY_TIME_PER_DOCUMENT);
+            return slowest.size() > max ? slowest.subList(0, max) : slowest;
+        }
+    }
+
+    /**
+     * The sum of the valid deltas of one pipeline or node in one interval.
+     */
+    public static final class Rate {
+        private final double seconds;
+        private long countDelta;
+        private long timeDelta;
+        private long failedDelta;
+
+        private Rate(double seconds) {
+            this.seconds = seconds;
+        }
+
+        private void add(CounterDeltas.Delta<Counts> delta) {
+            if(delta.get(Counts.COUNT) >= 0) {
+                countDelta += delta.get(Counts.COUNT);
+            }
+            if(delta.get(Counts.TIME_IN_MILLIS) >= 0) {
+                timeDelta += delta.get(Counts.TIME_IN_MILLIS);
+            }
+            if(delta.get(Counts.FAILED) >= 0) {
+                failedDelta += delta.get(Counts.FAILED);
+            }
+        }
+
+        public boolean hasDocuments() {
+            return countDelta > 0;
+        }
+
+        public double getDocumentsPerSecond() {
+            return countDelta / seconds;
+        }
+
+        public double getFailedPerSecond() {
+            return failedDelta / seconds;
+        }
+
+        /**
+         * @return The milliseconds spent per document in this interval, 0 if no documents were processed.
+         */
+        public double getTimePerDocument() {
+            return countDelta > 0 ? ((double) timeDelta) / countDelta : 0;
+        }
+    }
+}
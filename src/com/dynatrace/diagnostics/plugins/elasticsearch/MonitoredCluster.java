@@ -0,0 +1,220 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.client.methods.HttpUriRequest;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The state which is kept for one monitored cluster across executions of the
+ * monitor, i.e. the selected version adapter, the static information about its
+ * nodes and the previous document counts for computing rates.
+ *
+ * It also tracks the poll which is currently queued or running for the cluster, so
+ * that a cluster is never polled concurrently and the requests which do not finish
+ * before the deadline can be aborted.
+ */
+public class MonitoredCluster {
+    private static final int IDLE = 0;
+    private static final int QUEUED = 1;
+    private static final int RUNNING = 2;
+
+    private final String name;
+    private final String url;
+
+    // Rate-Measures
+    private final DerivedMeasure documentCount;
+    private final DerivedMeasure deletedCount;
+    private final NodeCounters nodeCounters;
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+    private final NodeInfoCache nodeInfo = new NodeInfoCache();
+    private final IndexRollups indexRollups = new IndexRollups();
+    private final IngestCounters ingestCounters = new IngestCounters();
+    private final CacheCounters cacheCounters = new CacheCounters();
+    private final FieldDataStats fieldData = new FieldDataStats();
+
+    // selected once by probing the version of the cluster, null if probing failed so far
+    private volatile VersionAdapter adapter;
+
+    private final AtomicInteger state = new AtomicInteger(IDLE);
+    private volatile long pollStartNanos;
+    private volatile boolean aborted;
+    private final Set<HttpUriRequest> requests = Collections.newSetFromMap(new ConcurrentHashMap<HttpUriRequest, Boolean>());
+
+    public MonitoredCluster(String url) {
+        this(url, new DerivedMeasure(TimeUnit.SECONDS), new DerivedMeasure(TimeUnit.SECONDS), new NodeCounters());
+    }
+
+    /**
+     * @param url The normalized URL of the REST interface of the cluster, without trailing slash.
+     * @param documentCount Used for computing the rate of added documents, allows to keep
+     *                      the rate when the monitor is set up again.
+     * @param deletedCount Used for computing the rate of deleted documents.
+     * @param nodeCounters The counts of the single nodes, used for computing both rates.
+     */
+    public MonitoredCluster(String url, DerivedMeasure documentCount, DerivedMeasure deletedCount, NodeCounters nodeCounters) {
+        this.url = url;
+        this.name = getName(url);
+        this.documentCount = documentCount;
+        this.deletedCount = deletedCount;
+        this.nodeCounters = nodeCounters;
+    }
+
+    /**
+     * The name that is used for the dynamic measure "Cluster", i.e. the URL without
+     * the protocol, e.g. "es1.example.com:9200".
+     */
+    public static String getName(String url) {
+        int pos = url.indexOf("://");
+        return pos == -1 ? url : StringUtils.removeEnd(url.substring(pos + 3), "/");
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public DerivedMeasure getDocumentCount() {
+        return documentCount;
+    }
+
+    public DerivedMeasure getDeletedCount() {
+        return deletedCount;
+    }
+
+    public NodeCounters getNodeCounters() {
+        return nodeCounters;
+    }
+
+    public NodeInfoCache getNodeInfo() {
+        return nodeInfo;
+    }
+
+    public IndexRollups getIndexRollups() {
+        return indexRollups;
+    }
+
+    public IngestCounters getIngestCounters() {
+        return ingestCounters;
+    }
+
+    public CacheCounters getCacheCounters() {
+        return cacheCounters;
+    }
+
+    public FieldDataStats getFieldData() {
+        return fieldData;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public VersionAdapter getAdapter() {
+        return adapter;
+    }
+
+    public void setAdapter(VersionAdapter adapter) {
+        this.adapter = adapter;
+    }
+
+    /**
+     * @return The adapter for the version of the cluster, {@link VersionAdapter#DEFAULT}
+     *      if it could not be probed so far.
+     */
+    public VersionAdapter getVersion() {
+        VersionAdapter current = adapter;
+        return current == null ? VersionAdapter.DEFAULT : current;
+    }
+
+    /**
+     * Reserve the cluster for a new poll.
+     *
+     * @return false if the previous poll is still queued or running.
+     */
+    public boolean queuePoll() {
+        return state.compareAndSet(IDLE, QUEUED);
+    }
+
+    /**
+     * Called when the queued poll actually starts running.
+     *
+     * @return false if the poll was given up before it started, i.e. it should not run at all.
+     */
+    public boolean startPoll() {
+        if(!state.compareAndSet(QUEUED, RUNNING)) {
+            return false;
+        }
+        aborted = false;
+        pollStartNanos = System.nanoTime();
+        return true;
+    }
+
+    /**
+     * Give up a poll that did not start yet.
+     *
+     * @return false if the poll started in the meantime.
+     */
+    public boolean unqueuePoll() {
+        return state.compareAndSet(QUEUED, IDLE);
+    }
+
+    public void finishPoll() {
+        requests.clear();
+        pollStartNanos = 0;
+        state.set(IDLE);
+    }
+
+    /**
+     * @return true while a poll is queued or running, i.e. the measures of the cluster may be changed concurrently.
+     */
+    public boolean isPolling() {
+        return state.get() != IDLE;
+    }
+
+    /**
+     * @return The value of System.nanoTime() when the current poll started, 0 if it did not start yet.
+     */
+    public long getPollStartNanos() {
+        return pollStartNanos;
+    }
+
+    /**
+     * Register a request of the current poll, it is aborted right away if the
+     * current poll was aborted already, so the poll does not continue with the
+     * remaining requests.
+     */
+    public void addRequest(HttpUriRequest request) {
+        requests.add(request);
+        if(aborted) {
+            request.abort();
+        }
+    }
+
+    /**
+     * Abort the requests which are currently sent to the cluster, if any, as well
+     * as all further requests of the current poll.
+     */
+    public void abort() {
+        aborted = true;
+        for(HttpUriRequest request : requests) {
+            request.abort();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MonitoredCluster{" +
+                "name='" + name + '\'' +
+                ", url='" + url + '\'' +
+                ", adapter=" + adapter +
+                '}';
+    }
+}
@@ -0,0 +1,172 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Computes the rates of added and deleted documents from the counts of the single
+ * nodes instead of the count of the whole cluster, so that a reset on one node does
+ * not hide the documents which were added on all other nodes in the same interval.
+ *
+ * The increases and decreases of the nodes are netted, so a shard which relocated
+ * from one node to another does not count as added documents. If the counts decreased
+ * in total, documents were removed from the cluster, e.g. an index was deleted, then
+ * only the increases are used and the nodes whose count decreased are considered
+ * reset. A node which was restarted in the meantime or which joined the cluster in
+ * this interval does not contribute to the rate of this interval.
+ */
+public class NodeCounters {
+    private Map<String, Counts> previous = Collections.emptyMap();
+    private long previousTS;
+
+    /**
+     * Record the counts of all nodes of the cluster and compute the rates since the
+     * previous call.
+     *
+     * @param current The counts by node-id.
+     * @param timestamp When the counts were retrieved.
+     * @return The rates per second, null on the first call or if the time did not advance.
+     */
+    public synchronized Rates update(Map<String, Counts> current, long timestamp) {
+        Map<String, Counts> last = previous;
+        long elapsed = timestamp - previousTS;
+
+        previous = new HashMap<>(current);
+        previousTS = timestamp;
+
+        if(last.isEmpty() || elapsed <= 0) {
+            return null;
+        }
+
+        Rates rates = new Rates();
+        for(Map.Entry<String, Counts> node : current.entrySet()) {
+            Counts counts = node.getValue();
+            rates.documentTotal += Math.max(counts.documents, 0);
+            rates.deletedTotal += Math.max(counts.deleted, 0);
+
+            Counts before = last.get(node.getKey());
+            if(before == null) {
+                continue;
+            }
+
+            if(counts.startTime != before.startTime && counts.startTime != 0 && before.startTime != 0) {
+                rates.resets++;
+                continue;
+            }
+
+            rates.documents.add(counts.documents, before.documents);
+            rates.deleted.add(counts.deleted, before.deleted);
+        }
+
+        rates.resets += rates.documents.getResets() + rates.deleted.getResets();
+        rates.seconds = elapsed / 1000.0;
+        return rates;
+    }
+
+    /**
+     * The counts of one node, -1 for counts which were not reported.
+     */
+    public static final class Counts {
+        private long startTime;
+        private long documents = -1;
+        private long deleted = -1;
+
+        /**
+         * @param startTime When the JVM of the node was started, changes whenever the node is restarted.
+         */
+        public void setStartTime(long startTime) {
+            this.startTime = startTime;
+        }
+
+        public void setDocuments(long documents) {
+            this.documents = documents;
+        }
+
+        public void setDeleted(long deleted) {
+            this.deleted = deleted;
+        }
+    }
+
+    /**
+     * The increases and decreases of one count over the nodes in one interval.
+     */
+    private static final class Delta {
+        private long increase;
+        private long decrease;
+        private int nodes;
+        private int decreasedNodes;
+
+        private void add(long count, long before) {
+            if(count < 0 || before < 0) {
+                return;
+            }
+            if(count >= before) {
+                increase += count - before;
+            } else {
+                decrease += before - count;
+                decreasedNodes++;
+            }
+            nodes++;
+        }
+
+        /**
+         * @return The netted delta, only the increases if the count decreased in total.
+         */
+        private long get() {
+            return increase >= decrease ? increase - decrease : increase;
+        }
+
+        private int getResets() {
+            return increase >= decrease ? 0 : decreasedNodes;
+        }
+    }
+
+    /**
+     * The sum of the valid deltas of all nodes in one interval.
+     */
+    public static final class Rates {
+        private double seconds;
+        private final Delta documents = new Delta();
+        private final Delta deleted = new Delta();
+        private long documentTotal;
+        private long deletedTotal;
+        private int resets;
+
+        /**
+         * @return false if no node had a valid delta of its document count.
+         */
+        public boolean hasDocuments() {
+            return documents.nodes > 0;
+        }
+
+        public boolean hasDeleted() {
+            return deleted.nodes > 0;
+        }
+
+        /**
+         * @param clusterCount The count of the cluster, which only includes primary shards, the
+         *                     rate is scaled by the ratio to the count over all nodes, which
+         *                     includes replicas as well.
+         */
+        public double getDocumentsPerSecond(double clusterCount) {
+            return scale(documents.get(), clusterCount, documentTotal);
+        }
+
+        public double getDeletedPerSecond(double clusterCount) {
+            return scale(deleted.get(), clusterCount, deletedTotal);
+        }
+
+        private double scale(long delta, double clusterCount, long nodeCount) {
+            double rate = delta / seconds;
+            return nodeCount > 0 && clusterCount > 0 ? rate * clusterCount / nodeCount : rate;
+        }
+
+        /**
+         * @return How many counts were excluded because the node was restarted or documents were removed from it.
+         */
+        public int getResets() {
+            return resets;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The static information about the nodes of one cluster by node-id, i.e. the name
+ * and the settings of the JVM, which only change when a node is restarted.
+ *
+ * It is filled from the node info endpoint and looked up for each node while the
+ * node statistics are extracted, so all per-node measures are collected in one
+ * pass over the nodes. The node info only needs to be retrieved again when cheap
+ * signals show that the nodes changed: the number of nodes in the cluster health,
+ * node-ids which are not known yet or nodes which were restarted. Otherwise it is
+ * refreshed after {@link #TTL}.
+ */
+public class NodeInfoCache {
+    /**
+     * The node info is retrieved again after this time even if no change of the nodes was detected.
+     */
+    public static final long TTL = TimeUnit.HOURS.toMillis(1);
+
+    private volatile Map<String, NodeInfo> nodes = Collections.emptyMap();
+    private volatile long updated;
+
+    // counters by node-id which only decrease when the node is restarted, see isRestarted()
+    private final Map<String, Long> lifetimes = new HashMap<>();
+
+    /**
+     * Replace the cached information with the one of the current nodes.
+     *
+     * @param now The current time in milliseconds.
+     */
+    public void update(Map<String, NodeInfo> current, long now) {
+        nodes = Collections.unmodifiableMap(new HashMap<>(current));
+        updated = now;
+    }
+
+    /**
+     * @param now The current time in milliseconds.
+     * @param nodeCount The number of nodes reported by the cluster health, -1 if not known.
+     * @return true if the cache is empty, older than {@link #TTL} or the number of nodes changed.
+     */
+    public boolean isStale(long now, int nodeCount) {
+        Map<String, NodeInfo> current = nodes;
+        return current.isEmpty() || now - updated >= TTL || now < updated ||
+                (nodeCount >= 0 && nodeCount != current.size());
+    }
+
+    /**
+     * Record a counter of the node which only decreases when the node is restarted, e.g.
+     * its uptime, a node can be restarted without changing its node-id.
+     *
+     * @param lifetime The current value of the counter, -1 if it was not reported.
+     * @return true if the counter decreased since the previous call for this node.
+     */
+    public synchronized boolean isRestarted(String nodeId, long lifetime) {
+        if(lifetime < 0) {
+            return false;
+        }
+        Long previous = lifetimes.put(nodeId, lifetime);
+        return previous != null && lifetime < previous;
+    }
+
+    /**
+     * Forget the counters of the nodes which are not part of the cluster any more.
+     */
+    public synchronized void retainLifetimes(Collection<String> nodeIds) {
+        lifetimes.keySet().retainAll(nodeIds);
+    }
+
+    /**
+     * @return The information of the node, null if the node is not known.
+     */
+    public NodeInfo get(String nodeId) {
+        return nodes.get(nodeId);
+    }
+
+    /**
+     * The information of one node, -1 for values which were not reported.
+     */
+    public static final class NodeInfo {
+        private final String name;
+        private long startTime;
+        private long initHeap = -1;
+        private long maxHeap = -1;
+        private long initNonHeap = -1;
+        private long maxNonHeap = -1;
+        private long maxDirect = -1;
+
+        public NodeInfo(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return When the JVM of the node was started, 0 if not known.
+         */
+        public long getStartTime() {
+            return startTime;
+        }
+
+        public void setStartTime(long startTime) {
+            this.startTime = startTime;
+        }
+
+        public long getInitHeap() {
+            return initHeap;
+        }
+
+        public void setInitHeap(long initHeap) {
+            this.initHeap = initHeap;
+        }
+
+        public long getMaxHeap() {
+            return maxHeap;
+        }
+
+        public void setMaxHeap(long maxHeap) {
+            this.maxHeap = maxHeap;
+        }
+
+        public long getInitNonHeap() {
+            return initNonHeap;
+        }
+
+        public void setInitNonHeap(long initNonHeap) {
+            this.initNonHeap = initNonHeap;
+        }
+
+        public long getMaxNonHeap() {
+            return maxNonHeap;
+        }
+
+        public void setMaxNonHeap(long maxNonHeap) {
+            this.maxNonHeap = maxNonHeap;
+        }
+
+        public long getMaxDirect() {
+            return maxDirect;
+        }
+
+        public void setMaxDirect(long maxDirect) {
+            this.maxDirect = maxDirect;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A fixed-size histogram of non-negative values in the style of HdrHistogram, used
+ * to report percentiles of sampled gauges.
+ *
+ * Values below 32 are counted exactly, larger values in logarithmic buckets which
+ * are divided into 16 linear sub-buckets each, i.e. with a relative error of at most
+ * 1/32 when the middle of the bucket is reported. Values above {@link #MAX_VALUE} are
+ * counted as {@link #MAX_VALUE}. This needs about 1.2KB per sketch regardless of the
+ * number of samples, adding a sample does not allocate and does not lock, draining
+ * resets every bucket atomically so each sample is reported in exactly one interval.
+ */
+public class QuantileSketch {
+    private static final int EXACT_VALUES = 32;
+    private static final int SUB_BUCKETS = EXACT_VALUES / 2;
+    private static final int SUB_BUCKET_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+    private static final int MAX_SHIFT = 17;
+
+    public static final long MAX_VALUE = (1L << (MAX_SHIFT + SUB_BUCKET_BITS + 1)) - 1;
+
+    static final int BUCKETS = EXACT_VALUES + MAX_SHIFT * SUB_BUCKETS;
+
+    private final AtomicIntegerArray counts = new AtomicIntegerArray(BUCKETS);
+
+    public void add(double value) {
+        long rounded = Math.round(value);
+        counts.incrementAndGet(getBucket(rounded < 0 ? 0 : Math.min(rounded, MAX_VALUE)));
+    }
+
+    static int getBucket(long value) {
+        if(value < EXACT_VALUES) {
+            return (int) value;
+        }
+
+        // shift the value so that it falls into [SUB_BUCKETS, 2*SUB_BUCKETS)
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return EXACT_VALUES + (shift - 1) * SUB_BUCKETS + (int) ((value >> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * @return The value that is reported for samples in the given bucket, i.e. the middle of the bucket.
+     */
+    static double getValue(int bucket) {
+        if(bucket < EXACT_VALUES) {
+            return bucket;
+        }
+
+        int shift = (bucket - EXACT_VALUES) / SUB_BUCKETS + 1;
+        long subBucket = (bucket - EXACT_VALUES) % SUB_BUCKETS + SUB_BUCKETS;
+        long lower = subBucket << shift;
+        long upper = ((subBucket + 1) << shift) - 1;
+        return (lower + upper) / 2.0;
+    }
+
+    /**
+     * @return The samples since the previous call, null if there was no sample.
+     */
+    public Snapshot drain() {
+        int[] drained = null;
+        for(int bucket = 0;bucket < BUCKETS;bucket++) {
+            // skip the write for empty buckets, they are the majority
+            if(counts.get(bucket) != 0) {
+                if(drained == null) {
+                    drained = new int[BUCKETS];
+                }
+                drained[bucket] = counts.getAndSet(bucket, 0);
+            }
+        }
+        return drained == null ? null : new Snapshot(drained);
+    }
+
+    /**
+     * The counts of a sketch at one point in time, can be merged with other snapshots,
+     * e.g. to combine the sketches of several nodes.
+     */
+    public static final class Snapshot {
+        private final int[] counts;
+        private long count;
+
+        private Snapshot(int[] counts) {
+            this.counts = counts;
+            for(int value : counts) {
+                count += value;
+            }
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public void merge(Snapshot other) {
+            for(int bucket = 0;bucket < BUCKETS;bucket++) {
+                counts[bucket] += other.counts[bucket];
+            }
+            count += other.count;
+        }
+
+        /**
+         * @param quantile The quantile in the range [0,1], e.g. 0.95 for the 95th percentile.
+         * @return The smallest value that at least the given quantile of the samples is less or equal to.
+         */
+        public double getQuantile(double quantile) {
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for(int bucket = 0;bucket < BUCKETS;bucket++) {
+                seen += counts[bucket];
+                if(seen >= rank) {
+                    return getValue(bucket);
+                }
+            }
+            return getValue(BUCKETS - 1);
+        }
+    }
+}
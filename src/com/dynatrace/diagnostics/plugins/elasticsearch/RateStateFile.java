@@ -0,0 +1,329 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the last document counts of the monitored clusters in a small local file,
+ * so that the rates can be computed right away in the first execution after the
+ * collector was restarted or the plugin was deployed again.
+ *
+ * The file has a fixed layout and is memory-mapped, storing the counts in each
+ * execution only writes a few bytes to the mapped page, the operating system
+ * persists it even if the collector process is killed. A checksum over the slots
+ * detects a file that was only written partially.
+ *
+ * The file is locked while it is open, so monitors with the same configuration
+ * do not write to the same file, the next one uses a file with a running number.
+ */
+public class RateStateFile implements Closeable {
+    /**
+     * System property for the directory of the state files, the state is only persisted if it is set.
+     */
+    public static final String PROPERTY_STATE_DIRECTORY = "com.dynatrace.diagnostics.plugins.elasticsearch.stateDirectory";
+
+    /**
+     * Counts which are older are not restored, as the rate would be averaged over too long a time.
+     */
+    public static final long MAX_AGE = TimeUnit.MINUTES.toMillis(30);
+
+    // the counts of clusters beyond this number are not persisted
+    static final int MAX_CLUSTERS = 64;
+    // how many monitors with the same configuration get a state file
+    static final int MAX_FILES = 8;
+
+    private static final int MAGIC = 0x45534d53;
+    private static final int FORMAT_VERSION = 1;
+
+    // magic, format version, number of slots, checksum of the slots
+    private static final int HEADER_SIZE = 4 * 4;
+    // hash of the URL, document count and timestamp, deleted count and timestamp
+    private static final int SLOT_SIZE = 8 * 5;
+    static final int FILE_SIZE = HEADER_SIZE + MAX_CLUSTERS * SLOT_SIZE;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileLock lock;
+    private MappedByteBuffer buffer;
+
+    private RateStateFile(File file, RandomAccessFile raf, FileLock lock, MappedByteBuffer buffer) {
+        this.file = file;
+        this.raf = raf;
+        this.lock = lock;
+        this.buffer = buffer;
+    }
+
+    /**
+     * There is no default directory, a fixed path in the shared temporary directory could be
+     * created by another local user before the collector uses it.
+     *
+     * @return The directory configured via {@link #PROPERTY_STATE_DIRECTORY}, null if it is
+     *      not set or empty, i.e. persisting is disabled.
+     */
+    public static File getStateDirectory() {
+        String directory = System.getProperty(PROPERTY_STATE_DIRECTORY);
+        return directory == null || directory.trim().isEmpty() ? null : new File(directory);
+    }
+
+    /**
+     * @return The file for the given monitor configuration, i.e. the URLs of all monitored
+     *      clusters, so that monitors for different clusters do not share the file.
+     */
+    public static File getFile(File directory, List<MonitoredCluster> clusters) {
+        return getFile(directory, clusters, 0);
+    }
+
+    /**
+     * @param index The running number for monitors with the same configuration, 0 for the first one.
+     */
+    static File getFile(File directory, List<MonitoredCluster> clusters, int index) {
+        StringBuilder configuration = new StringBuilder();
+        for(MonitoredCluster cluster : clusters) {
+            configuration.append(cluster.getUrl()).append('\n');
+        }
+        return new File(directory, "rates-" +
+                Hashing.sha256().hashString(configuration, Charsets.UTF_8).toString().substring(0, 16) +
+                (index == 0 ? "" : "-" + index) + ".state");
+    }
+
+    /**
+     * Open the first state file of the given configuration which is not used by another monitor.
+     */
+    public static RateStateFile open(File directory, List<MonitoredCluster> clusters) throws IOException {
+        for(int index = 0;index < MAX_FILES;index++) {
+            RateStateFile stateFile = tryOpen(getFile(directory, clusters, index));
+            if(stateFile != null) {
+                return stateFile;
+            }
+        }
+        throw new IOException("All " + MAX_FILES + " state files for this configuration are used by other monitors in " + directory);
+    }
+
+    /**
+     * Map and lock the given file, it is created with an empty state if it does not exist yet.
+     *
+     * @throws IOException If the file cannot be mapped or another monitor uses it.
+     */
+    public static RateStateFile open(File file) throws IOException {
+        RateStateFile stateFile = tryOpen(file);
+        if(stateFile == null) {
+            throw new IOException("State file " + file + " is used by another monitor");
+        }
+        return stateFile;
+    }
+
+    /**
+     * @return null if another monitor holds the lock of the file.
+     */
+    private static RateStateFile tryOpen(File file) throws IOException {
+        File directory = file.getParentFile();
+        if(directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileLock lock;
+            try {
+                lock = raf.getChannel().tryLock();
+            } catch (OverlappingFileLockException e) {
+                // locked by another monitor in this process
+                lock = null;
+            }
+            if(lock == null) {
+                raf.close();
+                return null;
+            }
+            return new RateStateFile(file, raf, lock, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE));
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return true if this is one of the state files of the given configuration.
+     */
+    public boolean isFor(File directory, List<MonitoredCluster> clusters) {
+        for(int index = 0;index < MAX_FILES;index++) {
+            if(file.equals(getFile(directory, clusters, index))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Set the previous counts of all clusters which do not have counts yet, counts
+     * which are older than {@link #MAX_AGE} or newer than now are ignored.
+     *
+     * @return The number of clusters whose counts were restored.
+     */
+    public synchronized int restore(List<MonitoredCluster> clusters, long now) {
+        int slots = getValidSlots();
+        if(slots <= 0) {
+            return 0;
+        }
+
+        int restored = 0;
+        for(MonitoredCluster cluster : clusters) {
+            if(cluster.getDocumentCount().getValueTS() != 0 || cluster.getDeletedCount().getValueTS() != 0) {
+                continue;
+            }
+
+            long key = getKey(cluster);
+            for(int slot = 0;slot < slots;slot++) {
+                int offset = HEADER_SIZE + slot * SLOT_SIZE;
+                if(buffer.getLong(offset) == key) {
+                    boolean docs = restore(cluster.getDocumentCount(), offset + 8, now);
+                    boolean deleted = restore(cluster.getDeletedCount(), offset + 24, now);
+                    if(docs || deleted) {
+                        restored++;
+                    }
+                    break;
+                }
+            }
+        }
+        return restored;
+    }
+
+    private boolean restore(DerivedMeasure measure, int offset, long now) {
+        long valueTS = buffer.getLong(offset + 8);
+        if(valueTS <= 0 || valueTS > now || now - valueTS > MAX_AGE) {
+            return false;
+        }
+        measure.setValue(buffer.getDouble(offset), valueTS);
+        return true;
+    }
+
+    /**
+     * Write the current counts of the given clusters, clusters without counts are skipped.
+     * Clusters which are still polled keep the counts stored before, as their counts may
+     * change concurrently.
+     */
+    public synchronized void store(List<MonitoredCluster> clusters) {
+        if(buffer == null) {
+            return;
+        }
+
+        // the slots are rewritten in place, so the stored counts of polled clusters are copied first
+        Map<Long, byte[]> stored = new HashMap<>();
+        for(MonitoredCluster cluster : clusters) {
+            if(cluster.isPolling()) {
+                stored = getSlots();
+                break;
+            }
+        }
+
+        int slots = 0;
+        for(MonitoredCluster cluster : clusters) {
+            if(slots == MAX_CLUSTERS) {
+                break;
+            }
+            int offset = HEADER_SIZE + slots * SLOT_SIZE;
+            if(cluster.isPolling()) {
+                byte[] slot = stored.get(getKey(cluster));
+                if(slot != null) {
+                    for(int pos = 0;pos < SLOT_SIZE;pos++) {
+                        buffer.put(offset + pos, slot[pos]);
+                    }
+                    slots++;
+                }
+                continue;
+            }
+
+            DerivedMeasure documentCount = cluster.getDocumentCount();
+            DerivedMeasure deletedCount = cluster.getDeletedCount();
+            if(documentCount.getValueTS() == 0 && deletedCount.getValueTS() == 0) {
+                continue;
+            }
+
+            buffer.putLong(offset, getKey(cluster));
+            buffer.putDouble(offset + 8, documentCount.getValue());
+            buffer.putLong(offset + 16, documentCount.getValueTS());
+            buffer.putDouble(offset + 24, deletedCount.getValue());
+            buffer.putLong(offset + 32, deletedCount.getValueTS());
+            slots++;
+        }
+
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, FORMAT_VERSION);
+        buffer.putInt(8, slots);
+        buffer.putInt(12, checksum(slots));
+    }
+
+    /**
+     * Release the lock and the file, the state is not stored any more afterwards. Java
+     * cannot unmap the buffer explicitly, the mapping is released once it is collected.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        buffer = null;
+        try {
+            lock.release();
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * @return The number of slots, 0 if the file has no valid state.
+     */
+    private int getValidSlots() {
+        if(buffer == null || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            return 0;
+        }
+        int slots = buffer.getInt(8);
+        if(slots < 0 || slots > MAX_CLUSTERS || buffer.getInt(12) != checksum(slots)) {
+            return 0;
+        }
+        return slots;
+    }
+
+    /**
+     * @return A copy of the valid slots by the key of their cluster.
+     */
+    private Map<Long, byte[]> getSlots() {
+        Map<Long, byte[]> slots = new HashMap<>();
+        int count = getValidSlots();
+        for(int slot = 0;slot < count;slot++) {
+            int offset = HEADER_SIZE + slot * SLOT_SIZE;
+            byte[] bytes = new byte[SLOT_SIZE];
+            for(int pos = 0;pos < SLOT_SIZE;pos++) {
+                bytes[pos] = buffer.get(offset + pos);
+            }
+            slots.put(buffer.getLong(offset), bytes);
+        }
+        return slots;
+    }
+
+    private int checksum(int slots) {
+        CRC32 crc = new CRC32();
+        for(int pos = HEADER_SIZE;pos < HEADER_SIZE + slots * SLOT_SIZE;pos++) {
+            crc.update(buffer.get(pos));
+        }
+        return (int) crc.getValue();
+    }
+
+    private static long getKey(MonitoredCluster cluster) {
+        return Hashing.murmur3_128().hashString(cluster.getUrl(), Charsets.UTF_8).asLong();
+    }
+}
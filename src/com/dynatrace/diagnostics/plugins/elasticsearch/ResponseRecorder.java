@@ -0,0 +1,246 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records the raw responses of the clusters together with the time and the URL of the
+ * request into compressed local files, so that the exact payloads of large clusters can
+ * be replayed offline, e.g. to profile the extraction and writing of the measures.
+ *
+ * Recording is disabled unless the system property {@link #PROPERTY_RECORD_DIRECTORY}
+ * is set. A new file is started once the current one holds {@link #MAX_FILE_BYTES} of
+ * responses, only the newest {@link #MAX_FILES} files are kept. Each response is flushed
+ * when it is recorded, so the file can be read while it is still being written.
+ */
+public class ResponseRecorder implements Closeable {
+    private static final Logger log = Logger.getLogger(ResponseRecorder.class.getName());
+
+    /**
+     * System property for the directory of the recordings, responses are not recorded if it is not set.
+     */
+    public static final String PROPERTY_RECORD_DIRECTORY = "com.dynatrace.diagnostics.plugins.elasticsearch.recordDirectory";
+
+    // uncompressed bytes of responses per file before a new file is started
+    static final long MAX_FILE_BYTES = 64 * 1024 * 1024;
+    static final int MAX_FILES = 10;
+
+    private static final String PREFIX = "responses-";
+    private static final String SUFFIX = ".rec.gz";
+
+    private static final int MAGIC = 0x45535252;
+    private static final int FORMAT_VERSION = 1;
+
+    private static ResponseRecorder shared;
+
+    private final File directory;
+    private final long maxFileBytes;
+    private final int maxFiles;
+
+    private DataOutputStream out;
+    private long fileBytes;
+    private int sequence;
+    private boolean failed;
+
+    ResponseRecorder(File directory, long maxFileBytes, int maxFiles) {
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+    }
+
+    /**
+     * @return The recorder which is shared by all monitors in this JVM, null if recording is
+     *      not enabled via {@link #PROPERTY_RECORD_DIRECTORY}.
+     */
+    public static synchronized ResponseRecorder getShared() {
+        String directory = System.getProperty(PROPERTY_RECORD_DIRECTORY);
+        if(directory == null || directory.trim().isEmpty()) {
+            return null;
+        }
+        if(shared == null) {
+            shared = new ResponseRecorder(new File(directory.trim()), MAX_FILE_BYTES, MAX_FILES);
+            log.info("Recording the responses of Elasticsearch into directory: " + shared.directory);
+        }
+        return shared;
+    }
+
+    /**
+     * @return An exchange which records the response of the given exchange once it is read.
+     */
+    public HttpEngine.Exchange wrap(final URI url, final HttpEngine.Exchange exchange) {
+        return new HttpEngine.Exchange() {
+            @Override
+            public byte[] getBody(long timeoutMillis) throws IOException {
+                byte[] body = exchange.getBody(timeoutMillis);
+                record(System.currentTimeMillis(), url, body);
+                return body;
+            }
+
+            @Override
+            public long getRequestNanos() {
+                return exchange.getRequestNanos();
+            }
+
+            @Override
+            public int getStatusCode() {
+                return exchange.getStatusCode();
+            }
+        };
+    }
+
+    /**
+     * Append the response to the current file, failures are logged once and do not affect the monitor.
+     *
+     * @param url The URL of the request, without user information.
+     */
+    public synchronized void record(long timestamp, URI url, byte[] body) {
+        try {
+            if(out == null || fileBytes >= maxFileBytes) {
+                rotate();
+            }
+
+            out.writeLong(timestamp);
+            out.writeUTF(SnapshotCache.normalize(url));
+            out.writeInt(body.length);
+            out.write(body);
+            out.flush();
+
+            fileBytes += body.length;
+            failed = false;
+        } catch (IOException e) {
+            if(!failed) {
+                log.log(Level.WARNING, "Could not record response of " + url + " in directory " + directory + ": " + e);
+            }
+            failed = true;
+            closeQuietly();
+        }
+    }
+
+    private void rotate() throws IOException {
+        closeQuietly();
+        if(!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+
+        File file = new File(directory, String.format("%s%013d-%04d%s", PREFIX, System.currentTimeMillis(), sequence++ % 10000, SUFFIX));
+        // flush each response so a reader sees complete responses while the file is still written
+        out = new DataOutputStream(new GZIPOutputStream(new FileOutputStream(file), 64 * 1024, true));
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        fileBytes = 0;
+
+        List<File> files = getFiles(directory);
+        for(int i = 0;i < files.size() - maxFiles;i++) {
+            if(!files.get(i).delete()) {
+                log.warning("Could not delete old recording: " + files.get(i));
+            }
+        }
+    }
+
+    private void closeQuietly() {
+        if(out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.log(Level.FINE, "Could not close recording", e);
+            }
+            out = null;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closeQuietly();
+    }
+
+    /**
+     * @return The recordings in the given directory, the oldest first.
+     */
+    public static List<File> getFiles(File directory) {
+        File[] files = directory.listFiles();
+        if(files == null) {
+            return Collections.emptyList();
+        }
+
+        List<File> recordings = new ArrayList<>();
+        for(File file : files) {
+            if(file.getName().startsWith(PREFIX) && file.getName().endsWith(SUFFIX)) {
+                recordings.add(file);
+            }
+        }
+        // the names start with the time when the file was created
+        File[] sorted = recordings.toArray(new File[recordings.size()]);
+        Arrays.sort(sorted);
+        return Arrays.asList(sorted);
+    }
+
+    /**
+     * Read all responses of one file, a response which was not written completely ends the file.
+     */
+    public static List<Recording> read(File file) throws IOException {
+        List<Recording> recordings = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))))) {
+            if(in.readInt() != MAGIC) {
+                throw new IOException("Not a recording of responses: " + file);
+            }
+            int version = in.readInt();
+            if(version != FORMAT_VERSION) {
+                throw new IOException("Unsupported format " + version + " of recording: " + file);
+            }
+
+            while(true) {
+                long timestamp = in.readLong();
+                String url = in.readUTF();
+                byte[] body = new byte[in.readInt()];
+                in.readFully(body);
+                recordings.add(new Recording(timestamp, url, body));
+            }
+        } catch (EOFException e) {
+            // end of the file, or the collector stopped while the response was written
+        }
+        return recordings;
+    }
+
+    /**
+     * One recorded response.
+     */
+    public static final class Recording {
+        private final long timestamp;
+        private final String url;
+        private final byte[] body;
+
+        Recording(long timestamp, String url, byte[] body) {
+            this.timestamp = timestamp;
+            this.url = url;
+            this.body = body;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+    }
+}
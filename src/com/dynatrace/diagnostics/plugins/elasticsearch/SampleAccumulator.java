@@ -0,0 +1,79 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Aggregates the samples of one value between two executions of the monitor
+ * without locking.
+ *
+ * Every sample replaces the immutable aggregate via compare-and-set and {@link #drain()}
+ * swaps in an empty one, so each sample is reported in exactly one interval even if
+ * samples are added while the monitor drains the aggregate.
+ */
+public class SampleAccumulator {
+    private final AtomicReference<Aggregate> aggregate = new AtomicReference<>();
+
+    public void add(double value) {
+        while(true) {
+            Aggregate current = aggregate.get();
+            Aggregate next = current == null ? new Aggregate(value) : current.add(value);
+            if(aggregate.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return The aggregate of the samples since the previous call, null if there was no sample.
+     */
+    public Aggregate drain() {
+        return aggregate.getAndSet(null);
+    }
+
+    /**
+     * The count, minimum, maximum, sum and last value of a number of samples.
+     */
+    public static final class Aggregate {
+        private final long count;
+        private final double min;
+        private final double max;
+        private final double sum;
+        private final double last;
+
+        private Aggregate(double value) {
+            this(1, value, value, value, value);
+        }
+
+        private Aggregate(long count, double min, double max, double sum, double last) {
+            this.count = count;
+            this.min = min;
+            this.max = max;
+            this.sum = sum;
+            this.last = last;
+        }
+
+        private Aggregate add(double value) {
+            return new Aggregate(count + 1, Math.min(min, value), Math.max(max, value), sum + value, value);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMin() {
+            return min;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        public double getAverage() {
+            return sum / count;
+        }
+
+        public double getLast() {
+            return last;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds the accumulators and quantile sketches of the background sampler by measure
+ * and node as well as one series per measure for the total over all nodes.
+ *
+ * The sampler thread adds samples while the monitor drains the aggregates when it
+ * executes, each measure is then reported once per statistic, e.g. "QueryCurrentMax"
+ * or "QueryCurrentP99", with the nodes as dynamic measure.
+ */
+public class SampledMeasures {
+    public static final String STATISTIC_MIN = "Min";
+    public static final String STATISTIC_MAX = "Max";
+    public static final String STATISTIC_AVERAGE = "Avg";
+    public static final String STATISTIC_LAST = "Last";
+    public static final String STATISTIC_P50 = "P50";
+    public static final String STATISTIC_P95 = "P95";
+    public static final String STATISTIC_P99 = "P99";
+
+    public static final String[] STATISTICS = new String[] {
+            STATISTIC_MIN,
+            STATISTIC_MAX,
+            STATISTIC_AVERAGE,
+            STATISTIC_LAST,
+            STATISTIC_P50,
+            STATISTIC_P95,
+            STATISTIC_P99,
+    };
+
+    private final ConcurrentMap<String, ConcurrentMap<String, Series>> nodes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Series> totals = new ConcurrentHashMap<>();
+
+    public void add(String measure, String node, double value) {
+        ConcurrentMap<String, Series> series = nodes.get(measure);
+        if(series == null) {
+            nodes.putIfAbsent(measure, new ConcurrentHashMap<String, Series>());
+            series = nodes.get(measure);
+        }
+        getSeries(series, node).add(value);
+    }
+
+    /**
+     * Add the total over all nodes of one sample.
+     */
+    public void addTotal(String measure, double value) {
+        getSeries(totals, measure).add(value);
+    }
+
+    private static Series getSeries(ConcurrentMap<String, Series> series, String key) {
+        Series result = series.get(key);
+        if(result == null) {
+            series.putIfAbsent(key, new Series());
+            result = series.get(key);
+        }
+        return result;
+    }
+
+    /**
+     * Drain the aggregates of the given measure and reset them for the next interval.
+     *
+     * @return One Measure per statistic with the total as value and the nodes as dynamic
+     *      measure "Node", empty if there was no sample since the previous call.
+     */
+    public Map<String, Measure> drain(String measure) {
+        Map<String, Measure> result = new LinkedHashMap<>();
+
+        Series total = totals.get(measure);
+        Drained drained = total == null ? null : total.drain();
+        if(drained != null) {
+            for(String statistic : STATISTICS) {
+                result.put(statistic, new Measure("Node", getValue(drained, statistic)));
+            }
+        }
+
+        ConcurrentMap<String, Series> series = nodes.get(measure);
+        if(series != null) {
+            Iterator<Map.Entry<String, Series>> it = series.entrySet().iterator();
+            while(it.hasNext()) {
+                Map.Entry<String, Series> node = it.next();
+                Drained nodeDrained = node.getValue().drain();
+                if(nodeDrained == null) {
+                    // the node was not seen for a whole interval, e.g. because it left the cluster
+                    it.remove();
+                } else if(drained != null) {
+                    for(String statistic : STATISTICS) {
+                        result.get(statistic).addDynamicMeasure(node.getKey(), getValue(nodeDrained, statistic));
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private static double getValue(Drained drained, String statistic) {
+        SampleAccumulator.Aggregate aggregate = drained.aggregate;
+        switch (statistic) {
+            case STATISTIC_MIN:
+                return aggregate.getMin();
+            case STATISTIC_MAX:
+                return aggregate.getMax();
+            case STATISTIC_AVERAGE:
+                return aggregate.getAverage();
+            case STATISTIC_LAST:
+                return aggregate.getLast();
+            case STATISTIC_P50:
+                return getQuantile(drained, 0.50);
+            case STATISTIC_P95:
+                return getQuantile(drained, 0.95);
+            case STATISTIC_P99:
+                return getQuantile(drained, 0.99);
+            default:
+                throw new IllegalArgumentException("Unknown statistic: " + statistic);
+        }
+    }
+
+    private static double getQuantile(Drained drained, double quantile) {
+        return drained.sketch == null ? drained.aggregate.getLast() : drained.sketch.getQuantile(quantile);
+    }
+
+    /**
+     * The samples of one measure of one node or of the total.
+     */
+    private static final class Series {
+        private final SampleAccumulator accumulator = new SampleAccumulator();
+        private final QuantileSketch sketch = new QuantileSketch();
+
+        private void add(double value) {
+            accumulator.add(value);
+            sketch.add(value);
+        }
+
+        private Drained drain() {
+            SampleAccumulator.Aggregate aggregate = accumulator.drain();
+            // a sample which is added right now may only be in one of both, so the
+            // snapshot can be null or contain a sample that the aggregate does not
+            QuantileSketch.Snapshot snapshot = sketch.drain();
+            return aggregate == null ? null : new Drained(aggregate, snapshot);
+        }
+    }
+
+    private static final class Drained {
+        private final SampleAccumulator.Aggregate aggregate;
+        private final QuantileSketch.Snapshot sketch;
+
+        private Drained(SampleAccumulator.Aggregate aggregate, QuantileSketch.Snapshot sketch) {
+            this.aggregate = aggregate;
+            this.sketch = sketch;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.HttpGet;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shares the responses of the clusters between all instances of the monitor in the
+ * collector, so that monitors which are configured for the same cluster, e.g. with
+ * different subscribed measures, do not each retrieve the same statistics.
+ *
+ * A response is identified by the URL of the request together with the user and the
+ * password, it is served again as long as it is not older than the maximum age of the
+ * requesting monitor. Requests for a response which is still in flight wait for it
+ * instead of sending the same request again, failed requests are not kept.
+ *
+ * The shared request is the one of the monitor which requested the response first, so
+ * it is aborted together with the poll of that monitor. If it is aborted, times out or
+ * the engine of that monitor is closed, the other monitors send their own request.
+ */
+public class SnapshotCache {
+    private static final SnapshotCache SHARED = new SnapshotCache();
+
+    private final ConcurrentMap<Key, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    /**
+     * @return The cache which is shared by all monitors in this JVM.
+     */
+    public static SnapshotCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Serve the response from a recent snapshot or start the request via the engine.
+     *
+     * @param maxAgeMillis How old a snapshot may be, measured from when its request was sent.
+     */
+    public HttpEngine.Exchange send(HttpEngine engine, HttpGet request, String user, String password, long maxAgeMillis) {
+        long now = System.nanoTime();
+        long maxAge = TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+        purge(now);
+
+        Key key = new Key(normalize(request.getURI()), user, password);
+        Snapshot snapshot = snapshots.get(key);
+        if(snapshot != null && snapshot.isFresh(now, maxAge)) {
+            return snapshot.newExchange(engine, request);
+        }
+
+        // only one monitor starts the request, all others which arrive meanwhile join it
+        synchronized (this) {
+            snapshot = snapshots.get(key);
+            if(snapshot == null || !snapshot.isFresh(now, maxAge)) {
+                snapshot = new Snapshot(key, now, maxAge, request, engine.send(request));
+                snapshots.put(key, snapshot);
+            }
+        }
+        return snapshot.newExchange(engine, request);
+    }
+
+    /**
+     * Lower-case scheme and host and no default port, so e.g. "HTTP://Host:80//_stats"
+     * and "http://host/_stats" share the same response.
+     */
+    static String normalize(URI uri) {
+        uri = uri.normalize();
+        String scheme = uri.getScheme() == null ? null : uri.getScheme().toLowerCase(Locale.ROOT);
+        int port = uri.getPort();
+        if(("http".equals(scheme) && port == 80) || ("https".equals(scheme) && port == 443)) {
+            port = -1;
+        }
+
+        StringBuilder url = new StringBuilder();
+        if(scheme != null) {
+            url.append(scheme).append("://");
+        }
+        if(uri.getRawAuthority() != null && uri.getHost() == null) {
+            url.append(uri.getRawAuthority());
+        } else if(uri.getHost() != null) {
+            url.append(uri.getHost().toLowerCase(Locale.ROOT));
+            if(port != -1) {
+                url.append(':').append(port);
+            }
+        }
+        url.append(uri.getRawPath().replaceAll("/{2,}", "/"));
+        if(uri.getRawQuery() != null) {
+            url.append('?').append(uri.getRawQuery());
+        }
+        return url.toString();
+    }
+
+    /**
+     * Remove the responses which are older than the maximum age of the monitor that
+     * requested them, so large responses are not kept longer than needed. The cache
+     * holds one entry per endpoint and cluster, so this is cheap enough for each request.
+     */
+    private void purge(long now) {
+        Iterator<Snapshot> it = snapshots.values().iterator();
+        while(it.hasNext()) {
+            Snapshot snapshot = it.next();
+            if(snapshot.failed || now - snapshot.created > snapshot.maxAge) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return How many responses are kept currently.
+     */
+    public int size() {
+        return snapshots.size();
+    }
+
+    private static final class Key {
+        private final String url;
+        private final String user;
+        private final String password;
+
+        private Key(String url, String user, String password) {
+            this.url = url;
+            this.user = user;
+            this.password = password;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            Key key = (Key) o;
+            return url.equals(key.url) &&
+                    (user == null ? key.user == null : user.equals(key.user)) &&
+                    (password == null ? key.password == null : password.equals(key.password));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = url.hashCode();
+            result = 31 * result + (user == null ? 0 : user.hashCode());
+            result = 31 * result + (password == null ? 0 : password.hashCode());
+            return result;
+        }
+    }
+
+    /**
+     * One response which is read by whichever monitor waits for it first, all other
+     * monitors wait until it is read.
+     */
+    private final class Snapshot {
+        private final Key key;
+        private final long created;
+        private final long maxAge;
+        private final HttpGet request;
+        private final HttpEngine.Exchange exchange;
+
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final SettableFuture<byte[]> body = SettableFuture.create();
+        private volatile boolean failed;
+
+        /**
+         * @param request The request of the monitor which sent it, the exchange belongs to it.
+         */
+        private Snapshot(Key key, long created, long maxAge, HttpGet request, HttpEngine.Exchange exchange) {
+            this.key = key;
+            this.created = created;
+            this.maxAge = maxAge;
+            this.request = request;
+            this.exchange = exchange;
+        }
+
+        private boolean isFresh(long now, long maxAge) {
+            return !failed && now - created <= maxAge;
+        }
+
+        /**
+         * @param engine The engine of the requesting monitor, used if it has to send its own request.
+         * @param own The request of the requesting monitor.
+         */
+        private HttpEngine.Exchange newExchange(final HttpEngine engine, final HttpGet own) {
+            return new HttpEngine.Exchange() {
+                private long requestNanos;
+                private int statusCode;
+
+                @Override
+                public byte[] getBody(long timeoutMillis) throws IOException {
+                    long start = System.nanoTime();
+                    try {
+                        byte[] json = read(timeoutMillis);
+                        statusCode = exchange.getStatusCode();
+                        return json;
+                    } catch (HttpResponseException e) {
+                        statusCode = e.getStatusCode();
+                        throw e;
+                    } catch (InterruptedIOException | IllegalStateException e) {
+                        if(own == request || Thread.currentThread().isInterrupted()) {
+                            throw e;
+                        }
+
+                        // the shared request was aborted or timed out at the deadline of the monitor which
+                        // sent it or its engine was closed, so this monitor sends its own in the remaining time
+                        long remaining = timeoutMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                        if(timeoutMillis > 0 && remaining <= 0) {
+                            throw e;
+                        }
+                        HttpEngine.Exchange fallback = engine.send(own);
+                        try {
+                            return fallback.getBody(timeoutMillis > 0 ? remaining : 0);
+                        } finally {
+                            statusCode = fallback.getStatusCode();
+                        }
+                    } finally {
+                        requestNanos = System.nanoTime() - start;
+                    }
+                }
+
+                @Override
+                public long getRequestNanos() {
+                    return requestNanos;
+                }
+
+                @Override
+                public int getStatusCode() {
+                    return statusCode;
+                }
+            };
+        }
+
+        private byte[] read(long timeoutMillis) throws IOException {
+            if(claimed.compareAndSet(false, true)) {
+                try {
+                    byte[] json = exchange.getBody(timeoutMillis);
+                    body.set(json);
+                    return json;
+                } catch (IOException | RuntimeException e) {
+                    failed = true;
+                    snapshots.remove(key, this);
+                    body.setException(e);
+                    throw e;
+                }
+            }
+
+            try {
+                // the monitor which reads the response is bound by the timeouts of the engine
+                return timeoutMillis > 0 ? body.get(timeoutMillis, TimeUnit.MILLISECONDS) : body.get();
+            } catch (TimeoutException e) {
+                throw new SocketTimeoutException("No shared response within " + timeoutMillis + "ms for request: " + key.url);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for shared response: " + key.url);
+            } catch (ExecutionException e) {
+                if(e.getCause() instanceof InterruptedIOException) {
+                    InterruptedIOException failure = new InterruptedIOException("Shared request was aborted: " + key.url);
+                    failure.initCause(e.getCause());
+                    throw failure;
+                }
+                if(e.getCause() instanceof IllegalStateException) {
+                    throw new IllegalStateException("Shared request failed: " + key.url, e.getCause());
+                }
+                if(e.getCause() instanceof HttpResponseException) {
+                    // keeps the status, so it is reported as for a request of this monitor
+                    throw new HttpResponseException(((HttpResponseException) e.getCause()).getStatusCode(),
+                            "Shared request failed: " + key.url + ": " + e.getCause().getMessage());
+                }
+                throw new IOException("Shared request failed: " + key.url, e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import org.apache.http.HttpHost;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOSession;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContextBuilder;
+import org.apache.http.ssl.SSLContexts;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Provides the TLS setup which both HTTP engines use for HTTPS clusters: one SSLContext
+ * with the configured trust and key material, whose session cache lets the connections
+ * resume the TLS session of an earlier connection to the same cluster instead of doing
+ * a full handshake, e.g. when a connection was closed by the cluster between executions.
+ *
+ * Each completed handshake is counted, it is counted as resumption if its session was
+ * seen in an earlier handshake.
+ */
+public class TlsSupport {
+    // sessions are kept for this long in the cache of the SSLContext
+    private static final int SESSION_TIMEOUT_SECONDS = (int) TimeUnit.HOURS.toSeconds(24);
+    private static final int SESSION_CACHE_SIZE = 1000;
+
+    // the ids of the sessions that were seen, dropped once it grows larger
+    private static final int MAX_SEEN_SESSIONS = 10_000;
+
+    private final SSLContext sslContext;
+    private final Set<String> seenSessions = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicLong handshakes = new AtomicLong();
+    private final AtomicLong resumptions = new AtomicLong();
+
+    public TlsSupport(SSLContext sslContext) {
+        this.sslContext = sslContext;
+
+        SSLSessionContext sessions = sslContext.getClientSessionContext();
+        if(sessions != null) {
+            sessions.setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+            sessions.setSessionCacheSize(SESSION_CACHE_SIZE);
+        }
+    }
+
+    /**
+     * Build the SSLContext from the given stores, the default trust material of the JVM
+     * is used if no trust store is given, no client certificate if no key store is given.
+     * Stores ending with ".p12" or ".pfx" are read as PKCS12, all others in the default
+     * format of the JVM.
+     */
+    public static SSLContext createContext(String trustStore, String trustStorePassword,
+                                           String keyStore, String keyStorePassword) throws IOException {
+        if(trustStore == null && keyStore == null) {
+            return SSLContexts.createDefault();
+        }
+
+        try {
+            SSLContextBuilder builder = SSLContexts.custom();
+            if(trustStore != null) {
+                builder.loadTrustMaterial(loadStore(trustStore, trustStorePassword), null);
+            }
+            if(keyStore != null) {
+                builder.loadKeyMaterial(loadStore(keyStore, keyStorePassword), toChars(keyStorePassword));
+            }
+            return builder.build();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not set up TLS with trust store " + trustStore + " and key store " + keyStore, e);
+        }
+    }
+
+    private static KeyStore loadStore(String file, String password) throws IOException, GeneralSecurityException {
+        String name = file.toLowerCase(Locale.ROOT);
+        KeyStore store = KeyStore.getInstance(name.endsWith(".p12") || name.endsWith(".pfx") ? "PKCS12" : KeyStore.getDefaultType());
+        try (InputStream stream = new FileInputStream(new File(file))) {
+            store.load(stream, toChars(password));
+        }
+        return store;
+    }
+
+    private static char[] toChars(String password) {
+        return password == null ? null : password.toCharArray();
+    }
+
+    /**
+     * @return The sockets for the blocking engine.
+     */
+    public Registry<ConnectionSocketFactory> createSocketFactories() {
+        return RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", new SSLConnectionSocketFactory(sslContext) {
+                    @Override
+                    public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context) throws IOException {
+                        Socket layered = super.createLayeredSocket(socket, target, port, context);
+                        if(layered instanceof SSLSocket) {
+                            recordHandshake(((SSLSocket) layered).getSession());
+                        }
+                        return layered;
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * @return The session strategies for the non-blocking engine.
+     */
+    public Registry<SchemeIOSessionStrategy> createSessionStrategies() {
+        return RegistryBuilder.<SchemeIOSessionStrategy>create()
+                .register("http", NoopIOSessionStrategy.INSTANCE)
+                .register("https", new SSLIOSessionStrategy(sslContext) {
+                    @Override
+                    protected void verifySession(HttpHost host, IOSession iosession, SSLSession sslsession) throws SSLException {
+                        super.verifySession(host, iosession, sslsession);
+                        recordHandshake(sslsession);
+                    }
+                })
+                .build();
+    }
+
+    void recordHandshake(SSLSession session) {
+        handshakes.incrementAndGet();
+
+        byte[] id = session.getId();
+        if(id == null || id.length == 0) {
+            // without an id the session cannot be resumed
+            return;
+        }
+        if(seenSessions.size() >= MAX_SEEN_SESSIONS) {
+            seenSessions.clear();
+        }
+        if(!seenSessions.add(new BigInteger(1, id).toString(16))) {
+            resumptions.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return The number of TLS handshakes so far, including resumptions.
+     */
+    public long getHandshakes() {
+        return handshakes.get();
+    }
+
+    /**
+     * @return The number of TLS handshakes so far which resumed an earlier session.
+     */
+    public long getResumptions() {
+        return resumptions.get();
+    }
+}
@@ -0,0 +1,194 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Knows which REST endpoints, metric selectors and JSON sections are available
+ * in a specific version of Elasticsearch.
+ *
+ * The monitor selects an instance once by probing the root endpoint of the cluster
+ * and then only requests and walks the sections that can actually be present. Where
+ * the version supports it, metric selectors are used so Elasticsearch does not
+ * need to compute and send statistics that are not reported anyway.
+ */
+public class VersionAdapter {
+    private static final Pattern VERSION_PATTERN = Pattern.compile("(\\d+)\\.(\\d+).*");
+
+    /**
+     * Used when the version could not be determined, requests the unfiltered endpoints
+     * and looks at all the sections that any of the supported versions reported.
+     */
+    public static final VersionAdapter DEFAULT = new VersionAdapter(null, 0, 0);
+
+    private final String version;
+    private final int major;
+    private final int minor;
+
+    private VersionAdapter(String version, int major, int minor) {
+        this.version = version;
+        this.major = major;
+        this.minor = minor;
+    }
+
+    /**
+     * Select the adapter for the given version as reported in "version.number"
+     * by the root endpoint of Elasticsearch, e.g. "1.3.9" or "6.0.0-beta1".
+     *
+     * @param version The version-string, can be null.
+     * @return An adapter for the version, {@link #DEFAULT} if the version cannot be parsed.
+     */
+    public static VersionAdapter forVersion(String version) {
+        if(version == null) {
+            return DEFAULT;
+        }
+
+        Matcher matcher = VERSION_PATTERN.matcher(version);
+        if(!matcher.matches()) {
+            return DEFAULT;
+        }
+
+        return new VersionAdapter(version, Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+    }
+
+    /**
+     * @return The version-string that this adapter was selected for, null for {@link #DEFAULT}.
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    public boolean isKnown() {
+        return version != null;
+    }
+
+    private boolean isAtLeast(int requiredMajor, int requiredMinor) {
+        return major > requiredMajor || (major == requiredMajor && minor >= requiredMinor);
+    }
+
+    public String getClusterHealthEndpoint() {
+        return "/_cluster/health";
+    }
+
+    public String getClusterStatsEndpoint() {
+        return "/_cluster/stats";
+    }
+
+    /**
+     * @return The endpoint for the field data of the nodes broken down by field, which
+     *      is the same for all supported versions.
+     */
+    public String getFieldDataEndpoint() {
+        return "/_nodes/stats/indices/fielddata?fields=*";
+    }
+
+    /**
+     * @return The endpoint for node information, restricted to the JVM information
+     *      which is the only part that we read.
+     */
+    public String getNodeInfoEndpoint() {
+        if(!isKnown()) {
+            return "/_nodes";
+        }
+
+        return "/_nodes/jvm";
+    }
+
+    /**
+     * @return The endpoint for node statistics, restricted to the metrics that we read.
+     *      Starting with 2.0 the index-level metrics can be restricted as well, starting
+     *      with 5.0 the statistics of the ingest pipelines are included. The OS statistics
+     *      are included for the CPU, load and memory of the nodes.
+     */
+    public String getNodeStatsEndpoint() {
+        if(!isKnown()) {
+            return "/_nodes/stats";
+        }
+
+        if(!isAtLeast(2, 0)) {
+            return "/_nodes/stats/indices,os,process";
+        }
+
+        StringBuilder indexMetrics = new StringBuilder("docs,store,indexing,search,query_cache,fielddata,translog,request_cache,recovery");
+        if(hasPercolate()) {
+            indexMetrics.append(",percolate");
+        }
+        return "/_nodes/stats/os,process,indices" + (hasIngest() ? ",ingest/" : "/") + indexMetrics;
+    }
+
+    /**
+     * @return The endpoint for the statistics per index, restricted to the metrics
+     *      which are rolled up per index pattern.
+     */
+    public String getIndexStatsEndpoint() {
+        if(!isKnown()) {
+            return "/_stats";
+        }
+
+        return "/_stats/docs,store,indexing,search";
+    }
+
+    /**
+     * @return The endpoint which the background sampler polls, restricted to the
+     *      thread pools, the JVM and the gauges of the indexing and search operations.
+     */
+    public String getSampleEndpoint() {
+        if(!isKnown()) {
+            return "/_nodes/stats";
+        }
+
+        if(!isAtLeast(2, 0)) {
+            return "/_nodes/stats/indices,thread_pool,jvm";
+        }
+
+        return "/_nodes/stats/indices,thread_pool,jvm/indexing,search";
+    }
+
+    /**
+     * @return true for 5.0 and newer which provide statistics of the ingest pipelines.
+     */
+    public boolean hasIngest() {
+        return !isKnown() || isAtLeast(5, 0);
+    }
+
+    /**
+     * @return false for 5.0 and newer where percolate statistics were removed.
+     */
+    public boolean hasPercolate() {
+        return !isKnown() || !isAtLeast(5, 0);
+    }
+
+    /**
+     * Before 2.0 the node-level query cache was called "filter_cache" and "query_cache"
+     * denoted the shard request cache.
+     *
+     * @return The name of the JSON section which holds the node-level query cache.
+     */
+    public String getQueryCacheSection() {
+        if(isKnown() && !isAtLeast(2, 0)) {
+            return "filter_cache";
+        }
+
+        return "query_cache";
+    }
+
+    /**
+     * @return The name of the JSON section which holds the shard request cache, null
+     *      if the version does not provide one.
+     */
+    public String getRequestCacheSection() {
+        if(isKnown() && !isAtLeast(2, 0)) {
+            // the shard query cache was introduced with 1.4
+            return isAtLeast(1, 4) ? "query_cache" : null;
+        }
+
+        return "request_cache";
+    }
+
+    @Override
+    public String toString() {
+        return "VersionAdapter{" +
+                "version='" + version + '\'' +
+                '}';
+    }
+}
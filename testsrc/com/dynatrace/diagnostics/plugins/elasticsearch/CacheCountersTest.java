@@ -0,0 +1,92 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CacheCountersTest {
+    @Test
+    public void testExtract() throws Exception {
+        Map<String, CacheCounters.Counts> counts = new HashMap<>();
+        CacheCounters.extract("id1", "node1", CacheCounters.QUERY_CACHE, new ObjectMapper().readTree(
+                "{\"memory_size_in_bytes\":1000,\"hit_count\":80,\"miss_count\":20,\"evictions\":5}"), counts);
+        CacheCounters.extract("id1", "node1", CacheCounters.FIELD_DATA, new ObjectMapper().readTree(
+                "{\"memory_size_in_bytes\":1000,\"evictions\":3}"), counts);
+        assertEquals(2, counts.size());
+        assertTrue(counts.containsKey("id1/query_cache"));
+        assertTrue(counts.containsKey("id1/fielddata"));
+    }
+
+    @Test
+    public void testRates() {
+        CacheCounters counters = new CacheCounters();
+        assertNull(counters.update(counts(0), 1000));
+
+        CacheCounters.Rates rates = counters.update(counts(100), 11000);
+        assertNotNull(rates);
+
+        // node1 hits 90%, node2 hits 70%
+        CacheCounters.Rate total = rates.getTotal(CacheCounters.QUERY_CACHE);
+        assertTrue(total.hasLookups());
+        assertEquals(80, total.getHitRatio(), 0.001);
+        assertEquals(2, total.getEvictionsPerSecond(), 0.001);
+        assertEquals(90, rates.getNodes(CacheCounters.QUERY_CACHE).get("node1").getHitRatio(), 0.001);
+        assertEquals(70, rates.getNodes(CacheCounters.QUERY_CACHE).get("node2").getHitRatio(), 0.001);
+        assertEquals(1, rates.getNodes(CacheCounters.QUERY_CACHE).get("node1").getEvictionsPerSecond(), 0.001);
+
+        // no hits and misses are reported for field data
+        CacheCounters.Rate fieldData = rates.getTotal(CacheCounters.FIELD_DATA);
+        assertFalse(fieldData.hasLookups());
+        assertEquals(0, fieldData.getHitRatio(), 0.001);
+        assertEquals(20, fieldData.getEvictionsPerSecond(), 0.001);
+
+        assertNull(rates.getTotal(CacheCounters.REQUEST_CACHE));
+        assertTrue(rates.getNodes(CacheCounters.REQUEST_CACHE).isEmpty());
+
+        // the time did not advance
+        assertNull(counters.update(counts(100), 11000));
+    }
+
+    @Test
+    public void testMissesNotReported() {
+        CacheCounters counters = new CacheCounters();
+        counters.update(counts(1000), 1000);
+
+        // node2 did not report its misses, so only its evictions are used
+        Map<String, CacheCounters.Counts> current = counts(1100);
+        current.put("id2/query_cache", new CacheCounters.Counts("node2", CacheCounters.QUERY_CACHE).set(7700, -1, 110));
+
+        CacheCounters.Rates rates = counters.update(current, 11000);
+        assertEquals(90, rates.getTotal(CacheCounters.QUERY_CACHE).getHitRatio(), 0.001);
+        assertEquals(2, rates.getTotal(CacheCounters.QUERY_CACHE).getEvictionsPerSecond(), 0.001);
+        assertFalse(rates.getNodes(CacheCounters.QUERY_CACHE).get("node2").hasLookups());
+    }
+
+    @Test
+    public void testUnused() {
+        CacheCounters counters = new CacheCounters();
+        counters.update(counts(100), 1000);
+        CacheCounters.Rates rates = counters.update(counts(100), 2000);
+
+        CacheCounters.Rate total = rates.getTotal(CacheCounters.QUERY_CACHE);
+        assertFalse(total.hasLookups());
+        assertEquals(0, total.getHitRatio(), 0.001);
+        assertEquals(0, total.getEvictionsPerSecond(), 0.001);
+    }
+
+    /**
+     * Two nodes, node1 hits 90% and node2 70% in the query cache, field data evicts twice as often.
+     */
+    private static Map<String, CacheCounters.Counts> counts(long base) {
+        Map<String, CacheCounters.Counts> counts = new HashMap<>();
+        counts.put("id1/query_cache", new CacheCounters.Counts("node1", CacheCounters.QUERY_CACHE).set(9 * base, base, base / 10));
+        counts.put("id2/query_cache", new CacheCounters.Counts("node2", CacheCounters.QUERY_CACHE).set(7 * base, 3 * base, base / 10));
+        counts.put("id1/fielddata", new CacheCounters.Counts("node1", CacheCounters.FIELD_DATA).set(-1, -1, base));
+        counts.put("id2/fielddata", new CacheCounters.Counts("node2", CacheCounters.FIELD_DATA).set(-1, -1, base));
+        return counts;
+    }
+}
@@ -0,0 +1,111 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CardinalityGuardTest {
+    @Test
+    public void testNoLimit() {
+        CardinalityGuard guard = new CardinalityGuard(0, false);
+        Map<String, Double> values = values(1, 2, 3, 4, 5);
+        assertSame(values, guard.limit("g", "m", null, CardinalityGuard.Fold.SUM, values));
+    }
+
+    @Test
+    public void testBelowLimit() {
+        CardinalityGuard guard = new CardinalityGuard(3, false);
+        Map<String, Double> values = values(1, 2, 3);
+        assertSame(values, guard.limit("g", "m", null, CardinalityGuard.Fold.SUM, values));
+        assertTrue(guard.limit("g", "m", null, CardinalityGuard.Fold.SUM, new HashMap<String, Double>()).isEmpty());
+    }
+
+    @Test
+    public void testReranked() {
+        CardinalityGuard guard = new CardinalityGuard(2, false);
+
+        Map<String, Double> limited = guard.limit("g", "m", null, CardinalityGuard.Fold.SUM, values(1, 5, 3, 4));
+        assertEquals(3, limited.size());
+        assertEquals(5.0, limited.get("node1"), 0.0);
+        assertEquals(4.0, limited.get("node3"), 0.0);
+        assertEquals(1.0 + 3.0, limited.get(CardinalityGuard.OTHER), 0.0);
+
+        // the highest values are selected again
+        limited = guard.limit("g", "m", null, CardinalityGuard.Fold.SUM, values(1, 5, 6, 4));
+        assertEquals(5.0, limited.get("node1"), 0.0);
+        assertEquals(6.0, limited.get("node2"), 0.0);
+        assertEquals(1.0 + 4.0, limited.get(CardinalityGuard.OTHER), 0.0);
+    }
+
+    @Test
+    public void testSticky() {
+        CardinalityGuard guard = new CardinalityGuard(2, true);
+
+        Map<String, Double> limited = guard.limit("g", "m", null, CardinalityGuard.Fold.SUM, values(1, 5, 3, 4));
+        assertEquals(5.0, limited.get("node1"), 0.0);
+        assertEquals(4.0, limited.get("node3"), 0.0);
+
+        // the keys are kept although node2 has a higher value now
+        limited = guard.limit("g", "m", null, CardinalityGuard.Fold.SUM, values(1, 5, 6, 4));
+        assertEquals(3, limited.size());
+        assertEquals(5.0, limited.get("node1"), 0.0);
+        assertEquals(4.0, limited.get("node3"), 0.0);
+        assertEquals(1.0 + 6.0, limited.get(CardinalityGuard.OTHER), 0.0);
+
+        // each measure has its own keys
+        limited = guard.limit("g", "other-measure", null, CardinalityGuard.Fold.SUM, values(1, 5, 6, 4));
+        assertEquals(6.0, limited.get("node2"), 0.0);
+        limited = guard.limit("other-group", "m", null, CardinalityGuard.Fold.SUM, values(1, 5, 6, 4));
+        assertEquals(6.0, limited.get("node2"), 0.0);
+
+        // as does each cluster
+        limited = guard.limit("g", "m", "es2", CardinalityGuard.Fold.SUM, values(1, 5, 6, 4));
+        assertEquals(6.0, limited.get("node2"), 0.0);
+
+        // node3 is gone, its place is taken by the highest value
+        Map<String, Double> values = values(1, 5, 6);
+        limited = guard.limit("g", "m", null, CardinalityGuard.Fold.SUM, values);
+        assertEquals(5.0, limited.get("node1"), 0.0);
+        assertEquals(6.0, limited.get("node2"), 0.0);
+        assertEquals(1.0, limited.get(CardinalityGuard.OTHER), 0.0);
+    }
+
+    @Test
+    public void testOtherKeyIsReported() {
+        CardinalityGuard guard = new CardinalityGuard(1, false);
+        Map<String, Double> values = new HashMap<>();
+        values.put(CardinalityGuard.OTHER, 10.0);
+        values.put("a", 1.0);
+        values.put("b", 2.0);
+
+        Map<String, Double> limited = guard.limit("g", "m", null, CardinalityGuard.Fold.SUM, values);
+        assertEquals(1, limited.size());
+        assertEquals(13.0, limited.get(CardinalityGuard.OTHER), 0.0);
+    }
+
+    @Test
+    public void testFold() {
+        CardinalityGuard guard = new CardinalityGuard(2, false);
+
+        // percentages are not summed up
+        Map<String, Double> limited = guard.limit("g", "m", null, CardinalityGuard.Fold.AVERAGE, values(10, 50, 30, 40, 20));
+        assertEquals(3, limited.size());
+        assertEquals(50.0, limited.get("node1"), 0.0);
+        assertEquals(40.0, limited.get("node3"), 0.0);
+        assertEquals(20.0, limited.get(CardinalityGuard.OTHER), 0.0);
+
+        limited = guard.limit("g", "m", null, CardinalityGuard.Fold.MAXIMUM, values(10, 50, 30, 40, 20));
+        assertEquals(30.0, limited.get(CardinalityGuard.OTHER), 0.0);
+    }
+
+    private static Map<String, Double> values(double... values) {
+        Map<String, Double> map = new HashMap<>();
+        for(int i = 0;i < values.length;i++) {
+            map.put("node" + i, values[i]);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,79 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import org.dstadler.commons.testing.TestHelpers;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+    @Test
+    public void testOpen() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker();
+        breaker.checkRequest(0);
+        assertTrue(breaker.isReachable());
+
+        // a single failure does not open the breaker yet
+        breaker.recordFailure(1000);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertFalse(breaker.isReachable());
+        breaker.checkRequest(2000);
+
+        breaker.recordFailure(2000);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        try {
+            breaker.checkRequest(2000 + CircuitBreaker.INITIAL_BACKOFF - 1);
+            fail("Should fail while the breaker is open");
+        } catch (CircuitBreaker.OpenException e) {
+            // expected here
+        }
+        assertFalse(breaker.isReachable());
+
+        // the probe succeeds and closes the breaker
+        breaker.checkRequest(2000 + CircuitBreaker.INITIAL_BACKOFF);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.isReachable());
+
+        // the failures are counted from the start again
+        breaker.recordFailure(100_000);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testSuccessResetsFailures() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker();
+        breaker.recordFailure(0);
+        breaker.recordSuccess();
+        breaker.recordFailure(1000);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.checkRequest(2000);
+    }
+
+    @Test
+    public void testBackoff() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker();
+        breaker.recordFailure(0);
+        breaker.recordFailure(0);
+
+        long now = 0;
+        long backoff = CircuitBreaker.INITIAL_BACKOFF;
+        for(int i = 0;i < 10;i++) {
+            now += backoff;
+            breaker.checkRequest(now);
+            assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+            // the failed probe doubles the backoff, up to the maximum
+            breaker.recordFailure(now);
+            assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+            backoff = Math.min(backoff * 2, CircuitBreaker.MAX_BACKOFF);
+            try {
+                breaker.checkRequest(now + backoff - 1);
+                fail("Should fail while the breaker is open");
+            } catch (CircuitBreaker.OpenException e) {
+                TestHelpers.assertContains(e.getMessage(), "failed polls");
+            }
+        }
+        assertEquals(CircuitBreaker.MAX_BACKOFF, backoff);
+    }
+}
@@ -0,0 +1,749 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Collection;
+import java.util.Random;
+
+/**
+ * Generates REST responses in the shape that an Elasticsearch cluster of the
+ * given size and version returns for the endpoints which the monitor queries.
+ *
+ * The responses contain all the sections that Elasticsearch reports, not only
+ * the ones that the monitor reads, so parsing them costs as much as parsing the
+ * responses of a real cluster. The sections differ by version as they do in
+ * Elasticsearch 1.x, 2.x and 5.x, e.g. "filter_cache" and "percolate".
+ *
+ * Values are random, but deterministic for a given seed, counters grow with every
+ * call to {@link #tick()}.
+ */
+public class ClusterResponses {
+    private static final String[] THREAD_POOLS = new String[] {
+            "bulk", "fetch_shard_started", "fetch_shard_store", "flush", "force_merge", "generic", "get",
+            "index", "listener", "management", "refresh", "search", "snapshot", "warmer"
+    };
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private volatile int nodes;
+    private final int indices;
+    private final int shardsPerIndex;
+    private final long seed;
+    private final String version;
+    private final int major;
+
+    private int ticks = 0;
+
+    public ClusterResponses(int nodes, int indices, int shardsPerIndex, long seed) {
+        this(nodes, indices, shardsPerIndex, seed, "5.5.2");
+    }
+
+    /**
+     * @param version The version of Elasticsearch whose responses are simulated, e.g. "1.7.6",
+     *                "2.4.6" or "5.5.2", only the major version changes the shape of the responses.
+     */
+    public ClusterResponses(int nodes, int indices, int shardsPerIndex, long seed, String version) {
+        this.nodes = nodes;
+        this.indices = indices;
+        this.shardsPerIndex = shardsPerIndex;
+        this.seed = seed;
+        this.version = version;
+        this.major = Integer.parseInt(version.substring(0, version.indexOf('.')));
+    }
+
+    /**
+     * Advance time by one polling interval, i.e. all counters increase.
+     */
+    public void tick() {
+        ticks++;
+    }
+
+    public int getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Simulate nodes which join or leave the cluster, the nodes keep their node-ids.
+     */
+    public void setNodes(int nodes) {
+        this.nodes = nodes;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String root() {
+        ObjectNode root = mapper.createObjectNode();
+        root.put("name", nodeName(0));
+        root.put("cluster_name", "simulated");
+        root.put("cluster_uuid", "a1GcG3cGQ6ia0a2DDwKZAw");
+        ObjectNode version = root.putObject("version");
+        version.put("number", this.version);
+        version.put("build_hash", "b2f0c09");
+        version.put("build_date", "2017-08-14T12:33:14.154Z");
+        version.put("build_snapshot", false);
+        version.put("lucene_version", major >= 5 ? "6.6.0" : major >= 2 ? "5.5.2" : "4.10.4");
+        root.put("tagline", "You Know, for Search");
+        return toString(root);
+    }
+
+    public String clusterHealth() {
+        int shards = indices * shardsPerIndex;
+
+        ObjectNode health = mapper.createObjectNode();
+        health.put("cluster_name", "simulated");
+        health.put("status", "green");
+        health.put("timed_out", false);
+        health.put("number_of_nodes", nodes);
+        health.put("number_of_data_nodes", nodes);
+        health.put("active_primary_shards", shards);
+        health.put("active_shards", shards * 2);
+        health.put("relocating_shards", 0);
+        health.put("initializing_shards", 0);
+        health.put("unassigned_shards", 0);
+        health.put("delayed_unassigned_shards", 0);
+        health.put("number_of_pending_tasks", 0);
+        health.put("number_of_in_flight_fetch", 0);
+        if(major >= 2) {
+            health.put("task_max_waiting_in_queue_millis", 0);
+            health.put("active_shards_percent_as_number", 100.0);
+        }
+        return toString(health);
+    }
+
+    public String nodesInfo() {
+        ObjectNode root = mapper.createObjectNode();
+        addNodesHeader(root);
+        ObjectNode nodesNode = root.putObject("nodes");
+        for(int i = 0;i < nodes;i++) {
+            Random random = random(i);
+
+            ObjectNode node = addNodeHeader(nodesNode, i);
+            node.put("version", version);
+            node.put("build_hash", "b2f0c09");
+            node.put("total_indexing_buffer", 103887667);
+
+            ObjectNode jvm = node.putObject("jvm");
+            jvm.put("pid", 1000 + i);
+            jvm.put("version", "1.8.0_144");
+            jvm.put("vm_name", "OpenJDK 64-Bit Server VM");
+            jvm.put("vm_version", "25.144-b01");
+            jvm.put("vm_vendor", "Oracle Corporation");
+            jvm.put("start_time_in_millis", 1507000000000L + random.nextInt(100000));
+            ObjectNode mem = jvm.putObject("mem");
+            mem.put("heap_init_in_bytes", 1073741824L);
+            mem.put("heap_max_in_bytes", 1038876672L);
+            mem.put("non_heap_init_in_bytes", 2555904);
+            mem.put("non_heap_max_in_bytes", 0);
+            mem.put("direct_max_in_bytes", 1038876672L);
+            ArrayNode pools = jvm.putArray("memory_pools");
+            pools.add("Code Cache").add("Metaspace").add("Compressed Class Space").add("Par Eden Space").add("Par Survivor Space").add("CMS Old Gen");
+            ArrayNode collectors = jvm.putArray("gc_collectors");
+            collectors.add("ParNew").add("ConcurrentMarkSweep");
+            ArrayNode arguments = jvm.putArray("input_arguments");
+            arguments.add("-Xms1g").add("-Xmx1g").add("-XX:+UseConcMarkSweepGC").add("-XX:CMSInitiatingOccupancyFraction=75")
+                    .add("-XX:+UseCMSInitiatingOccupancyOnly").add("-XX:+AlwaysPreTouch").add("-Djava.awt.headless=true");
+        }
+        return toString(root);
+    }
+
+    public String nodesStats() {
+        return nodesStats(null, null);
+    }
+
+    /**
+     * Node statistics restricted to the given metrics like "/_nodes/stats/{metrics}/{indexMetrics}" does.
+     *
+     * @param metrics The top-level sections to include, e.g. "indices" or "jvm", null for all.
+     * @param indexMetrics The sections of "indices" to include, e.g. "store" or "search", null for all.
+     */
+    public String nodesStats(Collection<String> metrics, Collection<String> indexMetrics) {
+        ObjectNode root = mapper.createObjectNode();
+        addNodesHeader(root);
+        ObjectNode nodesNode = root.putObject("nodes");
+        for(int i = 0;i < nodes;i++) {
+            Random random = random(i);
+
+            ObjectNode node = addNodeHeader(nodesNode, i);
+            node.put("timestamp", 1508400000000L + ticks * 60000L);
+
+            // the random values are always drawn in the same order, so filtering
+            // sections does not change the values of the remaining ones
+            addIndicesStats(node, random, indices * shardsPerIndex * 2 / nodes, metrics, indexMetrics);
+            addOsStats(section(node, "os", metrics), random);
+            addProcessStats(section(node, "process", metrics), random);
+            addJvmStats(section(node, "jvm", metrics), random);
+            addThreadPoolStats(section(node, "thread_pool", metrics), random);
+            addFsStats(section(node, "fs", metrics), random);
+
+            ObjectNode transport = section(node, "transport", metrics);
+            transport.put("server_open", 13 * nodes);
+            transport.put("rx_count", counter(random, 1000));
+            transport.put("rx_size_in_bytes", counter(random, 1000000));
+            transport.put("tx_count", counter(random, 1000));
+            transport.put("tx_size_in_bytes", counter(random, 1000000));
+
+            ObjectNode http = section(node, "http", metrics);
+            http.put("current_open", random.nextInt(20));
+            http.put("total_opened", counter(random, 10));
+
+            ObjectNode breakers = section(node, "breakers", metrics);
+            for(String breaker : new String[] { "request", "fielddata", "in_flight_requests", "parent" }) {
+                ObjectNode breakerNode = breakers.putObject(breaker);
+                breakerNode.put("limit_size_in_bytes", 623326003L);
+                breakerNode.put("limit_size", "594.4mb");
+                breakerNode.put("estimated_size_in_bytes", random.nextInt(1000000));
+                breakerNode.put("estimated_size", "0b");
+                breakerNode.put("overhead", 1.0);
+                breakerNode.put("tripped", 0);
+            }
+
+            if(major >= 5) {
+                ObjectNode script = section(node, "script", metrics);
+                script.put("compilations", random.nextInt(10));
+                script.put("cache_evictions", 0);
+
+                ObjectNode ingest = section(node, "ingest", metrics);
+                ObjectNode total = ingest.putObject("total");
+                total.put("count", counter(random, 100));
+                total.put("time_in_millis", counter(random, 10));
+                total.put("current", 0);
+                total.put("failed", 0);
+                ObjectNode pipelines = ingest.putObject("pipelines");
+                for(String name : new String[] { "logs", "metrics" }) {
+                    ObjectNode pipeline = pipelines.putObject(name);
+                    pipeline.put("count", counter(random, 50));
+                    pipeline.put("time_in_millis", counter(random, 5));
+                    pipeline.put("current", 0);
+                    pipeline.put("failed", counter(random, 1));
+                }
+            }
+        }
+        return toString(root);
+    }
+
+    /**
+     * Index statistics like "/_stats" returns them, the indices are daily indices of two
+     * workloads, e.g. "logs-2017.10.01" and "metrics-2017.10.01", see {@link #indexName(int)}.
+     */
+    public String indexStats() {
+        int shards = indices * shardsPerIndex;
+
+        ObjectNode root = mapper.createObjectNode();
+        ObjectNode shardsNode = root.putObject("_shards");
+        shardsNode.put("total", shards * 2);
+        shardsNode.put("successful", shards * 2);
+        shardsNode.put("failed", 0);
+
+        // the totals are not read by the monitor, so they are not summed up here
+        Random random = random(-2);
+        ObjectNode all = root.putObject("_all");
+        addIndexStats(all.putObject("primaries"), random);
+        addIndexStats(all.putObject("total"), random);
+
+        ObjectNode indicesNode = root.putObject("indices");
+        for(int i = 0;i < indices;i++) {
+            random = random(-100 - i);
+            ObjectNode index = indicesNode.putObject(indexName(i));
+            if(major >= 5) {
+                index.put("uuid", String.format("idx-%06d-Y2xXbTdKRtWiQ", i));
+            }
+            addIndexStats(index.putObject("primaries"), random);
+            addIndexStats(index.putObject("total"), random);
+        }
+        return toString(root);
+    }
+
+    private void addIndexStats(ObjectNode stats, Random random) {
+        ObjectNode docs = stats.putObject("docs");
+        docs.put("count", counter(random, 1000));
+        docs.put("deleted", counter(random, 10));
+
+        ObjectNode store = stats.putObject("store");
+        store.put("size_in_bytes", 100000000L + random.nextInt(1000000));
+        store.put("throttle_time_in_millis", 0);
+
+        ObjectNode indexing = stats.putObject("indexing");
+        indexing.put("index_total", counter(random, 1000));
+        indexing.put("index_time_in_millis", counter(random, 100));
+        indexing.put("index_current", random.nextInt(10));
+        indexing.put("index_failed", 0);
+        indexing.put("delete_total", counter(random, 10));
+        indexing.put("delete_time_in_millis", counter(random, 10));
+        indexing.put("delete_current", 0);
+        indexing.put("noop_update_total", 0);
+        indexing.put("is_throttled", false);
+        indexing.put("throttle_time_in_millis", 0);
+
+        ObjectNode search = stats.putObject("search");
+        search.put("open_contexts", random.nextInt(5));
+        search.put("query_total", counter(random, 100));
+        search.put("query_time_in_millis", counter(random, 10));
+        search.put("query_current", random.nextInt(10));
+        search.put("fetch_total", counter(random, 100));
+        search.put("fetch_time_in_millis", counter(random, 10));
+        search.put("fetch_current", random.nextInt(10));
+        search.put("scroll_total", counter(random, 10));
+        search.put("scroll_time_in_millis", counter(random, 10));
+        search.put("scroll_current", random.nextInt(2));
+        search.put("suggest_total", 0);
+        search.put("suggest_time_in_millis", 0);
+        search.put("suggest_current", 0);
+    }
+
+    public String clusterStats() {
+        Random random = random(-1);
+        int shards = indices * shardsPerIndex;
+
+        ObjectNode root = mapper.createObjectNode();
+        addNodesHeader(root);
+        root.put("timestamp", 1508400000000L + ticks * 60000L);
+        root.put("cluster_name", "simulated");
+        root.put("status", "green");
+
+        ObjectNode indicesNode = root.putObject("indices");
+        indicesNode.put("count", indices);
+        ObjectNode shardsNode = indicesNode.putObject("shards");
+        shardsNode.put("total", shards * 2);
+        shardsNode.put("primaries", shards);
+        shardsNode.put("replication", 1.0);
+        ObjectNode index = shardsNode.putObject("index");
+        for(String key : new String[] { "shards", "primaries", "replication" }) {
+            ObjectNode stat = index.putObject(key);
+            stat.put("min", shardsPerIndex);
+            stat.put("max", shardsPerIndex * 2);
+            stat.put("avg", shardsPerIndex * 1.5);
+        }
+
+        ObjectNode docs = indicesNode.putObject("docs");
+        docs.put("count", counter(random, 100000) * nodes);
+        docs.put("deleted", counter(random, 100) * nodes);
+
+        ObjectNode store = indicesNode.putObject("store");
+        store.put("size_in_bytes", 1000000000L * nodes);
+        store.put("throttle_time_in_millis", 0);
+
+        ObjectNode fielddata = indicesNode.putObject("fielddata");
+        fielddata.put("memory_size_in_bytes", random.nextInt(1000000) * nodes);
+        fielddata.put("evictions", 0);
+
+        addQueryCache(indicesNode, random, null);
+        if(major < 2) {
+            indicesNode.putObject("id_cache").put("memory_size_in_bytes", 0);
+        }
+
+        indicesNode.putObject("completion").put("size_in_bytes", 0);
+        addSegments(indicesNode.putObject("segments"), random, shards * 2);
+        addPercolate(indicesNode, random, null);
+
+        ObjectNode nodesNode = root.putObject("nodes");
+        ObjectNode count = nodesNode.putObject("count");
+        count.put("total", nodes);
+        if(major >= 5) {
+            count.put("data", nodes);
+            count.put("coordinating_only", 0);
+            count.put("master", nodes);
+            count.put("ingest", nodes);
+        } else {
+            count.put("master_only", 0);
+            count.put("data_only", 0);
+            count.put("master_data", nodes);
+            count.put("client", 0);
+        }
+        nodesNode.putArray("versions").add(version);
+
+        ObjectNode os = nodesNode.putObject("os");
+        os.put("available_processors", 8 * nodes);
+        os.put("allocated_processors", 8 * nodes);
+        os.putArray("names").addObject().put("name", "Linux").put("count", nodes);
+        ObjectNode osMem = os.putObject("mem");
+        osMem.put("total_in_bytes", 16000000000L * nodes);
+        osMem.put("free_in_bytes", 4000000000L * nodes);
+        osMem.put("used_in_bytes", 12000000000L * nodes);
+        osMem.put("free_percent", 25);
+        osMem.put("used_percent", 75);
+
+        ObjectNode process = nodesNode.putObject("process");
+        ObjectNode cpu = process.putObject("cpu");
+        cpu.put("percent", random.nextInt(100));
+        ObjectNode fileDescriptors = process.putObject("open_file_descriptors");
+        fileDescriptors.put("min", 200);
+        fileDescriptors.put("max", 400);
+        fileDescriptors.put("avg", 300);
+
+        ObjectNode jvm = nodesNode.putObject("jvm");
+        jvm.put("max_uptime_in_millis", 1000000L + ticks * 60000L);
+        jvm.putArray("versions").addObject()
+                .put("version", "1.8.0_144").put("vm_name", "OpenJDK 64-Bit Server VM")
+                .put("vm_version", "25.144-b01").put("vm_vendor", "Oracle Corporation").put("count", nodes);
+        ObjectNode jvmMem = jvm.putObject("mem");
+        jvmMem.put("heap_used_in_bytes", 500000000L * nodes);
+        jvmMem.put("heap_max_in_bytes", 1038876672L * nodes);
+        jvm.put("threads", 60 * nodes);
+
+        ObjectNode fs = nodesNode.putObject("fs");
+        fs.put("total_in_bytes", 100000000000L * nodes);
+        fs.put("free_in_bytes", 60000000000L * nodes);
+        fs.put("available_in_bytes", 55000000000L * nodes);
+
+        nodesNode.putArray("plugins");
+
+        ObjectNode networkTypes = nodesNode.putObject("network_types");
+        networkTypes.putObject("transport_types").put("netty4", nodes);
+        networkTypes.putObject("http_types").put("netty4", nodes);
+
+        return toString(root);
+    }
+
+    private void addIndicesStats(ObjectNode node, Random random, int shardsOnNode, Collection<String> metrics, Collection<String> indexMetrics) {
+        ObjectNode indicesNode = section(node, "indices", metrics);
+
+        ObjectNode docs = section(indicesNode, "docs", indexMetrics);
+        docs.put("count", counter(random, 100000));
+        docs.put("deleted", counter(random, 100));
+
+        ObjectNode store = section(indicesNode, "store", indexMetrics);
+        store.put("size_in_bytes", 1000000000L + random.nextInt(1000000));
+        store.put("throttle_time_in_millis", 0);
+
+        ObjectNode indexing = section(indicesNode, "indexing", indexMetrics);
+        indexing.put("index_total", counter(random, 100000));
+        indexing.put("index_time_in_millis", counter(random, 10000));
+        indexing.put("index_current", random.nextInt(10));
+        indexing.put("index_failed", 0);
+        indexing.put("delete_total", counter(random, 100));
+        indexing.put("delete_time_in_millis", counter(random, 10));
+        indexing.put("delete_current", 0);
+        indexing.put("noop_update_total", 0);
+        indexing.put("is_throttled", false);
+        indexing.put("throttle_time_in_millis", 0);
+
+        ObjectNode get = section(indicesNode, "get", indexMetrics);
+        get.put("total", counter(random, 100));
+        get.put("time_in_millis", counter(random, 10));
+        get.put("exists_total", counter(random, 100));
+        get.put("exists_time_in_millis", counter(random, 10));
+        get.put("missing_total", 0);
+        get.put("missing_time_in_millis", 0);
+        get.put("current", 0);
+
+        ObjectNode search = section(indicesNode, "search", indexMetrics);
+        search.put("open_contexts", random.nextInt(5));
+        search.put("query_total", counter(random, 10000));
+        search.put("query_time_in_millis", counter(random, 1000));
+        search.put("query_current", random.nextInt(10));
+        search.put("fetch_total", counter(random, 10000));
+        search.put("fetch_time_in_millis", counter(random, 1000));
+        search.put("fetch_current", random.nextInt(10));
+        search.put("scroll_total", counter(random, 10));
+        search.put("scroll_time_in_millis", counter(random, 10));
+        search.put("scroll_current", random.nextInt(2));
+        search.put("suggest_total", 0);
+        search.put("suggest_time_in_millis", 0);
+        search.put("suggest_current", 0);
+
+        ObjectNode merges = section(indicesNode, "merges", indexMetrics);
+        merges.put("current", random.nextInt(3));
+        merges.put("current_docs", random.nextInt(1000));
+        merges.put("current_size_in_bytes", random.nextInt(1000000));
+        merges.put("total", counter(random, 10));
+        merges.put("total_time_in_millis", counter(random, 1000));
+        merges.put("total_docs", counter(random, 10000));
+        merges.put("total_size_in_bytes", counter(random, 1000000));
+        merges.put("total_stopped_time_in_millis", 0);
+        merges.put("total_throttled_time_in_millis", counter(random, 10));
+        merges.put("total_auto_throttle_in_bytes", 20971520L * shardsOnNode);
+
+        ObjectNode refresh = section(indicesNode, "refresh", indexMetrics);
+        refresh.put("total", counter(random, 100));
+        refresh.put("total_time_in_millis", counter(random, 1000));
+        refresh.put("listeners", 0);
+
+        ObjectNode flush = section(indicesNode, "flush", indexMetrics);
+        flush.put("total", counter(random, 10));
+        flush.put("total_time_in_millis", counter(random, 100));
+
+        ObjectNode warmer = section(indicesNode, "warmer", indexMetrics);
+        warmer.put("current", 0);
+        warmer.put("total", counter(random, 100));
+        warmer.put("total_time_in_millis", counter(random, 10));
+
+        addQueryCache(indicesNode, random, indexMetrics);
+
+        ObjectNode fielddata = section(indicesNode, "fielddata", indexMetrics);
+        fielddata.put("memory_size_in_bytes", random.nextInt(1000000));
+        fielddata.put("evictions", 0);
+
+        section(indicesNode, "completion", indexMetrics).put("size_in_bytes", 0);
+        addSegments(section(indicesNode, "segments", indexMetrics), random, shardsOnNode);
+        addPercolate(indicesNode, random, indexMetrics);
+
+        ObjectNode translog = section(indicesNode, "translog", indexMetrics);
+        translog.put("operations", random.nextInt(10000));
+        translog.put("size_in_bytes", random.nextInt(10000000));
+
+        // before 2.0 the shard request cache was called "query_cache"
+        ObjectNode requestCache = section(indicesNode, major < 2 ? "query_cache" : "request_cache", indexMetrics);
+        requestCache.put("memory_size_in_bytes", random.nextInt(100000));
+        requestCache.put("evictions", 0);
+        requestCache.put("hit_count", counter(random, 100));
+        requestCache.put("miss_count", counter(random, 10));
+
+        if(major >= 2) {
+            ObjectNode recovery = section(indicesNode, "recovery", indexMetrics);
+            recovery.put("current_as_source", 0);
+            recovery.put("current_as_target", 0);
+            recovery.put("throttle_time_in_millis", counter(random, 10));
+        }
+    }
+
+    private void addQueryCache(ObjectNode indicesNode, Random random, Collection<String> indexMetrics) {
+        if(major < 2) {
+            ObjectNode filterCache = section(indicesNode, "filter_cache", indexMetrics);
+            filterCache.put("memory_size_in_bytes", random.nextInt(1000000));
+            filterCache.put("evictions", counter(random, 1));
+            return;
+        }
+
+        ObjectNode queryCache = section(indicesNode, "query_cache", indexMetrics);
+        queryCache.put("memory_size_in_bytes", random.nextInt(1000000));
+        queryCache.put("total_count", counter(random, 1000));
+        queryCache.put("hit_count", counter(random, 800));
+        queryCache.put("miss_count", counter(random, 200));
+        queryCache.put("cache_size", random.nextInt(1000));
+        queryCache.put("cache_count", counter(random, 10));
+        queryCache.put("evictions", counter(random, 1));
+    }
+
+    private void addPercolate(ObjectNode indicesNode, Random random, Collection<String> indexMetrics) {
+        // percolate statistics were removed with 5.0
+        if(major >= 5) {
+            return;
+        }
+
+        ObjectNode percolate = section(indicesNode, "percolate", indexMetrics);
+        percolate.put("total", counter(random, 10));
+        percolate.put("time_in_millis", counter(random, 10));
+        percolate.put("current", 0);
+        percolate.put("memory_size_in_bytes", -1);
+        percolate.put("memory_size", "-1b");
+        percolate.put("queries", random.nextInt(100));
+    }
+
+    private void addSegments(ObjectNode segments, Random random, int shards) {
+        segments.put("count", shards * (10 + random.nextInt(20)));
+        segments.put("memory_in_bytes", random.nextInt(10000000));
+        segments.put("terms_memory_in_bytes", random.nextInt(10000000));
+        segments.put("stored_fields_memory_in_bytes", random.nextInt(1000000));
+        segments.put("term_vectors_memory_in_bytes", 0);
+        segments.put("norms_memory_in_bytes", random.nextInt(100000));
+        segments.put("points_memory_in_bytes", random.nextInt(100000));
+        segments.put("doc_values_memory_in_bytes", random.nextInt(1000000));
+        segments.put("index_writer_memory_in_bytes", random.nextInt(1000000));
+        segments.put("version_map_memory_in_bytes", random.nextInt(100000));
+        segments.put("fixed_bit_set_memory_in_bytes", 0);
+        segments.put("max_unsafe_auto_id_timestamp", -1);
+        segments.putObject("file_sizes");
+    }
+
+    /**
+     * The CPU usage and the load averages are reported differently by each major version.
+     */
+    private void addOsStats(ObjectNode os, Random random) {
+        os.put("timestamp", 1508400000000L + ticks * 60000L);
+        int cpuPercent = random.nextInt(100);
+        double[] loadAverage = { random.nextDouble() * 8, random.nextDouble() * 8, random.nextDouble() * 8 };
+        if(major >= 5) {
+            ObjectNode cpu = os.putObject("cpu");
+            cpu.put("percent", cpuPercent);
+            ObjectNode load = cpu.putObject("load_average");
+            load.put("1m", loadAverage[0]);
+            load.put("5m", loadAverage[1]);
+            load.put("15m", loadAverage[2]);
+        } else if(major >= 2) {
+            os.put("cpu_percent", cpuPercent);
+            os.put("load_average", loadAverage[0]);
+        } else {
+            ObjectNode cpu = os.putObject("cpu");
+            cpu.put("sys", cpuPercent / 4);
+            cpu.put("user", cpuPercent - cpuPercent / 4);
+            cpu.put("idle", 100 - cpuPercent);
+            cpu.put("usage", cpuPercent);
+            cpu.put("stolen", 0);
+            ArrayNode load = os.putArray("load_average");
+            for(double value : loadAverage) {
+                load.add(value);
+            }
+        }
+        ObjectNode mem = os.putObject("mem");
+        if(major >= 2) {
+            mem.put("total_in_bytes", 16000000000L);
+        }
+        mem.put("free_in_bytes", 4000000000L);
+        mem.put("used_in_bytes", 12000000000L);
+        mem.put("free_percent", 25);
+        mem.put("used_percent", 75);
+        ObjectNode swap = os.putObject("swap");
+        if(major >= 2) {
+            swap.put("total_in_bytes", 1000000000L);
+        }
+        swap.put("free_in_bytes", 900000000L);
+        swap.put("used_in_bytes", 100000000L);
+    }
+
+    private void addProcessStats(ObjectNode process, Random random) {
+        process.put("timestamp", 1508400000000L + ticks * 60000L);
+        process.put("open_file_descriptors", 200 + random.nextInt(200));
+        process.put("max_file_descriptors", 65536);
+        ObjectNode cpu = process.putObject("cpu");
+        cpu.put("percent", random.nextInt(100));
+        cpu.put("total_in_millis", counter(random, 60000));
+        process.putObject("mem").put("total_virtual_in_bytes", 5000000000L);
+    }
+
+    private void addJvmStats(ObjectNode jvm, Random random) {
+        jvm.put("timestamp", 1508400000000L + ticks * 60000L);
+        jvm.put("uptime_in_millis", 1000000L + ticks * 60000L);
+        ObjectNode mem = jvm.putObject("mem");
+        mem.put("heap_used_in_bytes", 300000000L + random.nextInt(500000000));
+        mem.put("heap_used_percent", random.nextInt(100));
+        mem.put("heap_committed_in_bytes", 1038876672L);
+        mem.put("heap_max_in_bytes", 1038876672L);
+        mem.put("non_heap_used_in_bytes", 90000000L + random.nextInt(10000000));
+        mem.put("non_heap_committed_in_bytes", 100000000L);
+        ObjectNode pools = mem.putObject("pools");
+        for(String pool : new String[] { "young", "survivor", "old" }) {
+            ObjectNode poolNode = pools.putObject(pool);
+            poolNode.put("used_in_bytes", random.nextInt(300000000));
+            poolNode.put("max_in_bytes", 300000000);
+            poolNode.put("peak_used_in_bytes", 300000000);
+            poolNode.put("peak_max_in_bytes", 300000000);
+        }
+        ObjectNode threads = jvm.putObject("threads");
+        threads.put("count", 50 + random.nextInt(20));
+        threads.put("peak_count", 70);
+        ObjectNode collectors = jvm.putObject("gc").putObject("collectors");
+        for(String collector : new String[] { "young", "old" }) {
+            ObjectNode collectorNode = collectors.putObject(collector);
+            collectorNode.put("collection_count", counter(random, 10));
+            collectorNode.put("collection_time_in_millis", counter(random, 100));
+        }
+        ObjectNode bufferPools = jvm.putObject("buffer_pools");
+        for(String pool : new String[] { "direct", "mapped" }) {
+            ObjectNode poolNode = bufferPools.putObject(pool);
+            poolNode.put("count", random.nextInt(100));
+            poolNode.put("used_in_bytes", random.nextInt(100000000));
+            poolNode.put("total_capacity_in_bytes", 100000000);
+        }
+        ObjectNode classes = jvm.putObject("classes");
+        classes.put("current_loaded_count", 10000);
+        classes.put("total_loaded_count", 10000);
+        classes.put("total_unloaded_count", 0);
+    }
+
+    private void addThreadPoolStats(ObjectNode threadPool, Random random) {
+        for(String pool : THREAD_POOLS) {
+            ObjectNode poolNode = threadPool.putObject(pool);
+            poolNode.put("threads", random.nextInt(8));
+            poolNode.put("queue", random.nextInt(10));
+            poolNode.put("active", random.nextInt(8));
+            poolNode.put("rejected", 0);
+            poolNode.put("largest", 8);
+            poolNode.put("completed", counter(random, 1000));
+        }
+    }
+
+    private void addFsStats(ObjectNode fs, Random random) {
+        fs.put("timestamp", 1508400000000L + ticks * 60000L);
+        ObjectNode total = fs.putObject("total");
+        total.put("total_in_bytes", 100000000000L);
+        total.put("free_in_bytes", 60000000000L + random.nextInt(1000000));
+        total.put("available_in_bytes", 55000000000L + random.nextInt(1000000));
+        ObjectNode data = fs.putArray("data").addObject();
+        data.put("path", "/var/lib/elasticsearch/nodes/0");
+        data.put("mount", "/ (/dev/sda1)");
+        data.put("type", "ext4");
+        data.put("total_in_bytes", 100000000000L);
+        data.put("free_in_bytes", 60000000000L);
+        data.put("available_in_bytes", 55000000000L);
+        data.put("spins", "true");
+        ObjectNode ioStats = fs.putObject("io_stats");
+        ObjectNode device = ioStats.putArray("devices").addObject();
+        device.put("device_name", "sda1");
+        device.put("operations", counter(random, 1000));
+        device.put("read_operations", counter(random, 100));
+        device.put("write_operations", counter(random, 900));
+        device.put("read_kilobytes", counter(random, 1000));
+        device.put("write_kilobytes", counter(random, 9000));
+    }
+
+    /**
+     * @return The new section if it is included in the given metrics, otherwise a detached
+     *      node so that the values are still generated, but not sent.
+     */
+    private ObjectNode section(ObjectNode parent, String name, Collection<String> metrics) {
+        if(metrics == null || metrics.contains(name)) {
+            return parent.putObject(name);
+        }
+        return mapper.createObjectNode();
+    }
+
+    private void addNodesHeader(ObjectNode root) {
+        ObjectNode header = root.putObject("_nodes");
+        header.put("total", nodes);
+        header.put("successful", nodes);
+        header.put("failed", 0);
+        root.put("cluster_name", "simulated");
+    }
+
+    private ObjectNode addNodeHeader(ObjectNode nodesNode, int i) {
+        ObjectNode node = nodesNode.putObject(nodeId(i));
+        node.put("name", nodeName(i));
+        String ip = "10.0." + (i / 256) + "." + (i % 256);
+        node.put("transport_address", ip + ":9300");
+        node.put("host", ip);
+        node.put("ip", ip);
+        node.putArray("roles").add("master").add("data").add("ingest");
+        node.putObject("attributes").put("rack", "r" + (i % 4));
+        return node;
+    }
+
+    /**
+     * A counter which increases by up to the given rate with every tick, each node
+     * and counter has a different start value and rate.
+     */
+    private long counter(Random random, int rate) {
+        return random.nextInt(rate * 1000) + (long)(ticks * (rate * (0.5 + random.nextDouble())));
+    }
+
+    private Random random(int node) {
+        return new Random(seed * 31 + node);
+    }
+
+    public static String nodeId(int i) {
+        return String.format("node-%06d-Y2xXbTdKRtWiQpmw", i);
+    }
+
+    public static String nodeName(int i) {
+        return "es-node-" + i;
+    }
+
+    /**
+     * @return "logs-2017.10.01" for index 0, "metrics-2017.10.01" for index 1, "logs-2017.10.02" for index 2, ...
+     */
+    public static String indexName(int i) {
+        return String.format("%s-2017.10.%02d", i % 2 == 0 ? "logs" : "metrics", i / 2 + 1);
+    }
+
+    private String toString(ObjectNode node) {
+        try {
+            return mapper.writeValueAsString(node);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CounterDeltasTest {
+    @Test
+    public void testDeltas() {
+        CounterDeltas<TwoCounters> deltas = new CounterDeltas<>();
+        assertNull(deltas.update(counts("a", 10, 100), 1000));
+
+        CounterDeltas.Interval<TwoCounters> interval = deltas.update(counts("a", 15, 130), 11000);
+        assertNotNull(interval);
+        assertEquals(10, interval.getSeconds(), 0.001);
+        assertEquals(1, interval.getDeltas().size());
+
+        CounterDeltas.Delta<TwoCounters> delta = interval.getDeltas().get(0);
+        assertEquals("a", delta.getCounts().key);
+        assertEquals(5, delta.get(0));
+        assertEquals(30, delta.get(1));
+
+        // the time did not advance
+        assertNull(deltas.update(counts("a", 15, 130), 11000));
+    }
+
+    @Test
+    public void testDecreasedOrNew() {
+        CounterDeltas<TwoCounters> deltas = new CounterDeltas<>();
+        deltas.update(counts("a", 10, 100), 1000);
+
+        // one counter of "a" decreased, "b" was not reported before
+        Map<String, TwoCounters> current = counts("a", 15, 50);
+        current.putAll(counts("b", 20, 20));
+        CounterDeltas.Interval<TwoCounters> interval = deltas.update(current, 2000);
+        assertTrue(interval.getDeltas().isEmpty());
+
+        // both continue from their current counters
+        current = counts("a", 16, 60);
+        current.putAll(counts("b", 21, 21));
+        assertEquals(2, deltas.update(current, 3000).getDeltas().size());
+    }
+
+    @Test
+    public void testNotReported() {
+        CounterDeltas<TwoCounters> deltas = new CounterDeltas<>();
+        deltas.update(counts("a", 10, 100), 1000);
+
+        // a counter which is not reported any more is not a reset
+        CounterDeltas.Delta<TwoCounters> delta = deltas.update(counts("a", 15, -1), 2000).getDeltas().get(0);
+        assertEquals(5, delta.get(0));
+        assertEquals(-1, delta.get(1));
+
+        // nor if it is reported again
+        delta = deltas.update(counts("a", 20, 100), 3000).getDeltas().get(0);
+        assertEquals(5, delta.get(0));
+        assertEquals(-1, delta.get(1));
+    }
+
+    private static Map<String, TwoCounters> counts(String key, long first, long second) {
+        TwoCounters counts = new TwoCounters(key);
+        counts.set(0, first);
+        counts.set(1, second);
+
+        Map<String, TwoCounters> map = new HashMap<>();
+        map.put(key, counts);
+        return map;
+    }
+
+    private static final class TwoCounters extends CounterDeltas.Counters {
+        private final String key;
+
+        private TwoCounters(String key) {
+            super(2);
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+
+import static org.junit.Assert.*;
+
+public class CycleStatisticsTest {
+    @Test
+    public void testRecord() {
+        CycleStatistics statistics = new CycleStatistics();
+
+        statistics.recordRequest("/_cluster/health", 200, 2_000_000, 200);
+        statistics.recordParse("/_cluster/health", 1_000_000);
+        statistics.recordRequest("/_nodes/stats", 200, 8_000_000, 10000);
+        statistics.recordParse("/_nodes/stats", 3_000_000);
+        statistics.recordWrite(500_000);
+        statistics.incMeasuresWritten();
+        statistics.incMeasuresWritten();
+
+        assertEquals(10, statistics.getRequestTime().getValue(), 0.001);
+        assertEquals(2, statistics.getRequestTime().getDynamicMeasures().get("/_cluster/health"), 0.001);
+        assertEquals(8, statistics.getRequestTime().getDynamicMeasures().get("/_nodes/stats"), 0.001);
+
+        assertEquals(10200, statistics.getResponseSize().getValue(), 0.001);
+        assertEquals(10000, statistics.getResponseSize().getDynamicMeasures().get("/_nodes/stats"), 0.001);
+
+        assertEquals(4, statistics.getParseTime().getValue(), 0.001);
+        assertEquals(3, statistics.getParseTime().getDynamicMeasures().get("/_nodes/stats"), 0.001);
+
+        assertEquals(0.5, statistics.getWriteTime().getValue(), 0.001);
+        assertEquals(2, statistics.getMeasuresWritten().getValue(), 0.001);
+        assertEquals(0, statistics.getFailures().getValue(), 0.001);
+
+        assertTrue(statistics.getCycleDuration().getValue() >= 0);
+    }
+
+    @Test
+    public void testFailures() {
+        CycleStatistics statistics = new CycleStatistics();
+
+        statistics.recordFailure(new SocketTimeoutException());
+        statistics.recordFailure(new HttpResponseException(500, "error"));
+        statistics.recordFailure(new SocketTimeoutException());
+
+        assertEquals(3, statistics.getFailures().getValue(), 0.001);
+        assertEquals(2, statistics.getFailures().getDynamicMeasures().get(CycleStatistics.CAUSE_TIMEOUT), 0.001);
+        assertEquals(1, statistics.getFailures().getDynamicMeasures().get(CycleStatistics.CAUSE_HTTP_STATUS), 0.001);
+    }
+
+    @Test
+    public void testAdd() {
+        CycleStatistics statistics = new CycleStatistics();
+        statistics.recordRequest("/_nodes/stats", 200, 8_000_000, 10000);
+
+        CycleStatistics cluster = new CycleStatistics();
+        cluster.recordRequest("/_nodes/stats", 200, 2_000_000, 500);
+        cluster.recordParse("/_nodes/stats", 1_000_000);
+        cluster.recordFailure(new SocketTimeoutException());
+
+        statistics.add(cluster);
+
+        assertEquals(10, statistics.getRequestTime().getValue(), 0.001);
+        assertEquals(10, statistics.getRequestTime().getDynamicMeasures().get("/_nodes/stats"), 0.001);
+        assertEquals(10500, statistics.getResponseSize().getValue(), 0.001);
+        assertEquals(1, statistics.getParseTime().getValue(), 0.001);
+        assertEquals(1, statistics.getFailures().getValue(), 0.001);
+        assertEquals(1, statistics.getFailures().getDynamicMeasures().get(CycleStatistics.CAUSE_TIMEOUT), 0.001);
+    }
+
+    @Test
+    public void testFailureCause() {
+        assertEquals(CycleStatistics.CAUSE_HTTP_STATUS, CycleStatistics.getFailureCause(new HttpResponseException(404, "not found")));
+        assertEquals(CycleStatistics.CAUSE_TIMEOUT, CycleStatistics.getFailureCause(new SocketTimeoutException()));
+        assertEquals(CycleStatistics.CAUSE_TIMEOUT, CycleStatistics.getFailureCause(new ConnectTimeoutException()));
+        assertEquals(CycleStatistics.CAUSE_CONNECT, CycleStatistics.getFailureCause(new ConnectException()));
+        assertEquals(CycleStatistics.CAUSE_CONNECT, CycleStatistics.getFailureCause(new UnknownHostException()));
+        assertEquals(CycleStatistics.CAUSE_PARSE, CycleStatistics.getFailureCause(new JsonParseException("error", null)));
+        assertEquals(CycleStatistics.CAUSE_CIRCUIT_OPEN, CycleStatistics.getFailureCause(new CircuitBreaker.OpenException("open")));
+        assertEquals(CycleStatistics.CAUSE_IO, CycleStatistics.getFailureCause(new IOException()));
+        assertEquals(CycleStatistics.CAUSE_OTHER, CycleStatistics.getFailureCause(new IllegalStateException()));
+    }
+}
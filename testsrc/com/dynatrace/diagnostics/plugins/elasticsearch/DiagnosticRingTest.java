@@ -0,0 +1,64 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import org.apache.http.client.HttpResponseException;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DiagnosticRingTest {
+    @Test
+    public void testDump() {
+        DiagnosticRing ring = new DiagnosticRing(10);
+        assertEquals(0, ring.size());
+        assertEquals("", ring.dump());
+
+        ring.record(DiagnosticRing.CYCLE_START, null, "http://localhost:9200", 1, 0, 0, 0);
+        ring.record(DiagnosticRing.REQUEST, "es1", "/_nodes/stats", 200, 12_000_000, 4096, 0);
+        ring.record(DiagnosticRing.FAILURE, "es1", CycleStatistics.CAUSE_HTTP_STATUS, 503, 0, 0, 0);
+        ring.record(DiagnosticRing.MEASURE, null, "Nodes", 0, 0, 3, 5.0);
+        ring.record(DiagnosticRing.CYCLE_END, null, null, 0, 20_000_000, 42, 0);
+        assertEquals(5, ring.size());
+
+        String[] lines = ring.dump().split("\n");
+        assertEquals(5, lines.length);
+        assertTrue(lines[0], lines[0].endsWith(" cycle-start http://localhost:9200 clusters=1"));
+        assertTrue(lines[1], lines[1].endsWith(" request cluster=es1 /_nodes/stats status=200 ms=12 bytes=4096"));
+        assertTrue(lines[2], lines[2].endsWith(" failure cluster=es1 HttpStatus status=503"));
+        assertTrue(lines[3], lines[3].endsWith(" measure Nodes value=5.0 dynamic=3"));
+        assertTrue(lines[4], lines[4].endsWith(" cycle-end ms=20 measures=42"));
+    }
+
+    @Test
+    public void testOverwritten() {
+        DiagnosticRing ring = new DiagnosticRing(3);
+        for(int i = 0;i < 10;i++) {
+            ring.record(DiagnosticRing.MEASURE, null, "m" + i, 0, 0, 0, i);
+        }
+        assertEquals(3, ring.size());
+
+        // only the newest events are kept, the oldest first
+        String[] lines = ring.dump().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0], lines[0].contains(" m7 "));
+        assertTrue(lines[1], lines[1].contains(" m8 "));
+        assertTrue(lines[2], lines[2].contains(" m9 "));
+    }
+
+    @Test
+    public void testRecordedByStatistics() {
+        DiagnosticRing ring = new DiagnosticRing(10);
+        CycleStatistics statistics = new CycleStatistics(ring, "es1");
+        // the status of the response is recorded as it was received
+        statistics.recordRequest("/_cluster/health", 203, 2_000_000, 200);
+        statistics.recordParse("/_cluster/health", 1_000_000);
+        statistics.recordFailure(new HttpResponseException(404, "not found"));
+        statistics.recordWrite(500_000);
+
+        String[] lines = ring.dump().split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0], lines[0].endsWith(" request cluster=es1 /_cluster/health status=203 ms=2 bytes=200"));
+        assertTrue(lines[1], lines[1].endsWith(" parse cluster=es1 /_cluster/health ms=1"));
+        assertTrue(lines[2], lines[2].endsWith(" failure cluster=es1 HttpStatus status=404"));
+        assertTrue(lines[3], lines[3].endsWith(" write cluster=es1 ms=0"));
+    }
+}
@@ -0,0 +1,125 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import com.dynatrace.diagnostics.sdk.MonitorEnvironment30Impl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Verifies that one execution of the monitor against a simulated cluster does not
+ * allocate more memory or use more CPU time than the budgets in "execute-budgets.properties".
+ *
+ * Only the thread which runs execute() is measured, the simulated cluster runs on
+ * other threads. The median of a number of executions is compared to the budget to
+ * avoid failures because of JIT compilation or GC pauses.
+ */
+public class ElasticsearchMonitorBudgetTest {
+    private static final int WARMUP = 10;
+    private static final int ITERATIONS = 9;
+
+    private final Logger log = Logger.getLogger(ElasticsearchMonitor.class.getName());
+    private Level level;
+
+    @Before
+    public void setUp() {
+        // the per-measure logging depends on the configuration of the Collector, so do not include it
+        level = log.getLevel();
+        log.setLevel(Level.WARNING);
+    }
+
+    @After
+    public void tearDown() {
+        log.setLevel(level);
+    }
+
+    @Test
+    public void testBudget50Nodes() throws Exception {
+        checkBudget(50);
+    }
+
+    @Test
+    public void testBudget300Nodes() throws Exception {
+        checkBudget(300);
+    }
+
+    private void checkBudget(int nodes) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue("Allocations can only be measured on JVMs which provide com.sun.management.ThreadMXBean",
+                threads instanceof com.sun.management.ThreadMXBean &&
+                        ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled());
+        assumeTrue("CPU time can only be measured if the JVM supports it",
+                threads.isCurrentThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled());
+
+        Properties budgets = loadBudgets();
+        long allocationBudget = Long.parseLong(budgets.getProperty("nodes." + nodes + ".allocatedBytes"));
+        long cpuBudget = Long.parseLong(budgets.getProperty("nodes." + nodes + ".cpuMillis"));
+
+        long[] allocated = new long[ITERATIONS];
+        long[] cpu = new long[ITERATIONS];
+        try (ElasticsearchSimulator simulator = new ElasticsearchSimulator(new ClusterResponses(nodes, nodes * 3, 5, 42))) {
+            MonitorEnvironment30Impl env = ElasticsearchMonitorMockRESTTest.prepareMonitorEnvironment("http", "localhost", (long) simulator.getPort());
+
+            ElasticsearchMonitor monitor = new ElasticsearchMonitor();
+            monitor.setup(env);
+            try {
+                for(int i = 0;i < WARMUP;i++) {
+                    simulator.tick();
+                    monitor.execute(env);
+                }
+
+                long threadId = Thread.currentThread().getId();
+                for(int i = 0;i < ITERATIONS;i++) {
+                    simulator.tick();
+
+                    long allocatedBefore = ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threadId);
+                    long cpuBefore = threads.getCurrentThreadCpuTime();
+
+                    monitor.execute(env);
+
+                    cpu[i] = threads.getCurrentThreadCpuTime() - cpuBefore;
+                    allocated[i] = ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threadId) - allocatedBefore;
+                }
+            } finally {
+                monitor.teardown(env);
+            }
+        }
+
+        long medianAllocated = median(allocated);
+        long medianCpu = TimeUnit.NANOSECONDS.toMillis(median(cpu));
+
+        assertTrue("One execution with " + nodes + " nodes allocated " + medianAllocated + " bytes, but the budget is " +
+                allocationBudget + " bytes, all executions: " + Arrays.toString(allocated),
+                medianAllocated <= allocationBudget);
+        assertTrue("One execution with " + nodes + " nodes used " + medianCpu + "ms CPU time, but the budget is " +
+                cpuBudget + "ms, all executions (ns): " + Arrays.toString(cpu),
+                medianCpu <= cpuBudget);
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static Properties loadBudgets() throws IOException {
+        Properties budgets = new Properties();
+        try (InputStream stream = ElasticsearchMonitorBudgetTest.class.getResourceAsStream("/execute-budgets.properties")) {
+            assertNotNull("Could not find execute-budgets.properties", stream);
+            budgets.load(stream);
+        }
+        return budgets;
+    }
+}
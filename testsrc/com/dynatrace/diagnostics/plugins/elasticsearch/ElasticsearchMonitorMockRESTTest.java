@@ -114,7 +114,7 @@ public class ElasticsearchMonitorMockRESTTest {
 		assertEquals("Expected to find the measure exactly once, but had: " + found, 1, found);
 	}
 
-	private MonitorEnvironment30Impl prepareMonitorEnvironment(String protocol, String URL,Long port) {
+	static MonitorEnvironment30Impl prepareMonitorEnvironment(String protocol, String URL,Long port) {
 		PluginInstanceConfig pluginConfig = new PluginInstanceConfig();
 
 		pluginConfig.setKey("elasticsearch");
@@ -167,6 +167,9 @@ public class ElasticsearchMonitorMockRESTTest {
 			for(String measure : ElasticsearchMonitor.ALL_MEASURES) {
 				createMeasure(env, ElasticsearchMonitor.METRIC_GROUP_ELASTICSEARCH, measure);
 			}
+			for(String measure : ElasticsearchMonitor.ALL_SELF_MONITORING_MEASURES) {
+				createMeasure(env, ElasticsearchMonitor.METRIC_GROUP_SELF_MONITORING, measure);
+			}
 		}
 		return env;
 	}
@@ -0,0 +1,235 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import com.dynatrace.diagnostics.pdk.MonitorEnvironment;
+import com.dynatrace.diagnostics.pdk.MonitorMeasure;
+import com.dynatrace.diagnostics.pdk.Status;
+import org.dstadler.commons.testing.TestHelpers;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+/**
+ * Polls several simulated clusters from one monitor and checks that the measures
+ * are written per cluster as well as the total over all clusters.
+ */
+public class ElasticsearchMonitorMultiClusterTest {
+    @Test
+    public void testClusterDimension() throws Exception {
+        try (ElasticsearchSimulator first = new ElasticsearchSimulator(new ClusterResponses(3, 5, 2, 42));
+             ElasticsearchSimulator second = new ElasticsearchSimulator(new ClusterResponses(5, 5, 2, 43, "2.4.6"))) {
+            MonitorEnvironment env = createEnvironment(first, "\n http://localhost:" + second.getPort() + "/\n", 60_000);
+
+            MonitorMeasure nodeCount = expectClusterMeasure(env, ElasticsearchMonitor.MSR_NODE_COUNT, first, 3, second, 5);
+            nodeCount.setValue(8.0);
+
+            // measures which are split by node already are split by cluster and node
+            MonitorMeasure maxHeap = createNiceMock(MonitorMeasure.class);
+            expect(env.getMonitorMeasures(ElasticsearchMonitor.METRIC_GROUP_ELASTICSEARCH, ElasticsearchMonitor.MSR_MEM_MAX_HEAP)).
+                    andReturn(Collections.singleton(maxHeap)).anyTimes();
+            MonitorMeasure dynamic = createNiceMock(MonitorMeasure.class);
+            expect(env.createDynamicMeasure(eq(maxHeap), eq(ElasticsearchMonitor.DYNAMIC_MEASURE_CLUSTER), anyString())).andReturn(dynamic).times(2);
+            expect(env.createDynamicMeasure(eq(maxHeap), eq("Node"), startsWith("localhost:" + first.getPort() + "/"))).andReturn(dynamic).times(3);
+            expect(env.createDynamicMeasure(eq(maxHeap), eq("Node"), startsWith("localhost:" + second.getPort() + "/"))).andReturn(dynamic).times(5);
+
+            replay(env, nodeCount, maxHeap, dynamic);
+
+            ElasticsearchMonitor monitor = new ElasticsearchMonitor();
+            monitor.setup(env);
+            try {
+                monitor.execute(env);
+            } finally {
+                monitor.teardown(env);
+            }
+
+            verify(env, nodeCount, maxHeap);
+        }
+    }
+
+    @Test
+    public void testStuckCluster() throws Exception {
+        try (ElasticsearchSimulator first = new ElasticsearchSimulator(new ClusterResponses(3, 5, 2, 42));
+             ElasticsearchSimulator stuck = new ElasticsearchSimulator(new ClusterResponses(5, 5, 2, 43))) {
+            // each request is answered within the timeout, but not all of them together
+            stuck.setLatency(300);
+
+            MonitorEnvironment env = createEnvironment(first, "http://localhost:" + stuck.getPort(), 1000);
+
+            // the cluster health is retrieved in time, so it is reported for the stuck cluster as well
+            MonitorMeasure nodeCount = expectClusterMeasure(env, ElasticsearchMonitor.MSR_NODE_COUNT, first, 3, stuck, 5);
+            nodeCount.setValue(8.0);
+
+            // the node statistics are skipped
+            MonitorMeasure storeSize = createStrictMock(MonitorMeasure.class);
+            expect(env.getMonitorMeasures(ElasticsearchMonitor.METRIC_GROUP_ELASTICSEARCH, ElasticsearchMonitor.MSR_STORE_SIZE)).
+                    andReturn(Collections.singleton(storeSize)).anyTimes();
+            MonitorMeasure firstStoreSize = createNiceMock(MonitorMeasure.class);
+            expect(env.createDynamicMeasure(storeSize, ElasticsearchMonitor.DYNAMIC_MEASURE_CLUSTER, "localhost:" + first.getPort())).
+                    andReturn(firstStoreSize);
+            expect(env.createDynamicMeasure(eq(storeSize), eq("Node"), anyString())).andReturn(firstStoreSize).anyTimes();
+            storeSize.setValue(anyDouble());
+
+            replay(env, nodeCount, storeSize, firstStoreSize);
+
+            ElasticsearchMonitor monitor = new ElasticsearchMonitor();
+            monitor.setup(env);
+            try {
+                long start = System.currentTimeMillis();
+                Status status = monitor.execute(env);
+                long duration = System.currentTimeMillis() - start;
+                assertTrue("Should not wait for all requests to the stuck cluster, but took " + duration + "ms",
+                        duration < 1900);
+
+                assertEquals(Status.StatusCode.PartialSuccess, status.getStatusCode());
+                TestHelpers.assertContains(status.getShortMessage(),
+                        "localhost:" + stuck.getPort() + ElasticsearchMonitor.ENDPOINT_NODE_STATS);
+                TestHelpers.assertNotContains(status.getShortMessage(),
+                        "localhost:" + first.getPort() + "/", ElasticsearchMonitor.ENDPOINT_CLUSTER_HEALTH);
+            } finally {
+                monitor.teardown(env);
+            }
+
+            verify(env, nodeCount, storeSize);
+        }
+    }
+
+    @Test
+    public void testAllClustersFail() throws Exception {
+        try (ElasticsearchSimulator first = new ElasticsearchSimulator(new ClusterResponses(3, 5, 2, 42));
+             ElasticsearchSimulator second = new ElasticsearchSimulator(new ClusterResponses(5, 5, 2, 43))) {
+            first.setErrorRate(1);
+            second.setErrorRate(1);
+
+            MonitorEnvironment env = createEnvironment(first, "http://localhost:" + second.getPort(), 60_000);
+            replay(env);
+
+            ElasticsearchMonitor monitor = new ElasticsearchMonitor();
+            monitor.setup(env);
+            try {
+                monitor.execute(env);
+                fail("Should fail when no cluster can be polled");
+            } catch (Exception e) {
+                // expected here
+            } finally {
+                monitor.teardown(env);
+            }
+        }
+    }
+
+    @Test
+    public void testBackoff() throws Exception {
+        try (ElasticsearchSimulator first = new ElasticsearchSimulator(new ClusterResponses(3, 5, 2, 42));
+             ElasticsearchSimulator failing = new ElasticsearchSimulator(new ClusterResponses(5, 5, 2, 43))) {
+            failing.setErrorRate(1);
+
+            MonitorEnvironment env = createEnvironment(first, "http://localhost:" + failing.getPort(), 60_000);
+
+            // the failing cluster is reported as not reachable in each execution
+            int executions = CircuitBreaker.FAILURE_THRESHOLD + 1;
+            MonitorMeasure reachable = createNiceMock(MonitorMeasure.class);
+            expect(env.getMonitorMeasures(ElasticsearchMonitor.METRIC_GROUP_ELASTICSEARCH, ElasticsearchMonitor.MSR_REACHABLE)).
+                    andReturn(Collections.singleton(reachable)).anyTimes();
+            MonitorMeasure firstReachable = createMock(MonitorMeasure.class);
+            expect(env.createDynamicMeasure(reachable, ElasticsearchMonitor.DYNAMIC_MEASURE_CLUSTER, "localhost:" + first.getPort())).
+                    andReturn(firstReachable).times(executions);
+            firstReachable.setValue(1.0);
+            expectLastCall().times(executions);
+            MonitorMeasure failingReachable = createMock(MonitorMeasure.class);
+            expect(env.createDynamicMeasure(reachable, ElasticsearchMonitor.DYNAMIC_MEASURE_CLUSTER, "localhost:" + failing.getPort())).
+                    andReturn(failingReachable).times(executions);
+            failingReachable.setValue(0.0);
+            expectLastCall().times(executions);
+            replay(env, reachable, firstReachable, failingReachable);
+
+            ElasticsearchMonitor monitor = new ElasticsearchMonitor();
+            monitor.setup(env);
+            try {
+                for(int i = 0;i < CircuitBreaker.FAILURE_THRESHOLD;i++) {
+                    assertEquals(Status.StatusCode.PartialSuccess, monitor.execute(env).getStatusCode());
+                }
+
+                // the failing cluster is not requested any more until the backoff passed
+                long requests = failing.getRequests();
+                Status status = monitor.execute(env);
+                assertEquals(Status.StatusCode.PartialSuccess, status.getStatusCode());
+                TestHelpers.assertContains(status.getMessage(), "Not polling the cluster");
+                assertEquals(requests, failing.getRequests());
+            } finally {
+                monitor.teardown(env);
+            }
+
+            verify(firstReachable, failingReachable);
+        }
+    }
+
+    @Test
+    public void testAbortedPollIsOneFailure() throws Exception {
+        try (ElasticsearchSimulator first = new ElasticsearchSimulator(new ClusterResponses(3, 5, 2, 42));
+             ElasticsearchSimulator stuck = new ElasticsearchSimulator(new ClusterResponses(5, 5, 2, 43))) {
+            // the connection is never idle, so the poll has to be aborted
+            stuck.setTrickle(50);
+
+            MonitorEnvironment env = createEnvironment(first, "http://localhost:" + stuck.getPort(), 1000);
+            replay(env);
+
+            ElasticsearchMonitor monitor = new ElasticsearchMonitor();
+            monitor.setup(env);
+            try {
+                Status status = monitor.execute(env);
+                assertEquals(Status.StatusCode.PartialSuccess, status.getStatusCode());
+                TestHelpers.assertContains(status.getMessage(), "did not respond within 1000ms");
+
+                // the aborted poll records its failure once its requests returned
+                MonitoredCluster cluster = monitor.getClusters().get(1);
+                long deadline = System.currentTimeMillis() + 10_000;
+                while(cluster.isPolling() && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertFalse(cluster.isPolling());
+                assertEquals(CircuitBreaker.State.CLOSED, cluster.getCircuitBreaker().getState());
+
+                // so the cluster is polled again in the next execution
+                stuck.setTrickle(0);
+                long requests = stuck.getRequests();
+                assertEquals(Status.StatusCode.Success, monitor.execute(env).getStatusCode());
+                assertTrue(stuck.getRequests() > requests);
+            } finally {
+                monitor.teardown(env);
+            }
+        }
+    }
+
+    private static MonitorEnvironment createEnvironment(ElasticsearchSimulator simulator, String clusters, long timeout) {
+        MonitorEnvironment env = createNiceMock(MonitorEnvironment.class);
+        expect(env.getConfigBoolean(ElasticsearchMonitor.ENV_CONFIG_USE_FULL_URL_CONFIGURATION)).andReturn(Boolean.TRUE);
+        expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_URL)).andReturn("http://localhost:" + simulator.getPort());
+        expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_TIMEOUT)).andReturn(Long.toString(timeout));
+        expect(env.getConfigLong(ElasticsearchMonitor.ENV_CONFIG_TIMEOUT)).andReturn(timeout);
+        expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_CLUSTERS)).andReturn(clusters);
+        return env;
+    }
+
+    private static MonitorMeasure expectClusterMeasure(MonitorEnvironment env, String name,
+                                                       ElasticsearchSimulator first, double firstValue,
+                                                       ElasticsearchSimulator second, double secondValue) {
+        MonitorMeasure measure = createStrictMock(MonitorMeasure.class);
+        expect(env.getMonitorMeasures(ElasticsearchMonitor.METRIC_GROUP_ELASTICSEARCH, name)).
+                andReturn(Collections.singleton(measure)).anyTimes();
+
+        MonitorMeasure firstMeasure = createMock(MonitorMeasure.class);
+        expect(env.createDynamicMeasure(measure, ElasticsearchMonitor.DYNAMIC_MEASURE_CLUSTER, "localhost:" + first.getPort())).
+                andReturn(firstMeasure);
+        firstMeasure.setValue(firstValue);
+        replay(firstMeasure);
+
+        MonitorMeasure secondMeasure = createMock(MonitorMeasure.class);
+        expect(env.createDynamicMeasure(measure, ElasticsearchMonitor.DYNAMIC_MEASURE_CLUSTER, "localhost:" + second.getPort())).
+                andReturn(secondMeasure);
+        secondMeasure.setValue(secondValue);
+        replay(secondMeasure);
+
+        return measure;
+    }
+}
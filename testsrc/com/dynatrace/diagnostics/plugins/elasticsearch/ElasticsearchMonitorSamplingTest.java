@@ -0,0 +1,91 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import com.dynatrace.diagnostics.pdk.MonitorEnvironment;
+import com.dynatrace.diagnostics.pdk.MonitorMeasure;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.easymock.EasyMock.*;
+
+/**
+ * Samples a simulated cluster a number of times between two executions and checks
+ * that the aggregates are written per node as well as for the whole cluster.
+ */
+public class ElasticsearchMonitorSamplingTest {
+    private static final int NODES = 3;
+
+    @Test
+    public void testSampling() throws Exception {
+        ClusterResponses responses = new ClusterResponses(NODES, 5, 2, 42);
+        try (ElasticsearchSimulator simulator = new ElasticsearchSimulator(responses)) {
+            MonitorEnvironment env = createNiceMock(MonitorEnvironment.class);
+            expect(env.getConfigBoolean(ElasticsearchMonitor.ENV_CONFIG_USE_FULL_URL_CONFIGURATION)).andReturn(Boolean.TRUE);
+            expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_URL)).andReturn("http://localhost:" + simulator.getPort());
+            // long enough so that only the samples which the test triggers are taken
+            expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_SAMPLING_INTERVAL)).andReturn("3600000");
+            expect(env.getConfigLong(ElasticsearchMonitor.ENV_CONFIG_SAMPLING_INTERVAL)).andReturn(3_600_000L);
+
+            ElasticsearchMonitor monitor = new ElasticsearchMonitor();
+
+            // the same seed produces the same values, so this computes what the monitor will sample
+            ClusterResponses expected = new ClusterResponses(NODES, 5, 2, 42);
+            ObjectMapper mapper = new ObjectMapper();
+            double totalMax = 0;
+            Map<String, Double> nodeMax = new HashMap<>();
+            for(int i = 0;i < 3;i++) {
+                JsonNode nodes = mapper.readTree(expected.nodesStats()).get("nodes");
+                double total = 0;
+                for(int node = 0;node < NODES;node++) {
+                    double value = nodes.get(ClusterResponses.nodeId(node)).get("indices").get("search").get("query_current").asDouble();
+                    total += value;
+
+                    String name = ClusterResponses.nodeName(node);
+                    nodeMax.put(name, nodeMax.containsKey(name) ? Math.max(nodeMax.get(name), value) : value);
+                }
+                totalMax = Math.max(totalMax, total);
+
+                expected.tick();
+            }
+
+            MonitorMeasure queryCurrentMax = createStrictMock(MonitorMeasure.class);
+            expect(env.getMonitorMeasures(ElasticsearchMonitor.METRIC_GROUP_SAMPLING,
+                    ElasticsearchMonitor.MSR_QUERY_CURRENT + SampledMeasures.STATISTIC_MAX)).
+                    andReturn(Collections.singleton(queryCurrentMax)).anyTimes();
+            queryCurrentMax.setValue(totalMax);
+            // the measure is written once more when it has dynamic measures
+            queryCurrentMax.setValue(totalMax);
+            for(int node = 0;node < NODES;node++) {
+                String name = ClusterResponses.nodeName(node);
+                MonitorMeasure dynamic = createStrictMock(MonitorMeasure.class);
+                expect(env.createDynamicMeasure(queryCurrentMax, "Node", name)).andReturn(dynamic);
+                dynamic.setValue(nodeMax.get(name));
+                replay(dynamic);
+            }
+
+            replay(env, queryCurrentMax);
+
+            monitor.setup(env);
+            try {
+                // sample a few times while the simulated values change
+                for(int i = 0;i < 3;i++) {
+                    monitor.sample();
+                    simulator.tick();
+                }
+
+                monitor.execute(env);
+
+                // nothing was sampled since the previous execution, so nothing is written
+                monitor.execute(env);
+            } finally {
+                monitor.teardown(env);
+            }
+
+            verify(env, queryCurrentMax);
+        }
+    }
+}
@@ -7,17 +7,23 @@ package com.dynatrace.diagnostics.plugins.elasticsearch;
 
 import com.dynatrace.diagnostics.pdk.MonitorEnvironment;
 import com.dynatrace.diagnostics.pdk.MonitorMeasure;
+import com.dynatrace.diagnostics.pdk.Status;
 import com.dynatrace.diagnostics.sdk.HostImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.dstadler.commons.http.NanoHTTPD;
 import org.dstadler.commons.testing.MockRESTServer;
 import org.dstadler.commons.testing.TestHelpers;
 import org.junit.Test;
 
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import static org.easymock.EasyMock.*;
-import static org.junit.Assert.fail;
+import static org.junit.Assert.*;
 
 
 /**
@@ -217,12 +223,355 @@ public class ElasticsearchMonitorTest {
 		expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_USER)).andReturn("invalid");
 		expect(env.getConfigPassword(ElasticsearchMonitor.ENV_CONFIG_PASSWORD)).andReturn("invalid");
 		expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_TIMEOUT)).andReturn(null);
+		expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_SAMPLING_INTERVAL)).andReturn(null);
+		expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_NON_BLOCKING_HTTP)).andReturn(null);
+		expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_INDEX_PATTERNS)).andReturn(null);
+		expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_MAX_DYNAMIC_MEASURES)).andReturn(null);
+		expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_STICKY_DYNAMIC_MEASURES)).andReturn(null);
+		expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_SNAPSHOT_MAX_AGE)).andReturn(null);
+		expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_FIELD_DATA_INTERVAL)).andReturn(null);
+		expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_TRUST_STORE)).andReturn(null);
+		expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_KEY_STORE)).andReturn(null);
+		expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_CLUSTERS)).andReturn(null);
+
+        // measures are written in any order, e.g. self-monitoring measures are split by endpoint
+        checkOrder(env, false);
 
         MonitorMeasure measure = createStrictMock(MonitorMeasure.class);
         Collection<MonitorMeasure> measures = Collections.singleton(measure);
         expect(env.getMonitorMeasures(anyString(), anyString())).andReturn(measures).anyTimes();
+        expect(env.createDynamicMeasure(anyObject(MonitorMeasure.class), anyString(), anyString())).andReturn(measure).anyTimes();
 	}
 
+    @Test
+    public void testPartialResults() throws Exception {
+        try (ElasticsearchSimulator simulator = new ElasticsearchSimulator(new ClusterResponses(3, 5, 2, 42))) {
+            // the first requests are answered within the timeout, the statistics are skipped
+            simulator.setLatency(300);
+
+            MonitorEnvironment env = createNiceMock(MonitorEnvironment.class);
+            expect(env.getConfigBoolean(ElasticsearchMonitor.ENV_CONFIG_USE_FULL_URL_CONFIGURATION)).andReturn(Boolean.TRUE);
+            expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_URL)).andReturn("http://localhost:" + simulator.getPort());
+            expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_TIMEOUT)).andReturn("1000");
+            expect(env.getConfigLong(ElasticsearchMonitor.ENV_CONFIG_TIMEOUT)).andReturn(1000L);
+
+            MonitorMeasure nodeCount = createStrictMock(MonitorMeasure.class);
+            expect(env.getMonitorMeasures(ElasticsearchMonitor.METRIC_GROUP_ELASTICSEARCH, ElasticsearchMonitor.MSR_NODE_COUNT)).
+                    andReturn(Collections.singleton(nodeCount)).anyTimes();
+            nodeCount.setValue(3.0);
+
+            // not written at all instead of reporting 0
+            MonitorMeasure documentCount = createStrictMock(MonitorMeasure.class);
+            expect(env.getMonitorMeasures(ElasticsearchMonitor.METRIC_GROUP_ELASTICSEARCH, ElasticsearchMonitor.MSR_DOCUMENT_COUNT)).
+                    andReturn(Collections.singleton(documentCount)).anyTimes();
+
+            replay(env, nodeCount, documentCount);
+
+            ElasticsearchMonitor monitor = new ElasticsearchMonitor();
+            monitor.setup(env);
+            try {
+                // the skipped endpoints show that the execution stopped at the timeout
+                Status status = monitor.execute(env);
+                assertEquals(Status.StatusCode.PartialSuccess, status.getStatusCode());
+                TestHelpers.assertContains(status.getShortMessage(),
+                        ElasticsearchMonitor.ENDPOINT_CLUSTER_STATS, ElasticsearchMonitor.ENDPOINT_NODE_STATS);
+                TestHelpers.assertNotContains(status.getShortMessage(), ElasticsearchMonitor.ENDPOINT_CLUSTER_HEALTH);
+            } finally {
+                monitor.teardown(env);
+            }
+
+            verify(nodeCount, documentCount);
+        }
+    }
+
+    @Test
+    public void testTricklingResponse() throws Exception {
+        try (ElasticsearchSimulator simulator = new ElasticsearchSimulator(new ClusterResponses(3, 5, 2, 42))) {
+            // the connection is never idle for long, so the socket timeout does not stop the requests
+            simulator.setTrickle(50);
+
+            MonitorEnvironment env = createNiceMock(MonitorEnvironment.class);
+            expect(env.getConfigBoolean(ElasticsearchMonitor.ENV_CONFIG_USE_FULL_URL_CONFIGURATION)).andReturn(Boolean.TRUE);
+            expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_URL)).andReturn("http://localhost:" + simulator.getPort());
+            expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_TIMEOUT)).andReturn("1000");
+            expect(env.getConfigLong(ElasticsearchMonitor.ENV_CONFIG_TIMEOUT)).andReturn(1000L);
+            replay(env);
+
+            ElasticsearchMonitor monitor = new ElasticsearchMonitor();
+            monitor.setup(env);
+            try {
+                long start = System.currentTimeMillis();
+                try {
+                    monitor.execute(env);
+                    fail("Should fail when no endpoint is retrieved in time");
+                } catch (Exception e) {
+                    // expected here
+                }
+                long duration = System.currentTimeMillis() - start;
+
+                // trickling in all responses would take minutes
+                assertTrue("Should abort the requests after the timeout, but took " + duration + "ms", duration < 5000);
+            } finally {
+                monitor.teardown(env);
+            }
+        }
+    }
+
+    @Test
+    public void testNonBlockingHttp() throws Exception {
+        try (ElasticsearchSimulator simulator = new ElasticsearchSimulator(new ClusterResponses(3, 5, 2, 42))) {
+            // too slow when the requests are sent one after the other as in testPartialResults()
+            simulator.setLatency(300);
+
+            MonitorEnvironment env = createNiceMock(MonitorEnvironment.class);
+            expect(env.getConfigBoolean(ElasticsearchMonitor.ENV_CONFIG_USE_FULL_URL_CONFIGURATION)).andReturn(Boolean.TRUE);
+            expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_URL)).andReturn("http://localhost:" + simulator.getPort());
+            expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_TIMEOUT)).andReturn("1000");
+            expect(env.getConfigLong(ElasticsearchMonitor.ENV_CONFIG_TIMEOUT)).andReturn(1000L);
+            expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_NON_BLOCKING_HTTP)).andReturn("true");
+            expect(env.getConfigBoolean(ElasticsearchMonitor.ENV_CONFIG_NON_BLOCKING_HTTP)).andReturn(Boolean.TRUE);
+
+            MonitorMeasure nodeCount = createStrictMock(MonitorMeasure.class);
+            expect(env.getMonitorMeasures(ElasticsearchMonitor.METRIC_GROUP_ELASTICSEARCH, ElasticsearchMonitor.MSR_NODE_COUNT)).
+                    andReturn(Collections.singleton(nodeCount)).anyTimes();
+            nodeCount.setValue(3.0);
+
+            MonitorMeasure documentCount = createStrictMock(MonitorMeasure.class);
+            expect(env.getMonitorMeasures(ElasticsearchMonitor.METRIC_GROUP_ELASTICSEARCH, ElasticsearchMonitor.MSR_DOCUMENT_COUNT)).
+                    andReturn(Collections.singleton(documentCount)).anyTimes();
+            documentCount.setValue(anyDouble());
+
+            replay(env, nodeCount, documentCount);
+
+            ElasticsearchMonitor monitor = new ElasticsearchMonitor();
+            monitor.setup(env);
+            try {
+                // the version is probed first, then all endpoints are requested together
+                Status status = monitor.execute(env);
+                assertEquals(status.getMessage(), Status.StatusCode.Success, status.getStatusCode());
+                assertEquals(5, simulator.getRequests());
+            } finally {
+                monitor.teardown(env);
+            }
+
+            verify(nodeCount, documentCount);
+        }
+    }
+
+    @Test
+    public void testIndexPatterns() throws Exception {
+        try (ElasticsearchSimulator simulator = new ElasticsearchSimulator(new ClusterResponses(3, 5, 2, 42))) {
+            MonitorEnvironment env = createNiceMock(MonitorEnvironment.class);
+            expect(env.getConfigBoolean(ElasticsearchMonitor.ENV_CONFIG_USE_FULL_URL_CONFIGURATION)).andReturn(Boolean.TRUE);
+            expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_URL)).andReturn("http://localhost:" + simulator.getPort());
+            expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_INDEX_PATTERNS)).andReturn("logs-*\n" + IndexPatterns.DATE_SUFFIX);
+
+            MonitorMeasure documentCount = createMock(MonitorMeasure.class);
+            expect(env.getMonitorMeasures(ElasticsearchMonitor.METRIC_GROUP_INDEX_PATTERNS, ElasticsearchMonitor.MSR_DOCUMENT_COUNT)).
+                    andReturn(Collections.singleton(documentCount)).anyTimes();
+            documentCount.setValue(anyDouble());
+            expectLastCall().times(4);
+
+            MonitorMeasure logs = createMock(MonitorMeasure.class);
+            expect(env.createDynamicMeasure(documentCount, "IndexPattern", "logs-*")).andReturn(logs).times(2);
+            logs.setValue(anyDouble());
+            expectLastCall().times(2);
+            MonitorMeasure metrics = createMock(MonitorMeasure.class);
+            expect(env.createDynamicMeasure(documentCount, "IndexPattern", "metrics-*")).andReturn(metrics).times(2);
+            metrics.setValue(anyDouble());
+            expectLastCall().times(2);
+
+            // only available from the second execution on
+            MonitorMeasure indexingRate = createMock(MonitorMeasure.class);
+            expect(env.getMonitorMeasures(ElasticsearchMonitor.METRIC_GROUP_INDEX_PATTERNS, ElasticsearchMonitor.MSR_INDEXING_RATE)).
+                    andReturn(Collections.singleton(indexingRate)).anyTimes();
+            indexingRate.setValue(gt(0.0));
+            expectLastCall().times(2);
+            expect(env.createDynamicMeasure(eq(indexingRate), eq("IndexPattern"), anyString())).andReturn(createNiceMock(MonitorMeasure.class)).times(2);
+
+            replay(env, documentCount, logs, metrics, indexingRate);
+
+            ElasticsearchMonitor monitor = new ElasticsearchMonitor();
+            monitor.setup(env);
+            try {
+                assertEquals(Status.StatusCode.Success, monitor.execute(env).getStatusCode());
+                assertEquals(6, simulator.getRequests());
+
+                simulator.tick();
+                Thread.sleep(10);
+                assertEquals(Status.StatusCode.Success, monitor.execute(env).getStatusCode());
+                assertEquals(10, simulator.getRequests());
+            } finally {
+                monitor.teardown(env);
+            }
+
+            verify(documentCount, logs, metrics, indexingRate);
+        }
+    }
+
+    @Test
+    public void testSharedSnapshots() throws Exception {
+        try (ElasticsearchSimulator simulator = new ElasticsearchSimulator(new ClusterResponses(3, 5, 2, 42))) {
+            MonitorEnvironment env = createNiceMock(MonitorEnvironment.class);
+            expect(env.getConfigBoolean(ElasticsearchMonitor.ENV_CONFIG_USE_FULL_URL_CONFIGURATION)).andReturn(Boolean.TRUE).anyTimes();
+            expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_URL)).andReturn("http://localhost:" + simulator.getPort()).anyTimes();
+            expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_SNAPSHOT_MAX_AGE)).andReturn("60000").anyTimes();
+            expect(env.getConfigLong(ElasticsearchMonitor.ENV_CONFIG_SNAPSHOT_MAX_AGE)).andReturn(60000L).anyTimes();
+            replay(env);
+
+            ElasticsearchMonitor first = new ElasticsearchMonitor();
+            ElasticsearchMonitor second = new ElasticsearchMonitor();
+            first.setup(env);
+            second.setup(env);
+            try {
+                assertEquals(Status.StatusCode.Success, first.execute(env).getStatusCode());
+                assertEquals(5, simulator.getRequests());
+
+                // the second monitor of the same cluster uses the responses of the first one
+                assertEquals(Status.StatusCode.Success, second.execute(env).getStatusCode());
+                assertEquals(5, simulator.getRequests());
+            } finally {
+                first.teardown(env);
+                second.teardown(env);
+            }
+        }
+    }
+
+    @Test
+    public void testNodeInfoIsKept() throws Exception {
+        ClusterResponses responses = new ClusterResponses(3, 5, 2, 42);
+        try (ElasticsearchSimulator simulator = new ElasticsearchSimulator(responses)) {
+            MonitorEnvironment env = createNiceMock(MonitorEnvironment.class);
+            expect(env.getConfigBoolean(ElasticsearchMonitor.ENV_CONFIG_USE_FULL_URL_CONFIGURATION)).andReturn(Boolean.TRUE);
+            expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_URL)).andReturn("http://localhost:" + simulator.getPort());
+
+            // written twice per execution as the measure is split by node
+            MonitorMeasure initHeap = createStrictMock(MonitorMeasure.class);
+            expect(env.getMonitorMeasures(ElasticsearchMonitor.METRIC_GROUP_ELASTICSEARCH, ElasticsearchMonitor.MSR_MEM_INIT_HEAP)).
+                    andReturn(Collections.singleton(initHeap)).anyTimes();
+            initHeap.setValue(3 * 1073741824.0);
+            expectLastCall().times(4);
+            initHeap.setValue(4 * 1073741824.0);
+            expectLastCall().times(2);
+            expect(env.createDynamicMeasure(eq(initHeap), eq("Node"), anyString())).andReturn(createNiceMock(MonitorMeasure.class)).anyTimes();
+
+            replay(env, initHeap);
+
+            ElasticsearchMonitor monitor = new ElasticsearchMonitor();
+            monitor.setup(env);
+            try {
+                // the version and the node info are retrieved in the first execution
+                assertEquals(Status.StatusCode.Success, monitor.execute(env).getStatusCode());
+                assertEquals(5, simulator.getRequests());
+
+                // only the statistics afterwards
+                assertEquals(Status.StatusCode.Success, monitor.execute(env).getStatusCode());
+                assertEquals(8, simulator.getRequests());
+
+                // the node info is retrieved again when a node joined
+                responses.setNodes(4);
+                simulator.tick();
+                assertEquals(Status.StatusCode.Success, monitor.execute(env).getStatusCode());
+                assertEquals(12, simulator.getRequests());
+            } finally {
+                monitor.teardown(env);
+            }
+
+            verify(initHeap);
+        }
+    }
+
+    @Test
+    public void testOsStats() throws Exception {
+        for(String version : new String[] { "1.7.6", "2.4.6", "5.5.2" }) {
+            ClusterResponses responses = new ClusterResponses(3, 5, 2, 42, version);
+            ClusterMeasures measures = new ClusterMeasures();
+            new ElasticsearchMonitor().extractNodeStats(VersionAdapter.forVersion(version),
+                    new ObjectMapper().readTree(responses.nodesStats(null, null)), new NodeInfoCache(), measures);
+
+            assertEquals(version, 3, measures.processCpuPercentPerNode.getDynamicMeasures().size());
+            assertEquals(version, 3, measures.osCpuPercentPerNode.getDynamicMeasures().size());
+            assertEquals(version, 3, measures.loadAverage1mPerNode.getDynamicMeasures().size());
+            // 2.x only reports the load average of the last minute
+            assertEquals(version, version.startsWith("2.") ? 0 : 3, measures.loadAverage15mPerNode.getDynamicMeasures().size());
+
+            Map<String, Double> cpu = measures.osCpuPercentPerNode.getDynamicMeasures();
+            double sum = 0;
+            for(double value : cpu.values()) {
+                sum += value;
+            }
+            assertEquals(version, sum / 3, measures.osCpuPercentPerNode.getValue(), 0.001);
+            assertEquals(version, Collections.max(cpu.values()), measures.osCpuPercentMax.getValue(), 0.001);
+
+            assertEquals(version, 75, measures.osMemoryUsedPercentPerNode.getValue(), 0.001);
+            assertEquals(version, 75, measures.osMemoryUsedPercentMax.getValue(), 0.001);
+            assertEquals(version, 100000000, measures.swapUsedPerNode.getValue(), 0.001);
+        }
+    }
+
+    @Test
+    public void testOsStatsNotReported() throws Exception {
+        // e.g. Windows reports -1 for the load average
+        ClusterMeasures measures = new ClusterMeasures();
+        new ElasticsearchMonitor().extractNodeStats(VersionAdapter.forVersion("2.4.6"), new ObjectMapper().readTree(
+                "{\"nodes\":{\"id1\":{\"name\":\"node1\",\"os\":{\"cpu_percent\":20,\"load_average\":-1}}}}"),
+                new NodeInfoCache(), measures);
+
+        assertEquals(20, measures.osCpuPercentPerNode.getValue(), 0.001);
+        assertEquals(20, measures.osCpuPercentMax.getValue(), 0.001);
+        assertTrue(measures.loadAverage1mPerNode.getDynamicMeasures().isEmpty());
+        assertEquals(0, measures.loadAverage1mMax.getValue(), 0.001);
+        assertTrue(measures.processCpuPercentPerNode.getDynamicMeasures().isEmpty());
+    }
+
+    @Test
+    public void testOpenCircuitBreaker() throws Exception {
+        try (ElasticsearchSimulator simulator = new ElasticsearchSimulator(new ClusterResponses(3, 5, 2, 42))) {
+            simulator.setErrorRate(1);
+
+            MonitorEnvironment env = createNiceMock(MonitorEnvironment.class);
+            expect(env.getConfigBoolean(ElasticsearchMonitor.ENV_CONFIG_USE_FULL_URL_CONFIGURATION)).andReturn(Boolean.TRUE);
+            expect(env.getConfigString(ElasticsearchMonitor.ENV_CONFIG_URL)).andReturn("http://localhost:" + simulator.getPort());
+            replay(env);
+
+            ElasticsearchMonitor monitor = new ElasticsearchMonitor();
+            monitor.setup(env);
+            try {
+                for(int i = 0;i < CircuitBreaker.FAILURE_THRESHOLD;i++) {
+                    try {
+                        monitor.execute(env);
+                        fail("Should fail while the cluster responds with errors");
+                    } catch (Exception e) {
+                        TestHelpers.assertContains(e, "HTTP StatusCode 503");
+                    }
+                }
+
+                // the open breaker skips the cluster without failing the execution
+                long requests = simulator.getRequests();
+                Status status = monitor.execute(env);
+                assertEquals(Status.StatusCode.ErrorInfrastructureUnreachable, status.getStatusCode());
+                assertEquals("Skipped http://localhost:" + simulator.getPort(), status.getShortMessage());
+                TestHelpers.assertContains(status.getMessage(), "Not polling the cluster");
+                assertEquals(requests, simulator.getRequests());
+            } finally {
+                monitor.teardown(env);
+            }
+        }
+    }
+
+    @Test
+    public void testPartialStatus() {
+        Map<String, Throwable> skipped = new LinkedHashMap<>();
+        skipped.put("/_nodes", new SocketTimeoutException("Read timed out"));
+        skipped.put("/_nodes/stats", new InterruptedIOException("Skipped"));
+
+        Status status = ElasticsearchMonitor.getPartialStatus(skipped);
+        assertEquals(Status.StatusCode.PartialSuccess, status.getStatusCode());
+        assertEquals("Skipped /_nodes, /_nodes/stats", status.getShortMessage());
+        assertEquals("/_nodes: java.net.SocketTimeoutException: Read timed out\n" +
+                "/_nodes/stats: java.io.InterruptedIOException: Skipped", status.getMessage());
+    }
+
     @Test
     public void testRESTTestInvalidJSON() throws Exception {
         ElasticsearchMonitor monitor = new ElasticsearchMonitor();
@@ -261,6 +610,16 @@ public class ElasticsearchMonitorTest {
         }
     }
 
+    @Test
+    public void testGetFold() {
+        assertEquals(CardinalityGuard.Fold.SUM, ElasticsearchMonitor.getFold(ElasticsearchMonitor.MSR_STORE_SIZE));
+        assertEquals(CardinalityGuard.Fold.AVERAGE, ElasticsearchMonitor.getFold(ElasticsearchMonitor.MSR_OS_CPU_PERCENT));
+        assertEquals(CardinalityGuard.Fold.AVERAGE, ElasticsearchMonitor.getFold(ElasticsearchMonitor.MSR_QUERY_CACHE_HIT_RATIO));
+        assertEquals(CardinalityGuard.Fold.MAXIMUM, ElasticsearchMonitor.getFold(ElasticsearchMonitor.MSR_OS_CPU_PERCENT_MAX));
+        assertEquals(CardinalityGuard.Fold.MAXIMUM, ElasticsearchMonitor.getFold(
+                ElasticsearchMonitor.MSR_HEAP_USED_PERCENT + SampledMeasures.STATISTIC_P99));
+    }
+
     private MonitorEnvironment prepareMonitoringEnvironment(ElasticsearchMonitor monitor, MockRESTServer server) throws Exception {
         MonitorEnvironment env = createStrictMock(MonitorEnvironment.class);
         expectSetup(env, "http","localhost", (long) server.getPort());
@@ -0,0 +1,222 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import org.dstadler.commons.http.NanoHTTPD;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local HTTP server which simulates the REST endpoints of an Elasticsearch
+ * cluster that the monitor queries, serving the responses of {@link ClusterResponses}.
+ *
+ * Responses are generated once per path and {@link #tick()}, so serving them is cheap
+ * compared to what the monitor does with them. Latency and failures can be injected
+ * to see how the monitor behaves with slow or unstable clusters.
+ */
+public class ElasticsearchSimulator implements Closeable {
+    private static final String HTTP_UNAVAILABLE = "503 Service Unavailable";
+
+    private final ClusterResponses responses;
+    private final Map<String, byte[]> cache = new HashMap<>();
+    private final Random random = new Random(42);
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+
+    private volatile long latencyMillis = 0;
+    private volatile double errorRate = 0;
+    private volatile long trickleMillis = 0;
+
+    private final int port;
+    private final NanoHTTPD httpd;
+
+    public ElasticsearchSimulator(ClusterResponses responses) throws IOException {
+        this.responses = responses;
+
+        port = getFreePort();
+        httpd = new NanoHTTPD(port) {
+            @Override
+            public Response serve(String uri, String method, Properties header, Properties parms) {
+                return ElasticsearchSimulator.this.serve(uri);
+            }
+        };
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @param latencyMillis How long each request is delayed before it is answered.
+     */
+    public void setLatency(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * @param errorRate The fraction of requests, between 0 and 1, which fail with
+     *                  HTTP 503 as Elasticsearch reports e.g. a missing master.
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * @param trickleMillis How long to wait before sending each byte of a response, so a
+     *                      response takes long although the connection is never idle.
+     */
+    public void setTrickle(long trickleMillis) {
+        this.trickleMillis = trickleMillis;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getBytesServed() {
+        return bytesServed.get();
+    }
+
+    /**
+     * Advance time by one polling interval, i.e. all counters increase. The responses
+     * which were requested so far are generated again right away.
+     */
+    public synchronized void tick() {
+        responses.tick();
+
+        List<String> paths = new ArrayList<>(cache.keySet());
+        cache.clear();
+        for(String path : paths) {
+            getResponse(path);
+        }
+    }
+
+    private NanoHTTPD.Response serve(String uri) {
+        requests.incrementAndGet();
+
+        if(latencyMillis > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if(errorRate > 0 && nextDouble() < errorRate) {
+            return error(HTTP_UNAVAILABLE, "master_not_discovered_exception", 503);
+        }
+
+        byte[] body = getResponse(uri);
+        if(body == null) {
+            return error(NanoHTTPD.HTTP_NOTFOUND, "no handler found for uri [" + uri + "]", 404);
+        }
+
+        bytesServed.addAndGet(body.length);
+        if(trickleMillis > 0) {
+            return new NanoHTTPD.Response(NanoHTTPD.HTTP_OK, NanoHTTPD.MIME_JSON, new TrickleInputStream(body, trickleMillis));
+        }
+        return new NanoHTTPD.Response(NanoHTTPD.HTTP_OK, NanoHTTPD.MIME_JSON, new ByteArrayInputStream(body));
+    }
+
+    private synchronized double nextDouble() {
+        return random.nextDouble();
+    }
+
+    private synchronized byte[] getResponse(String path) {
+        byte[] body = cache.get(path);
+        if(body == null) {
+            String response = generate(path);
+            if(response == null) {
+                return null;
+            }
+
+            body = response.getBytes(StandardCharsets.UTF_8);
+            cache.put(path, body);
+        }
+        return body;
+    }
+
+    private String generate(String path) {
+        if("/".equals(path)) {
+            return responses.root();
+        }
+        if(path.startsWith("/_cluster/health")) {
+            return responses.clusterHealth();
+        }
+        if(path.startsWith("/_cluster/stats")) {
+            return responses.clusterStats();
+        }
+        if(path.startsWith("/_nodes/stats")) {
+            // "/_nodes/stats/{metrics}/{indexMetrics}" where both are comma-separated lists
+            String[] parts = path.substring("/_nodes/stats".length()).split("/");
+            List<String> metrics = parts.length > 1 ? getMetrics(parts[1]) : null;
+            List<String> indexMetrics = parts.length > 2 ? getMetrics(parts[2]) : null;
+            return responses.nodesStats(metrics, indexMetrics);
+        }
+        if(path.startsWith("/_nodes")) {
+            return responses.nodesInfo();
+        }
+        if(path.startsWith("/_stats")) {
+            return responses.indexStats();
+        }
+
+        return null;
+    }
+
+    private static List<String> getMetrics(String metrics) {
+        if(metrics.isEmpty() || "_all".equals(metrics)) {
+            return null;
+        }
+        return Arrays.asList(metrics.split(","));
+    }
+
+    private static NanoHTTPD.Response error(String status, String reason, int statusCode) {
+        return new NanoHTTPD.Response(status, NanoHTTPD.MIME_JSON,
+                "{\"error\":{\"type\":\"" + reason + "\",\"reason\":\"" + reason + "\"},\"status\":" + statusCode + "}");
+    }
+
+    private static int getFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @Override
+    public void close() {
+        httpd.stop();
+    }
+
+    /**
+     * Hands out one byte per read, the server writes each read to the socket right away.
+     */
+    private static final class TrickleInputStream extends ByteArrayInputStream {
+        private final long delayMillis;
+
+        private TrickleInputStream(byte[] body, long delayMillis) {
+            super(body);
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.read(b, off, Math.min(len, 1));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import com.dynatrace.diagnostics.pdk.MonitorMeasure;
+import com.dynatrace.diagnostics.sdk.MonitorEnvironment30Impl;
+import com.dynatrace.diagnostics.sdk.MonitorMeasure30Impl;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ElasticsearchSimulatorTest {
+    @Test
+    public void testVersions() throws Exception {
+        for(String version : new String[] { "1.7.6", "2.4.6", "5.5.2" }) {
+            try (ElasticsearchSimulator simulator = new ElasticsearchSimulator(new ClusterResponses(3, 5, 2, 42, version))) {
+                MonitorEnvironment30Impl env = ElasticsearchMonitorMockRESTTest.prepareMonitorEnvironment("http", "localhost", (long) simulator.getPort());
+
+                ElasticsearchMonitor monitor = new ElasticsearchMonitor();
+                monitor.setup(env);
+                try {
+                    monitor.execute(env);
+                    assertEquals("Had: " + version, 3, getMeasurement(env, ElasticsearchMonitor.MSR_NODE_COUNT), 0.01);
+                    assertEquals("Had: " + version, 5, getMeasurement(env, ElasticsearchMonitor.MSR_INDEX_COUNT), 0.01);
+                    assertTrue("Had: " + version, getMeasurement(env, ElasticsearchMonitor.MSR_QUERY_CACHE_SIZE) > 0);
+                    assertTrue("Had: " + version, getMeasurement(env, ElasticsearchMonitor.MSR_STORE_SIZE) > 0);
+                    double documents = getMeasurement(env, ElasticsearchMonitor.MSR_DOCUMENT_COUNT);
+
+                    // counters increase with every tick
+                    simulator.tick();
+                    monitor.execute(env);
+                    assertTrue("Had: " + version, getMeasurement(env, ElasticsearchMonitor.MSR_DOCUMENT_COUNT) > documents);
+                } finally {
+                    monitor.teardown(env);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFilteredNodeStats() throws Exception {
+        ClusterResponses responses = new ClusterResponses(3, 5, 2, 42);
+        ObjectMapper mapper = new ObjectMapper();
+
+        JsonNode all = mapper.readTree(responses.nodesStats()).get("nodes").get(ClusterResponses.nodeId(0));
+        assertNotNull(all.get("jvm"));
+        assertNotNull(all.get("indices").get("docs"));
+
+        JsonNode filtered = mapper.readTree(responses.nodesStats(
+                Collections.singletonList("indices"), Collections.singletonList("store"))).get("nodes").get(ClusterResponses.nodeId(0));
+        assertNull(filtered.get("jvm"));
+        assertNull(filtered.get("indices").get("docs"));
+
+        // filtering does not change the values
+        assertEquals(all.get("indices").get("store"), filtered.get("indices").get("store"));
+    }
+
+    @Test
+    public void testLatencyAndErrors() throws Exception {
+        try (ElasticsearchSimulator simulator = new ElasticsearchSimulator(new ClusterResponses(3, 5, 2, 42))) {
+            MonitorEnvironment30Impl env = ElasticsearchMonitorMockRESTTest.prepareMonitorEnvironment("http", "localhost", (long) simulator.getPort());
+
+            ElasticsearchMonitor monitor = new ElasticsearchMonitor();
+            monitor.setup(env);
+            try {
+                simulator.setLatency(20);
+                long start = System.currentTimeMillis();
+                monitor.execute(env);
+                assertTrue(System.currentTimeMillis() - start >= 4 * 20);
+                assertTrue(simulator.getBytesServed() > 0);
+
+                simulator.setLatency(0);
+                simulator.setErrorRate(1);
+                long requests = simulator.getRequests();
+                try {
+                    monitor.execute(env);
+                    fail("Should fail when all requests fail");
+                } catch (Exception e) {
+                    // expected here
+                }
+                assertTrue(simulator.getRequests() > requests);
+            } finally {
+                monitor.teardown(env);
+            }
+        }
+    }
+
+    private static double getMeasurement(MonitorEnvironment30Impl env, String name) {
+        for(MonitorMeasure measure : env.getMonitorMeasures(ElasticsearchMonitor.METRIC_GROUP_ELASTICSEARCH, name)) {
+            Number measurement = ((MonitorMeasure30Impl) measure).getMeasurement();
+            assertNotNull("Did not get a measurement for " + name, measurement);
+            return measurement.doubleValue();
+        }
+        throw new IllegalStateException("Measure " + name + " is not registered");
+    }
+}
@@ -0,0 +1,96 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class FieldDataStatsTest {
+    private static final String RESPONSE = "{\"_nodes\":{\"total\":2,\"successful\":2,\"failed\":0},\"cluster_name\":\"es\",\"nodes\":{" +
+            "\"id1\":{\"timestamp\":1,\"name\":\"node1\",\"host\":\"h1\",\"roles\":[\"data\"]," +
+            "\"indices\":{\"fielddata\":{\"memory_size_in_bytes\":3000,\"evictions\":1," +
+            "\"fields\":{\"user\":{\"memory_size_in_bytes\":2000},\"tags\":{\"memory_size_in_bytes\":1000}}}}}," +
+            "\"id2\":{\"name\":\"node2\",\"attributes\":{\"fields\":{\"x\":{\"memory_size_in_bytes\":5}}}," +
+            "\"indices\":{\"fielddata\":{\"memory_size_in_bytes\":500,\"evictions\":0," +
+            "\"fields\":{\"user\":{\"memory_size_in_bytes\":500},\"empty\":{}}}}}," +
+            "\"id3\":{\"name\":\"node3\",\"indices\":{\"fielddata\":{\"memory_size_in_bytes\":0,\"evictions\":0}}}}}";
+
+    @Test
+    public void testExtract() throws IOException {
+        Map<String, Long> fields = extract(RESPONSE);
+        assertEquals(2, fields.size());
+        assertEquals(2500L, (long) fields.get("user"));
+        assertEquals(1000L, (long) fields.get("tags"));
+    }
+
+    @Test
+    public void testExtractNoNodes() throws IOException {
+        assertTrue(extract("{\"cluster_name\":\"es\",\"nodes\":{}}").isEmpty());
+    }
+
+    @Test
+    public void testExtractInvalid() throws IOException {
+        try {
+            extract("[]");
+            fail("Should catch exception here");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testGetLargest() {
+        Map<String, Long> fields = new HashMap<>();
+        fields.put("a", 10L);
+        fields.put("b", 30L);
+        fields.put("c", 20L);
+        fields.put("d", 20L);
+
+        List<Map.Entry<String, Long>> largest = FieldDataStats.getLargest(fields, 3);
+        assertEquals(3, largest.size());
+        assertEquals("b", largest.get(0).getKey());
+        assertEquals("c", largest.get(1).getKey());
+        assertEquals("d", largest.get(2).getKey());
+
+        assertEquals(4, FieldDataStats.getLargest(fields, 10).size());
+    }
+
+    @Test
+    public void testRequest() {
+        FieldDataStats stats = new FieldDataStats();
+        assertTrue(stats.request(1000, 60000));
+        assertFalse(stats.request(2000, 60000));
+        assertFalse(stats.request(60999, 60000));
+        assertTrue(stats.request(61000, 60000));
+
+        // the clock went backwards
+        assertTrue(stats.request(500, 60000));
+    }
+
+    @Test
+    public void testUpdateAndClear() {
+        FieldDataStats stats = new FieldDataStats();
+        assertTrue(stats.getFields().isEmpty());
+
+        Map<String, Long> fields = new HashMap<>();
+        fields.put("user", 100L);
+        stats.update(fields);
+        fields.clear();
+        assertEquals(100L, (long) stats.getFields().get("user"));
+
+        stats.clear();
+        assertTrue(stats.getFields().isEmpty());
+    }
+
+    private static Map<String, Long> extract(String json) throws IOException {
+        try (JsonParser parser = new ObjectMapper().getFactory().createParser(json)) {
+            return FieldDataStats.extract(parser);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class IndexPatternsTest {
+    @Test
+    public void testNotConfigured() {
+        assertNull(IndexPatterns.parse(null));
+        assertNull(IndexPatterns.parse(""));
+        assertNull(IndexPatterns.parse(" ,\n \r\n"));
+    }
+
+    @Test
+    public void testWildcards() {
+        IndexPatterns patterns = IndexPatterns.parse("logs-app-*, logs-*\nmetrics-20??.*, .kibana");
+        assertNotNull(patterns);
+
+        // the first pattern which matches wins
+        assertEquals("logs-app-*", patterns.getPattern("logs-app-2026.10.17"));
+        assertEquals("logs-*", patterns.getPattern("logs-web-2026.10.17"));
+        assertEquals("logs-*", patterns.getPattern("logs-"));
+        assertEquals("metrics-20??.*", patterns.getPattern("metrics-2026.10"));
+        assertEquals(".kibana", patterns.getPattern(".kibana"));
+
+        assertNull(patterns.getPattern("metrics-1999.10"));
+        assertNull(patterns.getPattern("xkibana"));
+        assertNull(patterns.getPattern("other"));
+
+        // the results are cached
+        assertEquals("logs-app-*", patterns.getPattern("logs-app-2026.10.17"));
+        assertNull(patterns.getPattern("other"));
+    }
+
+    @Test
+    public void testSpecialCharacters() {
+        IndexPatterns patterns = IndexPatterns.parse("a+b(*)");
+        assertNotNull(patterns);
+        assertEquals("a+b(*)", patterns.getPattern("a+b(1)"));
+        assertNull(patterns.getPattern("aab(1)"));
+    }
+
+    @Test
+    public void testDateSuffix() {
+        IndexPatterns patterns = IndexPatterns.parse("metrics-*," + IndexPatterns.DATE_SUFFIX);
+        assertNotNull(patterns);
+
+        assertEquals("logs-app-*", patterns.getPattern("logs-app-2026.10.17"));
+        assertEquals("logs-app-*", patterns.getPattern("logs-app-2026-10-17"));
+        assertEquals("logs-app-*", patterns.getPattern("logs-app-2026.10"));
+        assertEquals("logs_app_*", patterns.getPattern("logs_app_20261017"));
+        assertEquals("logs.*", patterns.getPattern("logs.2026.10.17"));
+
+        // the wildcards are tried first
+        assertEquals("metrics-*", patterns.getPattern("metrics-2026.10.17"));
+
+        assertNull(patterns.getPattern("logs-app"));
+        assertNull(patterns.getPattern("2026.10.17"));
+        assertNull(patterns.getPattern("logs-app-2026.1.17"));
+
+        patterns = IndexPatterns.parse(IndexPatterns.DATE_SUFFIX);
+        assertNotNull(patterns);
+        assertEquals("metrics-*", patterns.getPattern("metrics-2026.10.17"));
+        assertNull(patterns.getPattern("metrics"));
+    }
+}
@@ -0,0 +1,110 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class IndexRollupsTest {
+    private static final JsonFactory factory = new JsonFactory();
+
+    private static final IndexPatterns PATTERNS = IndexPatterns.parse("logs-*,metrics-*");
+
+    @Test
+    public void testExtract() throws Exception {
+        Map<String, IndexRollups.Counts> counts = extract("{\"_shards\":{\"total\":4,\"successful\":4,\"failed\":0}," +
+                "\"_all\":{\"primaries\":{\"docs\":{\"count\":999}}}," +
+                "\"indices\":{" +
+                    "\"logs-1\":{\"uuid\":\"abc\",\"primaries\":{\"docs\":{\"count\":10,\"deleted\":1},\"store\":{\"size_in_bytes\":1}," +
+                        "\"indexing\":{\"index_total\":20,\"is_throttled\":false},\"search\":{\"query_total\":1}}," +
+                        "\"total\":{\"docs\":{\"count\":20},\"store\":{\"size_in_bytes\":2000},\"indexing\":{\"index_total\":40}," +
+                        "\"search\":{\"query_total\":30,\"groups\":[\"a\",{\"b\":1}]}}}," +
+                    "\"other\":{\"primaries\":{\"docs\":{\"count\":5}}}," +
+                    "\"metrics-1\":{\"primaries\":{\"docs\":{\"count\":7}}}" +
+                "}}");
+
+        assertEquals(2, counts.size());
+        IndexRollups.Counts logs = counts.get("logs-1");
+        assertEquals(10, logs.getDocuments());
+        assertEquals(2000, logs.getStoreSize());
+        assertEquals(20, logs.getIndexed());
+        assertEquals(30, logs.getQueries());
+
+        IndexRollups.Counts metrics = counts.get("metrics-1");
+        assertEquals(7, metrics.getDocuments());
+        assertEquals(-1, metrics.getStoreSize());
+        assertEquals(-1, metrics.getIndexed());
+        assertEquals(-1, metrics.getQueries());
+
+        assertTrue(extract("{}").isEmpty());
+        assertTrue(extract("{\"indices\":{}}").isEmpty());
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void testExtractInvalid() throws Exception {
+        extract("[]");
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        IndexRollups rollups = new IndexRollups();
+
+        Map<String, IndexRollups.Rollup> result = rollups.update(extract(stats(
+                index("logs-1", 100, 1000, 100, 10),
+                index("logs-2", 200, 2000, 200, 20),
+                index("metrics-1", 50, 500, 50, 5))), 1000);
+        assertEquals(2, result.size());
+        IndexRollups.Rollup logs = result.get("logs-*");
+        assertEquals(2, logs.getIndices());
+        assertEquals(300, logs.getDocuments());
+        assertEquals(3000, logs.getStoreSize());
+        assertFalse("No rates in the first interval", logs.hasRates());
+
+        // logs-1 was removed, logs-3 was created, metrics-1 was deleted and created again
+        result = rollups.update(extract(stats(
+                index("logs-2", 300, 2500, 300, 40),
+                index("logs-3", 20, 100, 20, 10),
+                index("metrics-1", 10, 100, 10, 1))), 11000);
+        logs = result.get("logs-*");
+        assertEquals(2, logs.getIndices());
+        assertEquals(320, logs.getDocuments());
+        assertEquals(2600, logs.getStoreSize());
+        assertTrue(logs.hasRates());
+        assertEquals((100 + 20) / 10.0, logs.getIndexingPerSecond(), 0.0001);
+        assertEquals((20 + 10) / 10.0, logs.getSearchPerSecond(), 0.0001);
+
+        IndexRollups.Rollup metrics = result.get("metrics-*");
+        assertTrue(metrics.hasRates());
+        assertEquals(0, metrics.getIndexingPerSecond(), 0.0001);
+        assertEquals(0, metrics.getSearchPerSecond(), 0.0001);
+
+        // time did not advance
+        result = rollups.update(extract(stats(index("logs-2", 300, 2500, 300, 40))), 11000);
+        assertFalse(result.get("logs-*").hasRates());
+    }
+
+    private static Map<String, IndexRollups.Counts> extract(String json) throws IOException {
+        try (JsonParser parser = factory.createParser(json)) {
+            return IndexRollups.extract(parser, PATTERNS);
+        }
+    }
+
+    private static String stats(String... indices) {
+        StringBuilder json = new StringBuilder("{\"indices\":{");
+        for(int i = 0;i < indices.length;i++) {
+            json.append(i == 0 ? "" : ",").append(indices[i]);
+        }
+        return json.append("}}").toString();
+    }
+
+    private static String index(String name, long documents, long storeSize, long indexed, long queries) {
+        return "\"" + name + "\":{" +
+                "\"primaries\":{\"docs\":{\"count\":" + documents + "},\"indexing\":{\"index_total\":" + indexed + "}}," +
+                "\"total\":{\"store\":{\"size_in_bytes\":" + storeSize + "},\"search\":{\"query_total\":" + queries + "}}}";
+    }
+}
@@ -0,0 +1,99 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class IngestCountersTest {
+    @Test
+    public void testExtract() throws Exception {
+        Map<String, IngestCounters.Counts> counts = new HashMap<>();
+        IngestCounters.extract("id1", "node1", new ObjectMapper().readTree(
+                "{\"total\":{\"count\":100,\"time_in_millis\":50,\"current\":0,\"failed\":1}," +
+                "\"pipelines\":{\"logs\":{\"count\":80,\"time_in_millis\":40,\"current\":0,\"failed\":1}," +
+                "\"metrics\":{\"count\":20,\"time_in_millis\":10,\"current\":0,\"failed\":0}}}"), counts);
+        assertEquals(3, counts.size());
+        assertTrue(counts.containsKey("id1"));
+        assertTrue(counts.containsKey("id1/logs"));
+        assertTrue(counts.containsKey("id1/metrics"));
+
+        IngestCounters.extract("id2", "node2", new ObjectMapper().readTree("{\"total\":{\"count\":0}}"), counts);
+        assertEquals(4, counts.size());
+    }
+
+    @Test
+    public void testRates() {
+        IngestCounters counters = new IngestCounters();
+        assertNull(counters.update(counts(0, 0), 1000));
+
+        IngestCounters.Rates rates = counters.update(counts(100, 10), 11000);
+        assertNotNull(rates);
+
+        // both nodes: 2 * (100 + 200) documents in 10 seconds
+        assertEquals(60, rates.getTotal().getDocumentsPerSecond(), 0.001);
+        assertEquals(2, rates.getTotal().getFailedPerSecond(), 0.001);
+        assertEquals(2 * (100 + 800) / 600.0, rates.getTotal().getTimePerDocument(), 0.001);
+
+        assertEquals(30, rates.getNodes().get("node1").getDocumentsPerSecond(), 0.001);
+        assertEquals(20, rates.getPipelines().get("logs").getDocumentsPerSecond(), 0.001);
+        assertEquals(40, rates.getPipelines().get("slow").getDocumentsPerSecond(), 0.001);
+        assertEquals(1.0, rates.getPipelines().get("logs").getTimePerDocument(), 0.001);
+        assertEquals(4.0, rates.getPipelines().get("slow").getTimePerDocument(), 0.001);
+        assertEquals(2, rates.getPipelines().get("slow").getFailedPerSecond(), 0.001);
+
+        List<Map.Entry<String, IngestCounters.Rate>> slowest = rates.getSlowestPipelines(1);
+        assertEquals(1, slowest.size());
+        assertEquals("slow", slowest.get(0).getKey());
+        assertEquals(2, rates.getSlowestPipelines(10).size());
+
+        // the time did not advance
+        assertNull(counters.update(counts(100, 10), 11000));
+    }
+
+    @Test
+    public void testFailedNotReported() {
+        IngestCounters counters = new IngestCounters();
+        counters.update(counts(1000, 10), 1000);
+
+        // node2 did not report its failures, its documents are still counted
+        Map<String, IngestCounters.Counts> current = counts(1100, 20);
+        current.put("id2", new IngestCounters.Counts("node2", null).set(3300, 9900, -1));
+
+        IngestCounters.Rates rates = counters.update(current, 11000);
+        assertEquals(60, rates.getTotal().getDocumentsPerSecond(), 0.001);
+        assertEquals(1, rates.getTotal().getFailedPerSecond(), 0.001);
+        assertEquals(30, rates.getNodes().get("node2").getDocumentsPerSecond(), 0.001);
+    }
+
+    @Test
+    public void testNoDocuments() {
+        IngestCounters counters = new IngestCounters();
+        counters.update(counts(100, 10), 1000);
+        IngestCounters.Rates rates = counters.update(counts(100, 10), 2000);
+
+        assertEquals(0, rates.getTotal().getDocumentsPerSecond(), 0.001);
+        assertEquals(0, rates.getTotal().getTimePerDocument(), 0.001);
+        assertTrue(rates.getSlowestPipelines(10).isEmpty());
+    }
+
+    /**
+     * Two nodes with the pipelines "logs" with 1ms and "slow" with 4ms per document, "slow"
+     * processes twice as many documents.
+     */
+    private static Map<String, IngestCounters.Counts> counts(long base, long failed) {
+        Map<String, IngestCounters.Counts> counts = new HashMap<>();
+        for(String node : new String[] { "1", "2" }) {
+            String id = "id" + node;
+            String name = "node" + node;
+            counts.put(id + "/logs", new IngestCounters.Counts(name, "logs").set(base, base, 0));
+            counts.put(id + "/slow", new IngestCounters.Counts(name, "slow").set(2 * base, 8 * base, failed));
+            counts.put(id, new IngestCounters.Counts(name, null).set(3 * base, 9 * base, failed));
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,78 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import org.apache.http.client.methods.HttpGet;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MonitoredClusterTest {
+    @Test
+    public void testName() {
+        assertEquals("es1.example.com:9200", MonitoredCluster.getName("http://es1.example.com:9200"));
+        assertEquals("es1.example.com:9200", MonitoredCluster.getName("https://es1.example.com:9200/"));
+        assertEquals("localhost:9200", new MonitoredCluster("http://localhost:9200").getName());
+        assertEquals("localhost", MonitoredCluster.getName("localhost"));
+    }
+
+    @Test
+    public void testVersion() {
+        MonitoredCluster cluster = new MonitoredCluster("http://localhost:9200");
+        assertNull(cluster.getAdapter());
+        assertSame(VersionAdapter.DEFAULT, cluster.getVersion());
+
+        VersionAdapter adapter = VersionAdapter.forVersion("1.7.6");
+        cluster.setAdapter(adapter);
+        assertSame(adapter, cluster.getVersion());
+    }
+
+    @Test
+    public void testPollStates() {
+        MonitoredCluster cluster = new MonitoredCluster("http://localhost:9200");
+        assertEquals(0, cluster.getPollStartNanos());
+
+        assertTrue(cluster.queuePoll());
+        assertFalse("Cannot queue twice", cluster.queuePoll());
+        assertTrue(cluster.startPoll());
+        assertTrue(cluster.getPollStartNanos() != 0);
+        assertFalse("Cannot unqueue a running poll", cluster.unqueuePoll());
+        assertFalse(cluster.queuePoll());
+
+        cluster.finishPoll();
+        assertEquals(0, cluster.getPollStartNanos());
+
+        // a poll which is given up before it starts does not run
+        assertTrue(cluster.queuePoll());
+        assertTrue(cluster.unqueuePoll());
+        assertFalse(cluster.startPoll());
+        assertTrue(cluster.queuePoll());
+    }
+
+    @Test
+    public void testAbort() {
+        MonitoredCluster cluster = new MonitoredCluster("http://localhost:9200");
+        assertTrue(cluster.queuePoll());
+        assertTrue(cluster.startPoll());
+
+        // all requests which are in flight are aborted
+        HttpGet first = new HttpGet("http://localhost:9200/");
+        cluster.addRequest(first);
+        HttpGet concurrent = new HttpGet("http://localhost:9200/_cluster/health");
+        cluster.addRequest(concurrent);
+        cluster.abort();
+        assertTrue(first.isAborted());
+        assertTrue(concurrent.isAborted());
+
+        // further requests of the same poll are aborted right away
+        HttpGet second = new HttpGet("http://localhost:9200/_nodes");
+        cluster.addRequest(second);
+        assertTrue(second.isAborted());
+
+        // but not the ones of the next poll
+        cluster.finishPoll();
+        assertTrue(cluster.queuePoll());
+        assertTrue(cluster.startPoll());
+        HttpGet third = new HttpGet("http://localhost:9200/");
+        cluster.addRequest(third);
+        assertFalse(third.isAborted());
+    }
+}
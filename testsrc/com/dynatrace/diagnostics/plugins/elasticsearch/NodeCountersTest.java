@@ -0,0 +1,126 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class NodeCountersTest {
+    @Test
+    public void testRates() {
+        NodeCounters counters = new NodeCounters();
+
+        // no rate in the first interval
+        assertNull(counters.update(counts(counts(null, "node1", 1, 1000, 10), "node2", 1, 2000, 20), 10_000));
+
+        NodeCounters.Rates rates = counters.update(counts(counts(null, "node1", 1, 1100, 15), "node2", 1, 2300, 25), 20_000);
+        assertNotNull(rates);
+        assertTrue(rates.hasDocuments());
+        assertTrue(rates.hasDeleted());
+        assertEquals(0, rates.getResets());
+
+        // 400 documents in 10 seconds, the count of the cluster is 0, i.e. not scaled
+        assertEquals(40, rates.getDocumentsPerSecond(0), 0.001);
+        assertEquals(1, rates.getDeletedPerSecond(0), 0.001);
+
+        // the count of the cluster only includes primaries, i.e. one replica halves the rate
+        assertEquals(20, rates.getDocumentsPerSecond(1700), 0.001);
+        assertEquals(0.5, rates.getDeletedPerSecond(20), 0.001);
+
+        // the time did not advance
+        assertNull(counters.update(counts(null, "node1", 1, 1100, 15), 20_000));
+    }
+
+    @Test
+    public void testDecreasedCount() {
+        NodeCounters counters = new NodeCounters();
+        counters.update(counts(counts(null, "node1", 1, 1000, 10), "node2", 1, 2000, 20), 10_000);
+
+        // an index was removed from node1, the documents added on node2 are still reported
+        NodeCounters.Rates rates = counters.update(counts(counts(null, "node1", 1, 500, 12), "node2", 1, 2100, 5), 20_000);
+        assertNotNull(rates);
+        assertEquals(2, rates.getResets());
+        assertEquals(10, rates.getDocumentsPerSecond(0), 0.001);
+        assertEquals(0.2, rates.getDeletedPerSecond(0), 0.001);
+
+        // node1 continues from the decreased count
+        rates = counters.update(counts(counts(null, "node1", 1, 600, 12), "node2", 1, 2100, 5), 30_000);
+        assertNotNull(rates);
+        assertEquals(0, rates.getResets());
+        assertEquals(10, rates.getDocumentsPerSecond(0), 0.001);
+    }
+
+    @Test
+    public void testRelocatedShard() {
+        NodeCounters counters = new NodeCounters();
+        counters.update(counts(counts(null, "node1", 1, 1000, 10), "node2", 1, 2000, 20), 10_000);
+
+        // a shard with 800 documents moved from node1 to node2, 100 documents were added on node2
+        NodeCounters.Rates rates = counters.update(counts(counts(null, "node1", 1, 200, 2), "node2", 1, 2900, 28), 20_000);
+        assertNotNull(rates);
+        assertEquals(0, rates.getResets());
+        assertEquals(10, rates.getDocumentsPerSecond(0), 0.001);
+        assertEquals(0, rates.getDeletedPerSecond(0), 0.001);
+
+        // both nodes continue from their counts after the move
+        rates = counters.update(counts(counts(null, "node1", 1, 250, 2), "node2", 1, 2900, 30), 30_000);
+        assertNotNull(rates);
+        assertEquals(0, rates.getResets());
+        assertEquals(5, rates.getDocumentsPerSecond(0), 0.001);
+        assertEquals(0.2, rates.getDeletedPerSecond(0), 0.001);
+    }
+
+    @Test
+    public void testRestartedNode() {
+        NodeCounters counters = new NodeCounters();
+        counters.update(counts(counts(null, "node1", 1, 1000, 10), "node2", 1, 2000, 20), 10_000);
+
+        // node1 was restarted, even though its count increased it is not used
+        NodeCounters.Rates rates = counters.update(counts(counts(null, "node1", 2, 5000, 10), "node2", 1, 2100, 20), 20_000);
+        assertNotNull(rates);
+        assertEquals(1, rates.getResets());
+        assertEquals(10, rates.getDocumentsPerSecond(0), 0.001);
+
+        // an unknown start time is not treated as restart
+        rates = counters.update(counts(counts(null, "node1", 0, 5100, 10), "node2", 1, 2100, 20), 30_000);
+        assertNotNull(rates);
+        assertEquals(0, rates.getResets());
+        assertEquals(10, rates.getDocumentsPerSecond(0), 0.001);
+    }
+
+    @Test
+    public void testNoValidNode() {
+        NodeCounters counters = new NodeCounters();
+        counters.update(counts(null, "node1", 1, 1000, 10), 10_000);
+
+        // a node which joined does not contribute, the one that left neither
+        NodeCounters.Rates rates = counters.update(counts(null, "node2", 1, 1000, 10), 20_000);
+        assertNotNull(rates);
+        assertFalse(rates.hasDocuments());
+        assertFalse(rates.hasDeleted());
+
+        // counts which were not reported
+        Map<String, NodeCounters.Counts> counts = new HashMap<>();
+        counts.put("node2", new NodeCounters.Counts());
+        rates = counters.update(counts, 30_000);
+        assertNotNull(rates);
+        assertFalse(rates.hasDocuments());
+        assertFalse(rates.hasDeleted());
+        assertEquals(0, rates.getResets());
+    }
+
+    private static Map<String, NodeCounters.Counts> counts(Map<String, NodeCounters.Counts> counts, String node, long startTime, long documents, long deleted) {
+        if(counts == null) {
+            counts = new HashMap<>();
+        }
+
+        NodeCounters.Counts nodeCounts = new NodeCounters.Counts();
+        nodeCounts.setStartTime(startTime);
+        nodeCounts.setDocuments(documents);
+        nodeCounts.setDeleted(deleted);
+        counts.put(node, nodeCounts);
+        return counts;
+    }
+}
@@ -0,0 +1,92 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class NodeInfoCacheTest {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testStale() {
+        NodeInfoCache cache = new NodeInfoCache();
+        assertTrue("Empty cache needs to be filled", cache.isStale(0, -1));
+
+        Map<String, NodeInfoCache.NodeInfo> nodes = new HashMap<>();
+        nodes.put("id1", new NodeInfoCache.NodeInfo("node1"));
+        nodes.put("id2", new NodeInfoCache.NodeInfo("node2"));
+        cache.update(nodes, 1000);
+        assertEquals("node1", cache.get("id1").getName());
+        assertNull(cache.get("id3"));
+
+        assertFalse(cache.isStale(1000, -1));
+        assertFalse(cache.isStale(1000, 2));
+        assertFalse(cache.isStale(1000 + NodeInfoCache.TTL - 1, 2));
+
+        // number of nodes changed or the TTL passed
+        assertTrue(cache.isStale(1000, 3));
+        assertTrue(cache.isStale(1000, 1));
+        assertTrue(cache.isStale(1000 + NodeInfoCache.TTL, 2));
+
+        cache.update(nodes, 1000 + NodeInfoCache.TTL);
+        assertFalse(cache.isStale(1000 + NodeInfoCache.TTL, 2));
+    }
+
+    @Test
+    public void testRestarted() {
+        NodeInfoCache cache = new NodeInfoCache();
+        assertFalse(cache.isRestarted("id1", 1000));
+        assertFalse(cache.isRestarted("id1", 2000));
+        assertFalse(cache.isRestarted("id1", 2000));
+
+        // not reported, the previous value is kept
+        assertFalse(cache.isRestarted("id1", -1));
+        assertTrue(cache.isRestarted("id1", 500));
+        assertFalse(cache.isRestarted("id1", 600));
+
+        // a node which left starts over when it joins again
+        cache.retainLifetimes(Collections.singleton("id2"));
+        assertFalse(cache.isRestarted("id1", 100));
+    }
+
+    @Test
+    public void testNodesChanged() throws Exception {
+        NodeInfoCache cache = new NodeInfoCache();
+        Map<String, NodeInfoCache.NodeInfo> nodes = new HashMap<>();
+        nodes.put("id1", new NodeInfoCache.NodeInfo("node1"));
+        nodes.put("id2", new NodeInfoCache.NodeInfo("node2"));
+        cache.update(nodes, 1000);
+
+        assertFalse(ElasticsearchMonitor.isNodesChanged(stats(5000, 7000, -1), cache, 2, 2000));
+        assertFalse(ElasticsearchMonitor.isNodesChanged(stats(6000, 8000, -1), cache, -1, 2000));
+
+        // the number of nodes in the cluster health differs
+        assertTrue(ElasticsearchMonitor.isNodesChanged(stats(6000, 8000, -1), cache, 3, 2000));
+
+        // a node joined
+        assertTrue(ElasticsearchMonitor.isNodesChanged(stats(6000, 8000, 1000), cache, -1, 2000));
+
+        // a node was restarted with the same node-id
+        assertTrue(ElasticsearchMonitor.isNodesChanged(stats(100, 8000, -1), cache, 2, 2000));
+        assertFalse(ElasticsearchMonitor.isNodesChanged(stats(200, 9000, -1), cache, 2, 2000));
+    }
+
+    /**
+     * Node statistics with the uptime of the JVM for the first node and the CPU time of the
+     * process for the other nodes, as the JVM is not always part of the statistics.
+     */
+    private static JsonNode stats(long uptime1, long cpu2, long cpu3) throws Exception {
+        String json = "{\"nodes\":{" +
+                "\"id1\":{\"jvm\":{\"uptime_in_millis\":" + uptime1 + "},\"process\":{\"cpu\":{\"total_in_millis\":1}}}," +
+                "\"id2\":{\"process\":{\"cpu\":{\"total_in_millis\":" + cpu2 + "}}}" +
+                (cpu3 >= 0 ? ",\"id3\":{\"process\":{\"cpu\":{\"total_in_millis\":" + cpu3 + "}}}" : "") +
+                "}}";
+        return mapper.readTree(json);
+    }
+}
@@ -0,0 +1,124 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class QuantileSketchTest {
+    @Test
+    public void testBuckets() {
+        // small values are exact
+        for(int value = 0;value < 32;value++) {
+            assertEquals(value, QuantileSketch.getBucket(value));
+            assertEquals(value, QuantileSketch.getValue(value), 0.001);
+        }
+
+        // buckets are consecutive and the reported value is within 1/32 of the actual one
+        int previous = QuantileSketch.getBucket(31);
+        for(long value = 32;value <= QuantileSketch.MAX_VALUE;value += 1 + value / 1000) {
+            int bucket = QuantileSketch.getBucket(value);
+            assertTrue("Had " + bucket + " after " + previous + " for " + value, bucket == previous || bucket == previous + 1);
+            assertEquals("Had: " + value, value, QuantileSketch.getValue(bucket), value / 32.0);
+            previous = bucket;
+        }
+        assertEquals(QuantileSketch.BUCKETS - 1, QuantileSketch.getBucket(QuantileSketch.MAX_VALUE));
+    }
+
+    @Test
+    public void testQuantiles() {
+        QuantileSketch sketch = new QuantileSketch();
+        assertNull(sketch.drain());
+
+        for(int value = 1;value <= 1000;value++) {
+            sketch.add(value);
+        }
+
+        QuantileSketch.Snapshot snapshot = sketch.drain();
+        assertNotNull(snapshot);
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500, snapshot.getQuantile(0.50), 500 / 32.0);
+        assertEquals(950, snapshot.getQuantile(0.95), 950 / 32.0);
+        assertEquals(990, snapshot.getQuantile(0.99), 990 / 32.0);
+        assertEquals(1, snapshot.getQuantile(0), 0.001);
+        assertEquals(1000, snapshot.getQuantile(1), 1000 / 32.0);
+
+        // draining resets the sketch
+        assertNull(sketch.drain());
+    }
+
+    @Test
+    public void testTail() {
+        QuantileSketch sketch = new QuantileSketch();
+        for(int i = 0;i < 98;i++) {
+            sketch.add(2);
+        }
+        sketch.add(50);
+        sketch.add(50);
+
+        QuantileSketch.Snapshot snapshot = sketch.drain();
+        assertNotNull(snapshot);
+        assertEquals(2, snapshot.getQuantile(0.50), 0.001);
+        assertEquals(2, snapshot.getQuantile(0.95), 0.001);
+        assertEquals(50, snapshot.getQuantile(0.99), 50 / 32.0);
+    }
+
+    @Test
+    public void testOutOfRange() {
+        QuantileSketch sketch = new QuantileSketch();
+        sketch.add(-5);
+        sketch.add(Long.MAX_VALUE);
+
+        QuantileSketch.Snapshot snapshot = sketch.drain();
+        assertNotNull(snapshot);
+        assertEquals(0, snapshot.getQuantile(0.5), 0.001);
+        assertEquals(QuantileSketch.MAX_VALUE, snapshot.getQuantile(1), QuantileSketch.MAX_VALUE / 32.0);
+    }
+
+    @Test
+    public void testMerge() {
+        QuantileSketch first = new QuantileSketch();
+        QuantileSketch second = new QuantileSketch();
+        for(int i = 0;i < 50;i++) {
+            first.add(10);
+            second.add(1000);
+        }
+
+        QuantileSketch.Snapshot snapshot = first.drain();
+        assertNotNull(snapshot);
+        QuantileSketch.Snapshot other = second.drain();
+        assertNotNull(other);
+        snapshot.merge(other);
+
+        assertEquals(100, snapshot.getCount());
+        assertEquals(10, snapshot.getQuantile(0.5), 0.001);
+        assertEquals(1000, snapshot.getQuantile(0.51), 1000 / 32.0);
+    }
+
+    @Test
+    public void testAddDoesNotAllocate() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue("Allocations can only be measured on JVMs which provide com.sun.management.ThreadMXBean",
+                threads instanceof com.sun.management.ThreadMXBean &&
+                        ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled());
+        com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+        long threadId = Thread.currentThread().getId();
+
+        QuantileSketch sketch = new QuantileSketch();
+        for(int i = 0;i < 100_000;i++) {
+            sketch.add(i % 5000);
+        }
+
+        long before = sunThreads.getThreadAllocatedBytes(threadId);
+        for(int i = 0;i < 100_000;i++) {
+            sketch.add(i % 5000);
+        }
+        long allocated = sunThreads.getThreadAllocatedBytes(threadId) - before;
+
+        // allow for the allocations of the measurement itself
+        assertTrue("Adding 100000 samples allocated " + allocated + " bytes", allocated < 1000);
+    }
+}
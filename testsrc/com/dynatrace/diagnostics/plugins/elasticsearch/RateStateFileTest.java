@@ -0,0 +1,216 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RateStateFileTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRestore() throws IOException {
+        File file = new File(folder.getRoot(), "sub/rates.state");
+        long now = System.currentTimeMillis();
+
+        MonitoredCluster cluster = new MonitoredCluster("http://localhost:9200");
+        cluster.getDocumentCount().setValue(1000, now - 10_000);
+        cluster.getDeletedCount().setValue(10, now - 10_000);
+        store(file, cluster);
+        assertEquals(RateStateFile.FILE_SIZE, file.length());
+
+        // as after a restart of the collector
+        MonitoredCluster restarted = new MonitoredCluster("http://localhost:9200");
+        MonitoredCluster other = new MonitoredCluster("http://localhost:9201");
+        assertEquals(1, restore(file, now, restarted, other));
+        assertEquals(0, other.getDocumentCount().getValueTS());
+
+        // the first execution computes the rate right away
+        restarted.getDocumentCount().setValue(2000, now);
+        restarted.getDeletedCount().setValue(30, now);
+        assertEquals(100, restarted.getDocumentCount().getDerivedMeasure().getValue(), 0.01);
+        assertEquals(2, restarted.getDeletedCount().getDerivedMeasure().getValue(), 0.01);
+    }
+
+    @Test
+    public void testRestoreKeepsCurrentCounts() throws IOException {
+        File file = folder.newFile();
+        long now = System.currentTimeMillis();
+
+        MonitoredCluster cluster = new MonitoredCluster("http://localhost:9200");
+        cluster.getDocumentCount().setValue(1000, now - 10_000);
+        try (RateStateFile stateFile = RateStateFile.open(file)) {
+            stateFile.store(Collections.singletonList(cluster));
+
+            // e.g. when the monitor is set up again, the counts in memory are newer
+            MonitoredCluster current = new MonitoredCluster("http://localhost:9200");
+            current.getDocumentCount().setValue(1500, now);
+            assertEquals(0, stateFile.restore(Collections.singletonList(current), now));
+            assertEquals(1500, current.getDocumentCount().getValue(), 0.01);
+        }
+    }
+
+    @Test
+    public void testRestoreOutdated() throws IOException {
+        File file = folder.newFile();
+        long now = System.currentTimeMillis();
+
+        MonitoredCluster cluster = new MonitoredCluster("http://localhost:9200");
+        cluster.getDocumentCount().setValue(1000, now - RateStateFile.MAX_AGE - 1);
+        store(file, cluster);
+
+        MonitoredCluster restarted = new MonitoredCluster("http://localhost:9200");
+        assertEquals(0, restore(file, now, restarted));
+        assertEquals(0, restarted.getDocumentCount().getValueTS());
+
+        // timestamps from the future are not restored either, e.g. after the clock was adjusted
+        assertEquals(0, restore(file, now - RateStateFile.MAX_AGE - 2, restarted));
+    }
+
+    @Test
+    public void testRestoreCorrupt() throws IOException {
+        File file = folder.newFile();
+        long now = System.currentTimeMillis();
+
+        // an empty file is extended and has no state
+        MonitoredCluster restarted = new MonitoredCluster("http://localhost:9200");
+        assertEquals(0, restore(file, now, restarted));
+
+        MonitoredCluster cluster = new MonitoredCluster("http://localhost:9200");
+        cluster.getDocumentCount().setValue(1000, now - 10_000);
+        store(file, cluster);
+
+        // flip one byte of the stored counts
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(30);
+            int value = raf.read();
+            raf.seek(30);
+            raf.write(value ^ 0xff);
+        }
+
+        assertEquals(0, restore(file, now, restarted));
+        assertEquals(0, restarted.getDocumentCount().getValueTS());
+    }
+
+    @Test
+    public void testStoreSkipsClustersWithoutCounts() throws IOException {
+        File file = folder.newFile();
+        long now = System.currentTimeMillis();
+
+        MonitoredCluster empty = new MonitoredCluster("http://localhost:9200");
+        MonitoredCluster polling = new MonitoredCluster("http://localhost:9201");
+        polling.getDocumentCount().setValue(1000, now);
+        assertTrue(polling.queuePoll());
+        MonitoredCluster cluster = new MonitoredCluster("http://localhost:9202");
+        cluster.getDocumentCount().setValue(1000, now);
+        store(file, empty, polling, cluster);
+
+        MonitoredCluster[] restarted = { new MonitoredCluster("http://localhost:9200"),
+                new MonitoredCluster("http://localhost:9201"), new MonitoredCluster("http://localhost:9202") };
+        assertEquals(1, restore(file, now, restarted));
+        assertEquals(now, restarted[2].getDocumentCount().getValueTS());
+    }
+
+    @Test
+    public void testStoreKeepsPolledClusters() throws IOException {
+        File file = folder.newFile();
+        long now = System.currentTimeMillis();
+
+        MonitoredCluster first = new MonitoredCluster("http://localhost:9200");
+        first.getDocumentCount().setValue(1000, now - 20_000);
+        MonitoredCluster second = new MonitoredCluster("http://localhost:9201");
+        second.getDocumentCount().setValue(2000, now - 20_000);
+        try (RateStateFile stateFile = RateStateFile.open(file)) {
+            stateFile.store(Arrays.asList(first, second));
+
+            // the first cluster is still polled in the next execution, its counts stored before are kept
+            first.getDocumentCount().setValue(1100, now - 10_000);
+            second.getDocumentCount().setValue(2100, now - 10_000);
+            assertTrue(first.queuePoll());
+            stateFile.store(Arrays.asList(first, second));
+        }
+
+        MonitoredCluster[] restarted = { new MonitoredCluster("http://localhost:9200"), new MonitoredCluster("http://localhost:9201") };
+        assertEquals(2, restore(file, now, restarted));
+        assertEquals(1000, restarted[0].getDocumentCount().getValue(), 0.01);
+        assertEquals(2100, restarted[1].getDocumentCount().getValue(), 0.01);
+    }
+
+    @Test
+    public void testLocked() throws IOException {
+        List<MonitoredCluster> clusters = Collections.singletonList(new MonitoredCluster("http://localhost:9200"));
+        File directory = folder.getRoot();
+        try (RateStateFile stateFile = RateStateFile.open(directory, clusters)) {
+            assertEquals(RateStateFile.getFile(directory, clusters), stateFile.getFile());
+            try {
+                RateStateFile.open(stateFile.getFile());
+                fail("Should not open a file which is used by another monitor");
+            } catch (IOException e) {
+                // expected here
+            }
+
+            // a second monitor for the same clusters uses its own file
+            try (RateStateFile second = RateStateFile.open(directory, clusters)) {
+                assertNotEquals(stateFile.getFile(), second.getFile());
+                assertTrue(second.isFor(directory, clusters));
+                assertFalse(second.isFor(directory, Collections.singletonList(new MonitoredCluster("http://localhost:9201"))));
+            }
+        }
+
+        // the file can be used again once it was closed
+        RateStateFile.open(RateStateFile.getFile(directory, clusters)).close();
+    }
+
+    @Test
+    public void testFile() {
+        File directory = new File("state");
+        List<MonitoredCluster> clusters = Collections.singletonList(new MonitoredCluster("http://localhost:9200"));
+        assertEquals(RateStateFile.getFile(directory, clusters), RateStateFile.getFile(directory, clusters));
+        assertNotEquals(RateStateFile.getFile(directory, clusters),
+                RateStateFile.getFile(directory, Collections.singletonList(new MonitoredCluster("http://localhost:9201"))));
+        assertEquals(directory, RateStateFile.getFile(directory, clusters).getParentFile());
+    }
+
+    private static void store(File file, MonitoredCluster... clusters) throws IOException {
+        try (RateStateFile stateFile = RateStateFile.open(file)) {
+            stateFile.store(Arrays.asList(clusters));
+        }
+    }
+
+    private static int restore(File file, long now, MonitoredCluster... clusters) throws IOException {
+        try (RateStateFile stateFile = RateStateFile.open(file)) {
+            return stateFile.restore(Arrays.asList(clusters), now);
+        }
+    }
+
+    @Test
+    public void testStateDirectory() {
+        String previous = System.getProperty(RateStateFile.PROPERTY_STATE_DIRECTORY);
+        try {
+            System.setProperty(RateStateFile.PROPERTY_STATE_DIRECTORY, "");
+            assertNull(RateStateFile.getStateDirectory());
+
+            System.setProperty(RateStateFile.PROPERTY_STATE_DIRECTORY, folder.getRoot().getAbsolutePath());
+            assertEquals(folder.getRoot(), RateStateFile.getStateDirectory());
+
+            // not persisted by default
+            System.clearProperty(RateStateFile.PROPERTY_STATE_DIRECTORY);
+            assertNull(RateStateFile.getStateDirectory());
+        } finally {
+            if(previous == null) {
+                System.clearProperty(RateStateFile.PROPERTY_STATE_DIRECTORY);
+            } else {
+                System.setProperty(RateStateFile.PROPERTY_STATE_DIRECTORY, previous);
+            }
+        }
+    }
+}
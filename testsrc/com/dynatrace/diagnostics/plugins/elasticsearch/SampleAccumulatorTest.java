@@ -0,0 +1,84 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class SampleAccumulatorTest {
+    @Test
+    public void testAggregate() {
+        SampleAccumulator accumulator = new SampleAccumulator();
+        assertNull(accumulator.drain());
+
+        accumulator.add(5);
+        accumulator.add(1);
+        accumulator.add(9);
+        accumulator.add(3);
+
+        SampleAccumulator.Aggregate aggregate = accumulator.drain();
+        assertNotNull(aggregate);
+        assertEquals(4, aggregate.getCount());
+        assertEquals(1, aggregate.getMin(), 0.001);
+        assertEquals(9, aggregate.getMax(), 0.001);
+        assertEquals(4.5, aggregate.getAverage(), 0.001);
+        assertEquals(3, aggregate.getLast(), 0.001);
+
+        // draining resets the accumulator
+        assertNull(accumulator.drain());
+        accumulator.add(7);
+        aggregate = accumulator.drain();
+        assertNotNull(aggregate);
+        assertEquals(1, aggregate.getCount());
+        assertEquals(7, aggregate.getMin(), 0.001);
+        assertEquals(7, aggregate.getMax(), 0.001);
+    }
+
+    @Test
+    public void testConcurrentAddAndDrain() throws Exception {
+        final SampleAccumulator accumulator = new SampleAccumulator();
+        final int threads = 4;
+        final int samples = 20_000;
+
+        List<Thread> adders = new ArrayList<>();
+        for(int i = 0;i < threads;i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for(int j = 0;j < samples;j++) {
+                        accumulator.add(1);
+                    }
+                }
+            };
+            thread.start();
+            adders.add(thread);
+        }
+
+        // drain while samples are added, no sample may be lost or counted twice
+        long count = 0;
+        final AtomicBoolean done = new AtomicBoolean();
+        while(!done.get()) {
+            done.set(true);
+            for(Thread thread : adders) {
+                if(thread.isAlive()) {
+                    done.set(false);
+                }
+            }
+
+            SampleAccumulator.Aggregate aggregate = accumulator.drain();
+            if(aggregate != null) {
+                count += aggregate.getCount();
+                assertEquals(aggregate.getCount(), aggregate.getAverage() * aggregate.getCount(), 0.001);
+            }
+        }
+        SampleAccumulator.Aggregate aggregate = accumulator.drain();
+        if(aggregate != null) {
+            count += aggregate.getCount();
+        }
+
+        assertEquals(threads * samples, count);
+    }
+}
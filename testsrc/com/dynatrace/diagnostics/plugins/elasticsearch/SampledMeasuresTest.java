@@ -0,0 +1,85 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SampledMeasuresTest {
+    @Test
+    public void testDrain() {
+        SampledMeasures samples = new SampledMeasures();
+        assertTrue(samples.drain("QueryCurrent").isEmpty());
+
+        samples.add("QueryCurrent", "node1", 2);
+        samples.add("QueryCurrent", "node2", 4);
+        samples.addTotal("QueryCurrent", 6);
+
+        samples.add("QueryCurrent", "node1", 8);
+        samples.add("QueryCurrent", "node2", 0);
+        samples.addTotal("QueryCurrent", 8);
+
+        Map<String, Measure> measures = samples.drain("QueryCurrent");
+        assertEquals(SampledMeasures.STATISTICS.length, measures.size());
+
+        Measure max = measures.get(SampledMeasures.STATISTIC_MAX);
+        assertEquals("Node", max.getDynamicMeasureName());
+        assertEquals(8, max.getValue(), 0.001);
+        assertEquals(8, max.getDynamicMeasures().get("node1"), 0.001);
+        assertEquals(4, max.getDynamicMeasures().get("node2"), 0.001);
+
+        Measure min = measures.get(SampledMeasures.STATISTIC_MIN);
+        assertEquals(6, min.getValue(), 0.001);
+        assertEquals(2, min.getDynamicMeasures().get("node1"), 0.001);
+        assertEquals(0, min.getDynamicMeasures().get("node2"), 0.001);
+
+        Measure average = measures.get(SampledMeasures.STATISTIC_AVERAGE);
+        assertEquals(7, average.getValue(), 0.001);
+        assertEquals(5, average.getDynamicMeasures().get("node1"), 0.001);
+
+        Measure last = measures.get(SampledMeasures.STATISTIC_LAST);
+        assertEquals(8, last.getValue(), 0.001);
+        assertEquals(0, last.getDynamicMeasures().get("node2"), 0.001);
+
+        Measure p99 = measures.get(SampledMeasures.STATISTIC_P99);
+        assertEquals(8, p99.getValue(), 0.001);
+        assertEquals(8, p99.getDynamicMeasures().get("node1"), 0.001);
+        assertEquals(4, p99.getDynamicMeasures().get("node2"), 0.001);
+
+        Measure p50 = measures.get(SampledMeasures.STATISTIC_P50);
+        assertEquals(6, p50.getValue(), 0.001);
+        assertEquals(2, p50.getDynamicMeasures().get("node1"), 0.001);
+
+        // other measures are not affected
+        assertTrue(samples.drain("IndexingCurrent").isEmpty());
+
+        // the next interval starts empty, nodes without samples are not reported any more
+        samples.add("QueryCurrent", "node1", 3);
+        samples.addTotal("QueryCurrent", 3);
+        measures = samples.drain("QueryCurrent");
+        assertEquals(3, measures.get(SampledMeasures.STATISTIC_MIN).getValue(), 0.001);
+        assertEquals(1, measures.get(SampledMeasures.STATISTIC_MIN).getDynamicMeasures().size());
+
+        assertTrue(samples.drain("QueryCurrent").isEmpty());
+    }
+
+    @Test
+    public void testPercentiles() {
+        SampledMeasures samples = new SampledMeasures();
+
+        // a short burst on one node is hidden in the average, but not in the high percentiles
+        for(int i = 0;i < 200;i++) {
+            double value = i % 50 == 0 ? 40 : 1;
+            samples.add("ThreadPoolQueue", "node1", value);
+            samples.addTotal("ThreadPoolQueue", value);
+        }
+
+        Map<String, Measure> measures = samples.drain("ThreadPoolQueue");
+        assertEquals(1.78, measures.get(SampledMeasures.STATISTIC_AVERAGE).getValue(), 0.01);
+        assertEquals(1, measures.get(SampledMeasures.STATISTIC_P50).getValue(), 0.001);
+        assertEquals(1, measures.get(SampledMeasures.STATISTIC_P95).getValue(), 0.001);
+        assertEquals(40, measures.get(SampledMeasures.STATISTIC_P99).getValue(), 40 / 32.0);
+        assertEquals(40, measures.get(SampledMeasures.STATISTIC_P99).getDynamicMeasures().get("node1"), 40 / 32.0);
+    }
+}
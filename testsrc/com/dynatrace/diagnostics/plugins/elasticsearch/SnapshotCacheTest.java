@@ -0,0 +1,245 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import org.apache.http.client.methods.HttpGet;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SnapshotCacheTest {
+    private static final String URL = "http://localhost:9200/_cluster/stats";
+
+    @Test
+    public void testShared() throws IOException {
+        SnapshotCache cache = new SnapshotCache();
+        CountingEngine engine = new CountingEngine();
+
+        assertArrayEquals("1".getBytes(), cache.send(engine, new HttpGet(URL), "user", "pwd", 60000).getBody(0));
+        assertArrayEquals("1".getBytes(), cache.send(engine, new HttpGet(URL), "user", "pwd", 60000).getBody(0));
+        assertArrayEquals("1".getBytes(), cache.send(engine, new HttpGet("HTTP://LocalHost:9200//_cluster/stats"), "user", "pwd", 60000).getBody(0));
+        assertEquals(1, engine.requests.get());
+        assertEquals(1, cache.size());
+
+        // other credentials or another endpoint are not shared
+        assertArrayEquals("2".getBytes(), cache.send(engine, new HttpGet(URL), "other", "pwd", 60000).getBody(0));
+        assertArrayEquals("3".getBytes(), cache.send(engine, new HttpGet(URL), "user", "other", 60000).getBody(0));
+        assertArrayEquals("4".getBytes(), cache.send(engine, new HttpGet(URL + "?level=indices"), "user", "pwd", 60000).getBody(0));
+        assertEquals(4, engine.requests.get());
+    }
+
+    @Test
+    public void testMaxAge() throws Exception {
+        SnapshotCache cache = new SnapshotCache();
+        CountingEngine engine = new CountingEngine();
+
+        assertArrayEquals("1".getBytes(), cache.send(engine, new HttpGet(URL), null, null, 60000).getBody(0));
+        Thread.sleep(20);
+
+        // too old for a monitor with a shorter max age, the new response is shared then
+        assertArrayEquals("2".getBytes(), cache.send(engine, new HttpGet(URL), null, null, 10).getBody(0));
+        assertArrayEquals("2".getBytes(), cache.send(engine, new HttpGet(URL), null, null, 60000).getBody(0));
+        assertEquals(2, engine.requests.get());
+    }
+
+    @Test
+    public void testPurge() throws Exception {
+        SnapshotCache cache = new SnapshotCache();
+        CountingEngine engine = new CountingEngine();
+
+        cache.send(engine, new HttpGet(URL), null, null, 500).getBody(0);
+        cache.send(engine, new HttpGet(URL + "?level=indices"), null, null, 60000).getBody(0);
+        assertEquals(2, cache.size());
+        Thread.sleep(600);
+
+        // removed with the next request once it is older than its maximum age
+        cache.send(engine, new HttpGet(URL + "?level=shards"), null, null, 60000).getBody(0);
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testFailureIsNotShared() throws IOException {
+        SnapshotCache cache = new SnapshotCache();
+        CountingEngine engine = new CountingEngine();
+        engine.fail = true;
+
+        try {
+            cache.send(engine, new HttpGet(URL), null, null, 60000).getBody(0);
+            fail("Should catch exception here");
+        } catch (IOException e) {
+            assertEquals("failed: 1", e.getMessage());
+        }
+        assertEquals(0, cache.size());
+
+        engine.fail = false;
+        assertArrayEquals("2".getBytes(), cache.send(engine, new HttpGet(URL), null, null, 60000).getBody(0));
+    }
+
+    @Test
+    public void testCoalesced() throws Exception {
+        SnapshotCache cache = new SnapshotCache();
+        CountingEngine engine = new CountingEngine();
+        engine.block = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            HttpEngine.Exchange first = cache.send(engine, new HttpGet(URL), null, null, 60000);
+            Future<byte[]> reading = executor.submit(new ReadBody(first));
+            assertTrue(engine.started.await(10, TimeUnit.SECONDS));
+
+            // requested while the response of the first request is still being read
+            Future<byte[]> waiting1 = executor.submit(new ReadBody(cache.send(engine, new HttpGet(URL), null, null, 60000)));
+            Future<byte[]> waiting2 = executor.submit(new ReadBody(cache.send(engine, new HttpGet(URL), null, null, 60000)));
+            Thread.sleep(20);
+            assertFalse(waiting1.isDone());
+
+            engine.block.countDown();
+            assertArrayEquals("1".getBytes(), reading.get(10, TimeUnit.SECONDS));
+            assertArrayEquals("1".getBytes(), waiting1.get(10, TimeUnit.SECONDS));
+            assertArrayEquals("1".getBytes(), waiting2.get(10, TimeUnit.SECONDS));
+            assertEquals(1, engine.requests.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testWaitingTimesOut() throws Exception {
+        SnapshotCache cache = new SnapshotCache();
+        CountingEngine engine = new CountingEngine();
+        engine.block = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<byte[]> reading = executor.submit(new ReadBody(cache.send(engine, new HttpGet(URL), null, null, 60000)));
+            assertTrue(engine.started.await(10, TimeUnit.SECONDS));
+
+            try {
+                cache.send(engine, new HttpGet(URL), null, null, 60000).getBody(10);
+                fail("Should catch exception here");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("No shared response within 10ms"));
+            }
+
+            // the shared request is not affected by the timeout of a waiting monitor
+            engine.block.countDown();
+            assertArrayEquals("1".getBytes(), reading.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSharedRequestAborted() throws Exception {
+        SnapshotCache cache = new SnapshotCache();
+        CountingEngine engine = new CountingEngine();
+        engine.block = new CountDownLatch(1);
+        engine.abort = true;
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<byte[]> reading = executor.submit(new ReadBody(cache.send(engine, new HttpGet(URL), null, null, 60000)));
+            assertTrue(engine.started.await(10, TimeUnit.SECONDS));
+
+            // another monitor waits for the shared response
+            CountingEngine other = new CountingEngine();
+            Future<byte[]> waiting = executor.submit(new ReadBody(cache.send(other, new HttpGet(URL), null, null, 60000)));
+            Thread.sleep(20);
+            assertFalse(waiting.isDone());
+
+            // the poll of the first monitor is aborted, the other one sends its own request
+            engine.block.countDown();
+            try {
+                reading.get(10, TimeUnit.SECONDS);
+                fail("Should catch exception here");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof InterruptedIOException);
+            }
+            assertArrayEquals("1".getBytes(), waiting.get(10, TimeUnit.SECONDS));
+            assertEquals(1, other.requests.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testNormalize() {
+        assertEquals("http://localhost/_stats", SnapshotCache.normalize(URI.create("HTTP://LocalHost:80//_stats")));
+        assertEquals("https://host:9200/_nodes/stats?level=indices",
+                SnapshotCache.normalize(URI.create("https://Host:9200/_nodes/./stats?level=indices")));
+        assertEquals("https://host/", SnapshotCache.normalize(URI.create("https://host:443/")));
+    }
+
+    private static final class ReadBody implements Callable<byte[]> {
+        private final HttpEngine.Exchange exchange;
+
+        private ReadBody(HttpEngine.Exchange exchange) {
+            this.exchange = exchange;
+        }
+
+        @Override
+        public byte[] call() throws Exception {
+            return exchange.getBody(0);
+        }
+    }
+
+    /**
+     * Returns the number of the request as body, optionally blocks until released.
+     */
+    private static final class CountingEngine extends HttpEngine {
+        private final AtomicInteger requests = new AtomicInteger();
+        private final CountDownLatch started = new CountDownLatch(1);
+        private volatile CountDownLatch block;
+        private volatile boolean fail;
+        private volatile boolean abort;
+
+        @Override
+        public Exchange send(HttpGet request) {
+            return new Exchange() {
+                @Override
+                public byte[] getBody(long timeoutMillis) throws IOException {
+                    int request = requests.incrementAndGet();
+                    started.countDown();
+                    if(block != null) {
+                        try {
+                            block.await();
+                        } catch (InterruptedException e) {
+                            throw new IOException(e);
+                        }
+                    }
+                    if(fail) {
+                        throw new IOException("failed: " + request);
+                    }
+                    if(abort) {
+                        throw new InterruptedIOException("aborted: " + request);
+                    }
+                    return Integer.toString(request).getBytes();
+                }
+
+                @Override
+                public long getRequestNanos() {
+                    return 0;
+                }
+
+                @Override
+                public int getStatusCode() {
+                    return 200;
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.KeyStore;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+public class TlsSupportTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCreateContext() throws Exception {
+        assertNotNull(TlsSupport.createContext(null, null, null, null));
+
+        File store = createStore("truststore.p12", "secret");
+        SSLContext context = TlsSupport.createContext(store.getAbsolutePath(), "secret", null, null);
+        assertNotNull(context.getSocketFactory());
+
+        context = TlsSupport.createContext(null, null, store.getAbsolutePath(), "secret");
+        assertNotNull(context.getSocketFactory());
+    }
+
+    @Test
+    public void testCreateContextFails() throws Exception {
+        File store = createStore("truststore.p12", "secret");
+        try {
+            TlsSupport.createContext(store.getAbsolutePath(), "wrong", null, null);
+            fail("Should catch exception here");
+        } catch (IOException e) {
+            // expected
+        }
+
+        try {
+            TlsSupport.createContext(new File(folder.getRoot(), "missing.jks").getAbsolutePath(), "secret", null, null);
+            fail("Should catch exception here");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSessionCache() throws Exception {
+        SSLContext context = TlsSupport.createContext(null, null, null, null);
+        new TlsSupport(context);
+        assertEquals(1000, context.getClientSessionContext().getSessionCacheSize());
+        assertEquals(24 * 60 * 60, context.getClientSessionContext().getSessionTimeout());
+    }
+
+    @Test
+    public void testRecordHandshake() throws Exception {
+        TlsSupport tls = new TlsSupport(TlsSupport.createContext(null, null, null, null));
+        assertNotNull(tls.createSocketFactories().lookup("https"));
+        assertNotNull(tls.createSessionStrategies().lookup("https"));
+
+        tls.recordHandshake(session(new byte[] {1, 2, 3}));
+        tls.recordHandshake(session(new byte[] {4, 5, 6}));
+        // resumed the first session
+        tls.recordHandshake(session(new byte[] {1, 2, 3}));
+        // no id, cannot be resumed
+        tls.recordHandshake(session(new byte[0]));
+
+        assertEquals(4, tls.getHandshakes());
+        assertEquals(1, tls.getResumptions());
+    }
+
+    private static SSLSession session(byte[] id) {
+        SSLSession session = createNiceMock(SSLSession.class);
+        expect(session.getId()).andReturn(id).anyTimes();
+        replay(session);
+        return session;
+    }
+
+    private File createStore(String name, String password) throws Exception {
+        KeyStore store = KeyStore.getInstance("PKCS12");
+        store.load(null, password.toCharArray());
+
+        File file = folder.newFile(name);
+        try (OutputStream stream = new FileOutputStream(file)) {
+            store.store(stream, password.toCharArray());
+        }
+        return file;
+    }
+}
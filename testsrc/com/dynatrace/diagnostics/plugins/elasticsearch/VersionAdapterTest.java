@@ -0,0 +1,77 @@
+package com.dynatrace.diagnostics.plugins.elasticsearch;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class VersionAdapterTest {
+    @Test
+    public void testDefault() {
+        assertSame(VersionAdapter.DEFAULT, VersionAdapter.forVersion(null));
+        assertSame(VersionAdapter.DEFAULT, VersionAdapter.forVersion(""));
+        assertSame(VersionAdapter.DEFAULT, VersionAdapter.forVersion("abc"));
+        assertSame(VersionAdapter.DEFAULT, VersionAdapter.forVersion("5"));
+
+        VersionAdapter adapter = VersionAdapter.DEFAULT;
+        assertFalse(adapter.isKnown());
+        assertNull(adapter.getVersion());
+
+        // unknown version behaves as before, i.e. requests everything and looks at all sections
+        assertEquals("/_nodes", adapter.getNodeInfoEndpoint());
+        assertEquals("/_nodes/stats", adapter.getNodeStatsEndpoint());
+        assertEquals("/_nodes/stats", adapter.getSampleEndpoint());
+        assertEquals("/_stats", adapter.getIndexStatsEndpoint());
+        assertTrue(adapter.hasPercolate());
+        assertTrue(adapter.hasIngest());
+        assertEquals("query_cache", adapter.getQueryCacheSection());
+        assertEquals("request_cache", adapter.getRequestCacheSection());
+    }
+
+    @Test
+    public void testVersion1() {
+        VersionAdapter adapter = VersionAdapter.forVersion("1.3.9");
+        assertTrue(adapter.isKnown());
+        assertEquals("1.3.9", adapter.getVersion());
+
+        assertEquals("/_nodes/jvm", adapter.getNodeInfoEndpoint());
+        assertEquals("/_nodes/stats/indices,os,process", adapter.getNodeStatsEndpoint());
+        assertEquals("/_nodes/stats/indices,thread_pool,jvm", adapter.getSampleEndpoint());
+        assertEquals("/_stats/docs,store,indexing,search", adapter.getIndexStatsEndpoint());
+        assertTrue(adapter.hasPercolate());
+        assertFalse(adapter.hasIngest());
+        assertEquals("filter_cache", adapter.getQueryCacheSection());
+        assertNull(adapter.getRequestCacheSection());
+
+        adapter = VersionAdapter.forVersion("1.7.6");
+        assertEquals("filter_cache", adapter.getQueryCacheSection());
+        assertEquals("query_cache", adapter.getRequestCacheSection());
+    }
+
+    @Test
+    public void testVersion2() {
+        VersionAdapter adapter = VersionAdapter.forVersion("2.4.6");
+
+        assertEquals("/_nodes/stats/os,process,indices/docs,store,indexing,search,query_cache,fielddata,translog,request_cache,recovery,percolate",
+                adapter.getNodeStatsEndpoint());
+        assertTrue(adapter.hasPercolate());
+        assertFalse(adapter.hasIngest());
+        assertEquals("query_cache", adapter.getQueryCacheSection());
+        assertEquals("request_cache", adapter.getRequestCacheSection());
+    }
+
+    @Test
+    public void testVersion5AndHigher() {
+        for(String version : new String[] { "5.0.0-alpha1", "5.5.2", "6.0.0-beta1", "10.1.0" }) {
+            VersionAdapter adapter = VersionAdapter.forVersion(version);
+            assertTrue(adapter.isKnown());
+
+            assertEquals("/_nodes/stats/os,process,indices,ingest/docs,store,indexing,search,query_cache,fielddata,translog,request_cache,recovery",
+                    adapter.getNodeStatsEndpoint());
+            assertEquals("/_nodes/stats/indices,thread_pool,jvm/indexing,search", adapter.getSampleEndpoint());
+            assertFalse("Had: " + adapter, adapter.hasPercolate());
+            assertTrue("Had: " + adapter, adapter.hasIngest());
+            assertEquals("query_cache", adapter.getQueryCacheSection());
+            assertEquals("request_cache", adapter.getRequestCacheSection());
+        }
+    }
+}
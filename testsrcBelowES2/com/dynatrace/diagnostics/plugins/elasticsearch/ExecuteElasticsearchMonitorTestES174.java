@@ -216,6 +216,12 @@ public class ExecuteElasticsearchMonitorTestES174 extends ElasticsearchIntegrati
 					break;
 
 
+				// the local node is reachable in all executions
+				case MSR_REACHABLE:
+					assertEquals("Had " + value + " for " + measure.getMetricName(), 1, value);
+					found++;
+					break;
+
 				default:
 					fail("Unexpected measure found: " + measure + ", value: " + ((MonitorMeasure30Impl)measure).getMeasurement());
 			}
@@ -225,6 +225,11 @@ public class ExecuteElasticsearchMonitorTest extends ESNetty3IntegTestCase {
 				case MSR_PERCOLATE_SIZE:
                     break;
 
+				// the local node is reachable in all executions
+				case MSR_REACHABLE:
+					Assert.assertEquals("Had " + value + " for " + measure.getMetricName(), 1, value);
+					break;
+
 				default:
 					fail("Unexpected measure found: " + measure + ", value: " + ((MonitorMeasure30Impl)measure).getMeasurement());
 			}